@@ -19,7 +19,8 @@ public class Car implements Comparable<Car> {
         Electric
     }
 
-    private final String licensePlate;      // defines the car uniquely
+    private final long plateCode;           // defines the car uniquely, see LicensePlateCodec
+    private final String licensePlate;      // only retained for plates that cannot be encoded in plateCode
     private int emissionCategory;           // a number between 0 and 9, higher is cleaner, depends on type, fuel and age, typically.
     private CarType carType;
     private FuelType fuelType;
@@ -27,7 +28,8 @@ public class Car implements Comparable<Car> {
 
     public Car(String licensePlate) {
         // base constructor for unregistered and foreign cars
-        this.licensePlate = licensePlate;
+        this.plateCode = LicensePlateCodec.encode(licensePlate);
+        this.licensePlate = this.plateCode == LicensePlateCodec.NOT_ENCODABLE ? licensePlate : null;
         this.emissionCategory = 0;
         this.carType = CarType.Unknown;
         this.fuelType = FuelType.Unknown;
@@ -42,6 +44,30 @@ public class Car implements Comparable<Car> {
         this.dateOfAdmission = dateOfAdmission;
     }
 
+    /**
+     * creates a registered car straight from its encoded license plate, without decoding the plate
+     * @param plateCode     a code that has been produced by LicensePlateCodec.encode
+     */
+    Car(long plateCode, int emissionCategory, CarType carType, FuelType fuelType, LocalDate dateOfAdmission) {
+        if (plateCode < 0) {
+            throw new IllegalArgumentException("Not a license plate code: " + plateCode);
+        }
+        this.plateCode = plateCode;
+        this.licensePlate = null;
+        this.emissionCategory = emissionCategory;
+        this.carType = carType;
+        this.fuelType = fuelType;
+        this.dateOfAdmission = dateOfAdmission;
+    }
+
+    /**
+     * creates a view of a car that is stored elsewhere, which overrides the getters, see MappedCarRegistry.MappedCar
+     */
+    Car() {
+        this.plateCode = LicensePlateCodec.NOT_ENCODABLE;
+        this.licensePlate = null;
+    }
+
     /**
      * parses car information from a textLine
      * with format: licensePlate, emissionCategory, carType, fuelType, dateOfAdmission
@@ -74,7 +100,14 @@ public class Car implements Comparable<Car> {
     }
 
     public String getLicensePlate() {
-        return licensePlate;
+        return this.licensePlate != null ? this.licensePlate : LicensePlateCodec.decode(this.plateCode);
+    }
+
+    /**
+     * @return  the order preserving code of the licensePlate, or LicensePlateCodec.NOT_ENCODABLE
+     */
+    public long getPlateCode() {
+        return plateCode;
     }
 
     public int getEmissionCategory() {
@@ -112,14 +145,20 @@ public class Car implements Comparable<Car> {
     @Override
     public int compareTo(Car other) {
         // cars are uniquely defined by their license plate
-        return this.licensePlate.compareTo(other.licensePlate);
+        long plateCode = this.getPlateCode();
+        long otherPlateCode = other.getPlateCode();
+        if (plateCode != LicensePlateCodec.NOT_ENCODABLE && otherPlateCode != LicensePlateCodec.NOT_ENCODABLE) {
+            // the codes are ordered like the license plates
+            return Long.compare(plateCode, otherPlateCode);
+        }
+        return this.getLicensePlate().compareTo(other.getLicensePlate());
     }
 
     @Override
     public String toString() {
 
         return String.format("%s/%d/%s/%s",
-                this.licensePlate, this.emissionCategory, this.carType, this.fuelType);
+                this.getLicensePlate(), this.getEmissionCategory(), this.getCarType(), this.getFuelType());
     }
 
     @Override
@@ -128,11 +167,14 @@ public class Car implements Comparable<Car> {
         if (!(o instanceof Car)) return false;
         Car car = (Car)o;
         // cars are uniquely defined by their license plate
-        return licensePlate.equals(car.licensePlate);
+        long plateCode = this.getPlateCode();
+        return plateCode == car.getPlateCode()
+                && (plateCode != LicensePlateCodec.NOT_ENCODABLE || this.getLicensePlate().equals(car.getLicensePlate()));
     }
 
     @Override
     public int hashCode() {
-        return licensePlate.hashCode();
+        long plateCode = this.getPlateCode();
+        return plateCode == LicensePlateCodec.NOT_ENCODABLE ? this.getLicensePlate().hashCode() : Long.hashCode(plateCode);
     }
 }
@@ -0,0 +1,94 @@
+package models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary of the names of the cities in the vault,
+ * which assigns every city a small int id in the order of first appearance.
+ * Lookups of known cities are lock-free, new cities are added under a lock.
+ */
+public class CityDictionary {
+    private volatile String[] names = new String[0];        // the name of every city by id
+    private volatile byte[][] utf8Names = new byte[0][];    // the UTF-8 encoding of every name by id
+
+    /**
+     * finds the id of the city with the given name, or adds the city if it is not known yet
+     * @param name
+     * @return  the id of the city
+     */
+    public int idOf(String name) {
+        String[] names = this.names;
+        for (int id = 0; id < names.length; id++) {
+            if (names[id].equals(name)) {
+                return id;
+            }
+        }
+        return this.add(name);
+    }
+
+    /**
+     * finds the id of the city with the UTF-8 encoded name at positions from <= index < to of the buffer,
+     * or adds the city if it is not known yet. No String is created for cities that are known already.
+     * @param buffer
+     * @param from
+     * @param to
+     * @return  the id of the city
+     */
+    int idOf(ByteBuffer buffer, int from, int to) {
+        byte[][] utf8Names = this.utf8Names;
+        int length = to - from;
+        for (int id = 0; id < utf8Names.length; id++) {
+            byte[] utf8Name = utf8Names[id];
+            if (utf8Name.length == length && matches(utf8Name, buffer, from)) {
+                return id;
+            }
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(from, bytes);
+        return this.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static boolean matches(byte[] utf8Name, ByteBuffer buffer, int from) {
+        for (int i = 0; i < utf8Name.length; i++) {
+            if (utf8Name[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized int add(String name) {
+        // another thread may have added the same city in the meantime
+        for (int id = 0; id < this.names.length; id++) {
+            if (this.names[id].equals(name)) {
+                return id;
+            }
+        }
+        int id = this.names.length;
+        byte[][] newAsciiNames = Arrays.copyOf(this.utf8Names, id + 1);
+        newAsciiNames[id] = name.getBytes(StandardCharsets.UTF_8);
+        String[] newNames = Arrays.copyOf(this.names, id + 1);
+        newNames[id] = name;
+        // publish the names first, such that any id that can be found has a name
+        this.names = newNames;
+        this.utf8Names = newAsciiNames;
+        return id;
+    }
+
+    /**
+     * @param id
+     * @return  the name of the city with the given id
+     */
+    public String nameOf(int id) {
+        return this.names[id];
+    }
+
+    /**
+     * @return  the number of cities in the dictionary
+     */
+    public int size() {
+        return this.names.length;
+    }
+}
@@ -0,0 +1,294 @@
+package models;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Thread-safe OrderedList for workloads where many threads merge items into one list concurrently.
+ * The items are kept sorted in a ConcurrentSkipListMap, keyed by the first item of every position in the sortOrder.
+ * Each entry holds all items that are equal by the sortOrder in an array that is replaced on every change,
+ * such that reads and iterations are lock-free, while writers only lock the single entry they change.
+ * merge(item, merger) is linearizable: the merger of an existing item runs under the lock of its entry,
+ * so concurrent merges into the same item are applied one after the other, and merges into different items
+ * do not block each other at all.
+ *
+ * Iterators are weakly consistent, like those of the skip list. As a concurrent list has no stable positions,
+ * positional reads take linear time, list iterators run on a snapshot of the list,
+ * and positional changes by add(index, item) and set(index, item) are not supported.
+ * sort(Comparator) and clear() shall not run concurrently with other changes.
+ * null items are not supported.
+ * @param <E>
+ */
+public class ConcurrentOrderedList<E> extends AbstractList<E> implements OrderedList<E> {
+    // all items that are equal by the sortOrder, in order of insertion
+    private static final class Entry {
+        volatile Object[] items;
+        boolean removed;            // the entry has been removed from the map, guarded by the lock of the entry
+
+        Entry(Object item) {
+            this.items = new Object[] { item };
+        }
+    }
+
+    private Comparator<? super E> sortOrder;
+    private ConcurrentSkipListMap<E, Entry> entries;
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentOrderedList() {
+        this(null);
+    }
+
+    /**
+     * @param sortOrder     the sort order of the items, or null for their natural ordering
+     */
+    public ConcurrentOrderedList(Comparator<? super E> sortOrder) {
+        this.sortOrder = sortOrder;
+        this.entries = new ConcurrentSkipListMap<>(sortOrder);
+    }
+
+    @Override
+    public Comparator<? super E> getSortOrder() {
+        return this.sortOrder;
+    }
+
+    @Override
+    public int size() {
+        return (int)this.size.sum();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * adds the item behind all items that are equal to it by the sortOrder
+     * @param item
+     * @return true
+     */
+    @Override
+    public boolean add(E item) {
+        Objects.requireNonNull(item);
+        while (true) {
+            Entry entry = this.entries.get(item);
+            if (entry == null) {
+                entry = this.entries.putIfAbsent(item, new Entry(item));
+                if (entry == null) {
+                    this.size.increment();
+                    return true;
+                }
+            }
+            synchronized (entry) {
+                if (!entry.removed) {
+                    Object[] items = Arrays.copyOf(entry.items, entry.items.length + 1);
+                    items[items.length - 1] = item;
+                    entry.items = items;
+                    this.size.increment();
+                    return true;
+                }
+            }
+            // the entry has been removed concurrently, so try again
+        }
+    }
+
+    /**
+     * finds a match of newItem in the list and replaces it by the outcome of the merger,
+     * or adds the newItem if no match is found, atomically
+     * @param newItem
+     * @param merger    is applied under the lock of the matched item, and shall return an item
+     *                  with the same position in the sortOrder as the matched item
+     * @return  whether a new item was added to the list or not
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean merge(E newItem, BinaryOperator<E> merger) {
+        if (newItem == null) return false;
+        while (true) {
+            Entry entry = this.entries.get(newItem);
+            if (entry == null) {
+                entry = this.entries.putIfAbsent(newItem, new Entry(newItem));
+                if (entry == null) {
+                    this.size.increment();
+                    return true;
+                }
+            }
+            synchronized (entry) {
+                if (!entry.removed) {
+                    Object[] items = entry.items.clone();
+                    items[0] = merger.apply((E)items[0], newItem);
+                    entry.items = items;
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * removes the first item that matches the given item by the sortOrder and by equals
+     * @param item
+     * @return  whether an item was removed
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object item) {
+        if (item == null) return false;
+        Entry entry = this.entries.get(item);
+        if (entry == null) return false;
+        synchronized (entry) {
+            Object[] items = entry.items;
+            for (int i = 0; i < items.length && !entry.removed; i++) {
+                if (item.equals(items[i])) {
+                    if (items.length == 1) {
+                        entry.removed = true;
+                        this.entries.remove((E)item, entry);
+                    } else {
+                        Object[] remainingItems = new Object[items.length - 1];
+                        System.arraycopy(items, 0, remainingItems, 0, i);
+                        System.arraycopy(items, i + 1, remainingItems, i, items.length - i - 1);
+                        entry.items = remainingItems;
+                    }
+                    this.size.decrement();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public E remove(int index) {
+        E item = this.get(index);
+        if (!this.remove(item)) {
+            throw new ConcurrentModificationException();
+        }
+        return item;
+    }
+
+    @Override
+    public void clear() {
+        this.entries.clear();
+        this.size.reset();
+    }
+
+    /**
+     * finds the item at the index, by counting the items in sort order
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, this.size());
+        int position = 0;
+        for (Entry entry : this.entries.values()) {
+            Object[] items = entry.items;
+            if (index < position + items.length) {
+                return (E)items[index - position];
+            }
+            position += items.length;
+        }
+        throw new ConcurrentModificationException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object item) {
+        return item != null ? this.indexOfByBinarySearch((E)item) : -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object item) {
+        return item != null && this.entries.containsKey((E)item);
+    }
+
+    /**
+     * finds the position of the first item that matches the searchItem by the sortOrder,
+     * by a search of the skip list and a count of the items that precede it
+     * @param searchItem
+     * @return  the position index of the found item, or -1 if no item matches the search item
+     */
+    @Override
+    public int indexOfByBinarySearch(E searchItem) {
+        if (searchItem == null || !this.entries.containsKey(searchItem)) return -1;
+        int position = 0;
+        for (Entry entry : this.entries.headMap(searchItem).values()) {
+            position += entry.items.length;
+        }
+        return position;
+    }
+
+    /**
+     * the items are sorted at all times, so there is nothing to do
+     */
+    @Override
+    public void sort() {
+    }
+
+    /**
+     * re-sorts all items by a new sortOrder, which becomes the sortOrder of the list
+     * @param sortOrder
+     */
+    @Override
+    public void sort(Comparator<? super E> sortOrder) {
+        if (sortOrder == this.sortOrder) {
+            return;
+        }
+        List<E> allItems = new ArrayList<>(this);
+        this.sortOrder = sortOrder;
+        this.entries = new ConcurrentSkipListMap<>(sortOrder);
+        this.size.reset();
+        for (E item : allItems) {
+            this.add(item);
+        }
+    }
+
+    @Override
+    public double aggregate(Function<E, Double> mapper) {
+        double sum = 0.0;
+        for (E item : this) {
+            sum += mapper.apply(item);
+        }
+        return sum;
+    }
+
+    /**
+     * iterates the items in sort order, weakly consistent with concurrent changes
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private final Iterator<Entry> entryIterator = entries.values().iterator();
+            private Object[] items = new Object[0];
+            private int offset = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (this.offset >= this.items.length && this.entryIterator.hasNext()) {
+                    this.items = this.entryIterator.next().items;
+                    this.offset = 0;
+                }
+                return this.offset < this.items.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (E)this.items[this.offset++];
+            }
+        };
+    }
+
+    /**
+     * @return  an iterator over a snapshot of the list, which does not support changes
+     */
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        List<E> snapshot = new ArrayList<>(this);
+        return Collections.unmodifiableList(snapshot).listIterator(index);
+    }
+}
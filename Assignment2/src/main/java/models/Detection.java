@@ -1,12 +1,25 @@
 package models;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
-import static models.Car.CarType;
-import static models.Car.FuelType;
+import java.util.function.Function;
 
 public class Detection {
+    // exactly the fixed-width timestamps that MappedVaultParser accepts, without adjusting invalid days of the month
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = new DateTimeFormatterBuilder()
+            .appendValue(ChronoField.YEAR, 4).appendLiteral('-')
+            .appendValue(ChronoField.MONTH_OF_YEAR, 2).appendLiteral('-')
+            .appendValue(ChronoField.DAY_OF_MONTH, 2).appendLiteral('T')
+            .appendValue(ChronoField.HOUR_OF_DAY, 2).appendLiteral(':')
+            .appendValue(ChronoField.MINUTE_OF_HOUR, 2).appendLiteral(':')
+            .appendValue(ChronoField.SECOND_OF_MINUTE, 2)
+            .toFormatter().withResolverStyle(ResolverStyle.STRICT);
+
     private final Car car;                  // the car that was detected
     private final String city;              // the name of the city where the detector was located
     private final LocalDateTime dateTime;   // date and time of the detection event
@@ -37,37 +50,54 @@ public class Detection {
 
 
     public static Detection fromLine(String textLine, List<Car> cars) {
+        return fromLine(textLine, licensePlate -> {
+            // Search for a matching car in the list, by the code of its plate rather than the decoded plate
+            long plateCode = LicensePlateCodec.encode(licensePlate);
+            for (Car car : cars) {
+                if (plateCode != LicensePlateCodec.NOT_ENCODABLE
+                        ? car.getPlateCode() == plateCode
+                        : car.getPlateCode() == LicensePlateCodec.NOT_ENCODABLE && car.getLicensePlate().equals(licensePlate)) {
+                    return car;
+                }
+            }
+            // If no matching car was found, create a new Car instance and add it to the list
+            Car newCar = new Car(licensePlate);
+            cars.add(newCar);
+            return newCar;
+        });
+    }
+
+    /**
+     * Parses detection information from a line of text, like fromLine(textLine, cars) above,
+     * but delegates the matching of the licensePlate to the given carFinder.
+     * @param textLine
+     * @param carFinder   finds the car with the given licensePlate, or provides a new Car if it is not known yet
+     *                    (it shall never return null)
+     * @return a new Detection instance with the provided information
+     * or null if the textLine is corrupt or incomplete, i.e. it has more or less than 3 components
+     * or its dateTime is not a valid yyyy-MM-ddTHH:mm:ss, exactly like MappedVaultParser skips it
+     */
+    public static Detection fromLine(String textLine, Function<String, Car> carFinder) {
         Detection newDetection = null;
-        // Split the textLine into its components
-        String[] parts = textLine.split(",");
+        // Split the textLine into its components, keeping trailing empty components such that "a,b,c," is not complete
+        String[] parts = textLine.split(",", -1);
 
         // Check if there are enough components (licensePlate, city, dateTime)
         if (parts.length == 3) {
             String licensePlate = parts[0].trim();
             String city = parts[1].trim();
             String dateTimeStr = parts[2].trim();
-            // Define the DateTimeFormatter for the expected date and time format
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
-            // Parse the dateTime string into a LocalDateTime using the formatter
-            LocalDateTime dateTime = LocalDateTime.parse(dateTimeStr, formatter);
-            // Search for a matching car in the list
-            int carIndex = -1;
-            for (int i = 0; i < cars.size(); i++) {
-                if (cars.get(i).getLicensePlate().equals(licensePlate)) {
-                    carIndex = i;
-                    break;
-                }
-            }
-            // If no matching car was found, create a new Car instance
-            if (carIndex == -1) {
-                Car newCar = new Car(licensePlate); // You need to implement a Car constructor
-                cars.add(newCar);
-                carIndex = cars.size() - 1; // Set the index to the newly added car
+            // Parse the dateTime string into a LocalDateTime using the formatter for the expected format
+            LocalDateTime dateTime;
+            try {
+                dateTime = LocalDateTime.parse(dateTimeStr, DATE_TIME_FORMATTER);
+            } catch (DateTimeParseException e) {
+                return null;
             }
 
-            // Create a new Detection instance with the specific LocalDateTime
-            Car matchedCar = cars.get(carIndex); // Retrieve the matched car
-            newDetection = new Detection(matchedCar, city, dateTime); // You need to implement a Detection constructor
+            // Create a new Detection instance with the matched car
+            Car matchedCar = carFinder.apply(licensePlate);
+            newDetection = new Detection(matchedCar, city, dateTime);
         }
         return newDetection;
     }
@@ -81,18 +111,23 @@ public class Detection {
      *          null if no offence was found.
      */
     public Violation validatePurple() {
-        CarType carType = car.getCarType();
-        FuelType fuelType = car.getFuelType();
-        int emissionCategory = car.getEmissionCategory();
-        if((carType == CarType.Truck && fuelType == FuelType.Diesel) || (carType == CarType.Coach && fuelType == FuelType.Diesel)) {
-            if(emissionCategory < 6) {
-                Violation violation = new Violation(car, city);
-                return violation;
-            }
+        if (isPurpleOffender(this.car)) {
+            return new Violation(car, city);
         }
         return null;
     }
 
+    /**
+     * checks the purple conditions for entering an environmentally restricted zone on the car of a detection,
+     * as declared by ZoneRule.PURPLE
+     * @param car
+     * @return whether any detection of the car in a purple zone is an offence
+     */
+    public static boolean isPurpleOffender(Car car) {
+        // the rule of the purple zones is compiled into a bitmask of the car once
+        return ZoneRules.PURPLE.isViolatedBy(car, 0);
+    }
+
     public Car getCar() {
         return car;
     }
@@ -108,7 +143,7 @@ public class Detection {
 
     @Override
     public String toString() {
-        String formattedDateTime = dateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        String formattedDateTime = dateTime.format(DATE_TIME_FORMATTER);
         return car.getLicensePlate() + "/" + city + "/" + formattedDateTime;
     }
 
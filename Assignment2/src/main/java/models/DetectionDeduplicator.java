@@ -0,0 +1,235 @@
+package models;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Suppresses repeat detections of the same car in the same city within a time window,
+ * e.g. when a gate registers a car several times while it passes.
+ * A detection is a repeat if an accepted detection of the car in the city is less than the window apart,
+ * before or after it; repeats are not accepted themselves, so a car that is detected continuously
+ * is accepted once per window.
+ *
+ * The times of the accepted detections are kept per car and city in a sorted array, in an open-addressing
+ * table with primitive keys, such that a detection is checked against its neighbours in time by a binary search,
+ * whatever the order of arrival. The vault files are not ordered by time, not even within a file,
+ * so every accepted detection is retained until clear(), at 8 bytes per accepted detection.
+ * When the detections arrive in order of time, like from segments, the first detection of every series is accepted;
+ * in another order, the detections that are accepted may differ, but every accepted detection is at least a window
+ * apart from the other accepted detections of its car and city.
+ *
+ * The deduplicator is thread-safe; detections are spread over lock stripes by car and city,
+ * such that the detections of one car in one city are always checked by the same stripe.
+ */
+public class DetectionDeduplicator {
+    private static final int NUMBER_OF_STRIPES = 16;
+
+    private final long windowSeconds;
+    private final CityDictionary cities;
+    private final Stripe[] stripes = new Stripe[NUMBER_OF_STRIPES];
+
+    /**
+     * @param window    the minimum time between accepted detections of a car in a city, at least a second
+     * @param cities    the dictionary of the ids of the cities of the detections
+     */
+    public DetectionDeduplicator(Duration window, CityDictionary cities) {
+        if (window.getSeconds() < 1) {
+            throw new IllegalArgumentException("The window should be at least a second, not " + window);
+        }
+        this.windowSeconds = window.getSeconds();
+        this.cities = cities;
+        for (int s = 0; s < NUMBER_OF_STRIPES; s++) {
+            this.stripes[s] = new Stripe();
+        }
+    }
+
+    /**
+     * checks a detection and records it if it is accepted
+     * @param car
+     * @param cityId        the id of the city in the dictionary of the deduplicator
+     * @param epochSecond   the local date time of the detection as epoch seconds at offset UTC
+     * @return  whether the detection is accepted, or is a repeat of an accepted detection
+     */
+    public boolean accept(Car car, int cityId, long epochSecond) {
+        int hash = car.getPlateCode() != LicensePlateCodec.NOT_ENCODABLE
+                ? Long.hashCode(car.getPlateCode() * 0x9E3779B97F4A7C15L) : car.getLicensePlate().hashCode();
+        Stripe stripe = this.stripes[Math.floorMod(hash * 31 + cityId, NUMBER_OF_STRIPES)];
+        synchronized (stripe) {
+            return stripe.accept(car, cityId, epochSecond);
+        }
+    }
+
+    /**
+     * @param detection
+     * @return  whether the detection is accepted, or is a repeat of an accepted detection
+     */
+    public boolean accept(Detection detection) {
+        return this.accept(detection.getCar(), this.cities.idOf(detection.getCity()),
+                detection.getDateTime().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    /**
+     * @return  the minimum time between accepted detections of a car in a city
+     */
+    public Duration getWindow() {
+        return Duration.ofSeconds(this.windowSeconds);
+    }
+
+    /**
+     * @return  the number of detections that have been suppressed as repeats
+     */
+    public long getNumberOfRepeats() {
+        long numberOfRepeats = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                numberOfRepeats += stripe.numberOfRepeats;
+            }
+        }
+        return numberOfRepeats;
+    }
+
+    /**
+     * @return  the number of accepted detections that are retained for checking later detections
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.numberOfAccepted;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Open-addressing hash table of the accepted detections of the cars in the cities of a stripe,
+     * keyed by plate code and city id, with the sorted times of the accepted detections of every car and city.
+     * Plates that cannot be encoded are kept in a regular map.
+     */
+    private class Stripe {
+        private static final int INITIAL_CAPACITY = 64;
+
+        long[] plateCodes = new long[INITIAL_CAPACITY];
+        int[] cityIds = new int[INITIAL_CAPACITY];      // the city id + 1, 0 marks an empty slot
+        Series[] series = new Series[INITIAL_CAPACITY];
+        int size = 0;
+        final Map<String, Series> unencoded = new HashMap<>();   // keyed by licensePlate and city
+        long numberOfAccepted = 0;
+        long numberOfRepeats = 0;
+
+        private static int slotOf(long plateCode, int cityId, int mask) {
+            long hash = (plateCode * 31 + cityId) * 0x9E3779B97F4A7C15L;
+            return (int)(hash ^ (hash >>> 32)) & mask;
+        }
+
+        boolean accept(Car car, int cityId, long epochSecond) {
+            if (this.seriesOf(car, cityId).accept(epochSecond, DetectionDeduplicator.this.windowSeconds)) {
+                this.numberOfAccepted++;
+                return true;
+            }
+            this.numberOfRepeats++;
+            return false;
+        }
+
+        /**
+         * @return  the series of the accepted detections of the car in the city, which is added if it is new
+         */
+        private Series seriesOf(Car car, int cityId) {
+            long plateCode = car.getPlateCode();
+            if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+                return this.unencoded.computeIfAbsent(car.getLicensePlate() + "/" + cityId, key -> new Series());
+            }
+            int mask = this.plateCodes.length - 1;
+            int slot = slotOf(plateCode, cityId, mask);
+            while (this.cityIds[slot] != 0) {
+                if (this.plateCodes[slot] == plateCode && this.cityIds[slot] == cityId + 1) {
+                    return this.series[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (2 * (this.size + 1) > this.plateCodes.length) {
+                this.grow();
+                return this.seriesOf(car, cityId);
+            }
+            this.plateCodes[slot] = plateCode;
+            this.cityIds[slot] = cityId + 1;
+            this.series[slot] = new Series();
+            this.size++;
+            return this.series[slot];
+        }
+
+        private void grow() {
+            long[] plateCodes = this.plateCodes;
+            int[] cityIds = this.cityIds;
+            Series[] series = this.series;
+            int capacity = 2 * plateCodes.length;
+            this.plateCodes = new long[capacity];
+            this.cityIds = new int[capacity];
+            this.series = new Series[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < plateCodes.length; i++) {
+                if (cityIds[i] != 0) {
+                    int slot = slotOf(plateCodes[i], cityIds[i] - 1, mask);
+                    while (this.cityIds[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    this.plateCodes[slot] = plateCodes[i];
+                    this.cityIds[slot] = cityIds[i];
+                    this.series[slot] = series[i];
+                }
+            }
+        }
+
+        void clear() {
+            this.plateCodes = new long[INITIAL_CAPACITY];
+            this.cityIds = new int[INITIAL_CAPACITY];
+            this.series = new Series[INITIAL_CAPACITY];
+            this.size = 0;
+            this.unencoded.clear();
+            this.numberOfAccepted = 0;
+            this.numberOfRepeats = 0;
+        }
+    }
+
+    /**
+     * the sorted times of the accepted detections of a car in a city
+     */
+    private static class Series {
+        long[] epochSeconds = new long[2];
+        int size = 0;
+
+        /**
+         * accepts the time if no accepted time is less than the window apart, and inserts it in order
+         */
+        boolean accept(long epochSecond, long windowSeconds) {
+            int index = Arrays.binarySearch(this.epochSeconds, 0, this.size, epochSecond);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            // the nearest accepted times are the neighbours of the insertion point
+            if (index > 0 && epochSecond - this.epochSeconds[index - 1] < windowSeconds
+                    || index < this.size && this.epochSeconds[index] - epochSecond < windowSeconds) {
+                return false;
+            }
+            if (this.size == this.epochSeconds.length) {
+                this.epochSeconds = Arrays.copyOf(this.epochSeconds, 2 * this.size);
+            }
+            System.arraycopy(this.epochSeconds, index, this.epochSeconds, index + 1, this.size - index);
+            this.epochSeconds[index] = epochSecond;
+            this.size++;
+            return true;
+        }
+    }
+}
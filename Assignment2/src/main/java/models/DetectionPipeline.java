@@ -0,0 +1,319 @@
+package models;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Imports detection files in a pipeline of stages, which run concurrently and hand over batches of lines
+ * through bounded queues:
+ *  READ        one thread reads the lines of the files, in order of the files, into batches of batchSize lines
+ *  PARSE       parseThreads threads convert the lines of a batch into detections, matching their cars
+ *  VALIDATE    one thread takes the parsed batches in their original order, drops repeat detections
+ *              and marks the offences against the zone rule
+ *  AGGREGATE   the calling thread hands every validated batch to the aggregator, in the original order
+ * Reading overlaps with parsing, and the validation and aggregation see every detection in the same order
+ * as a sequential import, so the results are identical.
+ * The reader needs a permit for every batch, which is returned when the batch has been aggregated,
+ * such that at most maxBatchesInFlight batches are in memory, however slow a stage is.
+ * The depth of the queues and the throughput of the stages can be read while the pipeline runs.
+ */
+public class DetectionPipeline {
+    public enum Stage { READ, PARSE, VALIDATE, AGGREGATE }
+
+    private static final Stage[] STAGES = Stage.values();
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * receives the validated batches, in order of the files and their lines
+     */
+    interface Aggregator {
+        /**
+         * @param detections    the accepted detections of a batch
+         * @param offences      the indexes of the detections that are offences
+         */
+        void aggregate(List<Detection> detections, BitSet offences);
+    }
+
+    /**
+     * the lines of a batch, which become detections and offences in the later stages
+     */
+    private static class Batch {
+        static final Batch END = new Batch(-1, List.of());
+
+        final long sequence;
+        final List<String> lines;
+        List<Detection> detections;
+        BitSet offences;
+
+        Batch(long sequence, List<String> lines) {
+            this.sequence = sequence;
+            this.lines = lines;
+        }
+    }
+
+    private final int parseThreads;
+    private final int batchSize;
+    private final BlockingQueue<Batch> readBatches;         // waiting to be parsed
+    private final BlockingQueue<Batch> parsedBatches;       // waiting to be validated, in any order
+    private final BlockingQueue<Batch> validatedBatches;    // waiting to be aggregated, in order
+    private final Semaphore batchesInFlight;
+    private final AtomicInteger reorderedBatches = new AtomicInteger();  // parsed batches that wait for an earlier one
+    private final LongAdder[] items = new LongAdder[STAGES.length];
+    private final LongAdder[] busyNanos = new LongAdder[STAGES.length];
+    private final AtomicInteger[] peakQueueDepths = new AtomicInteger[STAGES.length];
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param parseThreads          the number of threads of the PARSE stage
+     * @param batchSize             the number of lines per batch
+     * @param maxBatchesInFlight    the maximum number of batches that have been read, but not aggregated yet
+     */
+    public DetectionPipeline(int parseThreads, int batchSize, int maxBatchesInFlight) {
+        if (parseThreads < 1 || batchSize < 1 || maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException(String.format("Invalid pipeline of %d threads, batches of %d lines, %d batches in flight",
+                    parseThreads, batchSize, maxBatchesInFlight));
+        }
+        this.parseThreads = parseThreads;
+        this.batchSize = batchSize;
+        // the queues can hold all batches in flight and the end markers, such that only the permits block the reader
+        this.readBatches = new ArrayBlockingQueue<>(maxBatchesInFlight + parseThreads);
+        this.parsedBatches = new ArrayBlockingQueue<>(maxBatchesInFlight + parseThreads);
+        this.validatedBatches = new ArrayBlockingQueue<>(maxBatchesInFlight + 1);
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+        for (int s = 0; s < STAGES.length; s++) {
+            this.items[s] = new LongAdder();
+            this.busyNanos[s] = new LongAdder();
+            this.peakQueueDepths[s] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * imports the detection files through the pipeline, and returns when all batches have been aggregated
+     * @param files             the detection files, in the order of a sequential import
+     * @param parser            converts a text line into a detection, or null if the line is corrupt; thread-safe
+     * @param acceptor          accepts the detections that are not repeats, or null to accept all detections
+     * @param offenderFilter    selects the cars whose detections are offences
+     * @param aggregator        receives the validated batches on the calling thread
+     */
+    void run(List<File> files, Function<String, Detection> parser, Predicate<Detection> acceptor,
+             Predicate<? super Car> offenderFilter, Aggregator aggregator) {
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> this.read(files), "pipeline-read"));
+        for (int t = 0; t < this.parseThreads; t++) {
+            threads.add(new Thread(() -> this.parse(parser), "pipeline-parse-" + t));
+        }
+        threads.add(new Thread(() -> this.validate(acceptor, offenderFilter), "pipeline-validate"));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((failedThread, exception) -> this.fail(exception, threads));
+            thread.start();
+        }
+
+        try {
+            while (true) {
+                Batch batch = this.validatedBatches.poll(100, TimeUnit.MILLISECONDS);
+                if (this.failure.get() != null) break;
+                if (batch == null) continue;
+                if (batch == Batch.END) break;
+                long startNanos = System.nanoTime();
+                aggregator.aggregate(batch.detections, batch.offences);
+                this.measure(Stage.AGGREGATE, batch.detections.size(), startNanos);
+                this.batchesInFlight.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.failure.compareAndSet(null, e);
+        } catch (RuntimeException | Error e) {
+            this.failure.compareAndSet(null, e);
+        } finally {
+            if (this.failure.get() != null) {
+                threads.forEach(Thread::interrupt);
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (this.failure.get() != null) {
+            throw new RuntimeException("Could not import the detections", this.failure.get());
+        }
+    }
+
+    private void fail(Throwable exception, List<Thread> threads) {
+        if (this.failure.compareAndSet(null, exception)) {
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    private void read(List<File> files) {
+        long sequence = 0;
+        List<String> lines = new ArrayList<>(this.batchSize);
+        long startNanos = System.nanoTime();
+        try {
+            for (File file : files) {
+                // read the lines like TrafficTracker.importItemsFromFile does
+                try (Scanner scanner = new Scanner(file)) {
+                    while (scanner.hasNext()) {
+                        lines.add(scanner.nextLine());
+                        if (lines.size() == this.batchSize) {
+                            this.measure(Stage.READ, lines.size(), startNanos);
+                            this.handOver(this.readBatches, new Batch(sequence++, lines), Stage.PARSE, true);
+                            lines = new ArrayList<>(this.batchSize);
+                            startNanos = System.nanoTime();
+                        }
+                    }
+                } catch (FileNotFoundException e) {
+                    throw new RuntimeException("FileNotFound exception on path: " + file.getPath());
+                }
+            }
+            if (!lines.isEmpty()) {
+                this.measure(Stage.READ, lines.size(), startNanos);
+                this.handOver(this.readBatches, new Batch(sequence, lines), Stage.PARSE, true);
+            }
+            for (int t = 0; t < this.parseThreads; t++) {
+                this.readBatches.put(Batch.END);
+            }
+        } catch (InterruptedException e) {
+            // the pipeline has failed
+        }
+    }
+
+    private void parse(Function<String, Detection> parser) {
+        try {
+            while (true) {
+                Batch batch = this.readBatches.take();
+                if (batch == Batch.END) {
+                    this.parsedBatches.put(Batch.END);
+                    return;
+                }
+                long startNanos = System.nanoTime();
+                List<Detection> detections = new ArrayList<>(batch.lines.size());
+                for (String line : batch.lines) {
+                    Detection detection = parser.apply(line);
+                    if (detection != null) {
+                        detections.add(detection);
+                    }
+                }
+                batch.detections = detections;
+                this.measure(Stage.PARSE, batch.lines.size(), startNanos);
+                this.handOver(this.parsedBatches, batch, Stage.VALIDATE, false);
+            }
+        } catch (InterruptedException e) {
+            // the pipeline has failed
+        }
+    }
+
+    private void validate(Predicate<Detection> acceptor, Predicate<? super Car> offenderFilter) {
+        // the batches that have been parsed before an earlier batch, by sequence
+        Map<Long, Batch> waitingBatches = new HashMap<>();
+        long nextSequence = 0;
+        int numberOfEnds = 0;
+        try {
+            while (numberOfEnds < this.parseThreads) {
+                Batch batch = this.parsedBatches.take();
+                if (batch == Batch.END) {
+                    numberOfEnds++;
+                    continue;
+                }
+                waitingBatches.put(batch.sequence, batch);
+                while ((batch = waitingBatches.remove(nextSequence)) != null) {
+                    long startNanos = System.nanoTime();
+                    if (acceptor != null) {
+                        batch.detections.removeIf(detection -> !acceptor.test(detection));
+                    }
+                    BitSet offences = new BitSet(batch.detections.size());
+                    for (int d = 0; d < batch.detections.size(); d++) {
+                        if (offenderFilter.test(batch.detections.get(d).getCar())) {
+                            offences.set(d);
+                        }
+                    }
+                    batch.offences = offences;
+                    this.measure(Stage.VALIDATE, batch.detections.size(), startNanos);
+                    this.handOver(this.validatedBatches, batch, Stage.AGGREGATE, false);
+                    nextSequence++;
+                }
+                this.reorderedBatches.set(waitingBatches.size());
+            }
+            this.validatedBatches.put(Batch.END);
+        } catch (InterruptedException e) {
+            // the pipeline has failed
+        }
+    }
+
+    /**
+     * puts a batch into the queue of the next stage, after acquiring a permit for a new batch
+     */
+    private void handOver(BlockingQueue<Batch> queue, Batch batch, Stage nextStage, boolean newBatch)
+            throws InterruptedException {
+        if (newBatch) {
+            this.batchesInFlight.acquire();
+        }
+        queue.put(batch);
+        this.peakQueueDepths[nextStage.ordinal()].accumulateAndGet(queue.size(), Math::max);
+    }
+
+    private void measure(Stage stage, int numberOfItems, long startNanos) {
+        this.items[stage.ordinal()].add(numberOfItems);
+        this.busyNanos[stage.ordinal()].add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param stage
+     * @return  the number of batches that wait in the queue in front of the stage, including the batches
+     *          that wait for an earlier batch in front of the VALIDATE stage
+     */
+    public int getQueueDepth(Stage stage) {
+        return switch (stage) {
+            case READ -> 0;
+            case PARSE -> this.readBatches.size();
+            case VALIDATE -> this.parsedBatches.size() + this.reorderedBatches.get();
+            case AGGREGATE -> this.validatedBatches.size();
+        };
+    }
+
+    /**
+     * @param stage
+     * @return  the largest number of batches that has been waiting in the queue in front of the stage
+     */
+    public int getPeakQueueDepth(Stage stage) {
+        return this.peakQueueDepths[stage.ordinal()].get();
+    }
+
+    /**
+     * @param stage
+     * @return  the number of lines that have been read or parsed, or detections that have been validated or aggregated
+     */
+    public long getNumberOfItems(Stage stage) {
+        return this.items[stage.ordinal()].sum();
+    }
+
+    /**
+     * @param stage
+     * @return  the time that all threads of the stage have been processing batches, excluding waits for the queues
+     */
+    public long getBusyNanos(Stage stage) {
+        return this.busyNanos[stage.ordinal()].sum();
+    }
+
+    /**
+     * @param stage
+     * @return  the number of items per second of processing of a thread of the stage
+     */
+    public double getItemsPerSecond(Stage stage) {
+        long nanos = this.getBusyNanos(stage);
+        return nanos > 0 ? this.getNumberOfItems(stage) * 1e9 / nanos : 0.0;
+    }
+}
@@ -0,0 +1,297 @@
+package models;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * Columnar store of raw detections, which retains every detection in 10 bytes instead of a Detection object:
+ * an int id of the car, a short id of the city from a CityDictionary and the time in int epoch seconds.
+ * The columns are primitive arrays in chunks of CHUNK_SIZE rows, such that appending never copies earlier rows,
+ * and 500M detections fit in about 5 GB.
+ * Predicates on cars, like the purple rule of Detection.validatePurple, are evaluated once per distinct car
+ * into a mask by car id, after which a query is a tight scan over the primitive columns.
+ *
+ * Detections are appended through an Appender per thread, which buffers a chunk of rows before adding them
+ * to the store under its lock. The buffers are returned to the store when the appender is flushed,
+ * and reused by later appenders, such that an appender per file does not allocate its buffers per file.
+ * Scans see all rows that were flushed before the scan started.
+ * Times are the local date times of the detections, counted as epoch seconds at offset UTC.
+ */
+public class DetectionStore {
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final CityDictionary cities;
+    private final Map<Car, Integer> carIds = new IdentityHashMap<>();   // guarded by this
+    private Car[] carsById = new Car[16];                                // grows by doubling, guarded by this
+    private int numberOfCars = 0;
+    private final Queue<Buffers> freeBuffers = new ConcurrentLinkedQueue<>();  // the buffers of flushed appenders
+    private final List<int[]> carColumn = new ArrayList<>();       // the chunks of the columns, guarded by this
+    private final List<short[]> cityColumn = new ArrayList<>();
+    private final List<int[]> timeColumn = new ArrayList<>();
+    private volatile long size = 0;
+
+    /**
+     * receives the columns of a detection
+     */
+    public interface DetectionConsumer {
+        void accept(Car car, int cityId, long epochSecond);
+    }
+
+    /**
+     * the buffered rows of an appender
+     */
+    private static class Buffers {
+        final int[] cars = new int[CHUNK_SIZE];
+        final short[] cities = new short[CHUNK_SIZE];
+        final int[] times = new int[CHUNK_SIZE];
+    }
+
+    /**
+     * @param cities    the dictionary of the ids of the cities of the detections
+     */
+    public DetectionStore(CityDictionary cities) {
+        this.cities = cities;
+    }
+
+    /**
+     * buffers detections of a single thread and appends them to the store in chunks.
+     * The appender shall be flushed when all its detections have been added.
+     */
+    public class Appender {
+        private final Map<Car, Integer> cachedCarIds = new IdentityHashMap<>();
+        private Buffers buffers = null;     // taken from the store by the first detection after a flush
+        private int size = 0;
+
+        /**
+         * @param car
+         * @param cityId        the id of the city in the dictionary of the store
+         * @param epochSecond   the time of the detection, between the years 1901 and 2038
+         */
+        public void add(Car car, int cityId, long epochSecond) {
+            if (cityId < 0 || cityId > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("City id does not fit the store: " + cityId);
+            }
+            if (epochSecond < Integer.MIN_VALUE || epochSecond > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Time does not fit the store: " + epochSecond);
+            }
+            Integer carId = this.cachedCarIds.get(car);
+            if (carId == null) {
+                carId = DetectionStore.this.idOf(car);
+                this.cachedCarIds.put(car, carId);
+            }
+            if (this.buffers == null) {
+                Buffers buffers = DetectionStore.this.freeBuffers.poll();
+                this.buffers = buffers != null ? buffers : new Buffers();
+            }
+            this.buffers.cars[this.size] = carId;
+            this.buffers.cities[this.size] = (short)cityId;
+            this.buffers.times[this.size] = (int)epochSecond;
+            if (++this.size == CHUNK_SIZE) {
+                DetectionStore.this.append(this.buffers, this.size);
+                this.size = 0;
+            }
+        }
+
+        /**
+         * @param detection
+         */
+        public void add(Detection detection) {
+            this.add(detection.getCar(), DetectionStore.this.cities.idOf(detection.getCity()),
+                    detection.getDateTime().toEpochSecond(ZoneOffset.UTC));
+        }
+
+        /**
+         * appends all buffered detections to the store, and returns the buffers to the store
+         */
+        public void flush() {
+            if (this.buffers != null) {
+                DetectionStore.this.append(this.buffers, this.size);
+                DetectionStore.this.freeBuffers.add(this.buffers);
+                this.buffers = null;
+                this.size = 0;
+            }
+        }
+    }
+
+    /**
+     * @return  a new appender, for use by a single thread
+     */
+    public Appender appender() {
+        return new Appender();
+    }
+
+    private synchronized int idOf(Car car) {
+        Integer carId = this.carIds.get(car);
+        if (carId == null) {
+            carId = this.numberOfCars++;
+            this.carIds.put(car, carId);
+            if (carId == this.carsById.length) {
+                // scans only read the cars below the numberOfCars that they captured, in either array
+                this.carsById = Arrays.copyOf(this.carsById, 2 * carId);
+            }
+            this.carsById[carId] = car;
+        }
+        return carId;
+    }
+
+    private synchronized void append(Buffers buffers, int length) {
+        int from = 0;
+        while (from < length) {
+            int offset = (int)(this.size & (CHUNK_SIZE - 1));
+            if (offset == 0) {
+                this.carColumn.add(new int[CHUNK_SIZE]);
+                this.cityColumn.add(new short[CHUNK_SIZE]);
+                this.timeColumn.add(new int[CHUNK_SIZE]);
+            }
+            int chunk = this.carColumn.size() - 1;
+            int count = Math.min(length - from, CHUNK_SIZE - offset);
+            System.arraycopy(buffers.cars, from, this.carColumn.get(chunk), offset, count);
+            System.arraycopy(buffers.cities, from, this.cityColumn.get(chunk), offset, count);
+            System.arraycopy(buffers.times, from, this.timeColumn.get(chunk), offset, count);
+            from += count;
+            this.size += count;
+        }
+    }
+
+    /**
+     * @return  the number of detections in the store
+     */
+    public long size() {
+        return this.size;
+    }
+
+    public synchronized void clear() {
+        this.carIds.clear();
+        this.carsById = new Car[16];
+        this.numberOfCars = 0;
+        this.carColumn.clear();
+        this.cityColumn.clear();
+        this.timeColumn.clear();
+        this.size = 0;
+    }
+
+    /**
+     * @param index
+     * @return  the detection at the index, in order of appending
+     */
+    public synchronized Detection get(long index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + this.size);
+        }
+        int chunk = (int)(index >>> CHUNK_BITS);
+        int offset = (int)(index & (CHUNK_SIZE - 1));
+        return new Detection(this.carsById[this.carColumn.get(chunk)[offset]],
+                this.cities.nameOf(this.cityColumn.get(chunk)[offset]),
+                LocalDateTime.ofEpochSecond(this.timeColumn.get(chunk)[offset], 0, ZoneOffset.UTC));
+    }
+
+    /**
+     * evaluates the predicate once for every distinct car in the store
+     */
+    private boolean[] maskOf(Car[] carsById, int numberOfCars, Predicate<? super Car> carFilter) {
+        boolean[] mask = new boolean[numberOfCars];
+        for (int carId = 0; carId < numberOfCars; carId++) {
+            mask[carId] = carFilter.test(carsById[carId]);
+        }
+        return mask;
+    }
+
+    /**
+     * @param carFilter     e.g. Detection::isPurpleOffender
+     * @return  the number of detections of cars that match the filter
+     */
+    public long count(Predicate<? super Car> carFilter) {
+        return this.count(carFilter, Integer.MIN_VALUE, (long)Integer.MAX_VALUE + 1);
+    }
+
+    /**
+     * @param carFilter
+     * @param fromEpochSecond
+     * @param toEpochSecond
+     * @return  the number of detections of cars that match the filter, at times fromEpochSecond <= t < toEpochSecond
+     */
+    public long count(Predicate<? super Car> carFilter, long fromEpochSecond, long toEpochSecond) {
+        List<int[]> carChunks;
+        List<int[]> timeChunks;
+        long size;
+        Car[] carsById;
+        int numberOfCars;
+        synchronized (this) {
+            carChunks = new ArrayList<>(this.carColumn);
+            timeChunks = new ArrayList<>(this.timeColumn);
+            size = this.size;
+            carsById = this.carsById;
+            numberOfCars = this.numberOfCars;
+        }
+        boolean[] mask = this.maskOf(carsById, numberOfCars, carFilter);
+        // compare times as longs, such that the bounds need not fit an int
+        long count = 0;
+        for (int chunk = 0; chunk < carChunks.size(); chunk++) {
+            int[] cars = carChunks.get(chunk);
+            int[] times = timeChunks.get(chunk);
+            int length = (int)Math.min(CHUNK_SIZE, size - ((long)chunk << CHUNK_BITS));
+            for (int row = 0; row < length; row++) {
+                long time = times[row];
+                if (mask[cars[row]] && time >= fromEpochSecond && time < toEpochSecond) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * passes the columns of every detection of a car that matches the filter to the action, in order of appending
+     * @param carFilter
+     * @param action
+     */
+    public void forEach(Predicate<? super Car> carFilter, DetectionConsumer action) {
+        List<int[]> carChunks;
+        List<short[]> cityChunks;
+        List<int[]> timeChunks;
+        long size;
+        Car[] carsById;
+        int numberOfCars;
+        synchronized (this) {
+            carChunks = new ArrayList<>(this.carColumn);
+            cityChunks = new ArrayList<>(this.cityColumn);
+            timeChunks = new ArrayList<>(this.timeColumn);
+            size = this.size;
+            carsById = this.carsById;
+            numberOfCars = this.numberOfCars;
+        }
+        boolean[] mask = this.maskOf(carsById, numberOfCars, carFilter);
+        for (int chunk = 0; chunk < carChunks.size(); chunk++) {
+            int[] cars = carChunks.get(chunk);
+            short[] cities = cityChunks.get(chunk);
+            int[] times = timeChunks.get(chunk);
+            int length = (int)Math.min(CHUNK_SIZE, size - ((long)chunk << CHUNK_BITS));
+            for (int row = 0; row < length; row++) {
+                if (mask[cars[row]]) {
+                    action.accept(carsById[cars[row]], cities[row], times[row]);
+                }
+            }
+        }
+    }
+
+    /**
+     * re-evaluates the violations of all retained detections against a rule,
+     * e.g. aggregateViolations(Detection::isPurpleOffender) yields the violations of the purple rule
+     * @param offenderFilter    selects the cars whose detections are offences
+     * @return  the table of violations of all offences
+     */
+    public ViolationTable aggregateViolations(Predicate<? super Car> offenderFilter) {
+        ViolationTable violations = new ViolationTable(this.cities);
+        this.forEach(offenderFilter, (car, cityId, epochSecond) -> violations.addOffence(car, cityId));
+        return violations;
+    }
+}
@@ -0,0 +1,153 @@
+package models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Declares the fines of the offences of a violation:
+ * every offence costs the rate of the type of the car plus the surcharge of its emission category,
+ * multiplied by the factor of the city (1.0 by default).
+ * Offences beyond the repeatThreshold of a violation are charged progressively, at repeatFactor times that fine.
+ * Schemes are immutable, every with... method yields a new scheme.
+ * Schemes are compared with each other in a single pass over the violations by a FineSchemeEvaluator.
+ */
+public class FineScheme {
+    public static final int NUMBER_OF_EMISSION_CATEGORIES = 10;
+
+    /**
+     * Trucks pay €25 per offence, Coaches €35 per offence
+     */
+    public static final FineScheme STANDARD = new FineScheme("standard",
+            Map.of(Car.CarType.Truck, 25.0, Car.CarType.Coach, 35.0));
+
+    private final String name;
+    private final double[] ratesByCarType = new double[Car.CarType.values().length];
+    private final double[] surchargesByEmissionCategory = new double[NUMBER_OF_EMISSION_CATEGORIES];
+    private final Map<String, Double> cityFactors;
+    private final int repeatThreshold;
+    private final double repeatFactor;
+
+    /**
+     * @param name
+     * @param ratesByCarType    the fine of an offence by the type of the car, other types pay no fine
+     */
+    public FineScheme(String name, Map<Car.CarType, Double> ratesByCarType) {
+        this.name = name;
+        for (Map.Entry<Car.CarType, Double> rate : ratesByCarType.entrySet()) {
+            this.ratesByCarType[rate.getKey().ordinal()] = rate.getValue();
+        }
+        this.cityFactors = Map.of();
+        this.repeatThreshold = Integer.MAX_VALUE;
+        this.repeatFactor = 1.0;
+    }
+
+    private FineScheme(FineScheme scheme, Map<String, Double> cityFactors, int repeatThreshold, double repeatFactor) {
+        this.name = scheme.name;
+        System.arraycopy(scheme.ratesByCarType, 0, this.ratesByCarType, 0, this.ratesByCarType.length);
+        System.arraycopy(scheme.surchargesByEmissionCategory, 0, this.surchargesByEmissionCategory, 0,
+                this.surchargesByEmissionCategory.length);
+        this.cityFactors = cityFactors;
+        this.repeatThreshold = repeatThreshold;
+        this.repeatFactor = repeatFactor;
+    }
+
+    /**
+     * adds a surcharge to every offence of the cars of an emission category
+     * @param emissionCategory  between 0 and NUMBER_OF_EMISSION_CATEGORIES - 1
+     * @param surcharge
+     * @return  the new scheme
+     */
+    public FineScheme withEmissionSurcharge(int emissionCategory, double surcharge) {
+        if (emissionCategory < 0 || emissionCategory >= NUMBER_OF_EMISSION_CATEGORIES) {
+            throw new IllegalArgumentException("Not an emission category: " + emissionCategory);
+        }
+        FineScheme newScheme = new FineScheme(this, this.cityFactors, this.repeatThreshold, this.repeatFactor);
+        newScheme.surchargesByEmissionCategory[emissionCategory] = surcharge;
+        return newScheme;
+    }
+
+    /**
+     * multiplies the fines of all offences in a city
+     * @param city
+     * @param factor
+     * @return  the new scheme
+     */
+    public FineScheme withCityFactor(String city, double factor) {
+        Map<String, Double> cityFactors = new HashMap<>(this.cityFactors);
+        cityFactors.put(city, factor);
+        return new FineScheme(this, Map.copyOf(cityFactors), this.repeatThreshold, this.repeatFactor);
+    }
+
+    /**
+     * charges repeat offences progressively
+     * @param repeatThreshold   the number of offences of a violation that are charged the normal fine
+     * @param repeatFactor      the factor of the fine of every further offence
+     * @return  the new scheme
+     */
+    public FineScheme withRepeatRate(int repeatThreshold, double repeatFactor) {
+        if (repeatThreshold < 0) {
+            throw new IllegalArgumentException("repeatThreshold should not be negative, not " + repeatThreshold);
+        }
+        return new FineScheme(this, this.cityFactors, repeatThreshold, repeatFactor);
+    }
+
+    /**
+     * calculates the fine of a violation, one scheme at a time
+     * @param violation
+     * @return  the fine of all offences of the violation
+     */
+    public double fineOf(Violation violation) {
+        Car car = violation.getCar();
+        int emissionCategory = car.getEmissionCategory();
+        double fine = this.ratesByCarType[car.getCarType().ordinal()];
+        if (emissionCategory >= 0 && emissionCategory < NUMBER_OF_EMISSION_CATEGORIES) {
+            fine += this.surchargesByEmissionCategory[emissionCategory];
+        }
+        fine *= this.getCityFactor(violation.getCity());
+        return fine * this.chargedOffences(violation.getOffencesCount());
+    }
+
+    /**
+     * @param offencesCount
+     * @return  the number of offences, where repeat offences are weighted by the repeatFactor
+     */
+    private double chargedOffences(int offencesCount) {
+        return offencesCount <= this.repeatThreshold ? offencesCount
+                : this.repeatThreshold + this.repeatFactor * (offencesCount - this.repeatThreshold);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    double getRate(Car.CarType carType) {
+        return this.ratesByCarType[carType.ordinal()];
+    }
+
+    double getSurcharge(int emissionCategory) {
+        return this.surchargesByEmissionCategory[emissionCategory];
+    }
+
+    double getCityFactor(String city) {
+        return this.cityFactors.getOrDefault(city, 1.0);
+    }
+
+    Map<String, Double> getCityFactors() {
+        return this.cityFactors;
+    }
+
+    int getRepeatThreshold() {
+        return this.repeatThreshold;
+    }
+
+    double getRepeatFactor() {
+        return this.repeatFactor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s/%s/%s/%d/%s", this.name, Arrays.toString(this.ratesByCarType),
+                Arrays.toString(this.surchargesByEmissionCategory), this.cityFactors, this.repeatThreshold, this.repeatFactor);
+    }
+}
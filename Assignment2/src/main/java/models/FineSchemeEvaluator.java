@@ -0,0 +1,97 @@
+package models;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates the total fines of many fine schemes in a single pass over the violations.
+ * The parameters of the schemes are compiled into primitive tables with one row per car type, emission category
+ * and city, in which the values of all schemes are adjacent. The attributes of a violation are read once,
+ * after which the fine of every scheme takes a few array reads and multiplications in a tight loop,
+ * such that an additional scheme costs little more than an additional accumulator.
+ * The totals are summed by compensated summation, like OrderedList.aggregateAll.
+ */
+public class FineSchemeEvaluator {
+    private final List<FineScheme> schemes;
+    private final int numberOfSchemes;
+    private final double[] rates;               // [carType * numberOfSchemes + scheme]
+    private final double[] surcharges;          // [emissionCategory * numberOfSchemes + scheme], the last row is 0
+    private final Map<String, Integer> cityRows = new HashMap<>();
+    private final double[] cityFactors;         // [cityRow * numberOfSchemes + scheme], row 0 for all other cities
+    private final int[] repeatThresholds;
+    private final double[] repeatFactors;
+
+    /**
+     * @param schemes   the schemes to be compared
+     */
+    public FineSchemeEvaluator(List<FineScheme> schemes) {
+        this.schemes = List.copyOf(schemes);
+        int n = this.numberOfSchemes = schemes.size();
+        Car.CarType[] carTypes = Car.CarType.values();
+        this.rates = new double[carTypes.length * n];
+        this.surcharges = new double[(FineScheme.NUMBER_OF_EMISSION_CATEGORIES + 1) * n];
+        this.repeatThresholds = new int[n];
+        this.repeatFactors = new double[n];
+        for (FineScheme scheme : schemes) {
+            for (String city : scheme.getCityFactors().keySet()) {
+                this.cityRows.putIfAbsent(city, this.cityRows.size() + 1);
+            }
+        }
+        this.cityFactors = new double[(this.cityRows.size() + 1) * n];
+
+        for (int s = 0; s < n; s++) {
+            FineScheme scheme = schemes.get(s);
+            for (Car.CarType carType : carTypes) {
+                this.rates[carType.ordinal() * n + s] = scheme.getRate(carType);
+            }
+            for (int emissionCategory = 0; emissionCategory < FineScheme.NUMBER_OF_EMISSION_CATEGORIES; emissionCategory++) {
+                this.surcharges[emissionCategory * n + s] = scheme.getSurcharge(emissionCategory);
+            }
+            this.cityFactors[s] = 1.0;
+            for (Map.Entry<String, Integer> cityRow : this.cityRows.entrySet()) {
+                this.cityFactors[cityRow.getValue() * n + s] = scheme.getCityFactor(cityRow.getKey());
+            }
+            this.repeatThresholds[s] = scheme.getRepeatThreshold();
+            this.repeatFactors[s] = scheme.getRepeatFactor();
+        }
+    }
+
+    /**
+     * @param violations
+     * @param parallel  whether the violations may be evaluated concurrently by fork-join tasks
+     * @return  the total fines of all violations, in the order of the schemes
+     */
+    public double[] evaluate(List<Violation> violations, boolean parallel) {
+        return ListAggregator.sumAsDouble(violations, this.numberOfSchemes, this::finesOf, parallel);
+    }
+
+    /**
+     * calculates the fines of a violation by all schemes
+     * @param violation
+     * @param fines     receives the fine of the violation by every scheme
+     */
+    void finesOf(Violation violation, double[] fines) {
+        int n = this.numberOfSchemes;
+        Car car = violation.getCar();
+        int emissionCategory = car.getEmissionCategory();
+        if (emissionCategory < 0 || emissionCategory >= FineScheme.NUMBER_OF_EMISSION_CATEGORIES) {
+            emissionCategory = FineScheme.NUMBER_OF_EMISSION_CATEGORIES;
+        }
+        int rateRow = car.getCarType().ordinal() * n;
+        int surchargeRow = emissionCategory * n;
+        int cityRow = this.cityRows.isEmpty() ? 0 : this.cityRows.getOrDefault(violation.getCity(), 0) * n;
+        int offencesCount = violation.getOffencesCount();
+
+        for (int s = 0; s < n; s++) {
+            double fine = (this.rates[rateRow + s] + this.surcharges[surchargeRow + s]) * this.cityFactors[cityRow + s];
+            int repeatThreshold = this.repeatThresholds[s];
+            fines[s] = offencesCount <= repeatThreshold ? fine * offencesCount
+                    : fine * (repeatThreshold + this.repeatFactors[s] * (offencesCount - repeatThreshold));
+        }
+    }
+
+    public List<FineScheme> getSchemes() {
+        return this.schemes;
+    }
+}
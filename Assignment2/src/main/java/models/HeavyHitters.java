@@ -0,0 +1,203 @@
+package models;
+
+import java.util.*;
+
+/**
+ * Approximate counts of the most frequent keys of an unbounded stream in fixed memory, by the Space-Saving algorithm.
+ * At most capacity keys are counted, in an indexed min-heap of their counts. A new key that does not fit
+ * replaces the key with the smallest count, and inherits that count as the error of its own count.
+ * After a total count N, for every key:
+ *  - the estimate is at least the true count, and at most N / capacity above it,
+ *  - every key with a true count above N / capacity is counted,
+ * such that a capacity of 1 / maxErrorRate counters bounds the error by maxErrorRate * N, for any length of the stream.
+ * Counting a key takes O(log capacity), reading the top keys O(capacity log capacity).
+ * The counts are synchronized, such that concurrent imports can count their offences into the same counts.
+ * @param <K>
+ */
+public class HeavyHitters<K> {
+    private final int capacity;
+    private final Map<K, Integer> positions;    // the position of every counted key in the heap
+    // the min-heap of the keys, with their estimated counts and the errors of these at the same positions
+    private final Object[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private int size = 0;
+    private long totalCount = 0;
+
+    /**
+     * @param capacity  the maximum number of counted keys
+     */
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of heavy hitters should be at least 1, not " + capacity);
+        }
+        this.capacity = capacity;
+        this.positions = new HashMap<>(2 * capacity);
+        this.keys = new Object[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+    }
+
+    /**
+     * @param maxErrorRate  the maximum overestimate of a count, as a fraction of the total count, e.g. 0.001
+     * @return  the heavy hitters with the capacity that bounds the errors of their counts by maxErrorRate
+     */
+    public static <K> HeavyHitters<K> withMaxErrorRate(double maxErrorRate) {
+        if (!(maxErrorRate > 0.0 && maxErrorRate <= 1.0)) {
+            throw new IllegalArgumentException("maxErrorRate should be in (0, 1], not " + maxErrorRate);
+        }
+        return new HeavyHitters<>((int)Math.ceil(1.0 / maxErrorRate));
+    }
+
+    /**
+     * adds the increment to the count of the key, replacing the key with the smallest count if the key is new
+     * and the capacity has been reached
+     * @param key
+     * @param increment     shall not be negative
+     */
+    public synchronized void increase(K key, long increment) {
+        if (increment < 0) {
+            throw new IllegalArgumentException("Counts of heavy hitters cannot decrease, increment=" + increment);
+        }
+        this.totalCount += increment;
+        Integer position = this.positions.get(key);
+        if (position == null) {
+            if (this.size < this.capacity) {
+                position = this.size++;
+                this.counts[position] = 0;
+                this.errors[position] = 0;
+            } else {
+                // the new key takes over the counter of the smallest count, which bounds the count it may have had
+                position = 0;
+                this.positions.remove(this.keys[position]);
+                this.errors[position] = this.counts[position];
+            }
+            this.keys[position] = key;
+            this.positions.put(key, position);
+        }
+        this.counts[position] += increment;
+        this.siftDown(position);
+        this.siftUp(position);
+    }
+
+    /**
+     * @param key
+     * @return  the estimated count of the key, which is at least its true count,
+     *          or 0 if the key is not counted, and its true count is at most getMinCount()
+     */
+    public synchronized long estimateOf(K key) {
+        Integer position = this.positions.get(key);
+        return position != null ? this.counts[position] : 0;
+    }
+
+    /**
+     * @param key
+     * @return  the maximum overestimate of the count of the key, or getMinCount() if the key is not counted
+     */
+    public synchronized long errorOf(K key) {
+        Integer position = this.positions.get(key);
+        return position != null ? this.errors[position] : this.getMinCount();
+    }
+
+    /**
+     * @param n
+     * @return  the keys and estimated counts of the n most frequent keys, from the top down,
+     *          keys with equal estimates are ranked by their guaranteed counts
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<Map.Entry<K, Long>> top(int n) {
+        Integer[] order = new Integer[this.size];
+        for (int position = 0; position < this.size; position++) {
+            order[position] = position;
+        }
+        Arrays.sort(order, (p1, p2) -> this.counts[p1] != this.counts[p2]
+                ? Long.compare(this.counts[p2], this.counts[p1])
+                : Long.compare(this.errors[p1], this.errors[p2]));
+        List<Map.Entry<K, Long>> top = new ArrayList<>(Math.max(0, Math.min(n, this.size)));
+        for (int r = 0; r < order.length && r < n; r++) {
+            top.add(new AbstractMap.SimpleImmutableEntry<>((K)this.keys[order[r]], this.counts[order[r]]));
+        }
+        return top;
+    }
+
+    /**
+     * @return  the sum of all increments
+     */
+    public synchronized long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * @return  the bound of the overestimate of any count, total count / capacity
+     */
+    public synchronized long getMaxError() {
+        return this.totalCount / this.capacity;
+    }
+
+    /**
+     * @return  the smallest estimated count if the capacity has been reached, else 0
+     */
+    public synchronized long getMinCount() {
+        return this.size == this.capacity ? this.counts[0] : 0;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return  the number of counted keys
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public synchronized void clear() {
+        this.positions.clear();
+        Arrays.fill(this.keys, 0, this.size, null);
+        this.size = 0;
+        this.totalCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void swap(int p1, int p2) {
+        Object key = this.keys[p1];
+        long count = this.counts[p1];
+        long error = this.errors[p1];
+        this.keys[p1] = this.keys[p2];
+        this.counts[p1] = this.counts[p2];
+        this.errors[p1] = this.errors[p2];
+        this.positions.put((K)this.keys[p1], p1);
+        this.keys[p2] = key;
+        this.counts[p2] = count;
+        this.errors[p2] = error;
+        this.positions.put((K)key, p2);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (this.counts[parent] <= this.counts[position]) {
+                break;
+            }
+            this.swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < this.size; child++) {
+                if (this.counts[child] < this.counts[smallest]) {
+                    smallest = child;
+                }
+            }
+            if (smallest == position) {
+                return;
+            }
+            this.swap(position, smallest);
+            position = smallest;
+        }
+    }
+}
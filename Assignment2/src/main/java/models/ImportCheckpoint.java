@@ -0,0 +1,351 @@
+package models;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Periodic checkpoints of an import of detection files, such that an import that dies halfway
+ * can be resumed without importing the completed files again.
+ * A checkpoint is a compact binary snapshot of the aggregated violations, the cars that were not registered
+ * and the completed files with their sizes and modification times, which replaces the previous checkpoint
+ * in the checkpoint folder by an atomic rename, so a crash during a write leaves the previous checkpoint intact.
+ *
+ * The import thread only hands the changes since its previous submit to a background writer: the newly completed
+ * files, the new unknown cars and a table of the violations of those files. The writer owns these from then on,
+ * merges them into the accumulated state of the import and writes that state, such that the import thread never
+ * copies the violations of the earlier files. If the writer is still busy with a checkpoint, the changes that
+ * are waiting are merged together and written once, such that slow disks delay the checkpoints, but never the import.
+ * After close, the accumulated violations are the result of the import.
+ *
+ * Layout of the checkpoint file, numbers big-endian like DataOutputStream writes them:
+ *   magic "TCHK", version
+ *   completed files:   count, per file: the path relative to the vault, size, last modified time in milliseconds
+ *   unknown cars:      count, the license plate of every car
+ *   cities:            count, the name of every city
+ *   violations:        count, per violation: plate code, [license plate if not encodable], city index, offences count
+ * Strings are written as their length and UTF-8 bytes.
+ */
+public class ImportCheckpoint implements AutoCloseable {
+    public static final String CHECKPOINT_FILE_NAME = "checkpoint.bin";
+    private static final String TEMPORARY_FILE_NAME = "checkpoint.tmp";
+    private static final int CHECKPOINT_MAGIC = 0x5443484B;     // "TCHK"
+    private static final int VERSION = 2;
+
+    /**
+     * a detection file that has been imported completely, with its size and modification time at the import,
+     * such that a resumed import can tell whether the file has changed since
+     */
+    public static class CompletedFile {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        CompletedFile(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @param vault
+         * @param file      a file in the vault
+         * @return  the completed file, as it is on disk now
+         */
+        static CompletedFile of(File vault, File file) {
+            return new CompletedFile(vault.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'),
+                    file.length(), file.lastModified());
+        }
+
+        /**
+         * @return  the path of the file relative to the vault, with '/' separators
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * @param vault
+         * @return  whether the file in the vault still has the size and modification time of its import
+         */
+        public boolean isUnchangedIn(File vault) {
+            File file = new File(vault, this.path);
+            return file.isFile() && file.length() == this.size && file.lastModified() == this.lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return this.path;
+        }
+    }
+
+    /**
+     * the state of an import at a checkpoint
+     */
+    public static class Snapshot {
+        private final List<CompletedFile> completedFiles;
+        private final List<Car> unknownCars;
+        private final List<Violation> violations;
+
+        Snapshot(List<CompletedFile> completedFiles, List<Car> unknownCars, List<Violation> violations) {
+            this.completedFiles = completedFiles;
+            this.unknownCars = unknownCars;
+            this.violations = violations;
+        }
+
+        /**
+         * @return  the files that had been imported completely
+         */
+        public List<CompletedFile> getCompletedFiles() {
+            return this.completedFiles;
+        }
+
+        /**
+         * @return  the cars of unregistered license plates; read snapshots only know their license plates
+         */
+        public List<Car> getUnknownCars() {
+            return this.unknownCars;
+        }
+
+        /**
+         * @return  the violations of the completed files; the cars of read snapshots only know their license plates
+         */
+        public List<Violation> getViolations() {
+            return this.violations;
+        }
+    }
+
+    private final File checkpointFolder;
+    private final ExecutorService writer;
+    private final Queue<Snapshot> waitingChanges = new ConcurrentLinkedQueue<>();
+    // the accumulated state of the import, owned by the writer until the checkpoint is closed
+    private final List<CompletedFile> completedFiles;
+    private final List<Car> unknownCars;
+    private final ViolationTable violations;
+    private final AtomicLong numberOfCheckpoints = new AtomicLong();
+    private final AtomicLong numberOfSkippedSnapshots = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param checkpointFolder  the folder of the checkpoint file, which is created if it does not exist
+     */
+    public ImportCheckpoint(File checkpointFolder) {
+        this(checkpointFolder, List.of(), List.of(), new ViolationTable(new CityDictionary()));
+    }
+
+    /**
+     * @param checkpointFolder  the folder of the checkpoint file, which is created if it does not exist
+     * @param completedFiles    the files that were completed before, e.g. by the import that is resumed
+     * @param unknownCars       the unknown cars of the completed files
+     * @param violations        the violations of the completed files, which the checkpoint takes ownership of
+     */
+    public ImportCheckpoint(File checkpointFolder, List<CompletedFile> completedFiles, List<Car> unknownCars,
+                            ViolationTable violations) {
+        if (!checkpointFolder.isDirectory() && !checkpointFolder.mkdirs()) {
+            throw new RuntimeException("Could not create folder on path: " + checkpointFolder.getPath());
+        }
+        this.checkpointFolder = checkpointFolder;
+        this.completedFiles = new ArrayList<>(completedFiles);
+        this.unknownCars = new ArrayList<>(unknownCars);
+        this.violations = violations;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * hands the changes of an import since its previous submit to the background writer, without waiting for the write.
+     * The writer takes ownership of the lists and of the table, which the caller shall not change anymore.
+     * @param completedFiles    the files that have been completed since the previous submit
+     * @param unknownCars       the unknown cars that have been found since the previous submit
+     * @param violations        the violations of the completed files
+     */
+    public void submit(List<CompletedFile> completedFiles, List<Car> unknownCars, ViolationTable violations) {
+        this.waitingChanges.add(new Snapshot(completedFiles, unknownCars, violations.getViolations()));
+        this.writer.execute(() -> {
+            // merge all changes that are waiting, and write them at once
+            int numberOfChanges = 0;
+            for (Snapshot changes = this.waitingChanges.poll(); changes != null; changes = this.waitingChanges.poll()) {
+                this.completedFiles.addAll(changes.completedFiles);
+                this.unknownCars.addAll(changes.unknownCars);
+                for (Violation violation : changes.violations) {
+                    this.violations.merge(violation);
+                }
+                numberOfChanges++;
+            }
+            if (numberOfChanges == 0) {
+                // the changes have been written by the task of an earlier submit
+                return;
+            }
+            this.numberOfSkippedSnapshots.addAndGet(numberOfChanges - 1);
+            try {
+                write(this.checkpointFolder, new Snapshot(this.completedFiles, this.unknownCars, this.violations.getViolations()));
+                this.numberOfCheckpoints.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                this.failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    /**
+     * waits until the submitted changes have been written, and stops the writer
+     */
+    @Override
+    public void close() {
+        this.writer.shutdown();
+        try {
+            while (!this.writer.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting for the last write
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.failure.get() != null) {
+            throw new RuntimeException("Could not write checkpoint on path: " + this.checkpointFolder.getPath(),
+                    this.failure.get());
+        }
+    }
+
+    /**
+     * @return  all violations of the import, including those of the initial state, which shall be read after close
+     */
+    public ViolationTable getViolations() {
+        return this.violations;
+    }
+
+    /**
+     * @return  the number of checkpoints that have been written
+     */
+    public long getNumberOfCheckpoints() {
+        return this.numberOfCheckpoints.get();
+    }
+
+    /**
+     * @return  the number of snapshots that were replaced by a newer one before they could be written
+     */
+    public long getNumberOfSkippedSnapshots() {
+        return this.numberOfSkippedSnapshots.get();
+    }
+
+    /**
+     * writes the snapshot into a temporary file, and replaces the checkpoint of the folder by it
+     * @param checkpointFolder
+     * @param snapshot
+     * @throws IOException
+     */
+    static void write(File checkpointFolder, Snapshot snapshot) throws IOException {
+        File temporaryFile = new File(checkpointFolder, TEMPORARY_FILE_NAME);
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryFile);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+            output.writeInt(CHECKPOINT_MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(snapshot.completedFiles.size());
+            for (CompletedFile completedFile : snapshot.completedFiles) {
+                writeString(output, completedFile.path);
+                output.writeLong(completedFile.size);
+                output.writeLong(completedFile.lastModified);
+            }
+            output.writeInt(snapshot.unknownCars.size());
+            for (Car car : snapshot.unknownCars) {
+                writeString(output, car.getLicensePlate());
+            }
+
+            Map<String, Integer> cityIndexes = new LinkedHashMap<>();
+            for (Violation violation : snapshot.violations) {
+                cityIndexes.putIfAbsent(violation.getCity(), cityIndexes.size());
+            }
+            output.writeInt(cityIndexes.size());
+            for (String city : cityIndexes.keySet()) {
+                writeString(output, city);
+            }
+            output.writeInt(snapshot.violations.size());
+            for (Violation violation : snapshot.violations) {
+                long plateCode = violation.getCar().getPlateCode();
+                output.writeLong(plateCode);
+                if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+                    writeString(output, violation.getCar().getLicensePlate());
+                }
+                output.writeInt(cityIndexes.get(violation.getCity()));
+                output.writeInt(violation.getOffencesCount());
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        Files.move(temporaryFile.toPath(), new File(checkpointFolder, CHECKPOINT_FILE_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * reads the checkpoint of the folder
+     * @param checkpointFolder
+     * @return  the snapshot of the checkpoint, or null if the folder has no checkpoint
+     */
+    public static Snapshot read(File checkpointFolder) {
+        File file = new File(checkpointFolder, CHECKPOINT_FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != CHECKPOINT_MAGIC || input.readInt() != VERSION) {
+                throw new IllegalArgumentException("Not a checkpoint of version " + VERSION + ": " + file.getPath());
+            }
+            List<CompletedFile> completedFiles = new ArrayList<>();
+            for (int f = input.readInt(); f > 0; f--) {
+                completedFiles.add(new CompletedFile(readString(input), input.readLong(), input.readLong()));
+            }
+            List<Car> unknownCars = new ArrayList<>();
+            for (int c = input.readInt(); c > 0; c--) {
+                unknownCars.add(new Car(readString(input)));
+            }
+            String[] cities = new String[input.readInt()];
+            for (int c = 0; c < cities.length; c++) {
+                cities[c] = readString(input);
+            }
+            List<Violation> violations = new ArrayList<>();
+            for (int v = input.readInt(); v > 0; v--) {
+                long plateCode = input.readLong();
+                Car car = plateCode != LicensePlateCodec.NOT_ENCODABLE
+                        ? new Car(LicensePlateCodec.decode(plateCode)) : new Car(readString(input));
+                Violation violation = new Violation(car, cities[input.readInt()]);
+                violation.setOffencesCount(input.readInt());
+                violations.add(violation);
+            }
+            return new Snapshot(completedFiles, unknownCars, violations);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read checkpoint on path: " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * removes the checkpoint of the folder, e.g. when an import starts over
+     * @param checkpointFolder
+     */
+    public static void delete(File checkpointFolder) {
+        File file = new File(checkpointFolder, CHECKPOINT_FILE_NAME);
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("Could not delete checkpoint on path: " + file.getPath());
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,360 @@
+package models;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Collects the metrics of the imports of a TrafficTracker, when it has been set by TrafficTracker.setImportMetrics.
+ * Every imported file is measured by its own FileProbe, with plain fields on the thread of the file.
+ * The probe is added to the shared LongAdder counters and the latency histogram when the file has been imported,
+ * and emitted as a FileImportEvent when a JFR recording has enabled that event.
+ * Without metrics the importers only test for a null probe, so a tracker without metrics pays nothing else.
+ *
+ * The time of a file is split into the stages of the import. The line parser reads and parses alternately,
+ * the time in the parser counts as PARSE and the remainder as READ. The memory-mapped parser scans the mapped
+ * file in a single pass, which counts as PARSE entirely. LOOKUP is the matching of license plates with the cars,
+ * VALIDATE the deduplication and the zone rule, and AGGREGATE the accumulation of offences and retained detections.
+ */
+public class ImportMetrics implements ImportMetricsMXBean {
+    public enum Stage { READ, PARSE, LOOKUP, VALIDATE, AGGREGATE }
+
+    private static final Stage[] STAGES = Stage.values();
+    static final int NUMBER_OF_LATENCY_BUCKETS = 40;
+
+    /**
+     * the JFR event of the import of a single file, with its counts and the time spent in each stage
+     */
+    @Name("models.FileImport")
+    @Label("File Import")
+    @Category("Traffic Tracker")
+    @Description("The import of a single vault file by a TrafficTracker")
+    public static class FileImportEvent extends Event {
+        @Label("Source") String source;
+        @Label("Bytes") @DataAmount long bytes;
+        @Label("Lines") long lines;
+        @Label("Detections") long detections;
+        @Label("Parse Failures") long parseFailures;
+        @Label("Unknown Plates") long unknownPlates;
+        @Label("Offences") long offences;
+        @Label("Read") @Timespan long readNanos;
+        @Label("Parse") @Timespan long parseNanos;
+        @Label("Lookup") @Timespan long lookupNanos;
+        @Label("Validate") @Timespan long validateNanos;
+        @Label("Aggregate") @Timespan long aggregateNanos;
+    }
+
+    /**
+     * measures the import of a single file, by a single thread
+     */
+    static final class FileProbe {
+        final String source;
+        final long bytes;
+        final long startNanos;
+        final long[] stageNanos = new long[STAGES.length];
+        final FileImportEvent event = new FileImportEvent();
+        long lines;
+        long detections;        // the lines that could be parsed
+        long unknownPlates;
+        long offences;
+
+        FileProbe(String source, long bytes) {
+            this.source = source;
+            this.bytes = bytes;
+            this.event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * adds the time since the start to a stage
+         * @return  the current time, as the start of the next stage
+         */
+        long lap(Stage stage, long startNanos) {
+            long nanos = System.nanoTime();
+            this.stageNanos[stage.ordinal()] += nanos - startNanos;
+            return nanos;
+        }
+
+        /**
+         * adds the time since the start of the file that has not been added to any stage yet to a stage
+         * @return  the current time, as the start of the next stage
+         */
+        long lapRemainder(Stage stage) {
+            long nanos = System.nanoTime();
+            long remainder = nanos - this.startNanos;
+            for (long spent : this.stageNanos) {
+                remainder -= spent;
+            }
+            this.stageNanos[stage.ordinal()] += remainder;
+            return nanos;
+        }
+
+        /**
+         * @return  the function, which is timed as the stage
+         */
+        <T, R> Function<T, R> timed(Stage stage, Function<T, R> function) {
+            return t -> {
+                long startNanos = System.nanoTime();
+                R result = function.apply(t);
+                this.lap(stage, startNanos);
+                return result;
+            };
+        }
+
+        /**
+         * @return  the creator of unknown cars, which counts the unknown plates of the file
+         */
+        Function<String, Car> counting(Function<String, Car> carCreator) {
+            return licensePlate -> {
+                this.unknownPlates++;
+                return carCreator.apply(licensePlate);
+            };
+        }
+    }
+
+    private final String name;
+    private final LongAdder numberOfFiles = new LongAdder();
+    private final LongAdder numberOfLines = new LongAdder();
+    private final LongAdder numberOfBytes = new LongAdder();
+    private final LongAdder numberOfDetections = new LongAdder();
+    private final LongAdder numberOfParseFailures = new LongAdder();
+    private final LongAdder numberOfUnknownPlates = new LongAdder();
+    private final LongAdder numberOfOffences = new LongAdder();
+    private final LongAdder[] stageNanos = new LongAdder[STAGES.length];
+    private final LongAdder[] fileLatencies = new LongAdder[NUMBER_OF_LATENCY_BUCKETS];
+    private String slowestFile = null;
+    private long slowestFileNanos = 0;
+    private ObjectName objectName = null;
+
+    /**
+     * @param name  identifies the tracker among the registered MBeans
+     */
+    public ImportMetrics(String name) {
+        this.name = name;
+        for (int s = 0; s < STAGES.length; s++) {
+            this.stageNanos[s] = new LongAdder();
+        }
+        for (int b = 0; b < NUMBER_OF_LATENCY_BUCKETS; b++) {
+            this.fileLatencies[b] = new LongAdder();
+        }
+    }
+
+    /**
+     * starts measuring the import of a file
+     * @param file
+     * @return  the probe of the file, to be finished when the file has been imported
+     */
+    FileProbe startFile(File file) {
+        return new FileProbe(file.getPath(), file.length());
+    }
+
+    /**
+     * adds the measurements of an imported file to the metrics, and emits its event
+     * @param probe
+     */
+    void finishFile(FileProbe probe) {
+        long latencyNanos = System.nanoTime() - probe.startNanos;
+        long parseFailures = probe.lines - probe.detections;
+        this.numberOfFiles.increment();
+        this.numberOfLines.add(probe.lines);
+        this.numberOfBytes.add(probe.bytes);
+        this.numberOfDetections.add(probe.detections);
+        this.numberOfParseFailures.add(parseFailures);
+        this.numberOfUnknownPlates.add(probe.unknownPlates);
+        this.numberOfOffences.add(probe.offences);
+        for (int s = 0; s < STAGES.length; s++) {
+            this.stageNanos[s].add(probe.stageNanos[s]);
+        }
+        this.fileLatencies[latencyBucketOf(latencyNanos)].increment();
+        synchronized (this) {
+            if (latencyNanos > this.slowestFileNanos) {
+                this.slowestFileNanos = latencyNanos;
+                this.slowestFile = probe.source;
+            }
+        }
+
+        FileImportEvent event = probe.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = probe.source;
+            event.bytes = probe.bytes;
+            event.lines = probe.lines;
+            event.detections = probe.detections;
+            event.parseFailures = parseFailures;
+            event.unknownPlates = probe.unknownPlates;
+            event.offences = probe.offences;
+            event.readNanos = probe.stageNanos[Stage.READ.ordinal()];
+            event.parseNanos = probe.stageNanos[Stage.PARSE.ordinal()];
+            event.lookupNanos = probe.stageNanos[Stage.LOOKUP.ordinal()];
+            event.validateNanos = probe.stageNanos[Stage.VALIDATE.ordinal()];
+            event.aggregateNanos = probe.stageNanos[Stage.AGGREGATE.ordinal()];
+            event.commit();
+        }
+    }
+
+    /**
+     * @return  the bucket b of the latency, such that 2^(b-1) <= latency in microseconds < 2^b
+     */
+    private static int latencyBucketOf(long latencyNanos) {
+        long micros = latencyNanos / 1000;
+        return Math.min(NUMBER_OF_LATENCY_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * registers the metrics with the platform MBean server, as models:type=ImportMetrics,name=...
+     * @return  the name of the registered MBean
+     */
+    public synchronized ObjectName register() {
+        if (this.objectName == null) {
+            try {
+                ObjectName objectName = new ObjectName("models:type=ImportMetrics,name=" + ObjectName.quote(this.name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+                this.objectName = objectName;
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register the import metrics of " + this.name, e);
+            }
+        }
+        return this.objectName;
+    }
+
+    public synchronized void unregister() {
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not unregister the import metrics of " + this.name, e);
+            }
+            this.objectName = null;
+        }
+    }
+
+    public long getStageNanos(Stage stage) {
+        return this.stageNanos[stage.ordinal()].sum();
+    }
+
+    @Override
+    public long getNumberOfFiles() {
+        return this.numberOfFiles.sum();
+    }
+
+    @Override
+    public long getNumberOfLines() {
+        return this.numberOfLines.sum();
+    }
+
+    @Override
+    public long getNumberOfBytes() {
+        return this.numberOfBytes.sum();
+    }
+
+    @Override
+    public long getNumberOfDetections() {
+        return this.numberOfDetections.sum();
+    }
+
+    @Override
+    public long getNumberOfParseFailures() {
+        return this.numberOfParseFailures.sum();
+    }
+
+    @Override
+    public long getNumberOfUnknownPlates() {
+        return this.numberOfUnknownPlates.sum();
+    }
+
+    @Override
+    public long getNumberOfOffences() {
+        return this.numberOfOffences.sum();
+    }
+
+    @Override
+    public Map<String, Double> getLinesPerSecondByStage() {
+        return this.perSecondByStage(this.getNumberOfLines());
+    }
+
+    @Override
+    public Map<String, Double> getBytesPerSecondByStage() {
+        return this.perSecondByStage(this.getNumberOfBytes());
+    }
+
+    private Map<String, Double> perSecondByStage(long amount) {
+        Map<String, Double> perSecond = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            long nanos = this.getStageNanos(stage);
+            perSecond.put(stage.name(), nanos > 0 ? amount * 1e9 / nanos : 0.0);
+        }
+        return perSecond;
+    }
+
+    @Override
+    public long[] getFileLatencyHistogram() {
+        long[] histogram = new long[NUMBER_OF_LATENCY_BUCKETS];
+        for (int b = 0; b < NUMBER_OF_LATENCY_BUCKETS; b++) {
+            histogram[b] = this.fileLatencies[b].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public double getFileLatencyMillis(double percentile) {
+        long[] histogram = this.getFileLatencyHistogram();
+        long numberOfFiles = 0;
+        for (long count : histogram) {
+            numberOfFiles += count;
+        }
+        long rank = (long)Math.ceil(percentile / 100 * numberOfFiles);
+        long cumulativeCount = 0;
+        for (int b = 0; b < NUMBER_OF_LATENCY_BUCKETS; b++) {
+            cumulativeCount += histogram[b];
+            if (cumulativeCount >= Math.max(1, rank)) {
+                return (1L << b) / 1000.0;
+            }
+        }
+        return 0.0;
+    }
+
+    @Override
+    public synchronized String getSlowestFile() {
+        return this.slowestFile;
+    }
+
+    @Override
+    public synchronized double getSlowestFileMillis() {
+        return this.slowestFileNanos / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[] { this.numberOfFiles, this.numberOfLines, this.numberOfBytes,
+                this.numberOfDetections, this.numberOfParseFailures, this.numberOfUnknownPlates, this.numberOfOffences }) {
+            counter.reset();
+        }
+        for (LongAdder counter : this.stageNanos) {
+            counter.reset();
+        }
+        for (LongAdder counter : this.fileLatencies) {
+            counter.reset();
+        }
+        synchronized (this) {
+            this.slowestFile = null;
+            this.slowestFileNanos = 0;
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,43 @@
+package models;
+
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of the imports of a TrafficTracker,
+ * as registered with the platform MBean server by ImportMetrics.register
+ */
+public interface ImportMetricsMXBean {
+    long getNumberOfFiles();
+    long getNumberOfLines();
+    long getNumberOfBytes();
+    long getNumberOfDetections();
+    long getNumberOfParseFailures();
+    long getNumberOfUnknownPlates();
+    long getNumberOfOffences();
+
+    /**
+     * @return  the lines of the imported files per second of the time spent in each stage, by the name of the stage
+     */
+    Map<String, Double> getLinesPerSecondByStage();
+
+    /**
+     * @return  the bytes of the imported files per second of the time spent in each stage, by the name of the stage
+     */
+    Map<String, Double> getBytesPerSecondByStage();
+
+    /**
+     * @return  the number of files by import latency, bucket b counts the latencies below 2^b microseconds
+     */
+    long[] getFileLatencyHistogram();
+
+    /**
+     * @param percentile    between 0 and 100
+     * @return  the upper bound of the bucket of the file latency at the percentile, in milliseconds
+     */
+    double getFileLatencyMillis(double percentile);
+
+    String getSlowestFile();
+    double getSlowestFileMillis();
+
+    void reset();
+}
@@ -0,0 +1,118 @@
+package models;
+
+import java.util.*;
+
+/**
+ * Keeps a running count per key in an indexed max-heap, such that the top ranked keys are available at any time.
+ * Counts can only increase: increase(key, increment) moves the key up the heap in O(log n),
+ * and top(n) reads the n top ranked keys from the heap in O(n log n), independent of the number of keys.
+ * Keys with equal counts are ranked by their first appearance on the leaderboard.
+ * The leaderboard is not thread-safe.
+ * @param <K>
+ */
+public class Leaderboard<K> {
+    private final Map<K, Integer> positions = new HashMap<>();  // the position of every key in the heap
+    // the heap of the keys, with their counts and ranks of first appearance at the same positions
+    private Object[] keys = new Object[16];
+    private long[] counts = new long[16];
+    private int[] appearances = new int[16];
+    private int size = 0;
+
+    /**
+     * adds the increment to the count of the key, adding the key to the leaderboard if it is new
+     * @param key
+     * @param increment     shall not be negative
+     */
+    public void increase(K key, long increment) {
+        if (increment < 0) {
+            throw new IllegalArgumentException("Counts of a leaderboard cannot decrease, increment=" + increment);
+        }
+        Integer position = this.positions.get(key);
+        if (position == null) {
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+                this.counts = Arrays.copyOf(this.counts, 2 * this.size);
+                this.appearances = Arrays.copyOf(this.appearances, 2 * this.size);
+            }
+            position = this.size;
+            this.keys[position] = key;
+            this.counts[position] = 0;
+            this.appearances[position] = this.size++;
+            this.positions.put(key, position);
+        }
+        this.counts[position] += increment;
+        this.siftUp(position);
+    }
+
+    /**
+     * @param key
+     * @return  the count of the key, or 0 if the key is not on the leaderboard
+     */
+    public long countOf(K key) {
+        Integer position = this.positions.get(key);
+        return position != null ? this.counts[position] : 0;
+    }
+
+    /**
+     * @param n
+     * @return  the keys and counts of the n top ranked keys, from the top down
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map.Entry<K, Long>> top(int n) {
+        List<Map.Entry<K, Long>> top = new ArrayList<>(Math.max(0, Math.min(n, this.size)));
+        // the candidates are the children of the keys that have been taken already
+        PriorityQueue<Integer> candidates = new PriorityQueue<>((p1, p2) -> this.precedes(p1, p2) ? -1 : 1);
+        if (this.size > 0) {
+            candidates.add(0);
+        }
+        while (top.size() < n && !candidates.isEmpty()) {
+            int position = candidates.poll();
+            top.add(new AbstractMap.SimpleImmutableEntry<>((K)this.keys[position], this.counts[position]));
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < this.size; child++) {
+                candidates.add(child);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @return  the number of keys on the leaderboard
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.positions.clear();
+        Arrays.fill(this.keys, 0, this.size, null);
+        this.size = 0;
+    }
+
+    // whether the key at position p1 ranks above the key at position p2
+    private boolean precedes(int p1, int p2) {
+        return this.counts[p1] > this.counts[p2]
+                || this.counts[p1] == this.counts[p2] && this.appearances[p1] < this.appearances[p2];
+    }
+
+    @SuppressWarnings("unchecked")
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!this.precedes(position, parent)) {
+                break;
+            }
+            Object key = this.keys[position];
+            long count = this.counts[position];
+            int appearance = this.appearances[position];
+            this.keys[position] = this.keys[parent];
+            this.counts[position] = this.counts[parent];
+            this.appearances[position] = this.appearances[parent];
+            this.positions.put((K)this.keys[position], position);
+            this.keys[parent] = key;
+            this.counts[parent] = count;
+            this.appearances[parent] = appearance;
+            this.positions.put((K)key, parent);
+            position = parent;
+        }
+    }
+}
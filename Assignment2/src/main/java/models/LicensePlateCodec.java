@@ -0,0 +1,121 @@
+package models;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes license plates into a long that preserves their ordering.
+ * A plate of up to 12 characters from the alphabet '-', '0'..'9', 'A'..'Z' is read as a base-38 number,
+ * where every character is one digit and missing trailing characters are digit 0.
+ * As the alphabet is ranked in ASCII order and 0 ranks below all characters,
+ * comparing the codes of two plates yields the same result as String.compareTo on the plates.
+ * All codes are non-negative; plates that cannot be encoded get code NOT_ENCODABLE.
+ */
+public class LicensePlateCodec {
+    public static final long NOT_ENCODABLE = -1L;
+    public static final int MAX_LENGTH = 12;
+
+    private static final int RADIX = 38;
+    private static final char[] SYMBOLS = "\0-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final long[] WEIGHTS = new long[MAX_LENGTH];   // the weight of each character position
+    static {
+        long weight = 1;
+        for (int position = MAX_LENGTH - 1; position >= 0; position--) {
+            WEIGHTS[position] = weight;
+            weight *= RADIX;
+        }
+    }
+
+    /**
+     * @param c
+     * @return  the digit of the character in the code, or -1 if the character is not in the alphabet
+     */
+    private static int digitOf(int c) {
+        if (c >= '0' && c <= '9') return c - '0' + 2;
+        if (c >= 'A' && c <= 'Z') return c - 'A' + 12;
+        if (c == '-') return 1;
+        return -1;
+    }
+
+    /**
+     * @param licensePlate
+     * @return  the order preserving code of the licensePlate, or NOT_ENCODABLE
+     */
+    public static long encode(String licensePlate) {
+        int length = licensePlate.length();
+        if (length == 0 || length > MAX_LENGTH) return NOT_ENCODABLE;
+        long code = 0;
+        for (int position = 0; position < length; position++) {
+            int digit = digitOf(licensePlate.charAt(position));
+            if (digit < 0) return NOT_ENCODABLE;
+            code += digit * WEIGHTS[position];
+        }
+        return code;
+    }
+
+    /**
+     * finds the code of the first encodable plate that is not less than the bound by String.compareTo,
+     * such that a range of plates between two strings is a range of codes
+     * @param bound     any string, which need not be encodable
+     * @return  the least code of a plate >= bound, or Long.MAX_VALUE if all plates are less than the bound
+     */
+    public static long ceilingCode(String bound) {
+        long code = 0;
+        int position = 0;
+        for (; position < bound.length() && position < MAX_LENGTH; position++) {
+            int digit = digitOf(bound.charAt(position));
+            if (digit < 0) break;
+            code += digit * WEIGHTS[position];
+        }
+        if (position == bound.length()) {
+            return code;
+        }
+        if (position < MAX_LENGTH) {
+            // the least plate of the same prefix and a greater character at the position
+            char c = bound.charAt(position);
+            for (int digit = 1; digit < RADIX; digit++) {
+                if (SYMBOLS[digit] > c) {
+                    return code + digit * WEIGHTS[position];
+                }
+            }
+        }
+        if (position == 0) {
+            return Long.MAX_VALUE;
+        }
+        // all plates with the prefix are less than the bound, so increment the prefix, which carries like a number
+        return code + WEIGHTS[position - 1];
+    }
+
+    /**
+     * encodes the ASCII license plate at positions from <= index < to of the buffer, without creating a String
+     * @return  the order preserving code of the licensePlate, or NOT_ENCODABLE
+     */
+    static long encode(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (length <= 0 || length > MAX_LENGTH) return NOT_ENCODABLE;
+        long code = 0;
+        for (int position = 0; position < length; position++) {
+            int digit = digitOf(buffer.get(from + position));
+            if (digit < 0) return NOT_ENCODABLE;
+            code += digit * WEIGHTS[position];
+        }
+        return code;
+    }
+
+    /**
+     * @param code  a code that has been produced by encode
+     * @return  the licensePlate of the code
+     */
+    public static String decode(long code) {
+        if (code < 0) {
+            throw new IllegalArgumentException("Not a license plate code: " + code);
+        }
+        char[] characters = new char[MAX_LENGTH];
+        int length = 0;
+        for (int position = 0; position < MAX_LENGTH; position++) {
+            int digit = (int)((code / WEIGHTS[position]) % RADIX);
+            if (digit == 0) break;
+            characters[length++] = SYMBOLS[digit];
+        }
+        return new String(characters, 0, length);
+    }
+}
@@ -0,0 +1,193 @@
+package models;
+
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Sums primitive contributions of the items of a list, without boxing them.
+ * Double sums are accumulated by compensated (Neumaier) summation, such that the result does not depend
+ * on the order of the items or on how they are split across tasks, except for the last bits.
+ * In parallel mode a random access list is split into index ranges that are summed by fork-join tasks;
+ * small lists and lists without random access are always summed sequentially.
+ */
+class ListAggregator {
+    // the minimum number of items in a range that is split across two tasks
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * @param items
+     * @param mappers   the contributions to the sums by every item
+     * @param parallel  whether the list may be split across fork-join tasks
+     * @return  for every mapper the sum of its contributions by all items
+     */
+    static <E> double[] sumAsDouble(List<E> items, List<? extends ToDoubleFunction<? super E>> mappers, boolean parallel) {
+        return sumAsDouble(items, mappers.size(), (item, contributions) -> {
+            for (int m = 0; m < contributions.length; m++) {
+                contributions[m] = mappers.get(m).applyAsDouble(item);
+            }
+        }, parallel);
+    }
+
+    /**
+     * provides all contributions of an item to the sums at once
+     */
+    interface VectorMapper<E> {
+        /**
+         * @param item
+         * @param contributions     receives the contribution of the item to every sum
+         */
+        void map(E item, double[] contributions);
+    }
+
+    /**
+     * @param items
+     * @param numberOfSums
+     * @param mapper    provides the contributions to the sums by every item
+     * @param parallel  whether the list may be split across fork-join tasks
+     * @return  the sums of the contributions by all items
+     */
+    static <E> double[] sumAsDouble(List<E> items, int numberOfSums, VectorMapper<? super E> mapper, boolean parallel) {
+        DoubleSumTask<E> task = new DoubleSumTask<>(items, numberOfSums, mapper, 0, items.size(),
+                parallel && items instanceof RandomAccess);
+        double[] sumsAndCompensations = task.size() > PARALLEL_THRESHOLD && task.parallel
+                ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+        double[] sums = new double[numberOfSums];
+        for (int m = 0; m < sums.length; m++) {
+            sums[m] = sumsAndCompensations[2 * m] + sumsAndCompensations[2 * m + 1];
+        }
+        return sums;
+    }
+
+    /**
+     * @param items
+     * @param mapper    the contribution to the sum by every item
+     * @param parallel  whether the list may be split across fork-join tasks
+     * @return  the sum of the contributions by all items
+     */
+    static <E> long sumAsLong(List<E> items, ToLongFunction<? super E> mapper, boolean parallel) {
+        LongSumTask<E> task = new LongSumTask<>(items, mapper, 0, items.size(),
+                parallel && items instanceof RandomAccess);
+        return task.to - task.from > PARALLEL_THRESHOLD && task.parallel
+                ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+    }
+
+    /**
+     * adds the value to the running sum and compensation of a Neumaier summation at index 2 * m of the array
+     */
+    private static void addCompensated(double[] sumsAndCompensations, int m, double value) {
+        double sum = sumsAndCompensations[2 * m];
+        double newSum = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            sumsAndCompensations[2 * m + 1] += (sum - newSum) + value;
+        } else {
+            sumsAndCompensations[2 * m + 1] += (value - newSum) + sum;
+        }
+        sumsAndCompensations[2 * m] = newSum;
+    }
+
+    // sums the contributions of the items at positions from <= index < to,
+    // into an array that holds the running sum and compensation of every sum
+    private static class DoubleSumTask<E> extends RecursiveTask<double[]> {
+        private final List<E> items;
+        private final int numberOfSums;
+        private final VectorMapper<? super E> mapper;
+        private final int from;
+        private final int to;
+        private final boolean parallel;
+
+        DoubleSumTask(List<E> items, int numberOfSums, VectorMapper<? super E> mapper, int from, int to, boolean parallel) {
+            this.items = items;
+            this.numberOfSums = numberOfSums;
+            this.mapper = mapper;
+            this.from = from;
+            this.to = to;
+            this.parallel = parallel;
+        }
+
+        int size() {
+            return this.to - this.from;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (this.parallel && this.size() > PARALLEL_THRESHOLD) {
+                int middle = this.from + this.size() / 2;
+                DoubleSumTask<E> left =
+                        new DoubleSumTask<>(this.items, this.numberOfSums, this.mapper, this.from, middle, true);
+                left.fork();
+                double[] sumsAndCompensations =
+                        new DoubleSumTask<>(this.items, this.numberOfSums, this.mapper, middle, this.to, true).compute();
+                double[] leftSumsAndCompensations = left.join();
+                for (int m = 0; m < this.numberOfSums; m++) {
+                    addCompensated(sumsAndCompensations, m, leftSumsAndCompensations[2 * m]);
+                    addCompensated(sumsAndCompensations, m, leftSumsAndCompensations[2 * m + 1]);
+                }
+                return sumsAndCompensations;
+            }
+
+            double[] sumsAndCompensations = new double[2 * this.numberOfSums];
+            double[] contributions = new double[this.numberOfSums];
+            if (this.items instanceof RandomAccess) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.addContributions(sumsAndCompensations, contributions, this.items.get(i));
+                }
+            } else {
+                for (E item : this.items.subList(this.from, this.to)) {
+                    this.addContributions(sumsAndCompensations, contributions, item);
+                }
+            }
+            return sumsAndCompensations;
+        }
+
+        private void addContributions(double[] sumsAndCompensations, double[] contributions, E item) {
+            this.mapper.map(item, contributions);
+            for (int m = 0; m < this.numberOfSums; m++) {
+                addCompensated(sumsAndCompensations, m, contributions[m]);
+            }
+        }
+    }
+
+    // sums the contributions of the items at positions from <= index < to
+    private static class LongSumTask<E> extends RecursiveTask<Long> {
+        private final List<E> items;
+        private final ToLongFunction<? super E> mapper;
+        private final int from;
+        private final int to;
+        private final boolean parallel;
+
+        LongSumTask(List<E> items, ToLongFunction<? super E> mapper, int from, int to, boolean parallel) {
+            this.items = items;
+            this.mapper = mapper;
+            this.from = from;
+            this.to = to;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.parallel && this.to - this.from > PARALLEL_THRESHOLD) {
+                int middle = this.from + (this.to - this.from) / 2;
+                LongSumTask<E> left = new LongSumTask<>(this.items, this.mapper, this.from, middle, true);
+                left.fork();
+                long sum = new LongSumTask<>(this.items, this.mapper, middle, this.to, true).compute();
+                return sum + left.join();
+            }
+
+            long sum = 0;
+            if (this.items instanceof RandomAccess) {
+                for (int i = this.from; i < this.to; i++) {
+                    sum += this.mapper.applyAsLong(this.items.get(i));
+                }
+            } else {
+                for (E item : this.items.subList(this.from, this.to)) {
+                    sum += this.mapper.applyAsLong(item);
+                }
+            }
+            return sum;
+        }
+    }
+}
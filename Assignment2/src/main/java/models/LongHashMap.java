@@ -0,0 +1,188 @@
+package models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Open-addressing hash map with primitive long keys and linear probing.
+ * Keys are stored in a long[] and values in a parallel Object[], such that no boxing or entry objects are needed.
+ * null values are not supported, an empty slot is recognised by its null value.
+ *
+ * The map is not thread-safe for multiple writers. get may run concurrently with a single writer:
+ * it then either finds the current value of a key or returns null, so a miss shall be confirmed
+ * under the lock of the writer before the key is added.
+ * The writer publishes a value by a release write of its slot after the key has been written,
+ * and get reads the slot with acquire semantics, such that a reader that sees a value also sees its key.
+ * New tables are published through a volatile field.
+ * @param <V>
+ */
+public class LongHashMap<V> {
+    private static final float MAX_LOAD = 0.5f;
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    // the keys and values of one generation of the table, which is replaced as a whole when it grows
+    private static class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    /**
+     * receives a key and its value without boxing the key
+     */
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private volatile Table table;
+    private int size;
+
+    public LongHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize  the number of keys that can be added without growing the table
+     */
+    public LongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int)Math.min(1 << 30, (long)(expectedSize / MAX_LOAD))) - 1) << 1;
+        this.table = new Table(capacity);
+    }
+
+    private static int slotOf(long key, int mask) {
+        // mix all bits of the key into the slot number
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int)(hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * @param key
+     * @return  the value of the key, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table table = this.table;
+        int mask = table.keys.length - 1;
+        for (int slot = slotOf(key, mask); ; slot = (slot + 1) & mask) {
+            Object value = VALUES.getAcquire(table.values, slot);
+            if (value == null) return null;
+            if (table.keys[slot] == key) return (V)value;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * associates the value with the key
+     * @param key
+     * @param value     shall not be null
+     * @return  the previous value of the key, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("LongHashMap does not support null values");
+        }
+        Table table = this.table;
+        int mask = table.keys.length - 1;
+        int slot = slotOf(key, mask);
+        for (; table.values[slot] != null; slot = (slot + 1) & mask) {
+            if (table.keys[slot] == key) {
+                Object previous = table.values[slot];
+                VALUES.setRelease(table.values, slot, value);
+                return (V)previous;
+            }
+        }
+        if (this.size + 1 > table.keys.length * MAX_LOAD) {
+            this.grow();
+            return this.put(key, value);
+        }
+        // publish the value after the key, such that a concurrent reader that acquires the value also sees the key
+        table.keys[slot] = key;
+        VALUES.setRelease(table.values, slot, value);
+        this.size++;
+        return null;
+    }
+
+    /**
+     * finds the value of the key, or adds the value that is provided by the mappingFunction
+     * @param key
+     * @param mappingFunction   provides a non-null value for a key that is not in the map yet
+     * @return  the current value of the key
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = this.get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            this.put(key, value);
+        }
+        return value;
+    }
+
+    private void grow() {
+        Table oldTable = this.table;
+        Table newTable = new Table(2 * oldTable.keys.length);
+        int mask = newTable.keys.length - 1;
+        for (int oldSlot = 0; oldSlot < oldTable.keys.length; oldSlot++) {
+            if (oldTable.values[oldSlot] != null) {
+                int slot = slotOf(oldTable.keys[oldSlot], mask);
+                while (newTable.values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable.keys[slot] = oldTable.keys[oldSlot];
+                newTable.values[slot] = oldTable.values[oldSlot];
+            }
+        }
+        // readers keep probing the old table until the new one is published
+        this.table = newTable;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void clear() {
+        this.table = new Table(16);
+        this.size = 0;
+    }
+
+    /**
+     * passes every key and value of the map to the action, in no particular order
+     * @param action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        Table table = this.table;
+        for (int slot = 0; slot < table.keys.length; slot++) {
+            if (table.values[slot] != null) {
+                action.accept(table.keys[slot], (V)table.values[slot]);
+            }
+        }
+    }
+
+    /**
+     * passes every value of the map to the action, in no particular order
+     * @param action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        Table table = this.table;
+        for (Object value : table.values) {
+            if (value != null) {
+                action.accept((V)value);
+            }
+        }
+    }
+}
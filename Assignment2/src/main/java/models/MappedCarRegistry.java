@@ -0,0 +1,242 @@
+package models;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only registry of cars that stays off the heap, in a memory-mapped cars segment of VaultSegments.
+ * The segment holds a fixed-width record per car in the order of the license plates, so a car is found
+ * by binary search over the records, comparing plate codes without decoding them.
+ * The mapping is read-only, such that the pages of the file are shared by all processes that open it,
+ * and opening the registry costs the same for any number of cars.
+ *
+ * Cars are read through MappedCar views, flyweights that hold only the rank of their record and read the fields
+ * from the mapped file on every call. A view can be moved to another record, such that a scan over the registry
+ * does not need to allocate at all. Only the few plates that cannot be encoded are kept on the heap.
+ * Create the segment with VaultSegments.convertCars or VaultSegments.convert.
+ */
+public class MappedCarRegistry {
+    private static final Car.CarType[] CAR_TYPES = Car.CarType.values();
+    private static final Car.FuelType[] FUEL_TYPES = Car.FuelType.values();
+
+    private final ByteBuffer records;
+    private final int size;
+    private final Map<Integer, String> unencodedPlates;
+
+    /**
+     * a zero-copy view of a car in the registry, all attributes are read from the mapped record of its rank.
+     * Views are equal to, and sorted with, any Car of the same license plate. Views cannot be changed.
+     */
+    public final class MappedCar extends Car {
+        private int rank;
+        private int record;
+
+        private MappedCar(int rank) {
+            this.moveTo(rank);
+        }
+
+        /**
+         * points this view to the car of another rank
+         * @param rank
+         * @return  this view
+         */
+        public MappedCar moveTo(int rank) {
+            if (rank < 0 || rank >= MappedCarRegistry.this.size) {
+                throw new IndexOutOfBoundsException("Rank " + rank + " out of bounds for " + MappedCarRegistry.this.size + " cars");
+            }
+            this.rank = rank;
+            this.record = VaultSegments.CARS_HEADER_SIZE + rank * VaultSegments.CAR_RECORD_SIZE;
+            return this;
+        }
+
+        public int getRank() {
+            return this.rank;
+        }
+
+        /**
+         * @return  a copy of the car on the heap, which remains valid when this view is moved
+         */
+        public Car toCar() {
+            long plateCode = this.getPlateCode();
+            return plateCode != LicensePlateCodec.NOT_ENCODABLE
+                    ? new Car(plateCode, this.getEmissionCategory(), this.getCarType(), this.getFuelType(), this.getDateOfAdmission())
+                    : new Car(this.getLicensePlate(), this.getEmissionCategory(), this.getCarType(), this.getFuelType(),
+                            this.getDateOfAdmission());
+        }
+
+        @Override
+        public String getLicensePlate() {
+            long plateCode = this.getPlateCode();
+            return plateCode != LicensePlateCodec.NOT_ENCODABLE
+                    ? LicensePlateCodec.decode(plateCode) : MappedCarRegistry.this.unencodedPlates.get(this.rank);
+        }
+
+        @Override
+        public long getPlateCode() {
+            return MappedCarRegistry.this.records.getLong(this.record + VaultSegments.PLATE_CODE_OFFSET);
+        }
+
+        @Override
+        public int getEmissionCategory() {
+            return MappedCarRegistry.this.records.get(this.record + VaultSegments.EMISSION_CATEGORY_OFFSET);
+        }
+
+        @Override
+        public CarType getCarType() {
+            return CAR_TYPES[MappedCarRegistry.this.records.get(this.record + VaultSegments.CAR_TYPE_OFFSET)];
+        }
+
+        @Override
+        public FuelType getFuelType() {
+            return FUEL_TYPES[MappedCarRegistry.this.records.get(this.record + VaultSegments.FUEL_TYPE_OFFSET)];
+        }
+
+        @Override
+        public LocalDate getDateOfAdmission() {
+            return LocalDate.ofEpochDay(MappedCarRegistry.this.records.getInt(this.record + VaultSegments.EPOCH_DAY_OFFSET));
+        }
+
+        @Override
+        public void setEmissionCategory(int emissionCategory) {
+            throw new UnsupportedOperationException("The cars of a mapped registry cannot be changed");
+        }
+
+        @Override
+        public void setCarType(CarType carType) {
+            throw new UnsupportedOperationException("The cars of a mapped registry cannot be changed");
+        }
+
+        @Override
+        public void setFuelType(FuelType fuelType) {
+            throw new UnsupportedOperationException("The cars of a mapped registry cannot be changed");
+        }
+
+        @Override
+        public void setDateOfAdmission(LocalDate dateOfAdmission) {
+            throw new UnsupportedOperationException("The cars of a mapped registry cannot be changed");
+        }
+    }
+
+    private MappedCarRegistry(ByteBuffer records) {
+        this.records = records;
+        this.size = VaultSegments.numberOfCars(records);
+        this.unencodedPlates = VaultSegments.readUnencodedPlates(records);
+    }
+
+    /**
+     * maps the cars segment of a segments folder
+     * @param segmentsFolder    a folder with a cars segment, as written by VaultSegments
+     * @return  the registry of the cars in the segment
+     */
+    public static MappedCarRegistry open(File segmentsFolder) {
+        return new MappedCarRegistry(VaultSegments.mapCars(new File(segmentsFolder, VaultSegments.CARS_FILE_NAME)));
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param rank
+     * @return  a new view of the car at the rank
+     */
+    public MappedCar get(int rank) {
+        return new MappedCar(rank);
+    }
+
+    /**
+     * @return  a new view of the first car, to be moved over the registry
+     */
+    public MappedCar newView() {
+        return new MappedCar(0);
+    }
+
+    /**
+     * finds the rank of a license plate by binary search, like Arrays.binarySearch
+     * @param licensePlate
+     * @return  the rank of the car of the license plate, or -(insertion rank) - 1 if it is not registered
+     */
+    public int rankOf(String licensePlate) {
+        return this.rankOf(LicensePlateCodec.encode(licensePlate), licensePlate);
+    }
+
+    /**
+     * finds the rank of an encoded license plate by binary search, which only decodes plates that cannot be encoded
+     * @param plateCode     the code of LicensePlateCodec.encode, or LicensePlateCodec.NOT_ENCODABLE
+     * @param licensePlate  the license plate of the code, or null to decode it when it is needed
+     * @return  the rank of the car of the license plate, or -(insertion rank) - 1 if it is not registered
+     */
+    private int rankOf(long plateCode, String licensePlate) {
+        int low = 0;
+        int high = this.size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = VaultSegments.CARS_HEADER_SIZE + middle * VaultSegments.CAR_RECORD_SIZE;
+            long middleCode = this.records.getLong(record + VaultSegments.PLATE_CODE_OFFSET);
+            int order;
+            if (middleCode != LicensePlateCodec.NOT_ENCODABLE && plateCode != LicensePlateCodec.NOT_ENCODABLE) {
+                // the codes are ordered like the license plates
+                order = Long.compare(middleCode, plateCode);
+            } else {
+                if (licensePlate == null) {
+                    licensePlate = LicensePlateCodec.decode(plateCode);
+                }
+                String middlePlate = middleCode != LicensePlateCodec.NOT_ENCODABLE
+                        ? LicensePlateCodec.decode(middleCode) : this.unencodedPlates.get(middle);
+                order = middlePlate.compareTo(licensePlate);
+            }
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @param licensePlate
+     * @return  a new view of the car of the license plate, or null if it is not registered
+     */
+    public MappedCar find(String licensePlate) {
+        int rank = this.rankOf(licensePlate);
+        return rank >= 0 ? new MappedCar(rank) : null;
+    }
+
+    /**
+     * @param plateCode     a code that has been produced by LicensePlateCodec.encode
+     * @return  a new view of the car of the encoded license plate, or null if it is not registered
+     */
+    public MappedCar find(long plateCode) {
+        if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+            throw new IllegalArgumentException("Not a license plate code: " + plateCode);
+        }
+        int rank = this.rankOf(plateCode, null);
+        return rank >= 0 ? new MappedCar(rank) : null;
+    }
+
+    /**
+     * @return  the unmodifiable list of all cars in the order of their license plates, which creates a view per get
+     */
+    public List<Car> asList() {
+        class MappedCarList extends AbstractList<Car> implements RandomAccess {
+            @Override
+            public Car get(int rank) {
+                return MappedCarRegistry.this.get(rank);
+            }
+
+            @Override
+            public int size() {
+                return MappedCarRegistry.this.size;
+            }
+        }
+        return new MappedCarList();
+    }
+}
@@ -0,0 +1,404 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Allocation-light parser of the text files of the traffic vault.
+ * The files are memory-mapped and scanned byte by byte for the line and field delimiters.
+ * Fields are decoded directly into primitives and objects are only created when they are needed:
+ * known license plates and cities are matched against their encoded bytes, and timestamps become epoch seconds.
+ */
+class MappedVaultParser {
+    // files are mapped in windows of at most this size, windows always start at the beginning of a line
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private static final Car.CarType[] CAR_TYPES = Car.CarType.values();
+    private static final Car.FuelType[] FUEL_TYPES = Car.FuelType.values();
+
+    /**
+     * receives the decoded fields of a single detection
+     */
+    interface DetectionHandler {
+        void accept(Car car, int cityId, long epochSecond);
+    }
+
+    /**
+     * receives the positions of a single line in the mapped buffer, excluding the line terminator
+     */
+    private interface LineHandler {
+        void accept(ByteBuffer buffer, int from, int to);
+    }
+
+    /**
+     * parses all detections from a file with lines of format: licensePlate, city, dateTime
+     * Corrupt or incomplete lines are skipped.
+     * @param file
+     * @param plates        the index of known cars by licensePlate
+     * @param carCreator    provides a car for a licensePlate that is not in the plates index yet
+     * @param cities        the dictionary of the cities
+     * @param handler       receives every detection that could be parsed
+     * @return  the number of lines in the file
+     */
+    static int parseDetections(File file, PlateIndex plates, Function<String, Car> carCreator,
+                               CityDictionary cities, DetectionHandler handler) {
+        return parseDetections(file, plates, carCreator, cities, handler, null);
+    }
+
+    /**
+     * parses all detections from a file, like parseDetections(file, ...) does,
+     * and adds the time of matching the license plates with the cars to the LOOKUP stage of the probe
+     * @param probe     the measurements of the file, or null
+     */
+    static int parseDetections(File file, PlateIndex plates, Function<String, Car> carCreator,
+                               CityDictionary cities, DetectionHandler handler, ImportMetrics.FileProbe probe) {
+        return forEachLine(file, detectionLineHandler(plates, carCreator, cities, handler, probe));
+    }
+
+    /**
+     * parses all detections from the lines between the position and the limit of the buffer,
+     * like parseDetections(file, ...) does.
+     * @param buffer
+     * @param plates        the index of known cars by licensePlate
+     * @param carCreator    provides a car for a licensePlate that is not in the plates index yet
+     * @param cities        the dictionary of the cities
+     * @param handler       receives every detection that could be parsed
+     * @return  the number of lines in the buffer
+     */
+    static int parseDetections(ByteBuffer buffer, PlateIndex plates, Function<String, Car> carCreator,
+                               CityDictionary cities, DetectionHandler handler) {
+        LineHandler lineHandler = detectionLineHandler(plates, carCreator, cities, handler, null);
+        int numberOfLines = 0;
+        int blankLines = 0;
+        int lineStart = buffer.position();
+        for (int i = lineStart; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                blankLines = acceptLine(buffer, lineStart, i, lineHandler, blankLines);
+                numberOfLines++;
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < buffer.limit()) {
+            blankLines = acceptLine(buffer, lineStart, buffer.limit(), lineHandler, blankLines);
+            numberOfLines++;
+        }
+        return numberOfLines - blankLines;
+    }
+
+    private static LineHandler detectionLineHandler(PlateIndex plates, Function<String, Car> carCreator,
+                                                    CityDictionary cities, DetectionHandler handler,
+                                                    ImportMetrics.FileProbe probe) {
+        int[] commas = new int[2];
+        return (buffer, from, to) -> {
+            // locate the two field delimiters
+            int nCommas = 0;
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == ',') {
+                    if (nCommas == commas.length) return;
+                    commas[nCommas++] = i;
+                }
+            }
+            if (nCommas != commas.length) return;
+
+            int plateFrom = skipWhitespace(buffer, from, commas[0]);
+            int plateTo = trimWhitespace(buffer, plateFrom, commas[0]);
+            int cityFrom = skipWhitespace(buffer, commas[0] + 1, commas[1]);
+            int cityTo = trimWhitespace(buffer, cityFrom, commas[1]);
+            int dateTimeFrom = skipWhitespace(buffer, commas[1] + 1, to);
+            int dateTimeTo = trimWhitespace(buffer, dateTimeFrom, to);
+
+            long epochSecond = parseEpochSecond(buffer, dateTimeFrom, dateTimeTo);
+            if (epochSecond == Long.MIN_VALUE) return;
+
+            long lookupStart = probe != null ? System.nanoTime() : 0;
+            Car car = plates.find(buffer, plateFrom, plateTo);
+            if (car == null) {
+                car = plates.findOrAdd(decode(buffer, plateFrom, plateTo), carCreator);
+            }
+            if (probe != null) {
+                probe.lap(ImportMetrics.Stage.LOOKUP, lookupStart);
+                probe.detections++;
+            }
+            handler.accept(car, cities.idOf(buffer, cityFrom, cityTo), epochSecond);
+        };
+    }
+
+    /**
+     * counts the lines of a range of a file
+     */
+    static final class LineCounts {
+        int numberOfLines;          // all lines, including blank lines
+        int trailingBlankLines;     // the blank lines after the last line with content
+    }
+
+    /**
+     * parses all cars from a file with lines of format: licensePlate, emissionCategory, carType, fuelType, dateOfAdmission
+     * like Car.fromLine does.
+     * @param file
+     * @param handler   receives every car that could be parsed
+     * @return  the number of lines in the file
+     */
+    static int parseCars(File file, Consumer<Car> handler) {
+        return forEachLine(file, carLineHandler(handler,
+                line -> System.out.printf("Could not parse Car specification in text line '%s'\n", line)));
+    }
+
+    /**
+     * parses all cars from the lines between the position and the limit of the buffer,
+     * like parseCars(file, ...) does, but passes the lines that cannot be parsed to badLines instead of printing them.
+     * @param buffer
+     * @param handler   receives every car that could be parsed
+     * @param badLines  receives every line with content that could not be parsed
+     * @return  the counts of the lines in the buffer
+     */
+    static LineCounts parseCars(ByteBuffer buffer, Consumer<Car> handler, Consumer<String> badLines) {
+        LineHandler lineHandler = carLineHandler(handler, badLines);
+        LineCounts lineCounts = new LineCounts();
+        int lineStart = buffer.position();
+        for (int i = lineStart; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                lineCounts.trailingBlankLines = acceptLine(buffer, lineStart, i, lineHandler, lineCounts.trailingBlankLines);
+                lineCounts.numberOfLines++;
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < buffer.limit()) {
+            lineCounts.trailingBlankLines = acceptLine(buffer, lineStart, buffer.limit(), lineHandler,
+                    lineCounts.trailingBlankLines);
+            lineCounts.numberOfLines++;
+        }
+        return lineCounts;
+    }
+
+    private static LineHandler carLineHandler(Consumer<Car> handler, Consumer<String> badLines) {
+        int[] commas = new int[4];
+        return (buffer, from, to) -> {
+            int nCommas = 0;
+            for (int i = from; i < to && nCommas < commas.length; i++) {
+                if (buffer.get(i) == ',') {
+                    commas[nCommas++] = i;
+                }
+            }
+            if (nCommas < commas.length) return;
+
+            // any further fields are ignored
+            int end = to;
+            for (int i = commas[3] + 1; i < to; i++) {
+                if (buffer.get(i) == ',') {
+                    end = i;
+                    break;
+                }
+            }
+
+            int plateFrom = skipWhitespace(buffer, from, commas[0]);
+            int plateTo = trimWhitespace(buffer, plateFrom, commas[0]);
+            int emissionCategory = parseInt(buffer, commas[0] + 1, commas[1]);
+            Car.CarType carType = parseEnum(CAR_TYPES, buffer, commas[1] + 1, commas[2]);
+            Car.FuelType fuelType = parseEnum(FUEL_TYPES, buffer, commas[2] + 1, commas[3]);
+            LocalDate dateOfAdmission = parseDate(buffer, commas[3] + 1, end);
+
+            if (emissionCategory == Integer.MIN_VALUE || carType == null || fuelType == null || dateOfAdmission == null) {
+                badLines.accept(decode(buffer, from, to));
+                return;
+            }
+            handler.accept(new Car(decode(buffer, plateFrom, plateTo), emissionCategory, carType, fuelType, dateOfAdmission));
+        };
+    }
+
+    /**
+     * maps the file into memory window by window and passes every line to the lineHandler
+     * @return  the number of lines in the file, excluding trailing blank lines, like importItemsFromFile counts them
+     */
+    private static int forEachLine(File file, LineHandler lineHandler) {
+        int numberOfLines = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            int blankLines = 0;
+            while (position < fileSize) {
+                long windowSize = Math.min(WINDOW_SIZE, fileSize - position);
+                boolean lastWindow = position + windowSize == fileSize;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int limit = buffer.limit();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        blankLines = acceptLine(buffer, lineStart, i, lineHandler, blankLines);
+                        numberOfLines++;
+                        lineStart = i + 1;
+                    }
+                }
+                if (lastWindow) {
+                    if (lineStart < limit) {
+                        // the last line has no terminator
+                        blankLines = acceptLine(buffer, lineStart, limit, lineHandler, blankLines);
+                        numberOfLines++;
+                    }
+                    position = fileSize;
+                } else if (lineStart == 0) {
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + file.getPath());
+                } else {
+                    // continue with the next window from the start of the incomplete line
+                    position += lineStart;
+                }
+            }
+            numberOfLines -= blankLines;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file on path: " + file.getPath(), e);
+        }
+        return numberOfLines;
+    }
+
+    private static int acceptLine(ByteBuffer buffer, int from, int to, LineHandler lineHandler, int blankLines) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        if (skipWhitespace(buffer, from, to) == to) {
+            // count the blank lines that have not been followed by a line with content yet
+            return blankLines + 1;
+        }
+        lineHandler.accept(buffer, from, to);
+        return 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+        while (from < to && isWhitespace(buffer.get(from))) from++;
+        return from;
+    }
+
+    private static int trimWhitespace(ByteBuffer buffer, int from, int to) {
+        while (to > from && isWhitespace(buffer.get(to - 1))) to--;
+        return to;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return  the non-negative decimal number between from and to, or Integer.MIN_VALUE if it is malformed
+     */
+    private static int parseInt(ByteBuffer buffer, int from, int to) {
+        from = skipWhitespace(buffer, from, to);
+        to = trimWhitespace(buffer, from, to);
+        if (from == to || to - from > 9) return Integer.MIN_VALUE;
+        return parseDigits(buffer, from, to);
+    }
+
+    private static int parseDigits(ByteBuffer buffer, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) return Integer.MIN_VALUE;
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    private static <T extends Enum<T>> T parseEnum(T[] values, ByteBuffer buffer, int from, int to) {
+        from = skipWhitespace(buffer, from, to);
+        to = trimWhitespace(buffer, from, to);
+        for (T value : values) {
+            String name = value.name();
+            if (name.length() == to - from && matches(name, buffer, from)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, ByteBuffer buffer, int from) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != buffer.get(from + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return  the ISO date yyyy-MM-dd between from and to, or null if it is malformed
+     */
+    private static LocalDate parseDate(ByteBuffer buffer, int from, int to) {
+        from = skipWhitespace(buffer, from, to);
+        to = trimWhitespace(buffer, from, to);
+        if (to - from != 10 || buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-') return null;
+        int year = parseDigits(buffer, from, from + 4);
+        int month = parseDigits(buffer, from + 5, from + 7);
+        int day = parseDigits(buffer, from + 8, from + 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+
+    /**
+     * @return  the ISO local date-time yyyy-MM-ddTHH:mm:ss between from and to in seconds since the epoch (UTC),
+     *          or Long.MIN_VALUE if it is malformed
+     */
+    static long parseEpochSecond(ByteBuffer buffer, int from, int to) {
+        if (to - from != 19
+                || buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-' || buffer.get(from + 10) != 'T'
+                || buffer.get(from + 13) != ':' || buffer.get(from + 16) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(buffer, from, 4);
+        int month = digits(buffer, from + 5, 2);
+        int day = digits(buffer, from + 8, 2);
+        int hour = digits(buffer, from + 11, 2);
+        int minute = digits(buffer, from + 14, 2);
+        int second = digits(buffer, from + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        return epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+    }
+
+    private static int digits(ByteBuffer buffer, int from, int length) {
+        int value = 0;
+        for (int i = from; i < from + length; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * calculates the number of days since 1970-01-01 of a proleptic Gregorian date without creating a LocalDate
+     */
+    static long epochDay(int year, int month, int day) {
+        // shift the year to start in March, such that the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
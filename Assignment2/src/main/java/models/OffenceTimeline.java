@@ -0,0 +1,211 @@
+package models;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts offences per key in time buckets of a fixed length, e.g. per hour or per day.
+ * Every key has a ring buffer of counters for the most recent numberOfBuckets buckets that it was seen in,
+ * so the memory of the timeline is bounded by the number of keys, independent of the number of detections.
+ * A ring advances when an offence of a later bucket is recorded, clearing only the counters that it passes,
+ * and offences may arrive out of order as long as they are within the retained buckets of their key.
+ * Offences that are older than that cannot be counted anymore and are only tallied as late.
+ *
+ * Times are the local date times of the detections, which are counted as epoch seconds at offset UTC.
+ * The timeline is thread-safe; the rings are spread over lock stripes by key, such that concurrent imports
+ * only contend when they record offences of keys of the same stripe.
+ * @param <K>
+ */
+public class OffenceTimeline<K> {
+    public static final long HOUR = 3600;
+    public static final long DAY = 24 * HOUR;
+
+    // the counters of a key, counts[bucket % numberOfBuckets] holds the count of a retained bucket
+    private static class Ring {
+        final int[] counts;
+        long newestBucket = Long.MIN_VALUE;
+
+        Ring(int numberOfBuckets) {
+            this.counts = new int[numberOfBuckets];
+        }
+    }
+
+    private static final int NUMBER_OF_STRIPES = 16;
+
+    private final long bucketSeconds;
+    private final int numberOfBuckets;
+    private final List<Map<K, Ring>> stripes = new ArrayList<>(NUMBER_OF_STRIPES);   // the rings of the keys by stripe
+    private final AtomicLong latestEpochSecond = new AtomicLong(Long.MIN_VALUE);   // the latest offence recorded
+    private final LongAdder numberOfLateOffences = new LongAdder();
+
+    /**
+     * @param bucketSeconds     the length of the time buckets in seconds, e.g. HOUR or DAY
+     * @param numberOfBuckets   the number of most recent buckets that are retained for every key
+     */
+    public OffenceTimeline(long bucketSeconds, int numberOfBuckets) {
+        if (bucketSeconds <= 0 || numberOfBuckets <= 0) {
+            throw new IllegalArgumentException("bucketSeconds and numberOfBuckets should be positive");
+        }
+        this.bucketSeconds = bucketSeconds;
+        this.numberOfBuckets = numberOfBuckets;
+        for (int s = 0; s < NUMBER_OF_STRIPES; s++) {
+            this.stripes.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return  the rings of the stripe of the key, which is the lock of these rings
+     */
+    private Map<K, Ring> stripeOf(K key) {
+        int hash = key.hashCode();
+        return this.stripes.get((hash ^ (hash >>> 16)) & (NUMBER_OF_STRIPES - 1));
+    }
+
+    /**
+     * counts an offence of the key at the given time
+     * @param key
+     * @param epochSecond
+     * @return  whether the offence was counted, or was too late to be retained
+     */
+    public boolean record(K key, long epochSecond) {
+        if (epochSecond > this.latestEpochSecond.get()) {
+            this.latestEpochSecond.accumulateAndGet(epochSecond, Math::max);
+        }
+        long bucket = Math.floorDiv(epochSecond, this.bucketSeconds);
+        Map<K, Ring> stripe = this.stripeOf(key);
+        synchronized (stripe) {
+            return this.record(stripe.computeIfAbsent(key, k -> new Ring(this.numberOfBuckets)), bucket);
+        }
+    }
+
+    private boolean record(Ring ring, long bucket) {
+        if (bucket > ring.newestBucket) {
+            // clear the counters of the buckets that the ring passes
+            long firstPassedBucket = ring.newestBucket == Long.MIN_VALUE
+                    ? bucket - this.numberOfBuckets + 1
+                    : Math.max(ring.newestBucket + 1, bucket - this.numberOfBuckets + 1);
+            for (long passedBucket = firstPassedBucket; passedBucket <= bucket; passedBucket++) {
+                ring.counts[this.slotOf(passedBucket)] = 0;
+            }
+            ring.newestBucket = bucket;
+        } else if (bucket <= ring.newestBucket - this.numberOfBuckets) {
+            this.numberOfLateOffences.increment();
+            return false;
+        }
+        ring.counts[this.slotOf(bucket)]++;
+        return true;
+    }
+
+    private int slotOf(long bucket) {
+        return (int)Math.floorMod(bucket, (long)this.numberOfBuckets);
+    }
+
+    /**
+     * @param key
+     * @param fromEpochSecond
+     * @param numberOfBuckets
+     * @return  the counts of the key in the consecutive buckets from the bucket of fromEpochSecond onwards;
+     *          buckets that are not retained count as 0
+     */
+    public int[] counts(K key, long fromEpochSecond, int numberOfBuckets) {
+        int[] counts = new int[numberOfBuckets];
+        Map<K, Ring> stripe = this.stripeOf(key);
+        synchronized (stripe) {
+            Ring ring = stripe.get(key);
+            if (ring == null) {
+                return counts;
+            }
+            long firstBucket = Math.floorDiv(fromEpochSecond, this.bucketSeconds);
+            for (int b = 0; b < numberOfBuckets; b++) {
+                long bucket = firstBucket + b;
+                if (bucket <= ring.newestBucket && bucket > ring.newestBucket - this.numberOfBuckets) {
+                    counts[b] = ring.counts[this.slotOf(bucket)];
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param key
+     * @param from
+     * @param numberOfBuckets
+     * @return  the counts of the key in the consecutive buckets from the bucket of the from time onwards
+     */
+    public int[] counts(K key, LocalDateTime from, int numberOfBuckets) {
+        return this.counts(key, from.toEpochSecond(ZoneOffset.UTC), numberOfBuckets);
+    }
+
+    /**
+     * @param key
+     * @param fromEpochSecond
+     * @param toEpochSecond
+     * @return  the number of offences of the key in all buckets that overlap with fromEpochSecond <= t < toEpochSecond
+     */
+    public long count(K key, long fromEpochSecond, long toEpochSecond) {
+        Map<K, Ring> stripe = this.stripeOf(key);
+        synchronized (stripe) {
+            Ring ring = stripe.get(key);
+            if (ring == null || toEpochSecond <= fromEpochSecond) {
+                return 0;
+            }
+            // only the retained buckets of the key need to be read
+            long firstBucket = Math.max(Math.floorDiv(fromEpochSecond, this.bucketSeconds),
+                    ring.newestBucket - this.numberOfBuckets + 1);
+            long lastBucket = Math.min(Math.floorDiv(toEpochSecond - 1, this.bucketSeconds), ring.newestBucket);
+            long total = 0;
+            for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                total += ring.counts[this.slotOf(bucket)];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * @param key
+     * @param window
+     * @return  the number of offences of the key in the buckets that overlap with the window
+     *          that ends with the latest offence recorded in this timeline
+     */
+    public long countInLast(K key, Duration window) {
+        long latestEpochSecond = this.latestEpochSecond.get();
+        if (latestEpochSecond == Long.MIN_VALUE) {
+            return 0;
+        }
+        return this.count(key, latestEpochSecond + 1 - window.getSeconds(), latestEpochSecond + 1);
+    }
+
+    /**
+     * @return  the time of the latest offence recorded, or null if no offence has been recorded
+     */
+    public LocalDateTime getLatestDateTime() {
+        long latestEpochSecond = this.latestEpochSecond.get();
+        return latestEpochSecond != Long.MIN_VALUE
+                ? LocalDateTime.ofEpochSecond(latestEpochSecond, 0, ZoneOffset.UTC)
+                : null;
+    }
+
+    /**
+     * @return  the number of offences that were too late to be retained
+     */
+    public long getNumberOfLateOffences() {
+        return this.numberOfLateOffences.sum();
+    }
+
+    public void clear() {
+        for (Map<K, Ring> stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        this.latestEpochSecond.set(Long.MIN_VALUE);
+        this.numberOfLateOffences.reset();
+    }
+}
@@ -1,6 +1,7 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
@@ -16,7 +17,22 @@ public class OrderedArrayList<E>
     //      other items at index position nSorted <= index < size() can be in any order amongst themselves
     //              and also relative to the sorted section
 
-
+    public static final int DEFAULT_CONSOLIDATION_THRESHOLD = 1024;
+    // up to this many appended items are inserted into the index one by one, more are sorted and merged at once
+    private static final int TAIL_INSERTION_LIMIT = 8;
+
+    // index of the unsorted section for searching it in logarithmic time:
+    //      tailOrder[0 <= i < tailSize] are the index positions of the first tailSize items in the unsorted section,
+    //      ordered by the sortOrder of their items.
+    //      The items at nSorted + tailSize <= index < size() have been appended by add(item) since,
+    //      and are merged into the index by the next search, such that appending remains amortized O(1).
+    //      The index is only valid while tailModCount == modCount, i.e. when no other change than
+    //      appending items by add(item) has been made to the list since the index was built.
+    //      An invalid index is rebuilt by the next search.
+    private int[] tailOrder = new int[0];
+    private int tailSize = 0;
+    private int tailModCount = -1;
+    private int consolidationThreshold = DEFAULT_CONSOLIDATION_THRESHOLD;
 
     public OrderedArrayList() {
         this(null);
@@ -43,6 +59,44 @@ public class OrderedArrayList<E>
         super.sort(c);
         this.sortOrder = c;
         this.nSorted = this.size();
+        this.tailSize = 0;
+        this.tailModCount = this.modCount;
+    }
+
+    /**
+     * sets the maximum size of the unsorted section, beyond which merge sorts the list before it searches a match.
+     * Adding and searching items never reorders the list.
+     * @param consolidationThreshold
+     */
+    public void setConsolidationThreshold(int consolidationThreshold) {
+        this.consolidationThreshold = consolidationThreshold;
+    }
+
+    /**
+     * appends the item to the unsorted section at the end of the list, in amortized O(1).
+     * The index of that section stays valid; the item is merged into it by the next search.
+     * @param item
+     * @return true
+     */
+    @Override
+    public boolean add(E item) {
+        boolean tailIndexValid = this.tailModCount == this.modCount;
+        super.add(item);
+        if (tailIndexValid) {
+            this.tailModCount = this.modCount;
+        }
+        return true;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E previousElement = super.set(index, element);
+        if (index >= this.nSorted && this.tailModCount == this.modCount && this.sortOrder != null
+                && this.sortOrder.compare(previousElement, element) != 0) {
+            // the index of the unsorted section does not hold anymore
+            this.tailModCount = -1;
+        }
+        return previousElement;
     }
 
     @Override
@@ -73,11 +127,69 @@ public class OrderedArrayList<E>
         return false;
     }
 
+    /**
+     * sorts the list by this.sortOrder
+     * Only the unsorted section at the end is sorted, in a buffer of its own size,
+     * and then merged into the sorted section from the back.
+     * Items of the sorted section that precede all new items are not moved at all.
+     * Appending k items to a sorted list of n items and sorting again thereby takes O(n + k log k)
+     */
     @Override
     public void sort() {
-        if (this.nSorted < this.size()) {
+        if (this.nSorted >= this.size()) {
+            return;
+        }
+        if (this.sortOrder == null || this.nSorted == 0) {
+            // nothing to merge with, or no comparator to merge by
             this.sort(this.sortOrder);
+            return;
         }
+
+        // sort the unsorted section in a separate buffer
+        // the buffer only holds items of this list, so it is safe to treat it as an E[]
+        @SuppressWarnings("unchecked")
+        E[] tail = (E[])this.subList(this.nSorted, this.size()).toArray();
+        Arrays.sort(tail, this.sortOrder);
+
+        // merge the sorted section and the buffer from the back, such that every item is moved only once
+        // the items of the sorted section that go behind the next item of the buffer are found by galloping,
+        // so runs of items that do not interleave with the buffer cost only a logarithmic number of comparisons.
+        // items from the sorted section go first when they are equal, which keeps the merge stable
+        int sortedIndex = this.nSorted - 1;
+        int targetIndex = this.size() - 1;
+        for (int tailIndex = tail.length - 1; tailIndex >= 0; tailIndex--) {
+            E item = tail[tailIndex];
+
+            // gallop backwards to a range that contains the first item that is greater than item
+            int firstGreater = sortedIndex + 1;
+            int probe = sortedIndex;
+            for (int step = 1; probe >= 0 && this.sortOrder.compare(this.get(probe), item) > 0; step *= 2) {
+                firstGreater = probe;
+                probe -= step;
+            }
+            // binary search between the last probe and the first greater item found so far
+            int low = Math.max(probe + 1, 0);
+            int high = firstGreater - 1;
+            while (low <= high) {
+                int mid = low + (high - low) / 2;
+                if (this.sortOrder.compare(this.get(mid), item) > 0) {
+                    firstGreater = mid;
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+
+            // move the greater items of the sorted section and then the item to their final positions
+            while (sortedIndex >= firstGreater) {
+                super.set(targetIndex--, this.get(sortedIndex--));
+            }
+            super.set(targetIndex--, item);
+        }
+        this.modCount++;
+        this.nSorted = this.size();
+        this.tailSize = 0;
+        this.tailModCount = this.modCount;
     }
 
     @Override
@@ -117,14 +229,8 @@ public class OrderedArrayList<E>
         if (index != -1) {
             return index;
         }
-        // Linear search in the unsorted section
-        for (int i = nSorted; i < size(); i++) {
-            if (this.sortOrder.compare(get(i), searchItem) == 0) {
-                return i;
-            }
-        }
-        // Item not found in either section
-        return -1;
+        // Search the index of the unsorted section
+        return indexOfInUnsortedSection(searchItem);
     }
 
 
@@ -170,14 +276,8 @@ public class OrderedArrayList<E>
         if (index != -1) {
             return index;
         }
-        // Linear search in the unsorted section
-        for (int i = nSorted; i < size(); i++) {
-            if (this.sortOrder.compare(get(i), searchItem) == 0) {
-                return i;
-            }
-        }
-        // Item not found in either section
-        return -1;
+        // Search the index of the unsorted section
+        return indexOfInUnsortedSection(searchItem);
     }
 
 
@@ -203,10 +303,137 @@ public class OrderedArrayList<E>
         return -1;
     }
 
+    /**
+     * finds the position of the searchItem in the unsorted section of the arrayList by a binary search of its index.
+     * An invalid index is rebuilt first; the list itself is not changed by the search.
+     * @param searchItem    the item to be searched on the basis of comparison by this.sortOrder
+     * @return              the position index of the found item in the arrayList, or -1 if no item matches the search item.
+     */
+    private int indexOfInUnsortedSection(E searchItem) {
+        if (this.tailModCount != this.modCount) {
+            this.rebuildTailIndex();
+        } else if (this.nSorted + this.tailSize < this.size()) {
+            this.mergeAppendedIntoTailIndex();
+        }
+
+        int low = 0;
+        int high = this.tailSize - 1;
+        while (low <= high) {
+            int mid = low + (high - low) / 2;
+            int comparison = this.sortOrder.compare(get(this.tailOrder[mid]), searchItem);
+            if (comparison == 0) {
+                return this.tailOrder[mid];
+            }
+            if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void rebuildTailIndex() {
+        int tailSize = this.size() - this.nSorted;
+        if (this.tailOrder.length < tailSize) {
+            this.tailOrder = new int[Math.max(tailSize, 16)];
+        }
+        for (int i = 0; i < tailSize; i++) {
+            this.tailOrder[i] = this.nSorted + i;
+        }
+        this.sortPositions(this.tailOrder, new int[tailSize], 0, tailSize);
+        this.tailSize = tailSize;
+        this.tailModCount = this.modCount;
+    }
+
+    /**
+     * sorts positions[from <= i < to] by the sortOrder of their items, by a stable merge sort of the primitive positions
+     * @param positions
+     * @param buffer    a scratch array of at least to positions
+     * @param from
+     * @param to
+     */
+    private void sortPositions(int[] positions, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        this.sortPositions(positions, buffer, from, middle);
+        this.sortPositions(positions, buffer, middle, to);
+        if (this.sortOrder.compare(get(positions[middle - 1]), get(positions[middle])) <= 0) {
+            // the halves are in order already
+            return;
+        }
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from, right = middle;
+        for (int target = from; target < to; target++) {
+            if (right >= to || left < middle && this.sortOrder.compare(get(buffer[left]), get(buffer[right])) <= 0) {
+                positions[target] = buffer[left++];
+            } else {
+                positions[target] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * adds the items that have been appended since the last search to the index of the unsorted section.
+     * A few items are inserted by binary search, more items are sorted and merged with the index in a single pass,
+     * such that k appends cost O(k log k + tailSize) by the next search rather than O(k * tailSize).
+     */
+    private void mergeAppendedIntoTailIndex() {
+        int from = this.nSorted + this.tailSize;
+        int numberAppended = this.size() - from;
+        if (this.tailOrder.length < this.tailSize + numberAppended) {
+            this.tailOrder = Arrays.copyOf(this.tailOrder, Math.max(16, 2 * (this.tailSize + numberAppended)));
+        }
+        if (numberAppended <= TAIL_INSERTION_LIMIT) {
+            for (int position = from; position < this.size(); position++) {
+                this.addToTailIndex(position);
+            }
+            return;
+        }
+        int[] appended = new int[numberAppended];
+        for (int i = 0; i < numberAppended; i++) {
+            appended[i] = from + i;
+        }
+        this.sortPositions(appended, new int[numberAppended], 0, numberAppended);
+
+        // merge from the back, appended items go behind the indexed items that are equal to them
+        int indexed = this.tailSize - 1;
+        int next = numberAppended - 1;
+        for (int target = this.tailSize + numberAppended - 1; next >= 0; target--) {
+            if (indexed >= 0 && this.sortOrder.compare(get(this.tailOrder[indexed]), get(appended[next])) > 0) {
+                this.tailOrder[target] = this.tailOrder[indexed--];
+            } else {
+                this.tailOrder[target] = appended[next--];
+            }
+        }
+        this.tailSize += numberAppended;
+    }
+
+    private void addToTailIndex(int position) {
+        // find the insertion point behind all items that are equal to the new item
+        E item = get(position);
+        int low = 0;
+        int high = this.tailSize - 1;
+        while (low <= high) {
+            int mid = low + (high - low) / 2;
+            if (this.sortOrder.compare(get(this.tailOrder[mid]), item) > 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        System.arraycopy(this.tailOrder, low, this.tailOrder, low + 1, this.tailSize - low);
+        this.tailOrder[low] = position;
+        this.tailSize++;
+    }
+
     /**
      * finds a match of newItem in the list and applies the merger operator with the newItem to that match
      * i.e. the found match is replaced by the outcome of the merge between the match and the newItem
      * If no match is found in the list, the newItem is added to the list.
+     * The list is sorted first if its unsorted section exceeds the consolidation threshold.
      * @param newItem
      * @param merger    a function that takes two items and returns an item that contains the merged content of
      *                  the two items according to some merging rule.
@@ -217,6 +444,10 @@ public class OrderedArrayList<E>
     @Override
     public boolean merge(E newItem, BinaryOperator<E> merger) {
         if (newItem == null) return false;
+        if (this.sortOrder != null && this.size() - this.nSorted > this.consolidationThreshold) {
+            // consolidate the unsorted section, such that the search does not need to index a large tail
+            this.sort();
+        }
         int matchedItemIndex = this.indexOfByRecursiveBinarySearch(newItem);
 
         if (matchedItemIndex < 0) {
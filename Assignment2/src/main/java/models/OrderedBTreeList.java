@@ -0,0 +1,655 @@
+package models;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * OrderedList that keeps all its items sorted at all times in a B+-tree.
+ * The items are held in leaves of up to LEAF_CAPACITY items that are chained for iteration;
+ * the inner nodes hold the number of items and the first item of each of their children,
+ * such that both positional access and searching by the sortOrder descend the tree in O(log n).
+ * add, remove, merge and indexOf therefore take O(log n), plus a shift of at most one leaf or node.
+ *
+ * The List contract is honoured as far as it is compatible with the sort order:
+ * add(item) inserts the item behind all equal items, instead of appending it at the end of the list,
+ * and add(index, item) and set(index, item) throw an IllegalArgumentException if the item
+ * does not fit at the index according to the sortOrder. null items are not supported.
+ * Like OrderedArrayList, searches match items by the sortOrder rather than by equals.
+ * @param <E>
+ */
+public class OrderedBTreeList<E> extends AbstractList<E> implements OrderedList<E> {
+    static final int LEAF_CAPACITY = 64;
+    static final int INNER_CAPACITY = 32;
+    private static final int LEAF_MINIMUM = LEAF_CAPACITY / 2;
+    private static final int INNER_MINIMUM = INNER_CAPACITY / 2;
+    // the share of the capacity of the nodes that is filled by a bulk load, leaving room for later inserts
+    private static final int LEAF_FILL = LEAF_CAPACITY * 3 / 4;
+    private static final int INNER_FILL = INNER_CAPACITY * 3 / 4;
+
+    private abstract static class Node {
+        int size;               // the number of items in the subtree of this node
+
+        abstract Object first();
+    }
+
+    private static final class Leaf extends Node {
+        // items[0 <= i < size] are the sorted items of the leaf, with room for one item before a split
+        final Object[] items = new Object[LEAF_CAPACITY + 1];
+        Leaf next;              // the next leaf in sort order, or null for the last leaf
+
+        @Override
+        Object first() {
+            return this.items[0];
+        }
+    }
+
+    private static final class Inner extends Node {
+        // children[0 <= c < count] are the children of the node in sort order,
+        // childSizes[c] and firstItems[c] hold the size and the first item of children[c]
+        // all children are non-empty, and all children are leaves, or all are inner nodes
+        final Node[] children = new Node[INNER_CAPACITY + 1];
+        final int[] childSizes = new int[INNER_CAPACITY + 1];
+        final Object[] firstItems = new Object[INNER_CAPACITY + 1];
+        int count;
+
+        @Override
+        Object first() {
+            return this.firstItems[0];
+        }
+
+        void refresh(int c) {
+            this.childSizes[c] = this.children[c].size;
+            this.firstItems[c] = this.children[c].first();
+        }
+    }
+
+    private Comparator<? super E> sortOrder;
+    private Node root = new Leaf();
+
+    public OrderedBTreeList() {
+        this(null);
+    }
+
+    /**
+     * @param sortOrder     the sort order of the items, or null for their natural ordering
+     */
+    public OrderedBTreeList(Comparator<? super E> sortOrder) {
+        this.sortOrder = sortOrder;
+    }
+
+    @Override
+    public Comparator<? super E> getSortOrder() {
+        return this.sortOrder;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object item1, Object item2) {
+        return this.sortOrder != null
+                ? this.sortOrder.compare((E)item1, (E)item2)
+                : ((Comparable<Object>)item1).compareTo(item2);
+    }
+
+    @Override
+    public int size() {
+        return this.root.size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, this.size());
+        Node node = this.root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner)node;
+            int c = 0;
+            while (index >= inner.childSizes[c]) {
+                index -= inner.childSizes[c++];
+            }
+            node = inner.children[c];
+        }
+        return (E)((Leaf)node).items[index];
+    }
+
+    /**
+     * replaces the item at the index
+     * @throws IllegalArgumentException if the item does not fit at the index according to the sortOrder
+     */
+    @Override
+    public E set(int index, E item) {
+        Objects.checkIndex(index, this.size());
+        Objects.requireNonNull(item);
+        if (index > 0 && this.compare(this.get(index - 1), item) > 0
+                || index < this.size() - 1 && this.compare(item, this.get(index + 1)) > 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Item '%s' does not fit at index %d of the ordered list", item, index));
+        }
+        return this.set(this.root, index, item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E set(Node node, int index, E item) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            E previousItem = (E)leaf.items[index];
+            leaf.items[index] = item;
+            return previousItem;
+        }
+        Inner inner = (Inner)node;
+        int c = 0;
+        while (index >= inner.childSizes[c]) {
+            index -= inner.childSizes[c++];
+        }
+        E previousItem = this.set(inner.children[c], index, item);
+        inner.refresh(c);
+        return previousItem;
+    }
+
+    /**
+     * inserts the item at its position in the sort order, behind all items that are equal to it
+     * @param item
+     * @return true
+     */
+    @Override
+    public boolean add(E item) {
+        Objects.requireNonNull(item);
+        this.insert(this.positionOf(item, true), item);
+        return true;
+    }
+
+    /**
+     * inserts the item at the index
+     * @throws IllegalArgumentException if the item does not fit at the index according to the sortOrder
+     */
+    @Override
+    public void add(int index, E item) {
+        Objects.checkIndex(index, this.size() + 1);
+        Objects.requireNonNull(item);
+        if (index > 0 && this.compare(this.get(index - 1), item) > 0
+                || index < this.size() && this.compare(item, this.get(index)) > 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Item '%s' does not fit at index %d of the ordered list", item, index));
+        }
+        this.insert(index, item);
+    }
+
+    /**
+     * adds all items, by a bulk load of the tree if more items are added than the list already holds
+     * @param items
+     * @return  whether any item was added
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> items) {
+        if (items.size() <= this.size()) {
+            return super.addAll(items);
+        }
+        Object[] allItems = new Object[this.size() + items.size()];
+        int n = 0;
+        for (E item : this) {
+            allItems[n++] = item;
+        }
+        for (E item : items) {
+            allItems[n++] = Objects.requireNonNull(item);
+        }
+        // the stable sort keeps the new items behind equal items that were in the list already
+        Arrays.sort(allItems, this::compare);
+        this.build(allItems);
+        return true;
+    }
+
+    private void insert(int index, E item) {
+        Node sibling = this.insert(this.root, index, item);
+        if (sibling != null) {
+            // the root has been split, so the tree grows one level
+            Inner newRoot = new Inner();
+            newRoot.children[0] = this.root;
+            newRoot.children[1] = sibling;
+            newRoot.count = 2;
+            newRoot.refresh(0);
+            newRoot.refresh(1);
+            newRoot.size = this.root.size + sibling.size;
+            this.root = newRoot;
+        }
+        this.modCount++;
+    }
+
+    /**
+     * inserts the item at the index in the subtree of the node
+     * @return  the new right sibling of the node if the node had to be split, or null otherwise
+     */
+    private Node insert(Node node, int index, E item) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            System.arraycopy(leaf.items, index, leaf.items, index + 1, leaf.size - index);
+            leaf.items[index] = item;
+            leaf.size++;
+            return leaf.size > LEAF_CAPACITY ? splitLeaf(leaf) : null;
+        }
+        Inner inner = (Inner)node;
+        int c = 0;
+        while (c < inner.count - 1 && index > inner.childSizes[c]) {
+            index -= inner.childSizes[c++];
+        }
+        Node sibling = this.insert(inner.children[c], index, item);
+        inner.size++;
+        inner.refresh(c);
+        if (sibling != null) {
+            insertChild(inner, c + 1, sibling);
+            return inner.count > INNER_CAPACITY ? splitInner(inner) : null;
+        }
+        return null;
+    }
+
+    private static Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int leftSize = leaf.size / 2;
+        right.size = leaf.size - leftSize;
+        System.arraycopy(leaf.items, leftSize, right.items, 0, right.size);
+        Arrays.fill(leaf.items, leftSize, leaf.size, null);
+        leaf.size = leftSize;
+        right.next = leaf.next;
+        leaf.next = right;
+        return right;
+    }
+
+    private static Inner splitInner(Inner inner) {
+        Inner right = new Inner();
+        int leftCount = inner.count / 2;
+        right.count = inner.count - leftCount;
+        System.arraycopy(inner.children, leftCount, right.children, 0, right.count);
+        System.arraycopy(inner.childSizes, leftCount, right.childSizes, 0, right.count);
+        System.arraycopy(inner.firstItems, leftCount, right.firstItems, 0, right.count);
+        Arrays.fill(inner.children, leftCount, inner.count, null);
+        Arrays.fill(inner.firstItems, leftCount, inner.count, null);
+        inner.count = leftCount;
+        right.size = sumOfChildSizes(right);
+        inner.size -= right.size;
+        return right;
+    }
+
+    private static void insertChild(Inner inner, int c, Node child) {
+        System.arraycopy(inner.children, c, inner.children, c + 1, inner.count - c);
+        System.arraycopy(inner.childSizes, c, inner.childSizes, c + 1, inner.count - c);
+        System.arraycopy(inner.firstItems, c, inner.firstItems, c + 1, inner.count - c);
+        inner.children[c] = child;
+        inner.count++;
+        inner.refresh(c);
+    }
+
+    private static void removeChild(Inner inner, int c) {
+        inner.count--;
+        System.arraycopy(inner.children, c + 1, inner.children, c, inner.count - c);
+        System.arraycopy(inner.childSizes, c + 1, inner.childSizes, c, inner.count - c);
+        System.arraycopy(inner.firstItems, c + 1, inner.firstItems, c, inner.count - c);
+        inner.children[inner.count] = null;
+        inner.firstItems[inner.count] = null;
+    }
+
+    private static int sumOfChildSizes(Inner inner) {
+        int size = 0;
+        for (int c = 0; c < inner.count; c++) {
+            size += inner.childSizes[c];
+        }
+        return size;
+    }
+
+    @Override
+    public E remove(int index) {
+        Objects.checkIndex(index, this.size());
+        E item = this.remove(this.root, index);
+        if (this.root instanceof Inner && ((Inner)this.root).count == 1) {
+            // the tree shrinks one level
+            this.root = ((Inner)this.root).children[0];
+        }
+        this.modCount++;
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E remove(Node node, int index) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf)node;
+            E item = (E)leaf.items[index];
+            System.arraycopy(leaf.items, index + 1, leaf.items, index, leaf.size - index - 1);
+            leaf.items[--leaf.size] = null;
+            return item;
+        }
+        Inner inner = (Inner)node;
+        int c = 0;
+        while (index >= inner.childSizes[c]) {
+            index -= inner.childSizes[c++];
+        }
+        E item = this.remove(inner.children[c], index);
+        inner.size--;
+        inner.refresh(c);
+        Node child = inner.children[c];
+        if (child instanceof Leaf ? child.size < LEAF_MINIMUM : ((Inner)child).count < INNER_MINIMUM) {
+            rebalance(inner, c);
+        }
+        return item;
+    }
+
+    /**
+     * merges the underfull child c with a sibling, or moves items from the sibling, such that both are half full
+     */
+    private static void rebalance(Inner inner, int c) {
+        if (inner.count < 2) {
+            return;
+        }
+        int left = c + 1 < inner.count ? c : c - 1;
+        int right = left + 1;
+        if (inner.children[left] instanceof Leaf) {
+            Leaf leftLeaf = (Leaf)inner.children[left];
+            Leaf rightLeaf = (Leaf)inner.children[right];
+            int total = leftLeaf.size + rightLeaf.size;
+            if (total <= LEAF_CAPACITY) {
+                System.arraycopy(rightLeaf.items, 0, leftLeaf.items, leftLeaf.size, rightLeaf.size);
+                leftLeaf.size = total;
+                leftLeaf.next = rightLeaf.next;
+                removeChild(inner, right);
+            } else {
+                Object[] items = new Object[total];
+                System.arraycopy(leftLeaf.items, 0, items, 0, leftLeaf.size);
+                System.arraycopy(rightLeaf.items, 0, items, leftLeaf.size, rightLeaf.size);
+                Arrays.fill(leftLeaf.items, null);
+                Arrays.fill(rightLeaf.items, null);
+                leftLeaf.size = total / 2;
+                rightLeaf.size = total - leftLeaf.size;
+                System.arraycopy(items, 0, leftLeaf.items, 0, leftLeaf.size);
+                System.arraycopy(items, leftLeaf.size, rightLeaf.items, 0, rightLeaf.size);
+                inner.refresh(right);
+            }
+        } else {
+            Inner leftInner = (Inner)inner.children[left];
+            Inner rightInner = (Inner)inner.children[right];
+            if (leftInner.count + rightInner.count <= INNER_CAPACITY) {
+                for (int r = 0; r < rightInner.count; r++) {
+                    leftInner.children[leftInner.count] = rightInner.children[r];
+                    leftInner.refresh(leftInner.count++);
+                }
+                leftInner.size += rightInner.size;
+                removeChild(inner, right);
+            } else {
+                // move children from the fuller to the emptier node, until both hold about the same number
+                while (leftInner.count < rightInner.count - 1) {
+                    leftInner.children[leftInner.count] = rightInner.children[0];
+                    leftInner.refresh(leftInner.count++);
+                    removeChild(rightInner, 0);
+                }
+                while (rightInner.count < leftInner.count - 1) {
+                    insertChild(rightInner, 0, leftInner.children[leftInner.count - 1]);
+                    removeChild(leftInner, leftInner.count - 1);
+                }
+                leftInner.size = sumOfChildSizes(leftInner);
+                rightInner.size = sumOfChildSizes(rightInner);
+                inner.refresh(right);
+            }
+        }
+        inner.refresh(left);
+    }
+
+    /**
+     * removes the first item that matches the given item by the sortOrder and by equals
+     * @param item
+     * @return  whether an item was removed
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object item) {
+        if (item == null) return false;
+        for (int index = this.positionOf((E)item, false);
+             index < this.size() && this.compare(this.get(index), item) == 0; index++) {
+            if (item.equals(this.get(index))) {
+                this.remove(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        this.root = new Leaf();
+        this.modCount++;
+    }
+
+    /**
+     * rebuilds the tree from all items in sorted order
+     * @param sortedItems
+     */
+    private void build(Object[] sortedItems) {
+        List<Node> level = new ArrayList<>();
+        int numberOfLeaves = Math.max(1, (sortedItems.length + LEAF_FILL - 1) / LEAF_FILL);
+        Leaf previousLeaf = null;
+        for (int l = 0; l < numberOfLeaves; l++) {
+            // spread the items evenly across the leaves
+            int from = (int)((long)sortedItems.length * l / numberOfLeaves);
+            int to = (int)((long)sortedItems.length * (l + 1) / numberOfLeaves);
+            Leaf leaf = new Leaf();
+            System.arraycopy(sortedItems, from, leaf.items, 0, to - from);
+            leaf.size = to - from;
+            if (previousLeaf != null) {
+                previousLeaf.next = leaf;
+            }
+            previousLeaf = leaf;
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>();
+            int numberOfParents = (level.size() + INNER_FILL - 1) / INNER_FILL;
+            for (int p = 0; p < numberOfParents; p++) {
+                int from = level.size() * p / numberOfParents;
+                int to = level.size() * (p + 1) / numberOfParents;
+                Inner inner = new Inner();
+                for (int c = from; c < to; c++) {
+                    inner.children[inner.count] = level.get(c);
+                    inner.refresh(inner.count++);
+                }
+                inner.size = sumOfChildSizes(inner);
+                parents.add(inner);
+            }
+            level = parents;
+        }
+        this.root = level.get(0);
+        this.modCount++;
+    }
+
+    /**
+     * the items are sorted at all times, so there is nothing to do
+     */
+    @Override
+    public void sort() {
+    }
+
+    /**
+     * re-sorts all items by a new sortOrder, which becomes the sortOrder of the list.
+     * The tree is only rebuilt if the items are not in the new sortOrder already,
+     * e.g. when an equivalent comparator is passed by a new method reference.
+     * @param sortOrder
+     */
+    @Override
+    public void sort(Comparator<? super E> sortOrder) {
+        if (sortOrder == this.sortOrder) {
+            return;
+        }
+        Object[] allItems = this.toArray();
+        this.sortOrder = sortOrder;
+        if (this.isSorted(allItems)) {
+            return;
+        }
+        Arrays.sort(allItems, this::compare);
+        this.build(allItems);
+    }
+
+    private boolean isSorted(Object[] items) {
+        for (int i = 1; i < items.length; i++) {
+            if (this.compare(items[i - 1], items[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * finds the position in the list of the first item that follows the searchItem in the sortOrder,
+     * or that follows or equals the searchItem if afterEqualItems is false
+     */
+    private int positionOf(E searchItem, boolean afterEqualItems) {
+        int threshold = afterEqualItems ? 0 : -1;
+        Node node = this.root;
+        int position = 0;
+        while (node instanceof Inner) {
+            Inner inner = (Inner)node;
+            // find the last child whose first item precedes the searchItem
+            int low = 1;
+            int high = inner.count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (this.compare(inner.firstItems[mid], searchItem) <= threshold) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            for (int c = 0; c < high; c++) {
+                position += inner.childSizes[c];
+            }
+            node = inner.children[Math.max(high, 0)];
+        }
+        Leaf leaf = (Leaf)node;
+        int low = 0;
+        int high = leaf.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.compare(leaf.items[mid], searchItem) <= threshold) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position + low;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object item) {
+        return item != null ? this.indexOfByBinarySearch((E)item) : -1;
+    }
+
+    @Override
+    public boolean contains(Object item) {
+        return this.indexOf(item) >= 0;
+    }
+
+    /**
+     * finds the position of the first item that matches the searchItem by the sortOrder
+     * @param searchItem
+     * @return  the position index of the found item, or -1 if no item matches the search item
+     */
+    @Override
+    public int indexOfByBinarySearch(E searchItem) {
+        if (searchItem == null) return -1;
+        int index = this.positionOf(searchItem, false);
+        return index < this.size() && this.compare(this.get(index), searchItem) == 0 ? index : -1;
+    }
+
+    /**
+     * finds a match of newItem in the list and replaces it by the outcome of the merger,
+     * or inserts the newItem if no match is found
+     * @param newItem
+     * @param merger    the merged item shall have the same position in the sortOrder as the matched item
+     * @return  whether a new item was added to the list or not
+     */
+    @Override
+    public boolean merge(E newItem, BinaryOperator<E> merger) {
+        if (newItem == null) return false;
+        int index = this.positionOf(newItem, false);
+        if (index < this.size()) {
+            E matchedItem = this.get(index);
+            if (this.compare(matchedItem, newItem) == 0) {
+                this.set(index, merger.apply(matchedItem, newItem));
+                return false;
+            }
+        }
+        this.insert(index, newItem);
+        return true;
+    }
+
+    @Override
+    public double aggregate(Function<E, Double> mapper) {
+        double sum = 0.0;
+        for (E item : this) {
+            sum += mapper.apply(item);
+        }
+        return sum;
+    }
+
+    /**
+     * iterates the items by following the chain of leaves
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private Leaf leaf;
+            private int offset;
+            private int cursor = 0;
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            {
+                this.seek(0);
+            }
+
+            private void seek(int index) {
+                Node node = root;
+                while (node instanceof Inner) {
+                    Inner inner = (Inner)node;
+                    int c = 0;
+                    while (c < inner.count - 1 && index >= inner.childSizes[c]) {
+                        index -= inner.childSizes[c++];
+                    }
+                    node = inner.children[c];
+                }
+                this.leaf = (Leaf)node;
+                this.offset = index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.cursor < size();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (this.cursor >= size()) {
+                    throw new NoSuchElementException();
+                }
+                while (this.offset >= this.leaf.size) {
+                    this.leaf = this.leaf.next;
+                    this.offset = 0;
+                }
+                this.lastReturned = this.cursor++;
+                return (E)this.leaf.items[this.offset++];
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                OrderedBTreeList.this.remove(this.lastReturned);
+                this.cursor = this.lastReturned;
+                this.lastReturned = -1;
+                this.expectedModCount = modCount;
+                this.seek(this.cursor);
+            }
+        };
+    }
+}
@@ -4,11 +4,51 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 public interface OrderedList<E> extends List<E> {
+    /**
+     * creates empty ordered lists, such that a client can choose the implementation of its lists,
+     * e.g. OrderedArrayList::new or OrderedBTreeList::new
+     */
+    interface Factory {
+        <E> OrderedList<E> create(Comparator<? super E> sortOrder);
+    }
+
     Comparator<? super E> getSortOrder();
     void sort();
     int indexOfByBinarySearch(E searchItem);
     boolean merge(E item, BinaryOperator<E> merger);
     double aggregate(Function<E,Double> mapper);
+
+    /**
+     * calculates the sum of the primitive contributions of all items, by compensated summation
+     * @param mapper    the contribution of every item
+     * @param parallel  whether the items may be summed concurrently by fork-join tasks
+     * @return  the sum of all contributions
+     */
+    default double aggregate(ToDoubleFunction<? super E> mapper, boolean parallel) {
+        return ListAggregator.sumAsDouble(this, List.of(mapper), parallel)[0];
+    }
+
+    /**
+     * calculates the exact sum of the integral contributions of all items
+     * @param mapper    the contribution of every item
+     * @param parallel  whether the items may be summed concurrently by fork-join tasks
+     * @return  the sum of all contributions
+     */
+    default long aggregateAsLong(ToLongFunction<? super E> mapper, boolean parallel) {
+        return ListAggregator.sumAsLong(this, mapper, parallel);
+    }
+
+    /**
+     * calculates several sums of contributions of the items in a single pass over the list
+     * @param mappers   the contributions of every item to each of the sums
+     * @param parallel  whether the items may be summed concurrently by fork-join tasks
+     * @return  the sums of all contributions, in the order of the mappers
+     */
+    default double[] aggregateAll(List<? extends ToDoubleFunction<? super E>> mappers, boolean parallel) {
+        return ListAggregator.sumAsDouble(this, mappers, parallel);
+    }
 }
@@ -0,0 +1,202 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a large registry of cars with multiple threads.
+ * The file is split into byte ranges that start at the beginning of a line and end after a line terminator.
+ * Every range is memory-mapped and parsed by MappedVaultParser into a run of cars, which is sorted by its own task.
+ * The sorted runs are k-way merged into the registry at the end, in the same order as a stable sort of all cars.
+ * The lines that cannot be parsed are collected per range, and are reported in the order of the file.
+ */
+class ParallelCarsLoader {
+    // every thread parses a few ranges, such that a slow range does not hold up the others
+    private static final int RANGES_PER_THREAD = 4;
+    // a range is mapped as a whole, and should be small enough to be mapped
+    private static final long MAX_RANGE_SIZE = 1L << 30;
+    static final long MIN_RANGE_SIZE = 1L << 16;
+    private static final int SCAN_BUFFER_SIZE = 4096;
+
+    /**
+     * the sorted cars and the bad lines of a range of the file
+     */
+    private static class Run {
+        final List<Car> cars = new ArrayList<>();
+        final List<String> badLines = new ArrayList<>();
+        MappedVaultParser.LineCounts lineCounts;
+        int next = 0;   // the position of the merge in the cars
+    }
+
+    /**
+     * parses all cars from a file with lines of format: licensePlate, emissionCategory, carType, fuelType, dateOfAdmission
+     * and adds them to the cars in sort order
+     * @param file
+     * @param parallelism   the number of worker threads
+     * @param sortOrder     the order of the cars, cars that are equal remain in the order of the file
+     * @param cars          receives all cars that could be parsed, in sort order
+     * @param badLines      receives all lines with content that could not be parsed, in the order of the file
+     * @return  the number of lines in the file, like importItemsFromFile counts them
+     */
+    static int loadCars(File file, int parallelism, Comparator<? super Car> sortOrder,
+                        List<Car> cars, List<String> badLines) {
+        return loadCars(file, parallelism, MIN_RANGE_SIZE, sortOrder, cars, badLines);
+    }
+
+    static int loadCars(File file, int parallelism, long minRangeSize, Comparator<? super Car> sortOrder,
+                        List<Car> cars, List<String> badLines) {
+        List<Run> runs;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] boundaries = rangeBoundaries(channel, parallelism, minRangeSize);
+            List<Callable<Run>> tasks = new ArrayList<>();
+            for (int r = 0; r + 1 < boundaries.length; r++) {
+                long from = boundaries[r];
+                long to = boundaries[r + 1];
+                tasks.add(() -> parseRun(channel, from, to, sortOrder));
+            }
+            runs = invokeAll(tasks, parallelism);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file on path: " + file.getPath(), e);
+        }
+
+        for (Run run : runs) {
+            badLines.addAll(run.badLines);
+        }
+        mergeRuns(runs, sortOrder, cars);
+        return numberOfLines(runs);
+    }
+
+    /**
+     * splits the file into ranges of about equal size, which end after a line terminator or at the end of the file
+     * @return  the start positions of the ranges, followed by the size of the file
+     */
+    private static long[] rangeBoundaries(FileChannel channel, int parallelism, long minRangeSize) throws IOException {
+        long fileSize = channel.size();
+        long numberOfRanges = Math.max((long)parallelism * RANGES_PER_THREAD, (fileSize + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+        numberOfRanges = Math.max(1, Math.min(numberOfRanges, fileSize / minRangeSize));
+        long rangeSize = (fileSize + numberOfRanges - 1) / numberOfRanges;
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long previous = 0;
+        ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        for (long r = 1; r < numberOfRanges; r++) {
+            // a range ends after the first line terminator at or beyond its nominal end
+            long boundary = Math.max(previous, r * rangeSize - 1);
+            boundary = nextLineStart(channel, boundary, scanBuffer);
+            if (boundary - previous > MAX_RANGE_SIZE) {
+                throw new IOException("Line longer than " + MAX_RANGE_SIZE + " bytes");
+            }
+            if (boundary >= fileSize) break;
+            if (boundary > previous) {
+                boundaries.add(boundary);
+                previous = boundary;
+            }
+        }
+        boundaries.add(fileSize);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return  the position after the first line terminator at or after the position, or the size of the file
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer scanBuffer) throws IOException {
+        while (true) {
+            scanBuffer.clear();
+            int length = channel.read(scanBuffer, position);
+            if (length <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < length; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += length;
+        }
+    }
+
+    private static Run parseRun(FileChannel channel, long from, long to, Comparator<? super Car> sortOrder)
+            throws IOException {
+        Run run = new Run();
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        run.lineCounts = MappedVaultParser.parseCars(buffer, run.cars::add, run.badLines::add);
+        run.cars.sort(sortOrder);
+        return run;
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks, int parallelism) {
+        List<T> results = new ArrayList<>();
+        ForkJoinPool pool = parallelism > 1 && tasks.size() > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            if (pool != null) {
+                for (Future<T> result : pool.invokeAll(tasks)) {
+                    results.add(result.get());
+                }
+            } else {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not load the cars", e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException("Could not load the cars", e);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * merges the sorted runs into the cars, equal cars are taken from the earliest run first
+     */
+    private static void mergeRuns(List<Run> runs, Comparator<? super Car> sortOrder, List<Car> cars) {
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, runs.size()), (r1, r2) -> {
+            int order = sortOrder.compare(runs.get(r1).cars.get(runs.get(r1).next), runs.get(r2).cars.get(runs.get(r2).next));
+            return order != 0 ? order : Integer.compare(r1, r2);
+        });
+        for (int r = 0; r < runs.size(); r++) {
+            if (!runs.get(r).cars.isEmpty()) {
+                heads.add(r);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int r = heads.poll();
+            Run run = runs.get(r);
+            cars.add(run.cars.get(run.next++));
+            if (run.next < run.cars.size()) {
+                heads.add(r);
+            }
+        }
+    }
+
+    /**
+     * @return  the number of lines in all runs, excluding the blank lines at the end of the file
+     */
+    private static int numberOfLines(List<Run> runs) {
+        int numberOfLines = 0;
+        for (Run run : runs) {
+            numberOfLines += run.lineCounts.numberOfLines;
+        }
+        for (int r = runs.size() - 1; r >= 0; r--) {
+            MappedVaultParser.LineCounts lineCounts = runs.get(r).lineCounts;
+            numberOfLines -= lineCounts.trailingBlankLines;
+            if (lineCounts.trailingBlankLines < lineCounts.numberOfLines) break;
+        }
+        return numberOfLines;
+    }
+}
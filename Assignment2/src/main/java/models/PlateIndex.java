@@ -0,0 +1,151 @@
+package models;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Hash index of cars by licensePlate, keyed by the codes of LicensePlateCodec in an open-addressing LongHashMap.
+ * License plates can be matched straight from the ASCII bytes in a buffer without creating a String.
+ * The few plates that cannot be encoded are kept in a regular map by String.
+ * Lookups are lock-free, new cars are added under a lock.
+ * The index may be backed by a MappedCarRegistry, whose cars are added to the index as views on their first lookup,
+ * such that only the registered cars that are actually detected are brought onto the heap.
+ */
+class PlateIndex {
+    private final LongHashMap<Car> carsByPlateCode;
+    private final ConcurrentHashMap<String, Car> carsByLicensePlate = new ConcurrentHashMap<>();
+    private final MappedCarRegistry registry;   // the registered cars that are not in the index yet, or null
+
+    PlateIndex(Iterable<Car> cars) {
+        this(cars, null);
+    }
+
+    /**
+     * @param cars
+     * @param registry  the registry of the cars that are not in the index, or null
+     */
+    PlateIndex(Iterable<Car> cars, MappedCarRegistry registry) {
+        this.registry = registry;
+        int expectedSize = cars instanceof Collection ? ((Collection<Car>)cars).size() : 16;
+        this.carsByPlateCode = new LongHashMap<>(expectedSize);
+        for (Car car : cars) {
+            // the first car with a given licensePlate is the one that will be found
+            if (car.getPlateCode() != LicensePlateCodec.NOT_ENCODABLE) {
+                this.carsByPlateCode.computeIfAbsent(car.getPlateCode(), code -> car);
+            } else {
+                this.carsByLicensePlate.putIfAbsent(car.getLicensePlate(), car);
+            }
+        }
+    }
+
+    /**
+     * finds the car with the ASCII encoded licensePlate at positions from <= index < to of the buffer
+     * @param buffer
+     * @param from
+     * @param to
+     * @return  the car, or null if no car with the licensePlate is in the index,
+     *          or if the licensePlate cannot be encoded
+     */
+    Car find(ByteBuffer buffer, int from, int to) {
+        long plateCode = LicensePlateCodec.encode(buffer, from, to);
+        if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+            return null;
+        }
+        Car car = this.carsByPlateCode.get(plateCode);
+        return car != null || this.registry == null ? car : this.findRegistered(plateCode, null);
+    }
+
+    /**
+     * finds the car with the given licensePlate
+     * @param licensePlate
+     * @return  the car, or null if no car with the licensePlate is in the index
+     */
+    Car find(String licensePlate) {
+        long plateCode = LicensePlateCodec.encode(licensePlate);
+        Car car = plateCode != LicensePlateCodec.NOT_ENCODABLE
+                ? this.carsByPlateCode.get(plateCode)
+                : this.carsByLicensePlate.get(licensePlate);
+        return car != null || this.registry == null ? car : this.findRegistered(plateCode, licensePlate);
+    }
+
+    /**
+     * finds the car with the license plate of the given car, by its plateCode without decoding the plate
+     * @param car
+     * @return  the car in the index, or null if no car with the license plate is in the index
+     */
+    Car find(Car car) {
+        long plateCode = car.getPlateCode();
+        Car indexedCar = plateCode != LicensePlateCodec.NOT_ENCODABLE
+                ? this.carsByPlateCode.get(plateCode)
+                : this.carsByLicensePlate.get(car.getLicensePlate());
+        return indexedCar != null || this.registry == null
+                ? indexedCar
+                : this.findRegistered(plateCode, plateCode == LicensePlateCodec.NOT_ENCODABLE ? car.getLicensePlate() : null);
+    }
+
+    /**
+     * finds the car with the license plate of the given car, or adds the given car to the index
+     * @param car
+     * @return  the car in the index with the license plate, which is the given car if it was added
+     */
+    synchronized Car findOrAdd(Car car) {
+        long plateCode = car.getPlateCode();
+        Car registeredCar = this.registry != null
+                ? this.findRegistered(plateCode, plateCode == LicensePlateCodec.NOT_ENCODABLE ? car.getLicensePlate() : null)
+                : null;
+        if (registeredCar != null) {
+            return registeredCar;
+        }
+        if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+            return this.carsByLicensePlate.computeIfAbsent(car.getLicensePlate(), licensePlate -> car);
+        }
+        return this.carsByPlateCode.computeIfAbsent(plateCode, code -> car);
+    }
+
+    /**
+     * finds the car with the given licensePlate, or adds the car that is provided by the carCreator
+     * @param licensePlate
+     * @param carCreator    provides the car for a licensePlate that is not in the index yet
+     * @return  the car with the licensePlate
+     */
+    synchronized Car findOrAdd(String licensePlate, Function<String, Car> carCreator) {
+        long plateCode = LicensePlateCodec.encode(licensePlate);
+        Car registeredCar = this.registry != null ? this.findRegistered(plateCode, licensePlate) : null;
+        if (registeredCar != null) {
+            return registeredCar;
+        }
+        if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+            return this.carsByLicensePlate.computeIfAbsent(licensePlate, carCreator);
+        }
+        return this.carsByPlateCode.computeIfAbsent(plateCode, code -> carCreator.apply(licensePlate));
+    }
+
+    /**
+     * finds the car in the index, or else in the registry, in which case the view of the car is added to the index
+     * @param plateCode
+     * @param licensePlate  the license plate, which is needed if the plateCode is LicensePlateCodec.NOT_ENCODABLE
+     * @return  the car, or null if it is neither in the index nor in the registry
+     */
+    private synchronized Car findRegistered(long plateCode, String licensePlate) {
+        if (plateCode != LicensePlateCodec.NOT_ENCODABLE) {
+            Car car = this.carsByPlateCode.get(plateCode);
+            if (car == null) {
+                car = this.registry.find(plateCode);
+                if (car != null) {
+                    this.carsByPlateCode.put(plateCode, car);
+                }
+            }
+            return car;
+        }
+        Car car = this.carsByLicensePlate.get(licensePlate);
+        if (car == null) {
+            car = this.registry.find(licensePlate);
+            if (car != null) {
+                this.carsByLicensePlate.put(licensePlate, car);
+            }
+        }
+        return car;
+    }
+}
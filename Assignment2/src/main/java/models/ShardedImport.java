@@ -0,0 +1,198 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator and worker of a sharded import of the detections vault over several local worker processes,
+ * which stand in for the nodes of a cluster.
+ * The coordinator starts a JVM per shard on the same class path, which imports the cars and its share of
+ * the detections with its own TrafficTracker, and writes its partial violation table as an ImportCheckpoint
+ * into its own folder of the work folder. The coordinator waits for all workers, and reads back their tables
+ * for the merge into the final violations.
+ *
+ * The vault is partitioned by its files, or by the hash of the license plates:
+ *  FILES       every worker imports every numberOfShards-th detection file, in the order of the sequential import
+ *  PLATE_HASH  every worker reads and parses the whole vault, but only counts the offences of the cars
+ *              of its own hash partition, such that the partial tables of the workers do not overlap.
+ *              The parsing is not divided over the workers, only the lookups and counting of the offences.
+ * Workers apply the zone rules, deduplication window, parser and import parallelism of the worker settings,
+ * which are passed on their command line, and do not retain or time the detections.
+ * Repeats are suppressed exactly with PLATE_HASH only, as every car is then checked by a single worker.
+ */
+public class ShardedImport {
+    public enum Partitioning { FILES, PLATE_HASH }
+
+    static final String LOG_FILE_NAME = "worker.log";
+    // the options of the worker settings, after the positional arguments of main
+    private static final String RULE_OPTION = "-rule";
+    private static final String ZONE_OPTION = "-zone";
+    private static final String WINDOW_OPTION = "-window";
+    private static final String MAPPED_OPTION = "-mapped";
+    private static final String PARALLELISM_OPTION = "-parallelism";
+
+    private final String carsResourceName;
+    private final String detectionsResourceName;
+    private final Partitioning partitioning;
+    private final List<String> workerOptions = new ArrayList<>();   // the settings of the workers
+
+    /**
+     * @param carsResourceName          the resource of the registered cars, see TrafficTracker.importCarsFromVault
+     * @param detectionsResourceName    the resource of the detections vault
+     * @param partitioning
+     */
+    public ShardedImport(String carsResourceName, String detectionsResourceName, Partitioning partitioning) {
+        this.carsResourceName = carsResourceName;
+        this.detectionsResourceName = detectionsResourceName;
+        this.partitioning = partitioning;
+    }
+
+    /**
+     * selects the settings of the trackers of the workers, see the corresponding setters of TrafficTracker
+     * @param zoneRules             the rules of the zones, which are passed as ZoneRule text lines
+     * @param zone                  the zone of the detections
+     * @param deduplicationWindow   the window of repeat detections, or null to count every detection
+     * @param mappedParsing
+     * @param importParallelism     the number of import threads of every worker
+     */
+    public void setWorkerSettings(ZoneRules zoneRules, String zone, Duration deduplicationWindow,
+                                  boolean mappedParsing, int importParallelism) {
+        this.workerOptions.clear();
+        for (ZoneRule rule : zoneRules.getRules()) {
+            String line = rule.toLine();
+            if (ZoneRule.fromLine(line) == null) {
+                throw new IllegalArgumentException("The zone rule cannot be passed to the workers: " + rule);
+            }
+            this.workerOptions.add(RULE_OPTION);
+            this.workerOptions.add(line);
+        }
+        this.workerOptions.add(ZONE_OPTION);
+        this.workerOptions.add(zone);
+        if (deduplicationWindow != null) {
+            this.workerOptions.add(WINDOW_OPTION);
+            this.workerOptions.add(deduplicationWindow.toString());
+        }
+        if (mappedParsing) {
+            this.workerOptions.add(MAPPED_OPTION);
+        }
+        this.workerOptions.add(PARALLELISM_OPTION);
+        this.workerOptions.add(String.valueOf(importParallelism));
+    }
+
+    /**
+     * runs a worker process per shard and waits until all have completed
+     * @param numberOfShards
+     * @param workFolder    the folder that receives a sub folder with the partial table and the log of every worker
+     * @return  the partial tables of the shards, with the license plates of their cars only
+     */
+    public List<ImportCheckpoint.Snapshot> run(int numberOfShards, File workFolder) {
+        if (numberOfShards < 1) {
+            throw new IllegalArgumentException("numberOfShards should be at least 1, not " + numberOfShards);
+        }
+        String javaCommand = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<Process> workers = new ArrayList<>(numberOfShards);
+        try {
+            for (int shard = 0; shard < numberOfShards; shard++) {
+                File shardFolder = shardFolder(workFolder, shard);
+                if (!shardFolder.isDirectory() && !shardFolder.mkdirs()) {
+                    throw new RuntimeException("Could not create folder on path: " + shardFolder.getPath());
+                }
+                ImportCheckpoint.delete(shardFolder);
+                List<String> command = new ArrayList<>(List.of(javaCommand,
+                        "-cp", System.getProperty("java.class.path"), ShardedImport.class.getName(),
+                        this.carsResourceName, this.detectionsResourceName, this.partitioning.name(),
+                        String.valueOf(shard), String.valueOf(numberOfShards), shardFolder.getAbsolutePath()));
+                command.addAll(this.workerOptions);
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.redirectErrorStream(true);
+                builder.redirectOutput(new File(shardFolder, LOG_FILE_NAME));
+                workers.add(builder.start());
+            }
+
+            List<ImportCheckpoint.Snapshot> partialTables = new ArrayList<>(numberOfShards);
+            for (int shard = 0; shard < numberOfShards; shard++) {
+                int exitValue = workers.get(shard).waitFor();
+                File shardFolder = shardFolder(workFolder, shard);
+                ImportCheckpoint.Snapshot partialTable = ImportCheckpoint.read(shardFolder);
+                if (exitValue != 0 || partialTable == null) {
+                    throw new RuntimeException(String.format("Could not import shard %d, exit value %d, see %s",
+                            shard, exitValue, new File(shardFolder, LOG_FILE_NAME).getPath()));
+                }
+                partialTables.add(partialTable);
+            }
+            return partialTables;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start the workers of the sharded import", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the workers of the sharded import", e);
+        } finally {
+            for (Process worker : workers) {
+                if (worker.isAlive()) {
+                    worker.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    private static File shardFolder(File workFolder, int shard) {
+        return new File(workFolder, "shard-" + shard);
+    }
+
+    /**
+     * @param car
+     * @param numberOfShards
+     * @return  the shard of the hash partition of the license plate of the car
+     */
+    static int shardOf(Car car, int numberOfShards) {
+        long plateCode = car.getPlateCode();
+        int hash = plateCode != LicensePlateCodec.NOT_ENCODABLE ? Long.hashCode(plateCode * 0x9E3779B97F4A7C15L)
+                : car.getLicensePlate().hashCode();
+        return Math.floorMod(hash, numberOfShards);
+    }
+
+    /**
+     * the worker of a shard
+     * @param args  carsResourceName, detectionsResourceName, partitioning, shard, numberOfShards, shardFolder,
+     *              followed by the options of the worker settings
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.err.println("Usage: ShardedImport carsResource detectionsResource FILES|PLATE_HASH shard numberOfShards shardFolder"
+                    + " [-rule zoneRuleLine]... [-zone zone] [-window duration] [-mapped] [-parallelism n]");
+            System.exit(2);
+        }
+        Partitioning partitioning = Partitioning.valueOf(args[2]);
+        int shard = Integer.parseInt(args[3]);
+        int numberOfShards = Integer.parseInt(args[4]);
+
+        long startNanos = System.nanoTime();
+        TrafficTracker trafficTracker = new TrafficTracker();
+        List<ZoneRule> rules = new ArrayList<>();
+        String zone = ZoneRule.PURPLE.getZone();
+        for (int a = 6; a < args.length; a++) {
+            switch (args[a]) {
+                case RULE_OPTION -> rules.add(Objects.requireNonNull(ZoneRule.fromLine(args[++a]), args[a]));
+                case ZONE_OPTION -> zone = args[++a];
+                case WINDOW_OPTION -> trafficTracker.setDeduplicationWindow(Duration.parse(args[++a]));
+                case MAPPED_OPTION -> trafficTracker.setMappedParsing(true);
+                case PARALLELISM_OPTION -> trafficTracker.setImportParallelism(Integer.parseInt(args[++a]));
+                default -> throw new IllegalArgumentException("Unknown option of the worker: " + args[a]);
+            }
+        }
+        trafficTracker.importCarsFromVault(args[0]);
+        if (!rules.isEmpty()) {
+            trafficTracker.setZoneRules(new ZoneRules(rules), zone);
+        }
+        ImportCheckpoint.Snapshot partialTable = trafficTracker.importShard(args[1], partitioning, shard, numberOfShards);
+        ImportCheckpoint.write(new File(args[5]), partialTable);
+        System.out.printf("Shard %d of %d: %d files, %d violations in %d ms.\n", shard, numberOfShards,
+                partialTable.getCompletedFiles().size(), partialTable.getViolations().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+}
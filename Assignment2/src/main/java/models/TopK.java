@@ -0,0 +1,76 @@
+package models;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Selects the top K groups of items with the largest weights, without sorting all groups.
+ * The items are grouped by their key in one pass over a hash map, combining the items of a group into an aggregate,
+ * and the K heaviest aggregates are then selected by a bounded min-heap, in O(n + g log K) for g groups.
+ * Groups of equal weight are ranked by the first appearance of their key among the items.
+ */
+public class TopK {
+
+    // the aggregate of a group, and the rank of the first appearance of its key
+    private static class Group<T> {
+        T aggregate;
+        final int appearance;
+
+        Group(T aggregate, int appearance) {
+            this.aggregate = aggregate;
+            this.appearance = appearance;
+        }
+    }
+
+    /**
+     * @param items         the items to be grouped
+     * @param groupingKey   the key of the group of each item, which may be null
+     * @param combiner      combines the aggregate of a group with a next item of the group into a new aggregate;
+     *                      a group of a single item has that item itself as its aggregate
+     * @param weight        the weight of an aggregate by which the groups are ranked
+     * @param k             the maximum number of groups in the result
+     * @return  the aggregates of the top k groups by decreasing weight
+     */
+    public static <T, K> List<T> select(Iterable<T> items, Function<? super T, K> groupingKey,
+                                        BinaryOperator<T> combiner, ToLongFunction<? super T> weight, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+
+        Map<K, Group<T>> groups = new HashMap<>();
+        for (T item : items) {
+            K key = groupingKey.apply(item);
+            Group<T> group = groups.get(key);
+            if (group == null) {
+                groups.put(key, new Group<>(item, groups.size()));
+            } else {
+                group.aggregate = combiner.apply(group.aggregate, item);
+            }
+        }
+
+        // ranks the groups from top to bottom
+        Comparator<Group<T>> ranking = Comparator
+                .comparingLong((Group<T> group) -> -weight.applyAsLong(group.aggregate))
+                .thenComparingInt(group -> group.appearance);
+        // the heap holds the top groups found so far, with the lowest ranked group at its head
+        PriorityQueue<Group<T>> topGroups = new PriorityQueue<>(Math.min(k, groups.size()) + 1, ranking.reversed());
+        for (Group<T> group : groups.values()) {
+            if (topGroups.size() < k) {
+                topGroups.add(group);
+            } else if (ranking.compare(group, topGroups.peek()) < 0) {
+                topGroups.poll();
+                topGroups.add(group);
+            }
+        }
+
+        List<Group<T>> sortedGroups = new ArrayList<>(topGroups);
+        sortedGroups.sort(ranking);
+        List<T> result = new ArrayList<>(sortedGroups.size());
+        for (Group<T> group : sortedGroups) {
+            result.add(group.aggregate);
+        }
+        return result;
+    }
+}
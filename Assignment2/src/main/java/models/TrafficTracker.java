@@ -3,20 +3,69 @@ package models;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class TrafficTracker {
     private final String TRAFFIC_FILE_EXTENSION = ".txt";
     private final String TRAFFIC_FILE_PATTERN = ".+\\" + TRAFFIC_FILE_EXTENSION;
+    private static final int SEGMENT_BLOCKS_PER_TASK = 16;   // the blocks of a segment that a worker decodes at once
 
     private OrderedList<Car> cars;                  // the reference list of all known Cars registered by the RDW
+    private MappedCarRegistry carRegistry = null;   // the registered cars off the heap, if enabled
     private OrderedList<Violation> violations;      // the accumulation of all offences by car and by city
+    private final CityDictionary cities = new CityDictionary();  // the small int ids of all cities found in detections
+    // the offences count by car and by city, counted by the imports as they find the offences, locked by themselves
+    private final Leaderboard<Car> carLeaderboard = new Leaderboard<>();
+    private final Leaderboard<String> cityLeaderboard = new Leaderboard<>();
+    private ViolationIndex violationIndex = null;   // the violations by other keys, built by the first query
+    // the offences counts for the last week by the hour and for the last year by the day, if enabled
+    private OffenceTimeline<Car> hourlyOffencesByCar = null;
+    private OffenceTimeline<Car> dailyOffencesByCar = null;
+    private OffenceTimeline<String> hourlyOffencesByCity = null;
+    private OffenceTimeline<String> dailyOffencesByCity = null;
+    // the approximate offences counts of the most offending cars and cities in fixed memory, if enabled
+    private HeavyHitters<Car> offendingCars = null;
+    private HeavyHitters<String> offendingCities = null;
+    private DetectionStore detectionStore = null;   // retains all raw detections, if enabled
+    private DetectionDeduplicator deduplicator = null;  // suppresses repeat detections, if enabled
+    private ImportMetrics metrics = null;           // measures the imports of detection files, if enabled
+    private ZoneRules zoneRules = ZoneRules.PURPLE; // the rules of the zones, compiled into bitmasks of the cars
+    private String offenderZone = ZoneRule.PURPLE.getZone();    // the zone of the detections
+    private Predicate<Car> offenderFilter = ZoneRules.PURPLE.offenderFilter(ZoneRule.PURPLE.getZone());
+    private int importParallelism = 1;              // the number of worker threads that import the detection files
+    private boolean mappedParsing = false;          // whether vault files are parsed by the memory-mapped parser
+    private boolean pipelinedImport = false;        // whether the detections are imported by a staged pipeline
+    private volatile DetectionPipeline detectionPipeline = null;  // the pipeline of the last pipelined import
+    private File checkpointFolder = null;           // the folder of the checkpoints of the imports, if enabled
+    private int filesPerCheckpoint = 0;             // the number of imported files between two checkpoints
+    private ImportCheckpoint importCheckpoint = null;   // the checkpoints of the last checkpointed import
+    private String carsResourceName = null;         // the resource of the registered cars, for the workers of shards
+    private int numberOfShards = 0;                 // the number of worker processes of a sharded import, if enabled
+    private ShardedImport.Partitioning shardPartitioning = ShardedImport.Partitioning.FILES;
+    private File shardsFolder = null;               // the work folder of the worker processes
 
     public TrafficTracker() {
+        this(OrderedArrayList::new);
+    }
+
+    /**
+     * @param listFactory   creates the ordered lists of the cars and the violations
+     */
+    public TrafficTracker(OrderedList.Factory listFactory) {
         // Initialize cars with an empty ordered list which sorts items by licensePlate.
-        this.cars = new OrderedArrayList<>(Comparator.comparing(Car::getLicensePlate));
-        this.violations = new OrderedArrayList<>(Violation::compareByLicensePlateAndCity);
+        this.cars = listFactory.create(Car::compareTo);
+        this.violations = listFactory.create(Violation.LICENSE_PLATE_AND_CITY_ORDER);
     }
 
     /**
@@ -25,38 +74,223 @@ public class TrafficTracker {
      */
     public void importCarsFromVault(String resourceName) {
         this.cars.clear();
+        this.carsResourceName = resourceName;
         // load all cars from the text file
-        int numberOfLines = importItemsFromFile(this.cars,
-                createFileFromURL(TrafficTracker.class.getResource(resourceName)),
-                Car::fromLine);
+        File file = createFileFromURL(TrafficTracker.class.getResource(resourceName));
+        int numberOfLines;
+        if (this.importParallelism > 1) {
+            numberOfLines = this.importCarsInParallel(file);
+        } else {
+            numberOfLines = this.mappedParsing
+                    ? MappedVaultParser.parseCars(file, this.cars::add)
+                    : importItemsFromFile(this.cars, file, Car::fromLine);
+        }
 
         // sort the cars for efficient later retrieval
         this.cars.sort();
+        this.zoneRules.compile(this.cars);
 
         System.out.printf("Imported %d cars from %d lines in %s.\n", this.cars.size(), numberOfLines, resourceName);
     }
 
+    /**
+     * loads the cars with importParallelism worker threads, which parse newline-aligned ranges of the file
+     * into sorted runs that are merged into this.cars; the lines that could not be parsed are reported once
+     * @param file
+     * @return  the number of lines in the file
+     */
+    private int importCarsInParallel(File file) {
+        List<Car> loadedCars = new ArrayList<>();
+        List<String> badLines = new ArrayList<>();
+        int numberOfLines = ParallelCarsLoader.loadCars(file, this.importParallelism, this.cars.getSortOrder(),
+                loadedCars, badLines);
+        // the merged runs are in sort order already, such that sorting them is a single pass
+        this.cars.addAll(loadedCars);
+        if (!badLines.isEmpty()) {
+            System.out.printf("Could not parse %d Car specifications, the first in text line '%s'\n",
+                    badLines.size(), badLines.get(0));
+        }
+        return numberOfLines;
+    }
+
     /**
      * imports and merges all raw detection data of all entry gates of all cities from the hierarchical file structure of the vault
-     * accumulates any offences against purple rules into this.violations
+     * accumulates any offences against the zone rule, the purple rule by default, into this.violations
      * @param resourceName
      */
     public void importDetectionsFromVault(String resourceName) {
+        this.importDetectionsFromVault(resourceName, false);
+    }
+
+    /**
+     * resumes an import of the detections vault from the last checkpoint in the checkpoint folder,
+     * which skips the files that had been completed at the checkpoint, see setCheckpointing.
+     * Without a checkpoint, all files are imported.
+     * The timelines, retained detections and repeat detections only cover the files imported after the checkpoint.
+     * @param resourceName
+     */
+    public void resumeDetectionsFromVault(String resourceName) {
+        if (this.checkpointFolder == null) {
+            throw new IllegalStateException("Checkpointing is not enabled");
+        }
+        this.importDetectionsFromVault(resourceName, true);
+    }
+
+    private void importDetectionsFromVault(String resourceName, boolean resume) {
         this.violations.clear();
+        this.violationIndex = null;
+        this.clearOffenceCounts();
+        this.clearDetections();
 
-        int totalNumberOfOffences =
-            this.mergeDetectionsFromVaultRecursively(
-                    createFileFromURL(TrafficTracker.class.getResource(resourceName)));
+        if (this.carRegistry != null && this.numberOfShards > 0) {
+            // the workers import the cars resource themselves
+            throw new IllegalStateException("A mapped car registry cannot be combined with shards");
+        }
+        if (this.checkpointFolder != null && (this.pipelinedImport || this.numberOfShards > 0)) {
+            // the pipeline and the shards do not report the files that they have completed
+            throw new IllegalStateException("Checkpoints cannot be combined with a pipelined or sharded import");
+        }
+        if (this.offendingCars != null && (this.checkpointFolder != null || this.numberOfShards > 0)) {
+            // checkpoints and shards pass the exact violations, which approximate imports do not count
+            throw new IllegalStateException("Approximate leaderboards cannot be combined with checkpoints or shards");
+        }
+        File vault = createFileFromURL(TrafficTracker.class.getResource(resourceName));
+        ViolationTable newViolations = this.checkpointFolder != null
+                ? this.mergeDetectionsFromVaultWithCheckpoints(vault, resume)
+                : this.numberOfShards > 0
+                ? this.mergeDetectionsFromShards(resourceName)
+                : this.pipelinedImport
+                ? this.mergeDetectionsFromVaultInPipeline(vault)
+                : this.importParallelism > 1
+                ? this.mergeDetectionsFromVaultInParallel(vault)
+                : this.mergeDetectionsFromVaultRecursively(vault);
+
+        int totalNumberOfOffences = this.collectViolations(newViolations);
 
         System.out.printf("Found %d offences among detections imported from files in %s.\n",
                 totalNumberOfOffences, resourceName);
     }
 
+    /**
+     * imports all registered cars and all raw detection data from a folder of binary segments,
+     * which has been compacted from the vault by VaultSegments.convert,
+     * with the same results as importCarsFromVault and importDetectionsFromVault on the text files of the vault.
+     * The segments are memory-mapped and their blocks are decoded by importParallelism worker threads.
+     * @param segmentsFolder
+     */
+    public void importSegmentsFromFolder(File segmentsFolder) {
+        Car[] carsByRank = VaultSegments.readCars(segmentsFolder);
+        this.cars.clear();
+        this.cars.addAll(Arrays.asList(carsByRank));
+        this.cars.sort();
+        this.zoneRules.compile(this.cars);
+
+        this.violations.clear();
+        this.violationIndex = null;
+        this.clearOffenceCounts();
+        this.clearDetections();
+        List<VaultSegments.Segment> segments = VaultSegments.openDetectionSegments(segmentsFolder);
+        ViolationTable newViolations = this.mergeDetectionsFromSegments(segments, carsByRank);
+        int totalNumberOfOffences = this.collectViolations(newViolations);
+
+        System.out.printf("Found %d offences among detections of %d cars imported from %d segments in %s.\n",
+                totalNumberOfOffences, carsByRank.length, segments.size(), segmentsFolder.getPath());
+    }
+
+    /**
+     * adds the new violations to this.violations, whose offences have been counted in the leaderboards already
+     * @param newViolations
+     * @return the total number of offences of the new violations
+     */
+    private int collectViolations(ViolationTable newViolations) {
+        int totalNumberOfOffences = 0;
+        for (Violation violation : newViolations) {
+            this.violations.add(violation);
+            totalNumberOfOffences += violation.getOffencesCount();
+        }
+        // merge the new violations into the sorted violations of earlier imports
+        this.violations.sort();
+        return totalNumberOfOffences;
+    }
+
+    /**
+     * imports all raw detection data from the hierarchical file structure of the vault, like importDetectionsFromVault,
+     * and keeps watching the vault for new and appended detection files.
+     * Only the new content of the files is imported, and its offences are merged into this.violations incrementally.
+     * Cars are matched with this.cars as it is at the start of watching.
+     * Queries of this tracker are synchronised with the imports of the watcher.
+     * @param vault     the root folder of the detections vault
+     * @return the watcher, which shall be closed to stop watching
+     */
+    public VaultWatcher watchDetectionsVault(File vault) {
+        synchronized (this) {
+            this.violations.clear();
+            this.violationIndex = null;
+            this.clearOffenceCounts();
+            this.clearDetections();
+        }
+        PlateIndex plates = this.newPlateIndex();
+        Function<String, Car> carCreator = licensePlate -> {
+            Car newCar = new Car(licensePlate);
+            this.cars.add(newCar);
+            return newCar;
+        };
+        ViolationTable watchedViolations = this.newViolationTable();
+        VaultWatcher watcher = new VaultWatcher(vault.toPath(), TRAFFIC_FILE_PATTERN,
+                buffer -> this.mergeDetectionsFromBuffer(buffer, plates, carCreator, watchedViolations));
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * merges the offences among the detections in the lines between the position and the limit of the buffer
+     * into the watchedViolations and adds any new violations to this.violations
+     * @return the number of offences found
+     */
+    private synchronized int mergeDetectionsFromBuffer(ByteBuffer buffer, PlateIndex plates,
+                                                       Function<String, Car> carCreator, ViolationTable watchedViolations) {
+        int numberOfViolations = watchedViolations.size();
+        int[] totalNumberOfOffences = {0};
+        DetectionStore.Appender retainedDetections = this.detectionStore != null ? this.detectionStore.appender() : null;
+        MappedVaultParser.parseDetections(buffer, plates, carCreator, this.cities, (car, cityId, epochSecond) -> {
+            if (this.deduplicator != null && !this.deduplicator.accept(car, cityId, epochSecond)) {
+                return;
+            }
+            if (retainedDetections != null) {
+                retainedDetections.add(car, cityId, epochSecond);
+            }
+            if (this.offenderFilter.test(car)) {
+                watchedViolations.addOffence(car, cityId);
+                this.recordOffence(car, this.cities.nameOf(cityId), epochSecond);
+                totalNumberOfOffences[0]++;
+            }
+        });
+        if (retainedDetections != null) {
+            retainedDetections.flush();
+        }
+        List<Violation> newViolations = watchedViolations.getViolations().subList(numberOfViolations, watchedViolations.size());
+        this.violations.addAll(newViolations);
+        if (this.violationIndex != null) {
+            this.violationIndex.addAll(newViolations);
+        }
+        // merge the new violations into the sorted violations, without sorting these again
+        this.violations.sort();
+        return totalNumberOfOffences[0];
+    }
+
     /**
      * traverses the detections vault recursively and processes every data file that it finds
-     * @param file
+     * @param vault
+     * @return the table of all violations found in the vault
      */
-    private int mergeDetectionsFromVaultRecursively(File file) {
+    private ViolationTable mergeDetectionsFromVaultRecursively(File vault) {
+        DetectionFileImporter importer = this.createDetectionFileImporter(this.cars::add);
+        ViolationTable newViolations = this.newViolationTable();
+        this.mergeDetectionsFromVaultRecursively(vault, importer, newViolations);
+        return newViolations;
+    }
+
+    private int mergeDetectionsFromVaultRecursively(File file, DetectionFileImporter importer, ViolationTable violations) {
         int totalNumberOfOffences = 0;
 
         if (file.isDirectory()) {
@@ -65,65 +299,714 @@ public class TrafficTracker {
             File[] filesInDirectory = Objects.requireNonNullElse(file.listFiles(), new File[0]);
 
             for (File subFile : filesInDirectory) {
-                totalNumberOfOffences += mergeDetectionsFromVaultRecursively(subFile);
+                totalNumberOfOffences += mergeDetectionsFromVaultRecursively(subFile, importer, violations);
             }
         } else if (file.getName().matches(TRAFFIC_FILE_PATTERN)) {
             // the file is a regular file that matches the target pattern for raw detection files
-            // process the content of this file and merge the offences found into this.violations
-            totalNumberOfOffences += this.mergeDetectionsFromFile(file);
+            // process the content of this file and merge the offences found into the violations
+            totalNumberOfOffences += importer.mergeDetectionsFromFile(file, violations);
         }
 
         return totalNumberOfOffences;
     }
 
     /**
-     * imports another batch detection data from the filePath text file
-     * and merges the offences into the earlier imported and accumulated violations
+     * traverses the detections vault with importParallelism worker threads that parse and validate
+     * the data files concurrently into partial violation tables, which are merged at the end.
+     * Unknown cars that are found in the detections are added to this.cars once, like with the sequential import.
+     * @param vault
+     * @return the table of all violations found in the vault
+     */
+    private ViolationTable mergeDetectionsFromVaultInParallel(File vault) {
+        // unknown cars are created once by the workers and added to this.cars after the import
+        Queue<Car> unknownCars = new ConcurrentLinkedQueue<>();
+        DetectionFileImporter importer = this.createDetectionFileImporter(unknownCars::add);
+
+        ForkJoinPool pool = new ForkJoinPool(this.importParallelism);
+        try {
+            return pool.invoke(new VaultImportTask(vault, TRAFFIC_FILE_PATTERN, importer, this::newViolationTable));
+        } finally {
+            pool.shutdown();
+            this.cars.addAll(unknownCars);
+        }
+    }
+
+    /**
+     * imports the detection files of the vault in groups of filesPerCheckpoint files, in the order of
+     * mergeDetectionsFromVaultRecursively, and hands the violations of every group to the checkpoint,
+     * which accumulates them and writes a checkpoint in the background.
+     * The files of a group are imported by importParallelism threads, into a table per file.
+     * A resumed import starts from the violations and unknown cars of the last checkpoint, and skips the files that
+     * it lists. If any of these files has changed since, the checkpoint is discarded and the import starts over,
+     * as the offences of the old content of the file cannot be told apart in the checkpoint.
+     * @param vault
+     * @param resume    whether to continue from the last checkpoint, instead of starting over
+     * @return the table of all violations found in the vault
+     */
+    private ViolationTable mergeDetectionsFromVaultWithCheckpoints(File vault, boolean resume) {
+        List<File> files = new ArrayList<>();
+        this.collectDetectionFiles(vault, files);
+        ViolationTable restoredViolations = new ViolationTable(this.cities);
+        List<Car> restoredCars = new ArrayList<>();
+
+        ImportCheckpoint.Snapshot snapshot = resume ? ImportCheckpoint.read(this.checkpointFolder) : null;
+        if (snapshot != null) {
+            for (ImportCheckpoint.CompletedFile completedFile : snapshot.getCompletedFiles()) {
+                if (!completedFile.isUnchangedIn(vault)) {
+                    System.out.printf("Could not resume from the checkpoint, file '%s' has changed since\n",
+                            completedFile.getPath());
+                    snapshot = null;
+                    break;
+                }
+            }
+        }
+        if (snapshot != null) {
+            this.restoreSnapshot(snapshot, this.newPlateIndex(), restoredViolations, restoredCars);
+        } else {
+            ImportCheckpoint.delete(this.checkpointFolder);
+        }
+        Set<String> skippedFiles = new HashSet<>();
+        if (snapshot != null) {
+            snapshot.getCompletedFiles().forEach(completedFile -> skippedFiles.add(completedFile.getPath()));
+        }
+        List<File> remainingFiles = new ArrayList<>();
+        for (File file : files) {
+            if (!skippedFiles.contains(ImportCheckpoint.CompletedFile.of(vault, file).getPath())) {
+                remainingFiles.add(file);
+            }
+        }
+
+        // unknown cars are collected per group, and added to this.cars after every group
+        Queue<Car> unknownCars = new ConcurrentLinkedQueue<>();
+        DetectionFileImporter importer = this.createDetectionFileImporter(unknownCars::add);
+        ImportCheckpoint checkpoint = new ImportCheckpoint(this.checkpointFolder,
+                snapshot != null ? snapshot.getCompletedFiles() : List.of(), restoredCars, restoredViolations);
+        this.importCheckpoint = checkpoint;
+        ForkJoinPool pool = this.importParallelism > 1 ? new ForkJoinPool(this.importParallelism) : null;
+        // a failure to write the checkpoint is added to a failure of the import as a suppressed exception
+        try (checkpoint) {
+            for (int from = 0; from < remainingFiles.size() || from == 0 && snapshot == null; from += this.filesPerCheckpoint) {
+                List<File> group = remainingFiles.subList(from, Math.min(from + this.filesPerCheckpoint, remainingFiles.size()));
+                ViolationTable groupViolations = new ViolationTable(this.cities);
+                List<ImportCheckpoint.CompletedFile> completedFiles = new ArrayList<>();
+                if (pool != null) {
+                    pool.submit(() -> group.parallelStream().map(file -> {
+                        ViolationTable fileViolations = new ViolationTable(this.cities);
+                        importer.mergeDetectionsFromFile(file, fileViolations);
+                        return fileViolations;
+                    }).forEachOrdered(groupViolations::mergeAll)).join();
+                } else {
+                    for (File file : group) {
+                        importer.mergeDetectionsFromFile(file, groupViolations);
+                    }
+                }
+                for (File file : group) {
+                    completedFiles.add(ImportCheckpoint.CompletedFile.of(vault, file));
+                }
+                List<Car> groupCars = new ArrayList<>(unknownCars);
+                unknownCars.clear();
+                this.cars.addAll(groupCars);
+                // the checkpoint takes ownership of the table of the group, which is not changed anymore here
+                checkpoint.submit(completedFiles, groupCars, groupViolations);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return checkpoint.getViolations();
+    }
+
+    /**
+     * merges the cars and the violations of a snapshot into the violations table, with the known cars
+     * @param snapshot
+     * @param plates        the index of this.cars, which receives the unknown cars of the snapshot
+     * @param violations
+     * @param unknownCars   receives the unknown cars of the snapshot that were not known yet
+     */
+    private void restoreSnapshot(ImportCheckpoint.Snapshot snapshot, PlateIndex plates, ViolationTable violations,
+                                 List<Car> unknownCars) {
+        // restore the unknown cars first, such that the violations and later detections find them
+        for (Car car : snapshot.getUnknownCars()) {
+            if (plates.findOrAdd(car) == car) {
+                this.cars.add(car);
+                unknownCars.add(car);
+            }
+        }
+        for (Violation violation : snapshot.getViolations()) {
+            Car car = plates.find(violation.getCar());
+            Violation restoredViolation = new Violation(car != null ? car : violation.getCar(), violation.getCity());
+            restoredViolation.setOffencesCount(violation.getOffencesCount());
+            violations.merge(restoredViolation);
+            this.countInLeaderboards(restoredViolation.getCar(), restoredViolation.getCity(),
+                    restoredViolation.getOffencesCount());
+        }
+    }
+
+    /**
+     * imports the detections vault by numberOfShards worker processes, see ShardedImport,
+     * and merges their partial violation tables
+     * @param resourceName
+     * @return the table of all violations found in the vault
+     */
+    private ViolationTable mergeDetectionsFromShards(String resourceName) {
+        if (this.carsResourceName == null) {
+            throw new IllegalStateException("The cars shall be imported from the vault before a sharded import");
+        }
+        if (this.deduplicator != null && this.shardPartitioning != ShardedImport.Partitioning.PLATE_HASH) {
+            // the repeats of a car in a city are only recognised if all its detections are checked by one worker
+            throw new IllegalStateException("Repeat detections can only be suppressed by a sharded import partitioned by "
+                    + ShardedImport.Partitioning.PLATE_HASH);
+        }
+        ShardedImport shardedImport = new ShardedImport(this.carsResourceName, resourceName, this.shardPartitioning);
+        shardedImport.setWorkerSettings(this.zoneRules, this.offenderZone,
+                this.deduplicator != null ? this.deduplicator.getWindow() : null,
+                this.mappedParsing, this.importParallelism);
+        List<ImportCheckpoint.Snapshot> partialTables = shardedImport.run(this.numberOfShards, this.shardsFolder);
+
+        ViolationTable newViolations = new ViolationTable(this.cities);
+        PlateIndex plates = this.newPlateIndex();
+        List<Car> unknownCars = new ArrayList<>();
+        for (ImportCheckpoint.Snapshot partialTable : partialTables) {
+            this.restoreSnapshot(partialTable, plates, newViolations, unknownCars);
+        }
+        return newViolations;
+    }
+
+    /**
+     * imports the share of a worker process of a sharded import into a partial violation table
+     * @param resourceName  the detections vault
+     * @param partitioning
+     * @param shard         the shard of this worker, 0 <= shard < numberOfShards
+     * @param numberOfShards
+     * @return  the partial table, with the detection files that have been read and the unknown cars that were found
+     */
+    ImportCheckpoint.Snapshot importShard(String resourceName, ShardedImport.Partitioning partitioning,
+                                          int shard, int numberOfShards) {
+        File vault = createFileFromURL(TrafficTracker.class.getResource(resourceName));
+        List<File> files = new ArrayList<>();
+        this.collectDetectionFiles(vault, files);
+
+        // unknown cars are created once by the importer and added to this.cars after the import
+        Queue<Car> unknownCars = new ConcurrentLinkedQueue<>();
+        Predicate<Car> offenderFilter = partitioning == ShardedImport.Partitioning.PLATE_HASH
+                ? this.offenderFilter.and(car -> ShardedImport.shardOf(car, numberOfShards) == shard)
+                : this.offenderFilter;
+        DetectionFileImporter importer = this.createDetectionFileImporter(unknownCars::add, offenderFilter);
+        List<File> shardFiles = new ArrayList<>();
+        List<ImportCheckpoint.CompletedFile> completedFiles = new ArrayList<>();
+        for (int f = 0; f < files.size(); f++) {
+            if (partitioning == ShardedImport.Partitioning.FILES && f % numberOfShards != shard) continue;
+            shardFiles.add(files.get(f));
+            completedFiles.add(ImportCheckpoint.CompletedFile.of(vault, files.get(f)));
+        }
+
+        ViolationTable violations = new ViolationTable(this.cities);
+        if (this.importParallelism > 1) {
+            // the files are imported concurrently into partial tables, like by mergeDetectionsFromVaultInParallel
+            ForkJoinPool pool = new ForkJoinPool(this.importParallelism);
+            try {
+                pool.submit(() -> shardFiles.parallelStream().map(file -> {
+                    ViolationTable fileViolations = new ViolationTable(this.cities);
+                    importer.mergeDetectionsFromFile(file, fileViolations);
+                    return fileViolations;
+                }).forEachOrdered(violations::mergeAll)).join();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (File file : shardFiles) {
+                importer.mergeDetectionsFromFile(file, violations);
+            }
+        }
+        this.cars.addAll(unknownCars);
+        if (partitioning == ShardedImport.Partitioning.PLATE_HASH) {
+            // every worker meets all unknown cars, but only ships those of its own partition
+            unknownCars.removeIf(car -> ShardedImport.shardOf(car, numberOfShards) != shard);
+        }
+        return new ImportCheckpoint.Snapshot(completedFiles, new ArrayList<>(unknownCars), violations.getViolations());
+    }
+
+    /**
+     * imports the detection files of the vault through a DetectionPipeline, with importParallelism parser threads.
+     * The pipeline validates and aggregates the detections in the order of the sequential import,
+     * so the violations, timelines and retained detections are the same.
+     * Unknown cars that are found in the detections are added to this.cars after the import.
+     * @param vault
+     * @return the table of all violations found in the vault
+     */
+    private ViolationTable mergeDetectionsFromVaultInPipeline(File vault) {
+        List<File> files = new ArrayList<>();
+        this.collectDetectionFiles(vault, files);
+
+        Queue<Car> unknownCars = new ConcurrentLinkedQueue<>();
+        Function<String, Car> carFinder = carFinder(this.newPlateIndex(), licensePlate -> {
+            Car newCar = new Car(licensePlate);
+            unknownCars.add(newCar);
+            return newCar;
+        });
+        DetectionStore.Appender retainedDetections = this.detectionStore != null ? this.detectionStore.appender() : null;
+        DetectionDeduplicator deduplicator = this.deduplicator;
+        ViolationTable newViolations = this.newViolationTable();
+
+        DetectionPipeline pipeline = new DetectionPipeline(this.importParallelism,
+                DetectionPipeline.DEFAULT_BATCH_SIZE, 4 * (this.importParallelism + 2));
+        this.detectionPipeline = pipeline;
+        try {
+            pipeline.run(files, line -> Detection.fromLine(line, carFinder),
+                    deduplicator != null ? deduplicator::accept : null, this.offenderFilter,
+                    (detections, offences) -> {
+                        if (retainedDetections != null) {
+                            detections.forEach(retainedDetections::add);
+                        }
+                        for (int d = offences.nextSetBit(0); d >= 0; d = offences.nextSetBit(d + 1)) {
+                            Detection detection = detections.get(d);
+                            newViolations.merge(new Violation(detection.getCar(), detection.getCity()));
+                            this.recordOffence(detection.getCar(), detection.getCity(),
+                                    detection.getDateTime().toEpochSecond(ZoneOffset.UTC));
+                        }
+                    });
+        } finally {
+            if (retainedDetections != null) {
+                retainedDetections.flush();
+            }
+            this.cars.addAll(unknownCars);
+        }
+        return newViolations;
+    }
+
+    /**
+     * collects the detection files of the vault in the order of mergeDetectionsFromVaultRecursively
      * @param file
+     * @param files
+     */
+    private void collectDetectionFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            for (File subFile : Objects.requireNonNullElse(file.listFiles(), new File[0])) {
+                this.collectDetectionFiles(subFile, files);
+            }
+        } else if (file.getName().matches(TRAFFIC_FILE_PATTERN)) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * decodes all blocks of the detection segments, in ranges of SEGMENT_BLOCKS_PER_TASK blocks.
+     * With an importParallelism above 1 the ranges are decoded concurrently into partial violation tables,
+     * which are merged in order of time at the end.
+     * Unknown cars that are found in the detections are added to this.cars once, like with the text import.
+     * @param segments
+     * @param carsByRank    the registered cars of the segments by rank
+     * @return the table of all violations found in the segments
+     */
+    private ViolationTable mergeDetectionsFromSegments(List<VaultSegments.Segment> segments, Car[] carsByRank) {
+        Queue<Car> unknownCars = new ConcurrentLinkedQueue<>();
+        PlateIndex unknownPlates = new PlateIndex(List.of());
+        Function<String, Car> carCreator = licensePlate -> {
+            Car newCar = new Car(licensePlate);
+            unknownCars.add(newCar);
+            return newCar;
+        };
+        DetectionStore detectionStore = this.detectionStore;
+        DetectionDeduplicator deduplicator = this.deduplicator;
+        Predicate<Car> offenderFilter = this.offenderFilter;
+        List<Callable<ViolationTable>> tasks = new ArrayList<>();
+        for (VaultSegments.Segment segment : segments) {
+            for (int from = 0; from < segment.getNumberOfBlocks(); from += SEGMENT_BLOCKS_PER_TASK) {
+                int fromBlock = from;
+                int toBlock = Math.min(segment.getNumberOfBlocks(), from + SEGMENT_BLOCKS_PER_TASK);
+                tasks.add(() -> {
+                    ViolationTable violations = this.newViolationTable();
+                    mergeDetectionsFromSegment(segment, fromBlock, toBlock, violations, carsByRank, unknownPlates,
+                            carCreator, this.cities, offenderFilter, this::recordOffence, detectionStore, deduplicator);
+                    return violations;
+                });
+            }
+        }
+
+        ViolationTable newViolations = this.newViolationTable();
+        ForkJoinPool pool = this.importParallelism > 1 ? new ForkJoinPool(this.importParallelism) : null;
+        try {
+            if (pool != null) {
+                for (Future<ViolationTable> partialViolations : pool.invokeAll(tasks)) {
+                    newViolations.mergeAll(partialViolations.get());
+                }
+            } else {
+                for (Callable<ViolationTable> task : tasks) {
+                    newViolations.mergeAll(task.call());
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not import the segments", e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException("Could not import the segments", e);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            this.cars.addAll(unknownCars);
+        }
+        return newViolations;
+    }
+
+    /**
+     * decodes the blocks fromBlock <= b < toBlock of a detection segment
+     * and merges the offences into the given table of violations
+     * @param segment
+     * @param fromBlock
+     * @param toBlock
+     * @param violations    the table of violations
+     * @param carsByRank    the registered cars of the segment by rank
+     * @param plates        the index of the cars that are not registered
+     * @param carCreator    provides a car for a licensePlate that is not in the plates index yet
+     * @param cities        the dictionary of the cities
+     * @param offenderFilter    selects the cars whose detections are offences
+     * @param offences      records the time of every offence
+     * @param detectionStore    retains all detections, or null
+     * @param deduplicator      suppresses repeat detections, or null
+     * @return the number of offences found in the blocks
+     */
+    static int mergeDetectionsFromSegment(VaultSegments.Segment segment, int fromBlock, int toBlock,
+                                          ViolationTable violations, Car[] carsByRank, PlateIndex plates,
+                                          Function<String, Car> carCreator, CityDictionary cities,
+                                          Predicate<? super Car> offenderFilter, OffenceRecorder offences,
+                                          DetectionStore detectionStore, DetectionDeduplicator deduplicator) {
+        int[] totalNumberOfOffences = {0};
+        DetectionStore.Appender retainedDetections = detectionStore != null ? detectionStore.appender() : null;
+        segment.decodeBlocks(fromBlock, toBlock, carsByRank, plates, carCreator, cities, (car, cityId, epochSecond) -> {
+            if (deduplicator != null && !deduplicator.accept(car, cityId, epochSecond)) {
+                return;
+            }
+            if (retainedDetections != null) {
+                retainedDetections.add(car, cityId, epochSecond);
+            }
+            if (offenderFilter.test(car)) {
+                violations.addOffence(car, cityId);
+                offences.record(car, cities.nameOf(cityId), epochSecond);
+                totalNumberOfOffences[0]++;
+            }
+        });
+        if (retainedDetections != null) {
+            retainedDetections.flush();
+        }
+        return totalNumberOfOffences[0];
+    }
+
+    /**
+     * imports the detections of a single file and merges the offences into a table of violations
+     */
+    interface DetectionFileImporter {
+        /**
+         * @param file
+         * @param violations    the table of violations
+         * @return the number of offences found in the file
+         */
+        int mergeDetectionsFromFile(File file, ViolationTable violations);
+    }
+
+    /**
+     * records the time of an offence of a car in a city
+     */
+    interface OffenceRecorder {
+        void record(Car car, String city, long epochSecond);
+    }
+
+    /**
+     * counts the offence in the heavy hitters if enabled,
+     * or else in the leaderboards and in the timelines of the car and the city if enabled
+     * @param car
+     * @param city
+     * @param epochSecond   the local date time of the offence as epoch seconds at offset UTC
+     */
+    private void recordOffence(Car car, String city, long epochSecond) {
+        HeavyHitters<Car> offendingCars = this.offendingCars;
+        HeavyHitters<String> offendingCities = this.offendingCities;
+        if (offendingCars != null && offendingCities != null) {
+            offendingCars.increase(car, 1);
+            offendingCities.increase(city, 1);
+            return;
+        }
+        this.countInLeaderboards(car, city, 1);
+        if (this.hourlyOffencesByCar != null) {
+            this.hourlyOffencesByCar.record(car, epochSecond);
+            this.dailyOffencesByCar.record(car, epochSecond);
+            this.hourlyOffencesByCity.record(city, epochSecond);
+            this.dailyOffencesByCity.record(city, epochSecond);
+        }
+    }
+
+    /**
+     * @return  a new table of violations, which does not count the violations if the leaderboards are approximate
+     */
+    private ViolationTable newViolationTable() {
+        return new ViolationTable(this.cities, this.offendingCars == null);
+    }
+
+    /**
+     * clears the retained detections and the accepted detections of the deduplicator of an earlier import
+     */
+    private void clearDetections() {
+        if (this.detectionStore != null) {
+            this.detectionStore.clear();
+        }
+        if (this.deduplicator != null) {
+            this.deduplicator.clear();
+        }
+    }
+
+    /**
+     * adds offences of a car in a city to the leaderboards, which concurrent imports may count into at the same time
+     * @param car
+     * @param city
+     * @param numberOfOffences
+     */
+    private void countInLeaderboards(Car car, String city, long numberOfOffences) {
+        synchronized (this.carLeaderboard) {
+            this.carLeaderboard.increase(car, numberOfOffences);
+        }
+        synchronized (this.cityLeaderboard) {
+            this.cityLeaderboard.increase(city, numberOfOffences);
+        }
+    }
+
+    /**
+     * clears the leaderboards, the timelines and the heavy hitters of the offences of an earlier import
+     */
+    private void clearOffenceCounts() {
+        synchronized (this.carLeaderboard) {
+            this.carLeaderboard.clear();
+        }
+        synchronized (this.cityLeaderboard) {
+            this.cityLeaderboard.clear();
+        }
+        if (this.hourlyOffencesByCar != null) {
+            this.hourlyOffencesByCar.clear();
+            this.dailyOffencesByCar.clear();
+            this.hourlyOffencesByCity.clear();
+            this.dailyOffencesByCity.clear();
+        }
+        if (this.offendingCars != null) {
+            this.offendingCars.clear();
+            this.offendingCities.clear();
+        }
+    }
+
+    /**
+     * creates an importer of detection files, that matches the license plates of the detections with this.cars
+     * using the configured parser. The importer is thread-safe, as long as every thread uses its own table.
+     * @param unknownCars   receives every new Car that is created for a licensePlate that was not known yet
+     * @return the importer
+     */
+    private DetectionFileImporter createDetectionFileImporter(Consumer<Car> unknownCars) {
+        return this.createDetectionFileImporter(unknownCars, this.offenderFilter);
+    }
+
+    /**
+     * @param unknownCars
+     * @param offenderFilter    selects the cars whose detections are offences
+     * @return the importer
+     */
+    private DetectionFileImporter createDetectionFileImporter(Consumer<Car> unknownCars, Predicate<Car> offenderFilter) {
+        PlateIndex plates = this.newPlateIndex();
+        DetectionStore detectionStore = this.detectionStore;
+        DetectionDeduplicator deduplicator = this.deduplicator;
+        Function<String, Car> carCreator = licensePlate -> {
+            Car newCar = new Car(licensePlate);
+            unknownCars.accept(newCar);
+            return newCar;
+        };
+
+        if (this.mappedParsing) {
+            return measured(this.metrics, (file, violations, probe) ->
+                    mergeMappedDetectionsFromFile(file, violations, plates, carCreator, this.cities, offenderFilter,
+                            this::recordOffence, detectionStore, deduplicator, probe));
+        }
+        Function<String, Car> carFinder = carFinder(plates, carCreator);
+        return measured(this.metrics, (file, violations, probe) -> {
+            // the probe counts the unknown plates of its file
+            Function<String, Car> fileCarFinder = probe != null
+                    ? probe.timed(ImportMetrics.Stage.LOOKUP, carFinder(plates, probe.counting(carCreator))) : carFinder;
+            return mergeDetectionsFromFile(file, violations, line -> Detection.fromLine(line, fileCarFinder),
+                    offenderFilter, this::recordOffence, detectionStore, deduplicator, probe);
+        });
+    }
+
+    /**
+     * @return  the index of this.cars for the lookups of the detections, backed by the car registry if it is set
      */
-    private int mergeDetectionsFromFile(File file) {
-        this.violations.sort(Violation::compareByLicensePlateAndCity);
+    private PlateIndex newPlateIndex() {
+        return new PlateIndex(this.cars, this.carRegistry);
+    }
+
+    /**
+     * @return  the function that finds the car of a licensePlate in the plates index, or adds a new car to it
+     */
+    private static Function<String, Car> carFinder(PlateIndex plates, Function<String, Car> carCreator) {
+        return licensePlate -> {
+            Car car = plates.find(licensePlate);
+            return car != null ? car : plates.findOrAdd(licensePlate, carCreator);
+        };
+    }
+
+    /**
+     * imports the detections of a single file, measured by the probe of the file
+     */
+    private interface ProbedFileImporter {
+        int mergeDetectionsFromFile(File file, ViolationTable violations, ImportMetrics.FileProbe probe);
+    }
+
+    /**
+     * @param metrics   the metrics of the imports, or null
+     * @param importer
+     * @return  the importer that measures every file with its own probe and adds it to the metrics
+     */
+    private static DetectionFileImporter measured(ImportMetrics metrics, ProbedFileImporter importer) {
+        if (metrics == null) {
+            return (file, violations) -> importer.mergeDetectionsFromFile(file, violations, null);
+        }
+        return (file, violations) -> {
+            ImportMetrics.FileProbe probe = metrics.startFile(file);
+            int numberOfOffences = importer.mergeDetectionsFromFile(file, violations, probe);
+            metrics.finishFile(probe);
+            return numberOfOffences;
+        };
+    }
+
+    /**
+     * imports a batch of detection data from the file
+     * and merges the offences into the given table of violations
+     * @param file
+     * @param violations    the table of violations
+     * @param parser        converts a text line into a detection, or null if the line is corrupt
+     * @param offenderFilter    selects the cars whose detections are offences
+     * @param offences      records the time of every offence
+     * @param detectionStore    retains all detections, or null
+     * @param deduplicator      suppresses repeat detections, or null
+     * @param probe         the measurements of the file, or null
+     * @return the number of offences found in the file
+     */
+    static int mergeDetectionsFromFile(File file, ViolationTable violations, Function<String, Detection> parser,
+                                       Predicate<? super Car> offenderFilter, OffenceRecorder offences,
+                                       DetectionStore detectionStore, DetectionDeduplicator deduplicator,
+                                       ImportMetrics.FileProbe probe) {
         List<Detection> newDetections = new ArrayList<>();
-        importItemsFromFile(newDetections, file, line -> Detection.fromLine(line, cars));
+        int numberOfLines = importItemsFromFile(newDetections, file,
+                probe != null ? probe.timed(ImportMetrics.Stage.PARSE, parser) : parser);
+        long nanos = 0;
+        if (probe != null) {
+            probe.lines = numberOfLines;
+            probe.detections = newDetections.size();
+            // the parser has looked up the cars, the remaining time has been spent reading the lines
+            probe.stageNanos[ImportMetrics.Stage.PARSE.ordinal()] -= probe.stageNanos[ImportMetrics.Stage.LOOKUP.ordinal()];
+            nanos = probe.lapRemainder(ImportMetrics.Stage.READ);
+        }
+        if (deduplicator != null) {
+            newDetections.removeIf(detection -> !deduplicator.accept(detection));
+            if (probe != null) nanos = probe.lap(ImportMetrics.Stage.VALIDATE, nanos);
+        }
+        if (detectionStore != null) {
+            DetectionStore.Appender retainedDetections = detectionStore.appender();
+            newDetections.forEach(retainedDetections::add);
+            retainedDetections.flush();
+            if (probe != null) nanos = probe.lap(ImportMetrics.Stage.AGGREGATE, nanos);
+        }
         int totalNumberOfOffences = 0;
         for (Detection detection : newDetections) {
-            Violation newViolation = detection.validatePurple();
-            if (newViolation != null) {
-                boolean violationExists = false;
-                for (Violation existingViolation : this.violations) {
-                    if (existingViolation.getCar().equals(newViolation.getCar()) &&
-                            existingViolation.getCity().equals(newViolation.getCity())) {
-                        Violation combinedViolation = existingViolation.combineOffencesCounts(newViolation);
-                        existingViolation.setOffencesCount(combinedViolation.getOffencesCount());
-                        violationExists = true;
-                        break;
-                    }
-                }
-                if (!violationExists) {
-                    this.violations.add(newViolation);
-                }
+            boolean offence = offenderFilter.test(detection.getCar());
+            if (probe != null) nanos = probe.lap(ImportMetrics.Stage.VALIDATE, nanos);
+            if (offence) {
+                violations.merge(new Violation(detection.getCar(), detection.getCity()));
+                offences.record(detection.getCar(), detection.getCity(), detection.getDateTime().toEpochSecond(ZoneOffset.UTC));
                 totalNumberOfOffences++;
+                if (probe != null) nanos = probe.lap(ImportMetrics.Stage.AGGREGATE, nanos);
             }
         }
+        if (probe != null) {
+            probe.offences = totalNumberOfOffences;
+        }
         return totalNumberOfOffences;
     }
 
+    /**
+     * imports a batch of detection data from the file with the memory-mapped parser
+     * and merges the offences into the given table of violations
+     * Detection instances are not created, the zone rule is checked on the car directly.
+     * @param file
+     * @param violations    the table of violations
+     * @param plates        the index of known cars by licensePlate
+     * @param carCreator    provides a car for a licensePlate that is not in the plates index yet
+     * @param cities        the dictionary of the cities
+     * @param offenderFilter    selects the cars whose detections are offences
+     * @param offences      records the time of every offence
+     * @param detectionStore    retains all detections, or null
+     * @param deduplicator      suppresses repeat detections, or null
+     * @param probe         the measurements of the file, or null
+     * @return the number of offences found in the file
+     */
+    static int mergeMappedDetectionsFromFile(File file, ViolationTable violations, PlateIndex plates,
+                                             Function<String, Car> carCreator, CityDictionary cities,
+                                             Predicate<? super Car> offenderFilter, OffenceRecorder offences,
+                                             DetectionStore detectionStore, DetectionDeduplicator deduplicator,
+                                             ImportMetrics.FileProbe probe) {
+        int[] totalNumberOfOffences = {0};
+        DetectionStore.Appender retainedDetections = detectionStore != null ? detectionStore.appender() : null;
+        int numberOfLines = MappedVaultParser.parseDetections(file, plates,
+                probe != null ? probe.counting(carCreator) : carCreator, cities, (car, cityId, epochSecond) -> {
+            long nanos = probe != null ? System.nanoTime() : 0;
+            if (deduplicator != null && !deduplicator.accept(car, cityId, epochSecond)) {
+                if (probe != null) probe.lap(ImportMetrics.Stage.VALIDATE, nanos);
+                return;
+            }
+            boolean offence = offenderFilter.test(car);
+            if (probe != null) nanos = probe.lap(ImportMetrics.Stage.VALIDATE, nanos);
+            if (retainedDetections != null) {
+                retainedDetections.add(car, cityId, epochSecond);
+            }
+            if (offence) {
+                violations.addOffence(car, cityId);
+                offences.record(car, cities.nameOf(cityId), epochSecond);
+                totalNumberOfOffences[0]++;
+            }
+            if (probe != null) probe.lap(ImportMetrics.Stage.AGGREGATE, nanos);
+        }, probe);
+        if (retainedDetections != null) {
+            retainedDetections.flush();
+        }
+        if (probe != null) {
+            probe.lines = numberOfLines;
+            probe.offences = totalNumberOfOffences[0];
+            // the mapped parser reads and parses in a single scan
+            probe.lapRemainder(ImportMetrics.Stage.PARSE);
+        }
+        return totalNumberOfOffences[0];
+    }
+
     /**
      * calculates the total revenue of fines from all violations,
      * Trucks pay €25 per offence, Coaches €35 per offence
      * @return      the total amount of money recovered from all violations
      */
-    public double calculateTotalFines() {
-        return this.violations.aggregate(violation -> {
-            Car.CarType carType = violation.getCar().getCarType();
-            int offencesCount = violation.getOffencesCount();
-            if (carType == Car.CarType.Truck) {
-                return (double) (25 * offencesCount);
-            } else if (carType == Car.CarType.Coach) {
-                return (double) (35 * offencesCount);
-            }
-            return 0.0; // return 0 if the car type is neither Truck nor Coach
-        });
+    public synchronized double calculateTotalFines() {
+        return this.violations.aggregate(TrafficTracker::fineOf, true);
+    }
+
+    /**
+     * calculates the total revenues of fines from all violations by several fine schemes,
+     * in a single pass over the violations
+     * @param schemes   the candidate schemes, e.g. FineScheme.STANDARD and variations of it
+     * @return      the total amount of money recovered from all violations, in the order of the schemes
+     */
+    public synchronized double[] calculateTotalFines(List<FineScheme> schemes) {
+        return new FineSchemeEvaluator(schemes).evaluate(this.violations, true);
+    }
+
+    /**
+     * calculates the fine of a violation by the standard scheme
+     * @param violation
+     * @return  the fine of all offences of the violation
+     */
+    static double fineOf(Violation violation) {
+        return FineScheme.STANDARD.fineOf(violation);
     }
 
 
@@ -134,19 +1017,7 @@ public class TrafficTracker {
      * @return              a list of topNum items that provides the top aggregated violations
      */
     public List<Violation> topViolationsByCar(int topNumber) {
-        OrderedList<Violation> mergedViolationsByCar = new OrderedArrayList<>(Comparator.comparing(Violation::getCar));
-        for (Violation v : this.violations) {
-            mergedViolationsByCar.merge(v, (v1, v2) -> {
-                v1.setOffencesCount(v1.getOffencesCount() + v2.getOffencesCount());
-                return v1;
-            });
-        }
-
-        //sort the new list by decreasing offencesCount.
-        mergedViolationsByCar.sort((v1, v2) -> Integer.compare(v2.getOffencesCount(), v1.getOffencesCount()));
-
-        //use .subList to return only the topNumber of violations from the sorted list
-        return mergedViolationsByCar.subList(0, Math.min(topNumber, mergedViolationsByCar.size()));
+        return this.topViolationsBy(Violation::getCar, topNumber);
     }
 
     /**
@@ -156,21 +1027,184 @@ public class TrafficTracker {
      * @return              a list of topNum items that provides the top aggregated violations
      */
     public List<Violation> topViolationsByCity(int topNumber) {
-        //merge all violations from this.violations into a new OrderedArrayList
-        //which orders and aggregates violations by city
-        OrderedList<Violation> mergedViolationsByCity = new OrderedArrayList<>(Comparator.comparing(Violation::getCity));
-        for (Violation v : this.violations) {
-            mergedViolationsByCity.merge(v, (v1, v2) -> {
-                v1.setOffencesCount(v1.getOffencesCount() + v2.getOffencesCount());
-                return v1;
-            });
+        return this.topViolationsBy(Violation::getCity, topNumber);
+    }
+
+    /**
+     * Prepares a list of topNumber of violations that show the highest offencesCount
+     * when this.violations are aggregated by any grouping criterion, e.g. v -> v.getCar().getFuelType().
+     * Violations are aggregated by combineOffencesCounts, such that this.violations are not changed,
+     * and the car and city of an aggregate are only retained if all its violations share them.
+     * Groups with equal offencesCount are ranked by their first appearance in this.violations.
+     * @param groupingKey   the key of the group of each violation
+     * @param topNumber     the requested top number of violations in the result list
+     * @return              a list of topNum items that provides the top aggregated violations
+     */
+    public synchronized List<Violation> topViolationsBy(Function<Violation, ?> groupingKey, int topNumber) {
+        return TopK.select(this.violations, groupingKey, Violation::combineOffencesCounts,
+                Violation::getOffencesCount, topNumber);
+    }
+
+    /**
+     * Provides the top cars with the highest offencesCount across all cities from the live leaderboard,
+     * which is counted by the imports as they find the offences, without aggregating this.violations again.
+     * It can be read while an import is running. Cars with equal counts are ranked by their first offence counted.
+     * @param topNumber     the requested top number of violations in the result list
+     * @return              the top cars with their offences counts, from the top down
+     */
+    public List<Map.Entry<Car, Long>> leadingViolationsByCar(int topNumber) {
+        synchronized (this.carLeaderboard) {
+            return this.carLeaderboard.top(topNumber);
+        }
+    }
+
+    /**
+     * Provides the top cities with the highest offencesCount across all cars from the live leaderboard,
+     * which is counted by the imports as they find the offences, without aggregating this.violations again.
+     * It can be read while an import is running. Cities with equal counts are ranked by their first offence counted.
+     * @param topNumber     the requested top number of violations in the result list
+     * @return              the top cities with their offences counts, from the top down
+     */
+    public List<Map.Entry<String, Long>> leadingViolationsByCity(int topNumber) {
+        synchronized (this.cityLeaderboard) {
+            return this.cityLeaderboard.top(topNumber);
+        }
+    }
+
+    /**
+     * Provides the approximate top cars with the highest offencesCount, which are counted in fixed memory
+     * while the offences are imported, see setApproximateLeaderboards.
+     * The counts are estimates, which exceed the true counts by at most getOffendingCars().getMaxError().
+     * @param topNumber     the requested top number of violations in the result list
+     * @return              the top cars with their estimated offences counts, from the top down
+     */
+    public List<Map.Entry<Car, Long>> approximateLeadingViolationsByCar(int topNumber) {
+        return this.getOffendingCars().top(topNumber);
+    }
+
+    /**
+     * Provides the approximate top cities with the highest offencesCount across all cars,
+     * which are counted in fixed memory while the offences are imported, see setApproximateLeaderboards.
+     * @param topNumber     the requested top number of violations in the result list
+     * @return              the top cities with their estimated offences counts, from the top down
+     */
+    public List<Map.Entry<String, Long>> approximateLeadingViolationsByCity(int topNumber) {
+        return this.getOffendingCities().top(topNumber);
+    }
+
+    /**
+     * @param city
+     * @return  the violations in the city, by the city index
+     */
+    public synchronized List<Violation> violationsInCity(String city) {
+        return this.violationIndex().inCity(city);
+    }
+
+    /**
+     * @param prefix
+     * @return  the violations of the cars with a license plate that starts with the prefix,
+     *          in order of license plate, by the plate index
+     */
+    public synchronized List<Violation> violationsWithPlatePrefix(String prefix) {
+        return this.violationIndex().withPlatePrefix(prefix);
+    }
+
+    /**
+     * @param carType
+     * @return  the violations of the cars of the type, by the car type index
+     */
+    public synchronized List<Violation> violationsOfCarType(Car.CarType carType) {
+        return this.violationIndex().ofCarType(carType);
+    }
+
+    /**
+     * @param fromEmissionCategory  inclusive
+     * @param toEmissionCategory    inclusive
+     * @return  the violations of the cars with an emission category in the range, by the emission category index
+     */
+    public synchronized List<Violation> violationsWithEmissionCategories(int fromEmissionCategory, int toEmissionCategory) {
+        return this.violationIndex().withEmissionCategories(fromEmissionCategory, toEmissionCategory);
+    }
+
+    /**
+     * @return  the secondary indexes of this.violations, to be queried while synchronised on this tracker
+     */
+    synchronized ViolationIndex getViolationIndex() {
+        return this.violationIndex();
+    }
+
+    /**
+     * @return  the secondary indexes of this.violations, which are built when they are queried the first time
+     *          after the violations have been replaced, such that imports that are not queried do not index
+     */
+    private ViolationIndex violationIndex() {
+        if (this.violationIndex == null) {
+            this.violationIndex = new ViolationIndex();
+            this.violationIndex.addAll(this.violations);
         }
+        return this.violationIndex;
+    }
+
+    /**
+     * counts the offences of a car in the window that ends with the latest offence imported,
+     * e.g. offencesOfCarInLast(car, Duration.ofHours(24)), by the hour for windows up to a week, else by the day
+     * @param car
+     * @param window
+     * @return  the number of offences in all hours or days that overlap with the window
+     */
+    public long offencesOfCarInLast(Car car, Duration window) {
+        this.checkTimelines();
+        return window.compareTo(Duration.ofDays(7)) <= 0
+                ? this.hourlyOffencesByCar.countInLast(car, window)
+                : this.dailyOffencesByCar.countInLast(car, window);
+    }
+
+    /**
+     * counts the offences in a city in the window that ends with the latest offence imported,
+     * by the hour for windows up to a week, else by the day
+     * @param city
+     * @param window
+     * @return  the number of offences in all hours or days that overlap with the window
+     */
+    public long offencesInCityInLast(String city, Duration window) {
+        this.checkTimelines();
+        return window.compareTo(Duration.ofDays(7)) <= 0
+                ? this.hourlyOffencesByCity.countInLast(city, window)
+                : this.dailyOffencesByCity.countInLast(city, window);
+    }
+
+    private void checkTimelines() {
+        if (this.hourlyOffencesByCar == null) {
+            throw new IllegalStateException("Offence timelines are not enabled");
+        }
+    }
 
-        //sort the new list by decreasing offencesCount.
-        mergedViolationsByCity.sort((v1, v2) -> Integer.compare(v2.getOffencesCount(), v1.getOffencesCount()));
+    /**
+     * @return  the offences by car by the hour, or null if the timelines are not enabled
+     */
+    public OffenceTimeline<Car> getHourlyOffencesByCar() {
+        return this.hourlyOffencesByCar;
+    }
+
+    /**
+     * @return  the offences by car by the day, or null if the timelines are not enabled
+     */
+    public OffenceTimeline<Car> getDailyOffencesByCar() {
+        return this.dailyOffencesByCar;
+    }
 
-        // use .subList to return only the topNumber of violations from the sorted list
-        return mergedViolationsByCity.subList(0, Math.min(topNumber, mergedViolationsByCity.size()));
+    /**
+     * @return  the offences by city by the hour, or null if the timelines are not enabled
+     */
+    public OffenceTimeline<String> getHourlyOffencesByCity() {
+        return this.hourlyOffencesByCity;
+    }
+
+    /**
+     * @return  the offences by city by the day, or null if the timelines are not enabled
+     */
+    public OffenceTimeline<String> getDailyOffencesByCity() {
+        return this.dailyOffencesByCity;
     }
 
     public static <E> int importItemsFromFile(List<E> items, File file, Function<String, E> converter) {
@@ -227,7 +1261,233 @@ public class TrafficTracker {
         return this.violations;
     }
 
-    public void setViolations(OrderedList<Violation> violations) {
+    /**
+     * replaces the violations of the imports, whose offences are counted in the leaderboards instead,
+     * ranking ties by their first appearance in the violations
+     * @param violations
+     */
+    public synchronized void setViolations(OrderedList<Violation> violations) {
         this.violations = violations;
+        this.violationIndex = null;
+        synchronized (this.carLeaderboard) {
+            this.carLeaderboard.clear();
+        }
+        synchronized (this.cityLeaderboard) {
+            this.cityLeaderboard.clear();
+        }
+        for (Violation violation : violations) {
+            if (violation != null) {
+                this.countInLeaderboards(violation.getCar(), violation.getCity(), violation.getOffencesCount());
+            }
+        }
+    }
+
+    /**
+     * sets the number of worker threads that import the detection files of the vault concurrently
+     * @param importParallelism     1 imports all files sequentially on the calling thread
+     */
+    public void setImportParallelism(int importParallelism) {
+        if (importParallelism < 1) {
+            throw new IllegalArgumentException("importParallelism should be at least 1, not " + importParallelism);
+        }
+        this.importParallelism = importParallelism;
+    }
+
+    /**
+     * selects whether all raw detections of the imports are retained in a columnar DetectionStore,
+     * e.g. for re-evaluating them against other rules later
+     * @param retainDetections
+     */
+    public void setDetectionRetention(boolean retainDetections) {
+        this.detectionStore = retainDetections ? new DetectionStore(this.cities) : null;
+    }
+
+    /**
+     * enables the timelines of the offences of later imports by car and by city, by the hour for a week
+     * and by the day for a year, see offencesOfCarInLast and offencesInCityInLast.
+     * The timelines take about 2KB per offending car, and are updated by every offence of an import.
+     * @param offenceTimelines
+     */
+    public void setOffenceTimelines(boolean offenceTimelines) {
+        this.hourlyOffencesByCar = offenceTimelines ? new OffenceTimeline<>(OffenceTimeline.HOUR, 7 * 24) : null;
+        this.dailyOffencesByCar = offenceTimelines ? new OffenceTimeline<>(OffenceTimeline.DAY, 366) : null;
+        this.hourlyOffencesByCity = offenceTimelines ? new OffenceTimeline<>(OffenceTimeline.HOUR, 7 * 24) : null;
+        this.dailyOffencesByCity = offenceTimelines ? new OffenceTimeline<>(OffenceTimeline.DAY, 366) : null;
+    }
+
+    /**
+     * enables the suppression of repeat detections of the same car in the same city within a time window,
+     * before the detections are retained or validated. Repeats are recognised in any order of the detections,
+     * also from the vault files that are not ordered by time, see DetectionDeduplicator.
+     * @param window    the minimum time between counted detections, or null to count every detection
+     */
+    public void setDeduplicationWindow(Duration window) {
+        this.deduplicator = window != null ? new DetectionDeduplicator(window, this.cities) : null;
+    }
+
+    /**
+     * enables the approximate counting of the offences of the most offending cars and cities by HeavyHitters,
+     * in memory that does not grow with the number of offences. The approximate counts replace the exact counts:
+     * later imports do not count the violations by car and city, nor the leaderboards, indexes and timelines,
+     * which stay empty. Approximate imports cannot be checkpointed or sharded.
+     * @param maxErrorRate  the maximum overestimate of a count, as a fraction of all offences, or 0 to disable
+     */
+    public void setApproximateLeaderboards(double maxErrorRate) {
+        this.offendingCars = maxErrorRate > 0.0 ? HeavyHitters.withMaxErrorRate(maxErrorRate) : null;
+        this.offendingCities = maxErrorRate > 0.0 ? HeavyHitters.withMaxErrorRate(maxErrorRate) : null;
+    }
+
+    /**
+     * @return  the approximate offences counts of the most offending cars
+     */
+    public HeavyHitters<Car> getOffendingCars() {
+        if (this.offendingCars == null) {
+            throw new IllegalStateException("Approximate leaderboards are not enabled");
+        }
+        return this.offendingCars;
+    }
+
+    /**
+     * @return  the approximate offences counts of the most offending cities
+     */
+    public HeavyHitters<String> getOffendingCities() {
+        if (this.offendingCities == null) {
+            throw new IllegalStateException("Approximate leaderboards are not enabled");
+        }
+        return this.offendingCities;
+    }
+
+    /**
+     * enables the measurement of the imports of detection files, see ImportMetrics
+     * @param metrics   the metrics to be accumulated by the imports, or null to disable the measurements
+     */
+    public void setImportMetrics(ImportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ImportMetrics getImportMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return  the deduplicator of the detections of the last import, or null if all detections are counted
+     */
+    public DetectionDeduplicator getDeduplicator() {
+        return this.deduplicator;
+    }
+
+    /**
+     * @return  the store of the raw detections of the last import, or null if detections are not retained
+     */
+    public DetectionStore getDetectionStore() {
+        return this.detectionStore;
+    }
+
+    /**
+     * replaces the rules of the environmentally restricted zones, and selects the zone whose rule
+     * is applied to the detections of later imports, e.g. setZoneRules(ZoneRules.PURPLE, "purple").
+     * All known cars are recompiled against the new rules by a parallel pass.
+     * @param zoneRules
+     * @param zone      the zone of the detections
+     */
+    public synchronized void setZoneRules(ZoneRules zoneRules, String zone) {
+        Predicate<Car> offenderFilter = zoneRules.offenderFilter(zone);
+        zoneRules.compile(this.cars);
+        this.zoneRules = zoneRules;
+        this.offenderZone = zone;
+        this.offenderFilter = offenderFilter;
+    }
+
+    public ZoneRules getZoneRules() {
+        return this.zoneRules;
+    }
+
+    /**
+     * @return  the test of the cars whose detections are offences,
+     *          e.g. for re-evaluating the retained detections by DetectionStore.aggregateViolations
+     */
+    public Predicate<Car> getOffenderFilter() {
+        return this.offenderFilter;
+    }
+
+    /**
+     * looks up the registered cars of the detections in a memory-mapped registry, instead of in the cars of
+     * importCarsFromVault, such that only the registered cars that are detected are brought onto the heap,
+     * as views on the registry. this.cars then only holds the cars that were imported besides the registry
+     * and the unknown cars of the detections. The registry cannot be combined with sharded imports.
+     * @param carRegistry   the registry, e.g. MappedCarRegistry.open of a segments folder, or null to disable it
+     */
+    public void setCarRegistry(MappedCarRegistry carRegistry) {
+        this.carRegistry = carRegistry;
+    }
+
+    /**
+     * selects the parser of the vault files
+     * @param mappedParsing     true selects the allocation-light, memory-mapped parser,
+     *                          false selects the line by line parsing by Car.fromLine and Detection.fromLine
+     */
+    public void setMappedParsing(boolean mappedParsing) {
+        this.mappedParsing = mappedParsing;
+    }
+
+    /**
+     * selects whether importDetectionsFromVault runs as a DetectionPipeline of concurrent stages,
+     * which overlaps the reading of the files with the parsing by importParallelism threads
+     * and keeps at most a few batches of lines per thread in memory.
+     * The pipeline parses the lines by Detection.fromLine and does not add to the ImportMetrics.
+     * @param pipelinedImport
+     */
+    public void setPipelinedImport(boolean pipelinedImport) {
+        this.pipelinedImport = pipelinedImport;
+    }
+
+    /**
+     * enables checkpoints of the imports of the detections vault, which allow resumeDetectionsFromVault
+     * to continue an import that did not complete. The checkpoints are written by a background thread.
+     * Checkpointed imports process the files in groups of filesPerCheckpoint files, each by importParallelism threads,
+     * and cannot be combined with the pipelined or the sharded import.
+     * @param checkpointFolder      the folder of the checkpoint, or null to disable the checkpoints
+     * @param filesPerCheckpoint    the number of imported files between two checkpoints
+     */
+    public void setCheckpointing(File checkpointFolder, int filesPerCheckpoint) {
+        if (checkpointFolder != null && filesPerCheckpoint < 1) {
+            throw new IllegalArgumentException("filesPerCheckpoint should be at least 1, not " + filesPerCheckpoint);
+        }
+        this.checkpointFolder = checkpointFolder;
+        this.filesPerCheckpoint = filesPerCheckpoint;
+    }
+
+    /**
+     * enables sharded imports of the detections vault by local worker processes, see ShardedImport.
+     * The workers import the cars of the last importCarsFromVault themselves, and apply the zone rules,
+     * deduplication window, parser and import parallelism of this tracker. Repeats can only be suppressed
+     * with the PLATE_HASH partitioning, which lets every worker parse the whole vault.
+     * The timelines, retained detections and the counts of the repeats are not collected by sharded imports.
+     * @param numberOfShards    the number of worker processes, or 0 to import in this process
+     * @param partitioning      the partitioning of the vault over the workers
+     * @param shardsFolder      the work folder of the workers, with a sub folder per shard
+     */
+    public void setSharding(int numberOfShards, ShardedImport.Partitioning partitioning, File shardsFolder) {
+        if (numberOfShards < 0) {
+            throw new IllegalArgumentException("numberOfShards should not be negative, not " + numberOfShards);
+        }
+        this.numberOfShards = numberOfShards;
+        this.shardPartitioning = partitioning;
+        this.shardsFolder = shardsFolder;
+    }
+
+    /**
+     * @return  the checkpoints of the last checkpointed import, or null if no import has been checkpointed
+     */
+    public ImportCheckpoint getImportCheckpoint() {
+        return this.importCheckpoint;
+    }
+
+    /**
+     * @return  the pipeline of the last, or the running, pipelined import, with the depths of its queues
+     *          and the throughput of its stages, or null if no detections have been imported by a pipeline
+     */
+    public DetectionPipeline getDetectionPipeline() {
+        return this.detectionPipeline;
     }
 }
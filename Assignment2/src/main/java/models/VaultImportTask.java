@@ -0,0 +1,62 @@
+package models;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Fork-join task that imports all detection files below a folder of the vault concurrently.
+ * Every task accumulates the offences found in its files into its own partial violations table,
+ * such that no worker needs to synchronise on a shared table while importing.
+ * The partial tables of the sub-tasks are merged into one table when the sub-tasks have been joined.
+ */
+class VaultImportTask extends RecursiveTask<ViolationTable> {
+    private final File file;
+    private final String filePattern;
+    private final TrafficTracker.DetectionFileImporter importer;
+    private final Supplier<ViolationTable> tables;
+
+    /**
+     * @param file          the folder or detection file to be imported by this task
+     * @param filePattern   the pattern of the names of the detection files that shall be imported
+     * @param importer      a thread-safe importer of a single detection file
+     * @param tables        creates the partial violation tables of the tasks
+     */
+    VaultImportTask(File file, String filePattern, TrafficTracker.DetectionFileImporter importer,
+                    Supplier<ViolationTable> tables) {
+        this.file = file;
+        this.filePattern = filePattern;
+        this.importer = importer;
+        this.tables = tables;
+    }
+
+    @Override
+    protected ViolationTable compute() {
+        if (this.file.isDirectory()) {
+            // fork a sub-task for every file and sub folder in this directory
+            File[] filesInDirectory = Objects.requireNonNullElse(this.file.listFiles(), new File[0]);
+            List<VaultImportTask> subTasks = new ArrayList<>(filesInDirectory.length);
+            for (File subFile : filesInDirectory) {
+                subTasks.add(new VaultImportTask(subFile, this.filePattern, this.importer, this.tables));
+            }
+            invokeAll(subTasks);
+
+            // merge the partial tables of all sub-tasks into the table of this task
+            ViolationTable violations = this.tables.get();
+            for (VaultImportTask subTask : subTasks) {
+                violations.mergeAll(subTask.join());
+            }
+            return violations;
+        }
+
+        ViolationTable violations = this.tables.get();
+        if (this.file.getName().matches(this.filePattern)) {
+            // the file is a regular file that matches the target pattern for raw detection files
+            this.importer.mergeDetectionsFromFile(this.file, violations);
+        }
+        return violations;
+    }
+}
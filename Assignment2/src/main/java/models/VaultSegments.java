@@ -0,0 +1,565 @@
+package models;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Binary segment format of the traffic vault, which is compacted once from the text files of the vault
+ * and can be loaded many times faster than parsing the text again.
+ *
+ * A segments folder holds:
+ *  cars.seg                the registered cars, sorted by licensePlate, in fixed-width records of CAR_RECORD_SIZE bytes:
+ *                          plateCode, emissionCategory, carType, fuelType and dateOfAdmission as epoch day.
+ *                          The rank of a car in this file is its reference in the detection segments.
+ *                          Plates that cannot be encoded follow the records, by rank.
+ *  detections-NNNNN.seg    all detections of the vault sorted by time, at most segmentSize per file,
+ *                          such that the segments follow each other in time.
+ * A detection segment has a small header with its number of detections, its first time and the dictionary
+ * of the names of the cities, and a footer index with the offset, number of detections and time range
+ * of every block of BLOCK_SIZE detections. Every block can be decoded on its own, which allows
+ * to decode the blocks of a segment in parallel, or to skip blocks outside a time range.
+ * Within a block every detection is a sequence of variable length numbers: the seconds since the previous detection
+ * (or since the first detection of the segment for the first of a block), the city by its index in the dictionary, and a reference to the car:
+ * FIRST_RANK + the rank of a registered car, UNREGISTERED_CAR followed by the plateCode of a car that is not registered,
+ * or UNENCODED_CAR followed by the UTF-8 bytes of a license plate that cannot be encoded.
+ *
+ * Times are the local date times of the detections, counted as epoch seconds at offset UTC.
+ * Numbers in headers and footers are big-endian, like DataOutputStream writes them.
+ */
+public class VaultSegments {
+    static final String CARS_FILE_NAME = "cars.seg";
+    static final String DETECTIONS_FILE_PATTERN = "detections-\\d+\\.seg";
+    static final int CAR_RECORD_SIZE = 16;
+    // the positions of the fields in a car record
+    static final int PLATE_CODE_OFFSET = 0;
+    static final int EMISSION_CATEGORY_OFFSET = 8;
+    static final int CAR_TYPE_OFFSET = 9;
+    static final int FUEL_TYPE_OFFSET = 10;
+    static final int EPOCH_DAY_OFFSET = 12;
+    static final int BLOCK_SIZE = 4096;                 // detections per block
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 20;    // detections per segment file
+
+    private static final int CARS_MAGIC = 0x54434152;           // "TCAR"
+    private static final int DETECTIONS_MAGIC = 0x54444554;     // "TDET"
+    private static final int VERSION = 1;
+    static final int CARS_HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 12;                 // footer offset and magic
+
+    // the references to the car of a detection
+    private static final int UNENCODED_CAR = 0;
+    private static final int UNREGISTERED_CAR = 1;
+    private static final int FIRST_RANK = 2;
+
+    private static final Car.CarType[] CAR_TYPES = Car.CarType.values();
+    private static final Car.FuelType[] FUEL_TYPES = Car.FuelType.values();
+
+    /**
+     * compacts the cars and the detections of a vault into binary segments
+     * @param carsFile          the text file of the registered cars
+     * @param detectionsVault   the root folder of the text files of the detections
+     * @param segmentsFolder    the folder that receives the segment files, which is created if needed
+     * @return  the number of detections in the segments
+     */
+    public static long convert(File carsFile, File detectionsVault, File segmentsFolder) {
+        return convert(carsFile, detectionsVault, segmentsFolder, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize   the maximum number of detections per segment file
+     */
+    static long convert(File carsFile, File detectionsVault, File segmentsFolder, int segmentSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize should be positive, not " + segmentSize);
+        }
+        if (!segmentsFolder.isDirectory() && !segmentsFolder.mkdirs()) {
+            throw new RuntimeException("Could not create folder on path: " + segmentsFolder.getPath());
+        }
+
+        List<Car> cars = rankCars(carsFile);
+        Map<Car, Integer> ranks = new IdentityHashMap<>();
+        for (int rank = 0; rank < cars.size(); rank++) {
+            ranks.put(cars.get(rank), rank);
+        }
+
+        // collect all detections, the files are visited in order of their path such that ties in time are stable
+        PlateIndex plates = new PlateIndex(cars);
+        CityDictionary cities = new CityDictionary();
+        DetectionColumns detections = new DetectionColumns();
+        for (File file : detectionFiles(detectionsVault)) {
+            MappedVaultParser.parseDetections(file, plates, Car::new, cities, detections::add);
+        }
+
+        try {
+            writeCars(new File(segmentsFolder, CARS_FILE_NAME), cars);
+            int[] order = detections.orderByTime();
+            for (int from = 0, segment = 0; from < order.length; from += segmentSize, segment++) {
+                File segmentFile = new File(segmentsFolder, String.format("detections-%05d.seg", segment));
+                writeDetections(segmentFile, detections, order, from, Math.min(order.length, from + segmentSize),
+                        ranks, cities);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write segments on path: " + segmentsFolder.getPath(), e);
+        }
+        return detections.size;
+    }
+
+    /**
+     * compacts only the cars of a vault into the cars segment of a segments folder,
+     * which can be opened as a MappedCarRegistry
+     * @param carsFile          the text file of the registered cars
+     * @param segmentsFolder    the folder that receives the cars segment, which is created if needed
+     * @return  the number of cars in the segment
+     */
+    public static int convertCars(File carsFile, File segmentsFolder) {
+        if (!segmentsFolder.isDirectory() && !segmentsFolder.mkdirs()) {
+            throw new RuntimeException("Could not create folder on path: " + segmentsFolder.getPath());
+        }
+        List<Car> cars = rankCars(carsFile);
+        try {
+            writeCars(new File(segmentsFolder, CARS_FILE_NAME), cars);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write segments on path: " + segmentsFolder.getPath(), e);
+        }
+        return cars.size();
+    }
+
+    /**
+     * @return  the registered cars of the file, ranked like an ordered list of cars sorts them
+     */
+    private static List<Car> rankCars(File carsFile) {
+        List<Car> cars = new ArrayList<>();
+        MappedVaultParser.parseCars(carsFile, cars::add);
+        cars.sort(Car::compareTo);
+        return cars;
+    }
+
+    private static List<File> detectionFiles(File vault) {
+        List<File> files = new ArrayList<>();
+        Deque<File> folders = new ArrayDeque<>(List.of(vault));
+        while (!folders.isEmpty()) {
+            File[] filesInDirectory = Objects.requireNonNullElse(folders.pop().listFiles(), new File[0]);
+            for (File file : filesInDirectory) {
+                if (file.isDirectory()) {
+                    folders.push(file);
+                } else if (file.getName().endsWith(".txt")) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(File::getPath));
+        return files;
+    }
+
+    /**
+     * the growable columns of the detections that are collected by the converter
+     */
+    private static class DetectionColumns {
+        Car[] cars = new Car[1024];
+        int[] cityIds = new int[1024];
+        long[] epochSeconds = new long[1024];
+        int size = 0;
+
+        void add(Car car, int cityId, long epochSecond) {
+            if (this.size == this.cars.length) {
+                int capacity = (int)Math.min(Integer.MAX_VALUE - 8, 2L * this.size);
+                if (capacity == this.size) {
+                    throw new IllegalStateException("Too many detections to convert at once");
+                }
+                this.cars = Arrays.copyOf(this.cars, capacity);
+                this.cityIds = Arrays.copyOf(this.cityIds, capacity);
+                this.epochSeconds = Arrays.copyOf(this.epochSeconds, capacity);
+            }
+            this.cars[this.size] = car;
+            this.cityIds[this.size] = cityId;
+            this.epochSeconds[this.size] = epochSecond;
+            this.size++;
+        }
+
+        /**
+         * @return  the indices of the detections in order of time, and in order of collection within the same second
+         */
+        int[] orderByTime() {
+            long firstSecond = Long.MAX_VALUE;
+            long lastSecond = Long.MIN_VALUE;
+            for (int i = 0; i < this.size; i++) {
+                firstSecond = Math.min(firstSecond, this.epochSeconds[i]);
+                lastSecond = Math.max(lastSecond, this.epochSeconds[i]);
+            }
+            if (this.size > 0 && lastSecond - firstSecond > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Detections span more than " + Integer.MAX_VALUE + " seconds");
+            }
+            // sort the time and index of every detection together as a single primitive key
+            long[] keys = new long[this.size];
+            for (int i = 0; i < this.size; i++) {
+                keys[i] = (this.epochSeconds[i] - firstSecond) << 32 | i;
+            }
+            Arrays.sort(keys);
+            int[] order = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                order[i] = (int)keys[i];
+            }
+            return order;
+        }
+    }
+
+    private static void writeCars(File file, List<Car> cars) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(CARS_MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(cars.size());
+            List<Integer> unencodedRanks = new ArrayList<>();
+            for (int rank = 0; rank < cars.size(); rank++) {
+                Car car = cars.get(rank);
+                if (car.getPlateCode() == LicensePlateCodec.NOT_ENCODABLE) {
+                    unencodedRanks.add(rank);
+                }
+                if (car.getEmissionCategory() < Byte.MIN_VALUE || car.getEmissionCategory() > Byte.MAX_VALUE) {
+                    throw new IllegalArgumentException("Emission category does not fit a segment: " + car);
+                }
+                output.writeLong(car.getPlateCode());
+                output.writeByte(car.getEmissionCategory());
+                output.writeByte(car.getCarType().ordinal());
+                output.writeByte(car.getFuelType().ordinal());
+                output.writeByte(0);
+                output.writeInt(Math.toIntExact(car.getDateOfAdmission().toEpochDay()));
+            }
+            output.writeInt(unencodedRanks.size());
+            for (int rank : unencodedRanks) {
+                output.writeInt(rank);
+                writeString(output, cars.get(rank).getLicensePlate());
+            }
+        }
+    }
+
+    private static void writeDetections(File file, DetectionColumns detections, int[] order, int from, int to,
+                                        Map<Car, Integer> ranks, CityDictionary cities) throws IOException {
+        long baseEpochSecond = detections.epochSeconds[order[from]];
+        int numberOfBlocks = (to - from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long[] blockOffsets = new long[numberOfBlocks];
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOutput = new DataOutputStream(header);
+            headerOutput.writeInt(DETECTIONS_MAGIC);
+            headerOutput.writeInt(VERSION);
+            headerOutput.writeLong(to - from);
+            headerOutput.writeLong(baseEpochSecond);
+            headerOutput.writeInt(cities.size());
+            for (int cityId = 0; cityId < cities.size(); cityId++) {
+                writeString(headerOutput, cities.nameOf(cityId));
+            }
+            header.writeTo(output);
+            long offset = header.size();
+
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            for (int b = 0; b < numberOfBlocks; b++) {
+                block.reset();
+                long previousSecond = baseEpochSecond;
+                for (int i = from + b * BLOCK_SIZE; i < Math.min(to, from + (b + 1) * BLOCK_SIZE); i++) {
+                    int detection = order[i];
+                    long epochSecond = detections.epochSeconds[detection];
+                    writeVarLong(block, epochSecond - previousSecond);
+                    writeVarLong(block, detections.cityIds[detection]);
+                    Car car = detections.cars[detection];
+                    Integer rank = ranks.get(car);
+                    if (rank != null) {
+                        writeVarLong(block, FIRST_RANK + (long)rank);
+                    } else if (car.getPlateCode() != LicensePlateCodec.NOT_ENCODABLE) {
+                        writeVarLong(block, UNREGISTERED_CAR);
+                        writeVarLong(block, car.getPlateCode());
+                    } else {
+                        byte[] licensePlate = car.getLicensePlate().getBytes(StandardCharsets.UTF_8);
+                        writeVarLong(block, UNENCODED_CAR);
+                        writeVarLong(block, licensePlate.length);
+                        block.write(licensePlate);
+                    }
+                    previousSecond = epochSecond;
+                }
+                blockOffsets[b] = offset;
+                block.writeTo(output);
+                offset += block.size();
+            }
+
+            // the footer index of all blocks, followed by its offset
+            output.writeInt(numberOfBlocks);
+            for (int b = 0; b < numberOfBlocks; b++) {
+                int first = from + b * BLOCK_SIZE;
+                int last = Math.min(to, first + BLOCK_SIZE) - 1;
+                output.writeLong(blockOffsets[b]);
+                output.writeInt(last - first + 1);
+                output.writeLong(detections.epochSeconds[order[first]]);
+                output.writeLong(detections.epochSeconds[order[last]]);
+            }
+            output.writeLong(offset);
+            output.writeInt(DETECTIONS_MAGIC);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * writes a non-negative number in groups of 7 bits, least significant first,
+     * with the high bit of every byte set if more groups follow
+     */
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int)(value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int)value);
+    }
+
+    /**
+     * reads all registered cars from the segments folder
+     * @param segmentsFolder
+     * @return  the cars by rank, which is the order of their licensePlate
+     */
+    static Car[] readCars(File segmentsFolder) {
+        ByteBuffer buffer = mapCars(new File(segmentsFolder, CARS_FILE_NAME));
+        Car[] cars = new Car[numberOfCars(buffer)];
+        Map<Integer, String> unencodedPlates = readUnencodedPlates(buffer);
+
+        for (int rank = 0; rank < cars.length; rank++) {
+            int record = CARS_HEADER_SIZE + rank * CAR_RECORD_SIZE;
+            long plateCode = buffer.getLong(record + PLATE_CODE_OFFSET);
+            int emissionCategory = buffer.get(record + EMISSION_CATEGORY_OFFSET);
+            Car.CarType carType = CAR_TYPES[buffer.get(record + CAR_TYPE_OFFSET)];
+            Car.FuelType fuelType = FUEL_TYPES[buffer.get(record + FUEL_TYPE_OFFSET)];
+            LocalDate dateOfAdmission = LocalDate.ofEpochDay(buffer.getInt(record + EPOCH_DAY_OFFSET));
+            cars[rank] = plateCode != LicensePlateCodec.NOT_ENCODABLE
+                    ? new Car(plateCode, emissionCategory, carType, fuelType, dateOfAdmission)
+                    : new Car(unencodedPlates.get(rank), emissionCategory, carType, fuelType, dateOfAdmission);
+        }
+        return cars;
+    }
+
+    /**
+     * maps a cars segment into memory and checks its header
+     * @param file
+     * @return  the read-only buffer of the whole segment, with records at CARS_HEADER_SIZE + rank * CAR_RECORD_SIZE
+     */
+    static ByteBuffer mapCars(File file) {
+        ByteBuffer buffer = map(file);
+        if (buffer.limit() < CARS_HEADER_SIZE || buffer.getInt(0) != CARS_MAGIC || buffer.getInt(4) != VERSION
+                || buffer.limit() < CARS_HEADER_SIZE + (long)buffer.getInt(8) * CAR_RECORD_SIZE + Integer.BYTES) {
+            throw new IllegalStateException("Not a cars segment of version " + VERSION + ": " + file.getPath());
+        }
+        return buffer;
+    }
+
+    /**
+     * @param buffer    a mapped cars segment
+     * @return  the number of car records in the segment
+     */
+    static int numberOfCars(ByteBuffer buffer) {
+        return buffer.getInt(8);
+    }
+
+    /**
+     * @param buffer    a mapped cars segment
+     * @return  the license plates that cannot be encoded, by the rank of their car
+     */
+    static Map<Integer, String> readUnencodedPlates(ByteBuffer buffer) {
+        ByteBuffer plates = buffer.duplicate();
+        plates.position(CARS_HEADER_SIZE + numberOfCars(buffer) * CAR_RECORD_SIZE);
+        Map<Integer, String> unencodedPlates = new HashMap<>();
+        for (int n = plates.getInt(); n > 0; n--) {
+            int rank = plates.getInt();
+            unencodedPlates.put(rank, readString(plates));
+        }
+        return unencodedPlates;
+    }
+
+    /**
+     * @param segmentsFolder
+     * @return  all detection segments in the folder, in order of time
+     */
+    static List<Segment> openDetectionSegments(File segmentsFolder) {
+        File[] files = Objects.requireNonNullElse(
+                segmentsFolder.listFiles((folder, name) -> name.matches(DETECTIONS_FILE_PATTERN)), new File[0]);
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        List<Segment> segments = new ArrayList<>();
+        for (File file : files) {
+            segments.add(new Segment(file));
+        }
+        return segments;
+    }
+
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment larger than " + Integer.MAX_VALUE + " bytes");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file on path: " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * reads the numbers that have been written by writeVarLong, with absolute reads of a shared buffer
+     */
+    private static class VarLongReader {
+        private final ByteBuffer buffer;
+        int position;
+
+        VarLongReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        long next() {
+            long value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = this.buffer.get(this.position++);
+                value |= (long)(next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            return value;
+        }
+
+        String nextString() {
+            byte[] bytes = new byte[(int)this.next()];
+            this.buffer.get(this.position, bytes);
+            this.position += bytes.length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * a memory-mapped detection segment, with its header and footer index
+     */
+    static class Segment {
+        private final File file;
+        private final ByteBuffer buffer;
+        private final long numberOfDetections;
+        private final long baseEpochSecond;
+        private final String[] cityNames;
+        private final int[] blockOffsets;
+        private final int[] blockSizes;
+        private final long[] firstEpochSeconds;
+        private final long[] lastEpochSeconds;
+
+        Segment(File file) {
+            this.file = file;
+            this.buffer = map(file);
+            ByteBuffer buffer = this.buffer.duplicate();
+            if (buffer.remaining() < TRAILER_SIZE || buffer.getInt() != DETECTIONS_MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt(buffer.limit() - 4) != DETECTIONS_MAGIC) {
+                throw new IllegalStateException("Not a detection segment of version " + VERSION + ": " + file.getPath());
+            }
+            this.numberOfDetections = buffer.getLong();
+            this.baseEpochSecond = buffer.getLong();
+            this.cityNames = new String[buffer.getInt()];
+            for (int c = 0; c < this.cityNames.length; c++) {
+                this.cityNames[c] = readString(buffer);
+            }
+
+            buffer.position((int)buffer.getLong(buffer.limit() - TRAILER_SIZE));
+            int numberOfBlocks = buffer.getInt();
+            this.blockOffsets = new int[numberOfBlocks];
+            this.blockSizes = new int[numberOfBlocks];
+            this.firstEpochSeconds = new long[numberOfBlocks];
+            this.lastEpochSeconds = new long[numberOfBlocks];
+            for (int b = 0; b < numberOfBlocks; b++) {
+                this.blockOffsets[b] = (int)buffer.getLong();
+                this.blockSizes[b] = buffer.getInt();
+                this.firstEpochSeconds[b] = buffer.getLong();
+                this.lastEpochSeconds[b] = buffer.getLong();
+            }
+        }
+
+        long getNumberOfDetections() {
+            return this.numberOfDetections;
+        }
+
+        int getNumberOfBlocks() {
+            return this.blockOffsets.length;
+        }
+
+        /**
+         * @return  the time of the first detection in the block
+         */
+        long getFirstEpochSecond(int block) {
+            return this.firstEpochSeconds[block];
+        }
+
+        /**
+         * @return  the time of the last detection in the block
+         */
+        long getLastEpochSecond(int block) {
+            return this.lastEpochSeconds[block];
+        }
+
+        /**
+         * decodes the detections of the blocks fromBlock <= b < toBlock, in order of time.
+         * Blocks may be decoded by several threads concurrently.
+         * @param fromBlock
+         * @param toBlock
+         * @param carsByRank    the registered cars, as read by readCars
+         * @param plates        the index of the cars that are not registered
+         * @param carCreator    provides a car for a licensePlate that is not in the plates index yet
+         * @param cities        the dictionary of the cities
+         * @param handler       receives every detection
+         * @return  the number of detections decoded
+         */
+        int decodeBlocks(int fromBlock, int toBlock, Car[] carsByRank, PlateIndex plates,
+                         Function<String, Car> carCreator, CityDictionary cities,
+                         MappedVaultParser.DetectionHandler handler) {
+            // translate the city dictionary of the segment once
+            int[] cityIds = new int[this.cityNames.length];
+            for (int c = 0; c < cityIds.length; c++) {
+                cityIds[c] = cities.idOf(this.cityNames[c]);
+            }
+
+            VarLongReader reader = new VarLongReader(this.buffer);
+            int numberOfDetections = 0;
+            for (int b = fromBlock; b < toBlock; b++) {
+                reader.position = this.blockOffsets[b];
+                long epochSecond = this.baseEpochSecond;
+                for (int d = 0; d < this.blockSizes[b]; d++) {
+                    epochSecond += reader.next();
+                    int city = (int)reader.next();
+                    long reference = reader.next();
+                    Car car;
+                    if (reference >= FIRST_RANK) {
+                        car = carsByRank[(int)(reference - FIRST_RANK)];
+                    } else {
+                        String licensePlate = reference == UNREGISTERED_CAR
+                                ? LicensePlateCodec.decode(reader.next())
+                                : reader.nextString();
+                        car = plates.find(licensePlate);
+                        if (car == null) {
+                            car = plates.findOrAdd(licensePlate, carCreator);
+                        }
+                    }
+                    handler.accept(car, cityIds[city], epochSecond);
+                }
+                numberOfDetections += this.blockSizes[b];
+            }
+            return numberOfDetections;
+        }
+
+        @Override
+        public String toString() {
+            return this.file.getName() + "/" + this.numberOfDetections;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Watches the folder tree of a detections vault and imports only the new and appended content of the detection files.
+ * For every file the watcher tracks the byte offset up to which its lines have been imported,
+ * such that gates can keep appending lines to existing files and adding new numbered files and city folders.
+ * Complete lines, i.e. lines that have been terminated by a newline, are imported as soon as they are seen.
+ * A last line without a newline is imported once its file has not changed for the quiescence period,
+ * as the gate may still be writing it before that.
+ * New content is read in chunks of at most CHUNK_SIZE bytes, into a single buffer of the watcher.
+ * Files are expected to only grow; if a file shrinks, the watcher continues from its new end.
+ * Failures of the import of a chunk are reported, and the watcher continues with the next content.
+ */
+public class VaultWatcher implements Closeable {
+    static final int CHUNK_SIZE = 1 << 20;
+    static final Duration DEFAULT_QUIESCENCE = Duration.ofSeconds(2);
+
+    /**
+     * the unterminated last line of a file, which is imported if the file has not grown since it was seen
+     */
+    private static class Tail {
+        final long fileSize;
+        final long seenNanos;
+
+        Tail(long fileSize, long seenNanos) {
+            this.fileSize = fileSize;
+            this.seenNanos = seenNanos;
+        }
+    }
+
+    private final Path vault;
+    private final String filePattern;
+    private final ToIntFunction<ByteBuffer> batchImporter;
+    private final WatchService watchService;
+    private final Duration quiescence;
+    private final Map<Path, Long> offsets = new HashMap<>();    // the number of imported bytes by file
+    private final Map<Path, Tail> tails = new HashMap<>();      // the files that end in an unterminated line
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);   // guarded by this
+    private final AtomicLong numberOfOffences = new AtomicLong();
+    private final AtomicLong numberOfImportedFiles = new AtomicLong();
+    private final Thread watcherThread;
+
+    /**
+     * @param vault             the root folder of the detections vault
+     * @param filePattern       the pattern of the names of the detection files
+     * @param batchImporter     imports the complete lines between the position and the limit of a buffer
+     *                          and returns the number of offences that were found
+     */
+    VaultWatcher(Path vault, String filePattern, ToIntFunction<ByteBuffer> batchImporter) {
+        this(vault, filePattern, batchImporter, DEFAULT_QUIESCENCE);
+    }
+
+    /**
+     * @param vault             the root folder of the detections vault
+     * @param filePattern       the pattern of the names of the detection files
+     * @param batchImporter     imports the complete lines between the position and the limit of a buffer
+     *                          and returns the number of offences that were found
+     * @param quiescence        the time that a file shall not change before its unterminated last line is imported
+     */
+    VaultWatcher(Path vault, String filePattern, ToIntFunction<ByteBuffer> batchImporter, Duration quiescence) {
+        this.vault = vault;
+        this.quiescence = quiescence;
+        this.filePattern = filePattern;
+        this.batchImporter = batchImporter;
+        try {
+            this.watchService = vault.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not watch the vault on path: " + vault, e);
+        }
+        this.watcherThread = new Thread(this::watch, "vault-watcher-" + vault.getFileName());
+        this.watcherThread.setDaemon(true);
+    }
+
+    /**
+     * imports the current content of the vault and starts watching it for new content
+     */
+    void start() {
+        this.registerAndImport(this.vault);
+        this.watcherThread.start();
+    }
+
+    private void watch() {
+        // wake up regularly to import the last lines of the files that have become quiescent
+        long pollMillis = Math.max(10, this.quiescence.toMillis() / 4);
+        try {
+            while (true) {
+                WatchKey key = this.watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    this.handleEvents(key);
+                }
+                this.importQuiescentTails();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher has been closed
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        Path folder = (Path)key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            try {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // events have been lost, so check all files for new content
+                    this.registerAndImport(this.vault);
+                } else {
+                    Path path = folder.resolve((Path)event.context());
+                    if (Files.isDirectory(path)) {
+                        this.registerAndImport(path);
+                    } else {
+                        this.importNewContent(path);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // keep watching the other files
+                System.out.printf("Could not handle a change of the vault in folder '%s': %s\n", folder, e);
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * registers the folder and all its sub folders with the watch service
+     * and imports the new content of all detection files in them
+     * @param folder
+     */
+    private void registerAndImport(Path folder) {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            // register the folders before reading the files, such that no appended content is missed
+            for (Path path : (Iterable<Path>)paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    path.register(this.watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        } catch (IOException | ClosedWatchServiceException e) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.filter(Files::isRegularFile).forEach(this::importNewContent);
+        } catch (IOException e) {
+            System.out.printf("Could not scan folder '%s' of the vault\n", folder);
+        }
+    }
+
+    /**
+     * imports all complete lines that have been appended to the file since it was imported the last time,
+     * in chunks of at most CHUNK_SIZE bytes
+     * @param file
+     */
+    private synchronized void importNewContent(Path file) {
+        if (!file.getFileName().toString().matches(this.filePattern)) {
+            return;
+        }
+        long offset = this.offsets.getOrDefault(file, 0L);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= offset) {
+                this.offsets.put(file, size);
+                this.tails.remove(file);
+                return;
+            }
+            boolean imported = false;
+            while (offset < size) {
+                ByteBuffer chunk = this.readChunk(channel, offset, size);
+                // import up to the end of the last complete line only
+                int end = chunk.limit();
+                while (end > 0 && chunk.get(end - 1) != '\n') end--;
+                if (end == 0) {
+                    if (chunk.limit() < CHUNK_SIZE) {
+                        break;
+                    }
+                    // a line of a whole chunk is not a detection, and is skipped
+                    end = chunk.limit();
+                } else {
+                    chunk.limit(end);
+                    this.importBatch(file, chunk);
+                    imported = true;
+                }
+                offset += end;
+                this.offsets.put(file, offset);
+            }
+            if (imported) {
+                this.numberOfImportedFiles.incrementAndGet();
+            }
+            if (offset < size) {
+                Tail tail = this.tails.get(file);
+                if (tail == null || tail.fileSize != size) {
+                    this.tails.put(file, new Tail(size, System.nanoTime()));
+                }
+            } else {
+                this.tails.remove(file);
+            }
+        } catch (NoSuchFileException e) {
+            this.offsets.remove(file);
+            this.tails.remove(file);
+        } catch (IOException e) {
+            System.out.printf("Could not read new detections from file '%s'\n", file);
+        }
+    }
+
+    /**
+     * imports the unterminated last lines of the files that have not changed during the quiescence period
+     */
+    private synchronized void importQuiescentTails() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Tail>> tails = this.tails.entrySet().iterator(); tails.hasNext(); ) {
+            Map.Entry<Path, Tail> entry = tails.next();
+            Path file = entry.getKey();
+            Tail tail = entry.getValue();
+            if (now - tail.seenNanos < this.quiescence.toNanos()) {
+                continue;
+            }
+            tails.remove();
+            long offset = this.offsets.getOrDefault(file, 0L);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() != tail.fileSize || tail.fileSize - offset >= CHUNK_SIZE) {
+                    // the file has changed since, which has raised an event of its own
+                    continue;
+                }
+                ByteBuffer chunk = this.readChunk(channel, offset, tail.fileSize);
+                // terminate the line for the importer
+                chunk.limit(chunk.limit() + 1);
+                chunk.put(chunk.limit() - 1, (byte)'\n');
+                this.importBatch(file, chunk);
+                this.numberOfImportedFiles.incrementAndGet();
+                this.offsets.put(file, tail.fileSize);
+            } catch (IOException e) {
+                System.out.printf("Could not read the last line from file '%s'\n", file);
+            }
+        }
+    }
+
+    /**
+     * @return  the chunk buffer of the watcher, with the bytes of the channel from the offset up to at most
+     *          CHUNK_SIZE bytes or the size between its position and its limit
+     */
+    private ByteBuffer readChunk(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer chunk = this.chunk;
+        chunk.clear();
+        chunk.limit((int)Math.min(CHUNK_SIZE, size - offset));
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk, offset + chunk.position()) < 0) break;
+        }
+        chunk.flip();
+        return chunk;
+    }
+
+    /**
+     * imports the lines of the buffer, and reports a failure of the import without stopping the watcher
+     */
+    private void importBatch(Path file, ByteBuffer buffer) {
+        try {
+            this.numberOfOffences.addAndGet(this.batchImporter.applyAsInt(buffer));
+        } catch (RuntimeException e) {
+            System.out.printf("Could not import new detections from file '%s': %s\n", file, e);
+        }
+    }
+
+    /**
+     * @return  the total number of offences found by this watcher since it was started
+     */
+    public long getNumberOfOffences() {
+        return this.numberOfOffences.get();
+    }
+
+    /**
+     * @return  the number of times that new content of a detection file has been imported
+     */
+    public long getNumberOfImportedFiles() {
+        return this.numberOfImportedFiles.get();
+    }
+
+    /**
+     * stops watching the vault
+     */
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        try {
+            this.watcherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
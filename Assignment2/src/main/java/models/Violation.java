@@ -1,6 +1,11 @@
 package models;
 
+import java.util.Comparator;
+
 public class Violation {
+    // a single instance of the order of compareByLicensePlateAndCity, such that lists recognise their own order
+    public static final Comparator<Violation> LICENSE_PLATE_AND_CITY_ORDER = Violation::compareByLicensePlateAndCity;
+
     private final Car car;
     private final String city;
     private int offencesCount;
@@ -12,10 +17,8 @@ public class Violation {
     }
     public static int compareByLicensePlateAndCity(Violation v1, Violation v2) {
 
-        // Compare by license plate
-        String LicensePlatV1 = v1.getCar().getLicensePlate();
-        String LicensePlateV2 = v2.getCar().getLicensePlate();
-        int licensePlateComparison = LicensePlatV1.compareTo(LicensePlateV2);
+        // Compare by license plate, the cars are ordered by their license plate
+        int licensePlateComparison = v1.getCar().compareTo(v2.getCar());
 
         if (licensePlateComparison != 0) {
             return licensePlateComparison;
@@ -67,6 +70,6 @@ public class Violation {
 
     @Override
     public String toString() {
-        return car.getLicensePlate() + "/" + city + "/" + offencesCount;
+        return (car != null ? car.getLicensePlate() : null) + "/" + city + "/" + offencesCount;
     }
 }
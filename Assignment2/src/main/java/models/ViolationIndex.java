@@ -0,0 +1,142 @@
+package models;
+
+import java.util.*;
+
+/**
+ * Secondary indexes of violations by city, license plate, car type and emission category,
+ * next to the primary order of the violations by license plate and city.
+ * Every index maps a key to the violations with that key, in order of addition, in a NavigableMap
+ * such that a query of a key or a range of keys takes O(log n) plus the size of its result.
+ * Violations are indexed by the attributes of their car at the time they are added.
+ * License plates are indexed by the order preserving codes of LicensePlateCodec, such that adding a violation
+ * does not decode the plate of its car; only the few plates that cannot be encoded are indexed by String.
+ * The index is not thread-safe.
+ */
+public class ViolationIndex {
+    private final NavigableMap<String, List<Violation>> byCity = new TreeMap<>();
+    private final NavigableMap<Long, List<Violation>> byPlateCode = new TreeMap<>();
+    private final NavigableMap<String, List<Violation>> byUnencodedPlate = new TreeMap<>();
+    private final Map<Car.CarType, List<Violation>> byCarType = new EnumMap<>(Car.CarType.class);
+    private final NavigableMap<Integer, List<Violation>> byEmissionCategory = new TreeMap<>();
+    private int size = 0;
+
+    /**
+     * adds a new violation to all indexes
+     * @param violation
+     */
+    public void add(Violation violation) {
+        Car car = violation.getCar();
+        this.byCity.computeIfAbsent(violation.getCity(), city -> new ArrayList<>()).add(violation);
+        if (car.getPlateCode() != LicensePlateCodec.NOT_ENCODABLE) {
+            this.byPlateCode.computeIfAbsent(car.getPlateCode(), plateCode -> new ArrayList<>()).add(violation);
+        } else {
+            this.byUnencodedPlate.computeIfAbsent(car.getLicensePlate(), licensePlate -> new ArrayList<>()).add(violation);
+        }
+        this.byCarType.computeIfAbsent(car.getCarType(), carType -> new ArrayList<>()).add(violation);
+        this.byEmissionCategory.computeIfAbsent(car.getEmissionCategory(), emissionCategory -> new ArrayList<>()).add(violation);
+        this.size++;
+    }
+
+    public void addAll(Collection<Violation> violations) {
+        for (Violation violation : violations) {
+            if (violation != null) {
+                this.add(violation);
+            }
+        }
+    }
+
+    public void clear() {
+        this.byCity.clear();
+        this.byPlateCode.clear();
+        this.byUnencodedPlate.clear();
+        this.byCarType.clear();
+        this.byEmissionCategory.clear();
+        this.size = 0;
+    }
+
+    /**
+     * @param city
+     * @return  the violations in the city
+     */
+    public List<Violation> inCity(String city) {
+        return List.copyOf(this.byCity.getOrDefault(city, List.of()));
+    }
+
+    /**
+     * @param fromCity  inclusive
+     * @param toCity    exclusive
+     * @return  the violations in the cities between fromCity and toCity, by city
+     */
+    public List<Violation> inCities(String fromCity, String toCity) {
+        return concatenate(this.byCity.subMap(fromCity, true, toCity, false).values());
+    }
+
+    /**
+     * @param prefix    e.g. "VJ" or "12-"
+     * @return  the violations of the cars with a license plate that starts with the prefix, by license plate
+     */
+    public List<Violation> withPlatePrefix(String prefix) {
+        // all plates with the prefix sort before the prefix followed by the greatest character
+        return this.withPlatesBetween(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * @param fromLicensePlate  inclusive
+     * @param toLicensePlate    exclusive
+     * @return  the violations of the cars with a license plate between from and to, by license plate
+     */
+    public List<Violation> withPlatesBetween(String fromLicensePlate, String toLicensePlate) {
+        long fromCode = LicensePlateCodec.ceilingCode(fromLicensePlate);
+        long toCode = LicensePlateCodec.ceilingCode(toLicensePlate);
+        List<Violation> encoded = fromCode < toCode
+                ? concatenate(this.byPlateCode.subMap(fromCode, true, toCode, false).values()) : List.of();
+        if (this.byUnencodedPlate.isEmpty() || fromLicensePlate.compareTo(toLicensePlate) >= 0) {
+            return encoded;
+        }
+        List<Violation> unencoded = concatenate(this.byUnencodedPlate.subMap(fromLicensePlate, true, toLicensePlate, false).values());
+        // merge both runs by license plate
+        List<Violation> violations = new ArrayList<>(encoded.size() + unencoded.size());
+        int e = 0, u = 0;
+        while (e < encoded.size() || u < unencoded.size()) {
+            if (u >= unencoded.size()
+                    || e < encoded.size() && encoded.get(e).getCar().compareTo(unencoded.get(u).getCar()) <= 0) {
+                violations.add(encoded.get(e++));
+            } else {
+                violations.add(unencoded.get(u++));
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * @param carType
+     * @return  the violations of the cars of the type
+     */
+    public List<Violation> ofCarType(Car.CarType carType) {
+        return List.copyOf(this.byCarType.getOrDefault(carType, List.of()));
+    }
+
+    /**
+     * @param fromEmissionCategory  inclusive
+     * @param toEmissionCategory    inclusive
+     * @return  the violations of the cars with an emission category in the range, by emission category
+     */
+    public List<Violation> withEmissionCategories(int fromEmissionCategory, int toEmissionCategory) {
+        if (fromEmissionCategory > toEmissionCategory) {
+            return List.of();
+        }
+        return concatenate(this.byEmissionCategory.subMap(fromEmissionCategory, true, toEmissionCategory, true).values());
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    private static List<Violation> concatenate(Collection<List<Violation>> lists) {
+        List<Violation> violations = new ArrayList<>();
+        for (List<Violation> list : lists) {
+            violations.addAll(list);
+        }
+        return violations;
+    }
+}
@@ -0,0 +1,131 @@
+package models;
+
+import java.util.*;
+
+/**
+ * Hash table that accumulates the offences of detections into violations by car and city.
+ * The violations of every city are kept in an open-addressing LongHashMap keyed by the plate code of the car,
+ * such that counting an offence takes a single primitive lookup, without comparing license plate Strings.
+ * Cars with a license plate that cannot be encoded are kept in a regular map.
+ * The table is not thread-safe; concurrent imports shall use a table per worker and merge these afterwards.
+ * A table that does not count violations ignores all offences, for imports that only count approximately.
+ */
+public class ViolationTable implements Iterable<Violation> {
+    private final CityDictionary cities;
+    private final boolean countsViolations;
+    private final List<LongHashMap<Violation>> violationsByCityId = new ArrayList<>();
+    private final Map<String, Violation> unencodedViolations = new HashMap<>();  // keyed by licensePlate and city
+    private final List<Violation> violations = new ArrayList<>();                // in order of insertion
+
+    /**
+     * @param cities    the dictionary of the ids of the cities of the violations
+     */
+    public ViolationTable(CityDictionary cities) {
+        this(cities, true);
+    }
+
+    /**
+     * @param cities            the dictionary of the ids of the cities of the violations
+     * @param countsViolations  false ignores all offences and violations, such that the table stays empty
+     */
+    ViolationTable(CityDictionary cities, boolean countsViolations) {
+        this.cities = cities;
+        this.countsViolations = countsViolations;
+    }
+
+    /**
+     * counts one offence of the car in the city
+     * @param car
+     * @param cityId    the id of the city in the dictionary of this table
+     * @return  the violation of the car in the city, which is created if this is its first offence,
+     *          or null if the table does not count violations
+     */
+    public Violation addOffence(Car car, int cityId) {
+        if (!this.countsViolations) {
+            return null;
+        }
+        Violation violation = this.find(car, cityId);
+        if (violation == null) {
+            violation = new Violation(car, this.cities.nameOf(cityId));
+            this.add(violation, cityId);
+        } else {
+            violation.setOffencesCount(violation.getOffencesCount() + 1);
+        }
+        return violation;
+    }
+
+    /**
+     * merges the offences of the violation into the violation of the same car and city in the table,
+     * or adds the violation itself if the table has no violation of its car and city yet
+     * @param violation
+     * @return  whether the violation was added to the table
+     */
+    public boolean merge(Violation violation) {
+        if (!this.countsViolations) {
+            return false;
+        }
+        int cityId = this.cities.idOf(violation.getCity());
+        Violation existingViolation = this.find(violation.getCar(), cityId);
+        if (existingViolation == null) {
+            this.add(violation, cityId);
+            return true;
+        }
+        existingViolation.setOffencesCount(existingViolation.getOffencesCount() + violation.getOffencesCount());
+        return false;
+    }
+
+    /**
+     * merges all violations of the other table into this table
+     * @param other
+     */
+    public void mergeAll(ViolationTable other) {
+        for (Violation violation : other) {
+            this.merge(violation);
+        }
+    }
+
+    private Violation find(Car car, int cityId) {
+        if (car.getPlateCode() == LicensePlateCodec.NOT_ENCODABLE) {
+            return this.unencodedViolations.get(unencodedKey(car, cityId));
+        }
+        return cityId < this.violationsByCityId.size()
+                ? this.violationsByCityId.get(cityId).get(car.getPlateCode())
+                : null;
+    }
+
+    private void add(Violation violation, int cityId) {
+        Car car = violation.getCar();
+        if (car.getPlateCode() == LicensePlateCodec.NOT_ENCODABLE) {
+            this.unencodedViolations.put(unencodedKey(car, cityId), violation);
+        } else {
+            while (this.violationsByCityId.size() <= cityId) {
+                this.violationsByCityId.add(new LongHashMap<>());
+            }
+            this.violationsByCityId.get(cityId).put(car.getPlateCode(), violation);
+        }
+        this.violations.add(violation);
+    }
+
+    private static String unencodedKey(Car car, int cityId) {
+        return car.getLicensePlate() + "/" + cityId;
+    }
+
+    /**
+     * @return  all violations in the table, in the order in which they were added
+     */
+    public List<Violation> getViolations() {
+        return Collections.unmodifiableList(this.violations);
+    }
+
+    /**
+     * @return  the number of violations in the table
+     */
+    public int size() {
+        return this.violations.size();
+    }
+
+    @Override
+    public Iterator<Violation> iterator() {
+        return this.getViolations().iterator();
+    }
+}
@@ -0,0 +1,90 @@
+package models;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Declares the cars that may not enter the environmentally restricted zones of a kind, e.g. the purple zones:
+ * cars of any of the carTypes and any of the fuelTypes with an emission category below minimumEmissionCategory.
+ * Rules are plain data, which can be parsed from text lines, and are compiled into bitmasks per car by ZoneRules.
+ */
+public class ZoneRule {
+    /**
+     * Diesel trucks and diesel coaches with an emission category of below 6 may not enter a purple zone
+     */
+    public static final ZoneRule PURPLE = new ZoneRule("purple",
+            EnumSet.of(Car.CarType.Truck, Car.CarType.Coach), EnumSet.of(Car.FuelType.Diesel), 6);
+
+    private final String zone;                  // the name of the kind of zone
+    private final Set<Car.CarType> carTypes;
+    private final Set<Car.FuelType> fuelTypes;
+    private final int minimumEmissionCategory;  // the lowest emission category that may enter the zone
+
+    public ZoneRule(String zone, Set<Car.CarType> carTypes, Set<Car.FuelType> fuelTypes, int minimumEmissionCategory) {
+        this.zone = zone;
+        this.carTypes = carTypes.isEmpty() ? EnumSet.noneOf(Car.CarType.class) : EnumSet.copyOf(carTypes);
+        this.fuelTypes = fuelTypes.isEmpty() ? EnumSet.noneOf(Car.FuelType.class) : EnumSet.copyOf(fuelTypes);
+        this.minimumEmissionCategory = minimumEmissionCategory;
+    }
+
+    /**
+     * parses a zone rule from a textLine
+     * with format: zone, carTypes, fuelTypes, minimumEmissionCategory
+     * where carTypes and fuelTypes are lists of names separated by '|'
+     * should ignore leading and trailing whitespaces in each field
+     * @param textLine  e.g. "purple, Truck|Coach, Diesel, 6"
+     * @return  a new ZoneRule instance with the provided information
+     *          or null if the textLine is corrupt, incomplete or empty
+     */
+    public static ZoneRule fromLine(String textLine) {
+        ZoneRule newRule = null;
+        String[] fields = textLine.split(",");
+        if (fields.length == 4) {
+            try {
+                Set<Car.CarType> carTypes = EnumSet.noneOf(Car.CarType.class);
+                for (String carType : fields[1].split("\\|")) {
+                    carTypes.add(Car.CarType.valueOf(carType.trim()));
+                }
+                Set<Car.FuelType> fuelTypes = EnumSet.noneOf(Car.FuelType.class);
+                for (String fuelType : fields[2].split("\\|")) {
+                    fuelTypes.add(Car.FuelType.valueOf(fuelType.trim()));
+                }
+                newRule = new ZoneRule(fields[0].trim(), carTypes, fuelTypes, Integer.parseInt(fields[3].trim()));
+            } catch (Exception e) {
+                // any of the parse and valueOf methods could throw an exception on a format mismatch
+                System.out.printf("Could not parse ZoneRule specification in text line '%s'\n", textLine);
+                System.out.println(e.getMessage());
+            }
+        }
+        return newRule;
+    }
+
+    /**
+     * @return  the text line of this rule, which is parsed back by fromLine, e.g. "purple, Truck|Coach, Diesel, 6"
+     */
+    public String toLine() {
+        return String.format("%s, %s, %s, %d", this.zone,
+                this.carTypes.stream().map(Enum::name).collect(Collectors.joining("|")),
+                this.fuelTypes.stream().map(Enum::name).collect(Collectors.joining("|")),
+                this.minimumEmissionCategory);
+    }
+
+    /**
+     * @param car
+     * @return whether any detection of the car in a zone of this rule is an offence
+     */
+    public boolean isViolatedBy(Car car) {
+        return this.carTypes.contains(car.getCarType()) && this.fuelTypes.contains(car.getFuelType())
+                && car.getEmissionCategory() < this.minimumEmissionCategory;
+    }
+
+    public String getZone() {
+        return this.zone;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s/%s/%d", this.zone, this.carTypes, this.fuelTypes, this.minimumEmissionCategory);
+    }
+}
@@ -0,0 +1,178 @@
+package models;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Rule engine of the environmentally restricted zones, which compiles a set of at most MAX_ZONES zone rules
+ * into a bitmask per car of the zones that the car may not enter.
+ * The bitmask is evaluated once per car and cached by the rule set, in a LongHashMap keyed by the plate code
+ * of the car, such that validating a detection is a hash lookup and a single bit test, and every rule set
+ * keeps its own bitmasks. Every bitmask is tagged with the attributes of the car that the rules test,
+ * so cars that are not compiled yet, or whose attributes have been changed since, are evaluated on their first test.
+ * Cars whose plates cannot be encoded are evaluated on every test.
+ * A rule set is immutable; a rule change yields a new rule set, against which a registry of cars can be
+ * recompiled by a parallel pass.
+ */
+public class ZoneRules {
+    public static final int MAX_ZONES = Long.SIZE;
+
+    /**
+     * the rule set of the purple zones only, which is applied by Detection.isPurpleOffender
+     */
+    public static final ZoneRules PURPLE = new ZoneRules(List.of(ZoneRule.PURPLE));
+
+    /**
+     * the bitmask of the violated zones of a car, as compiled from the attributes of the car
+     */
+    static final class CompiledZones {
+        final long attributes;
+        final long zones;
+
+        CompiledZones(long attributes, long zones) {
+            this.attributes = attributes;
+            this.zones = zones;
+        }
+    }
+
+    private final List<ZoneRule> rules;
+    // the compiled zones by the plate code of the car, written under the lock of the map and read without it
+    private final LongHashMap<CompiledZones> zonesByPlateCode = new LongHashMap<>();
+
+    /**
+     * @param rules     the rules of at most MAX_ZONES zones with distinct names, a zone is identified by its index
+     */
+    public ZoneRules(List<ZoneRule> rules) {
+        if (rules.size() > MAX_ZONES) {
+            throw new IllegalArgumentException("At most " + MAX_ZONES + " zone rules are supported, not " + rules.size());
+        }
+        Set<String> zones = new HashSet<>();
+        for (ZoneRule rule : rules) {
+            if (!zones.add(rule.getZone())) {
+                throw new IllegalArgumentException("Duplicate rule of zone " + rule.getZone());
+            }
+        }
+        this.rules = List.copyOf(rules);
+    }
+
+    /**
+     * @param rule
+     * @return  a new rule set, in which the rule replaces the rule of the same zone, or is added as a new zone
+     */
+    public ZoneRules withRule(ZoneRule rule) {
+        List<ZoneRule> newRules = new ArrayList<>(this.rules);
+        int zoneIndex = this.zoneIndexOf(rule.getZone());
+        if (zoneIndex >= 0) {
+            newRules.set(zoneIndex, rule);
+        } else {
+            newRules.add(rule);
+        }
+        return new ZoneRules(newRules);
+    }
+
+    /**
+     * @param zone
+     * @return  the index of the zone in the bitmasks, or -1 if the rule set has no rule of the zone
+     */
+    public int zoneIndexOf(String zone) {
+        for (int zoneIndex = 0; zoneIndex < this.rules.size(); zoneIndex++) {
+            if (this.rules.get(zoneIndex).getZone().equals(zone)) {
+                return zoneIndex;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * evaluates all rules against every car of the registry by a parallel pass, and caches the bitmasks of the cars
+     * @param cars
+     */
+    public void compile(Collection<Car> cars) {
+        List<Car> encodedCars = cars.parallelStream()
+                .filter(car -> car.getPlateCode() != LicensePlateCodec.NOT_ENCODABLE).toList();
+        List<CompiledZones> compiledZones = encodedCars.parallelStream()
+                .map(car -> new CompiledZones(attributesOf(car), this.evaluate(car))).toList();
+        synchronized (this.zonesByPlateCode) {
+            for (int c = 0; c < encodedCars.size(); c++) {
+                this.zonesByPlateCode.put(encodedCars.get(c).getPlateCode(), compiledZones.get(c));
+            }
+        }
+    }
+
+    private long evaluate(Car car) {
+        long zones = 0;
+        for (int zoneIndex = 0; zoneIndex < this.rules.size(); zoneIndex++) {
+            if (this.rules.get(zoneIndex).isViolatedBy(car)) {
+                zones |= 1L << zoneIndex;
+            }
+        }
+        return zones;
+    }
+
+    /**
+     * @param car
+     * @return  the attributes of the car that the zone rules test, packed into a long
+     */
+    private static long attributesOf(Car car) {
+        return (long) car.getEmissionCategory() << 16 | car.getCarType().ordinal() << 8 | car.getFuelType().ordinal();
+    }
+
+    /**
+     * @param car
+     * @return  the bitmask of the zones that the car may not enter, bit i for the zone at index i
+     */
+    public long violatedZones(Car car) {
+        long plateCode = car.getPlateCode();
+        if (plateCode == LicensePlateCodec.NOT_ENCODABLE) {
+            return this.evaluate(car);
+        }
+        long attributes = attributesOf(car);
+        CompiledZones compiledZones = this.zonesByPlateCode.get(plateCode);
+        if (compiledZones == null || compiledZones.attributes != attributes) {
+            compiledZones = new CompiledZones(attributes, this.evaluate(car));
+            synchronized (this.zonesByPlateCode) {
+                this.zonesByPlateCode.put(plateCode, compiledZones);
+            }
+        }
+        return compiledZones.zones;
+    }
+
+    /**
+     * @param car
+     * @return  the bitmask of the car that is cached by this rule set, or null if it has not been compiled
+     */
+    CompiledZones compiledZonesOf(Car car) {
+        return this.zonesByPlateCode.get(car.getPlateCode());
+    }
+
+    /**
+     * @param car
+     * @param zoneIndex
+     * @return  whether any detection of the car in a zone at the index is an offence
+     */
+    public boolean isViolatedBy(Car car, int zoneIndex) {
+        return (this.violatedZones(car) & 1L << zoneIndex) != 0;
+    }
+
+    /**
+     * @param zone
+     * @return  the test of the cars whose detections in the zone are offences
+     */
+    public Predicate<Car> offenderFilter(String zone) {
+        int zoneIndex = this.zoneIndexOf(zone);
+        if (zoneIndex < 0) {
+            throw new IllegalArgumentException("No rule of zone " + zone);
+        }
+        long zoneBit = 1L << zoneIndex;
+        return car -> (this.violatedZones(car) & zoneBit) != 0;
+    }
+
+    public List<ZoneRule> getRules() {
+        return this.rules;
+    }
+
+    @Override
+    public String toString() {
+        return this.rules.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package models;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies that concurrent merges into a ConcurrentOrderedList lose no updates,
+ * and benchmarks contended merges by several writer threads against a synchronised OrderedArrayList.
+ * The benchmark reports the times of both lists for several numbers of writer threads; it is tagged,
+ * such that it only runs when the benchmarks are included in the build.
+ */
+public class ConcurrentOrderedListTest {
+    private static final int NUMBER_OF_KEYS = 2000;
+    private static final int MERGES_PER_THREAD = 200000;
+    private static final int CHECKED_MERGES_PER_THREAD = 10000;
+    private static final Comparator<long[]> BY_KEY = Comparator.comparingLong(counter -> counter[0]);
+    // counters are {key, count}, merging adds the count of the new counter into the matched counter
+    private static final BinaryOperator<long[]> ADD_COUNTS = (c1, c2) -> {
+        c1[1] += c2[1];
+        return c1;
+    };
+
+    @Test
+    public void itemsAreSortedAndSearchable() {
+        ConcurrentOrderedList<Integer> list = new ConcurrentOrderedList<>(Comparator.comparing(i -> i / 10));
+        list.addAll(List.of(50, 10, 30, 31, 11, 52));
+        assertEquals(List.of(10, 11, 30, 31, 50, 52), list);
+        assertEquals(6, list.size());
+        assertEquals(2, list.indexOfByBinarySearch(35));
+        assertEquals(-1, list.indexOfByBinarySearch(40));
+        assertEquals(31, list.get(3));
+
+        assertTrue(list.merge(40, (i1, i2) -> i1));
+        assertFalse(list.merge(42, (i1, i2) -> i2));
+        assertEquals(List.of(10, 11, 30, 31, 42, 50, 52), list);
+
+        assertTrue(list.remove(Integer.valueOf(30)));
+        assertFalse(list.remove(Integer.valueOf(30)));
+        assertEquals(42, list.remove(3));
+        assertEquals(List.of(10, 11, 31, 50, 52), list);
+        assertThrows(UnsupportedOperationException.class, () -> list.set(0, 10));
+
+        list.sort(Comparator.reverseOrder());
+        assertEquals(List.of(52, 50, 31, 11, 10), list);
+        list.clear();
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void contendedMergesLoseNoUpdates() throws Exception {
+        int numberOfThreads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        mergeByContendingThreads(numberOfThreads, CHECKED_MERGES_PER_THREAD);
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void contendedMergesBenchmark() throws Exception {
+        for (int numberOfThreads : new int[] { 1, 2, 4, 8 }) {
+            long[] nanos = mergeByContendingThreads(numberOfThreads, MERGES_PER_THREAD);
+            System.out.printf("%d contended merges of %d keys by %d threads: " +
+                            "synchronised OrderedArrayList %d ms, ConcurrentOrderedList %d ms\n",
+                    numberOfThreads * MERGES_PER_THREAD, NUMBER_OF_KEYS, numberOfThreads,
+                    TimeUnit.NANOSECONDS.toMillis(nanos[0]), TimeUnit.NANOSECONDS.toMillis(nanos[1]));
+        }
+    }
+
+    /**
+     * merges counters into a synchronised OrderedArrayList and into a ConcurrentOrderedList by the writer threads,
+     * and verifies that both lists have counted every merge
+     * @return  the nanoseconds of the merges into { the OrderedArrayList, the ConcurrentOrderedList }
+     */
+    private static long[] mergeByContendingThreads(int numberOfThreads, int mergesPerThread) throws Exception {
+        OrderedArrayList<long[]> arrayList = new OrderedArrayList<>(BY_KEY);
+        long arrayListNanos = mergeConcurrently(numberOfThreads, mergesPerThread, counter -> {
+            synchronized (arrayList) {
+                arrayList.merge(counter, ADD_COUNTS);
+            }
+        });
+        ConcurrentOrderedList<long[]> concurrentList = new ConcurrentOrderedList<>(BY_KEY);
+        long concurrentListNanos = mergeConcurrently(numberOfThreads, mergesPerThread,
+                counter -> concurrentList.merge(counter, ADD_COUNTS));
+
+        for (OrderedList<long[]> list : List.of(arrayList, concurrentList)) {
+            list.sort();
+            assertEquals(NUMBER_OF_KEYS, list.size());
+            assertEquals((long)numberOfThreads * mergesPerThread, list.aggregateAsLong(counter -> counter[1], false),
+                    "every merge should be counted exactly once");
+        }
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            assertArrayEquals(arrayList.get(i), concurrentList.get(i));
+        }
+        return new long[] { arrayListNanos, concurrentListNanos };
+    }
+
+    private interface Merger {
+        void merge(long[] counter);
+    }
+
+    private static long mergeConcurrently(int numberOfThreads, int mergesPerThread, Merger merger) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < numberOfThreads; t++) {
+                Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < mergesPerThread; i++) {
+                        merger.merge(new long[] { random.nextInt(NUMBER_OF_KEYS), 1 });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DetectionDeduplicatorTest {
+    private static final Car TRUCK = new Car("1-TTT-01", 5, Car.CarType.Truck, Car.FuelType.Diesel, LocalDate.of(2012, 3, 4));
+    private static final Car COACH = new Car("2-CCC-02", 5, Car.CarType.Coach, Car.FuelType.Diesel, LocalDate.of(2011, 5, 6));
+    private static final Car ODD_PLATE = new Car("ODD_PLATE!", 5, Car.CarType.Coach, Car.FuelType.Diesel, LocalDate.of(2011, 5, 6));
+
+    @Test
+    public void repeatsWithinTheWindowAreSuppressed() {
+        DetectionDeduplicator deduplicator = new DetectionDeduplicator(Duration.ofMinutes(10), new CityDictionary());
+        long t = 1_700_000_000L;
+        for (Car car : List.of(TRUCK, COACH, ODD_PLATE)) {
+            assertTrue(deduplicator.accept(car, 0, t), car.toString());
+            assertTrue(deduplicator.accept(car, 1, t + 30), "another city is not a repeat");
+            assertFalse(deduplicator.accept(car, 0, t + 599));
+            assertFalse(deduplicator.accept(car, 0, t - 599), "a repeat may arrive out of order");
+            assertTrue(deduplicator.accept(car, 0, t + 600));
+            assertTrue(deduplicator.accept(car, 0, t - 600));
+            assertFalse(deduplicator.accept(car, 0, t + 1199), "a repeat of the second accepted detection");
+        }
+        assertEquals(9, deduplicator.getNumberOfRepeats());
+        assertEquals(12, deduplicator.size());
+
+        deduplicator.clear();
+        assertEquals(0, deduplicator.size());
+        assertEquals(0, deduplicator.getNumberOfRepeats());
+        assertTrue(deduplicator.accept(TRUCK, 0, t + 599));
+        assertThrows(IllegalArgumentException.class,
+                () -> new DetectionDeduplicator(Duration.ofMillis(500), new CityDictionary()));
+    }
+
+    @Test
+    public void repeatsAreRecognisedInAnyOrder() {
+        DetectionDeduplicator deduplicator = new DetectionDeduplicator(Duration.ofSeconds(60), new CityDictionary());
+        long t = 1_700_000_000L;
+        Car[] cars = new Car[1000];
+        for (int c = 0; c < cars.length; c++) {
+            cars[c] = new Car(String.format("%d-AAA-%03d", c % 10, c));
+        }
+        // every car is detected every 10 seconds during a day, the hours in reverse order and shuffled across the cars
+        for (int hour = 23; hour >= 0; hour--) {
+            for (long second = 0; second < 3600; second += 10) {
+                for (int c = 0; c < cars.length; c++) {
+                    deduplicator.accept(cars[c], c % 7, t + hour * 3600 + (second + 60L * c) % 3600);
+                }
+            }
+        }
+        // at least one in every 6 detections of a car is accepted, and two accepted detections are a minute apart
+        long numberOfDetections = cars.length * 8640L;
+        assertEquals(numberOfDetections, deduplicator.size() + deduplicator.getNumberOfRepeats());
+        assertTrue(deduplicator.size() >= cars.length * 1440L);
+        assertTrue(deduplicator.size() <= cars.length * 1464L);
+        for (int c = 0; c < cars.length; c++) {
+            assertFalse(deduplicator.accept(cars[c], c % 7, t + 59), cars[c].toString());
+        }
+    }
+
+    /**
+     * @return  the number of repeats of the detections in their order of arrival, by a greedy brute force
+     */
+    private static long repeatsOf(DetectionStore detections, Duration window) {
+        Map<String, TreeSet<Long>> accepted = new HashMap<>();
+        long numberOfRepeats = 0;
+        for (long index = 0; index < detections.size(); index++) {
+            Detection detection = detections.get(index);
+            long epochSecond = detection.getDateTime().toEpochSecond(ZoneOffset.UTC);
+            TreeSet<Long> times = accepted.computeIfAbsent(
+                    detection.getCar().getLicensePlate() + "/" + detection.getCity(), key -> new TreeSet<>());
+            Long before = times.floor(epochSecond);
+            Long after = times.ceiling(epochSecond);
+            if (before != null && epochSecond - before < window.getSeconds()
+                    || after != null && after - epochSecond < window.getSeconds()) {
+                numberOfRepeats++;
+            } else {
+                times.add(epochSecond);
+            }
+        }
+        return numberOfRepeats;
+    }
+
+    @Test
+    public void vaultImportsSuppressRepeats() {
+        Duration window = Duration.ofHours(1);
+        TrafficTracker allTracker = new TrafficTracker();
+        allTracker.setImportParallelism(1);
+        allTracker.setDetectionRetention(true);
+        allTracker.importCarsFromVault("/2023-09/cars.txt");
+        allTracker.importDetectionsFromVault("/2023-09/detections");
+        long expectedRepeats = repeatsOf(allTracker.getDetectionStore(), window);
+        // the vault files are not ordered by time, and repeat many detections within an hour
+        assertTrue(expectedRepeats > 1000, "repeats " + expectedRepeats);
+
+        for (boolean mappedParsing : new boolean[] { false, true }) {
+            TrafficTracker dedupTracker = new TrafficTracker();
+            dedupTracker.setImportParallelism(1);
+            dedupTracker.setMappedParsing(mappedParsing);
+            dedupTracker.setDeduplicationWindow(window);
+            dedupTracker.importCarsFromVault("/2023-09/cars.txt");
+            dedupTracker.importDetectionsFromVault("/2023-09/detections");
+            assertEquals(expectedRepeats, dedupTracker.getDeduplicator().getNumberOfRepeats(), "mapped " + mappedParsing);
+            assertEquals(allTracker.getDetectionStore().size() - expectedRepeats, dedupTracker.getDeduplicator().size());
+        }
+
+        // a parallel import accepts other detections, but as many as a sequential import up to the order
+        TrafficTracker parallelTracker = new TrafficTracker();
+        parallelTracker.setImportParallelism(4);
+        parallelTracker.setDeduplicationWindow(window);
+        parallelTracker.importCarsFromVault("/2023-09/cars.txt");
+        parallelTracker.importDetectionsFromVault("/2023-09/detections");
+        assertEquals(allTracker.getDetectionStore().size(), parallelTracker.getDeduplicator().size()
+                + parallelTracker.getDeduplicator().getNumberOfRepeats());
+        assertTrue(parallelTracker.getDeduplicator().getNumberOfRepeats() > 1000);
+    }
+
+    @Test
+    public void trackerCountsDeduplicatedDetections(@TempDir File segmentsFolder) throws URISyntaxException {
+        VaultSegments.convert(new File(getClass().getResource("/2023-09/cars.txt").toURI()),
+                new File(getClass().getResource("/2023-09/detections").toURI()), segmentsFolder);
+        TrafficTracker allTracker = new TrafficTracker();
+        allTracker.setImportParallelism(1);
+        allTracker.setDetectionRetention(true);
+        allTracker.importSegmentsFromFolder(segmentsFolder);
+
+        // the segments deliver the detections in order of time, so the first detection of a series is accepted
+        Duration window = Duration.ofHours(1);
+        List<Detection> expected = new ArrayList<>();
+        Map<String, Long> lastAccepted = new HashMap<>();
+        DetectionStore allDetections = allTracker.getDetectionStore();
+        for (long index = 0; index < allDetections.size(); index++) {
+            Detection detection = allDetections.get(index);
+            long epochSecond = detection.getDateTime().toEpochSecond(ZoneOffset.UTC);
+            Long last = lastAccepted.get(detection.getCar().getLicensePlate() + "/" + detection.getCity());
+            if (last == null || epochSecond - last >= window.getSeconds()) {
+                lastAccepted.put(detection.getCar().getLicensePlate() + "/" + detection.getCity(), epochSecond);
+                expected.add(detection);
+            }
+        }
+
+        TrafficTracker dedupTracker = new TrafficTracker();
+        dedupTracker.setImportParallelism(1);
+        dedupTracker.setDetectionRetention(true);
+        dedupTracker.setDeduplicationWindow(window);
+        dedupTracker.importSegmentsFromFolder(segmentsFolder);
+        assertEquals(expected.size(), dedupTracker.getDetectionStore().size());
+        assertEquals(allDetections.size() - expected.size(), dedupTracker.getDeduplicator().getNumberOfRepeats());
+        assertTrue(expected.size() < allDetections.size());
+        assertEquals(expected.stream().filter(detection -> Detection.isPurpleOffender(detection.getCar())).count(),
+                dedupTracker.getViolations().stream().mapToLong(Violation::getOffencesCount).sum());
+
+        // a repeated import starts afresh
+        dedupTracker.importSegmentsFromFolder(segmentsFolder);
+        assertEquals(expected.size(), dedupTracker.getDetectionStore().size());
+    }
+}
@@ -0,0 +1,138 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DetectionPipelineTest {
+    private static final String VAULT_NAME = "/2023-09";
+
+    private static TrafficTracker importVault(boolean pipelinedImport, int importParallelism) {
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.setOffenceTimelines(true);
+        tracker.setPipelinedImport(pipelinedImport);
+        tracker.setImportParallelism(importParallelism);
+        tracker.setDetectionRetention(true);
+        tracker.setDeduplicationWindow(Duration.ofMinutes(5));
+        tracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        tracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        return tracker;
+    }
+
+    private static List<File> detectionFiles() throws URISyntaxException {
+        List<File> files = new ArrayList<>();
+        Deque<File> folders = new ArrayDeque<>(List.of(
+                new File(DetectionPipelineTest.class.getResource(VAULT_NAME + "/detections").toURI())));
+        while (!folders.isEmpty()) {
+            for (File file : Objects.requireNonNull(folders.pop().listFiles())) {
+                if (file.isDirectory()) {
+                    folders.push(file);
+                } else if (file.getName().endsWith(".txt")) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    @Test
+    public void pipelinedImportEqualsSequentialImport() {
+        TrafficTracker expected = importVault(false, 1);
+        List<Car> expectedCars = new ArrayList<>(expected.getCars());
+        expectedCars.sort(Car::compareTo);
+        LocalDateTime from = LocalDateTime.of(2023, 9, 1, 0, 0);
+
+        for (int importParallelism : new int[] { 1, 3 }) {
+            TrafficTracker tracker = importVault(true, importParallelism);
+            assertEquals(expected.getViolations().toString(), tracker.getViolations().toString());
+            assertEquals(expected.calculateTotalFines(), tracker.calculateTotalFines(), 1e-6);
+            List<Car> cars = new ArrayList<>(tracker.getCars());
+            cars.sort(Car::compareTo);
+            assertEquals(expectedCars.toString(), cars.toString());
+
+            assertEquals(expected.getDeduplicator().getNumberOfRepeats(), tracker.getDeduplicator().getNumberOfRepeats());
+            assertEquals(expected.getDetectionStore().size(), tracker.getDetectionStore().size());
+            for (long d = 0; d < expected.getDetectionStore().size(); d += 97) {
+                assertEquals(expected.getDetectionStore().get(d).toString(), tracker.getDetectionStore().get(d).toString());
+            }
+            for (Violation violation : expected.getViolations()) {
+                assertArrayEquals(expected.getDailyOffencesByCity().counts(violation.getCity(), from, 30),
+                        tracker.getDailyOffencesByCity().counts(violation.getCity(), from, 30));
+                assertArrayEquals(expected.getDailyOffencesByCar().counts(violation.getCar(), from, 30),
+                        tracker.getDailyOffencesByCar().counts(violation.getCar(), from, 30));
+            }
+
+            DetectionPipeline pipeline = tracker.getDetectionPipeline();
+            assertEquals(pipeline.getNumberOfItems(DetectionPipeline.Stage.READ),
+                    pipeline.getNumberOfItems(DetectionPipeline.Stage.PARSE));
+            assertEquals(tracker.getDetectionStore().size(), pipeline.getNumberOfItems(DetectionPipeline.Stage.AGGREGATE));
+            assertEquals(pipeline.getNumberOfItems(DetectionPipeline.Stage.VALIDATE),
+                    pipeline.getNumberOfItems(DetectionPipeline.Stage.AGGREGATE));
+            for (DetectionPipeline.Stage stage : DetectionPipeline.Stage.values()) {
+                assertEquals(0, pipeline.getQueueDepth(stage), stage.name());
+                assertTrue(pipeline.getItemsPerSecond(stage) > 0, stage.name());
+            }
+        }
+        assertNull(expected.getDetectionPipeline());
+    }
+
+    @Test
+    public void batchesInFlightAreBounded() throws URISyntaxException {
+        List<File> files = detectionFiles();
+        Map<String, Car> carsByPlate = Collections.synchronizedMap(new HashMap<>());
+        List<String> aggregatedCities = new ArrayList<>();
+        // 3 batches in flight, and the end markers of the 2 parser threads
+        int maxQueueDepth = 3 + 2;
+
+        DetectionPipeline pipeline = new DetectionPipeline(2, 7, 3);
+        pipeline.run(files, line -> Detection.fromLine(line, plate -> carsByPlate.computeIfAbsent(plate, Car::new)),
+                null, car -> true,
+                (detections, offences) -> {
+                    assertEquals(detections.size(), offences.cardinality());
+                    detections.forEach(detection -> aggregatedCities.add(detection.getCity()));
+                    assertTrue(pipeline.getQueueDepth(DetectionPipeline.Stage.PARSE)
+                            + pipeline.getQueueDepth(DetectionPipeline.Stage.VALIDATE)
+                            + pipeline.getQueueDepth(DetectionPipeline.Stage.AGGREGATE) <= maxQueueDepth);
+                });
+
+        // the detections arrive in the order of the files and their lines
+        List<String> expectedCities = new ArrayList<>();
+        for (File file : files) {
+            List<Detection> detections = new ArrayList<>();
+            TrafficTracker.importItemsFromFile(detections, file, line -> Detection.fromLine(line, Car::new));
+            detections.forEach(detection -> expectedCities.add(detection.getCity()));
+        }
+        assertEquals(expectedCities, aggregatedCities);
+        for (DetectionPipeline.Stage stage : DetectionPipeline.Stage.values()) {
+            assertTrue(pipeline.getPeakQueueDepth(stage) <= maxQueueDepth, stage.name());
+        }
+    }
+
+    @Test
+    public void failuresOfAStageAreRethrown() throws URISyntaxException {
+        List<File> files = detectionFiles();
+        DetectionPipeline pipeline = new DetectionPipeline(2, 16, 2);
+        AtomicInteger numberOfLines = new AtomicInteger();
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> pipeline.run(files,
+                line -> {
+                    if (numberOfLines.incrementAndGet() == 100) {
+                        throw new IllegalStateException("corrupt vault");
+                    }
+                    return Detection.fromLine(line, Car::new);
+                },
+                null, car -> false, (detections, offences) -> { }));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+
+        List<File> missingFiles = List.of(new File(files.get(0).getParentFile(), "missing.txt"));
+        assertThrows(RuntimeException.class, () -> new DetectionPipeline(1, 16, 2).run(missingFiles,
+                line -> null, null, car -> false, (detections, offences) -> { }));
+        assertThrows(IllegalArgumentException.class, () -> new DetectionPipeline(0, 16, 2));
+    }
+}
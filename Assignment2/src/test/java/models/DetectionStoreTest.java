@@ -0,0 +1,108 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DetectionStoreTest {
+    private static final long START_SECOND = LocalDateTime.of(2023, 9, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+    @Test
+    public void appendersFillChunksFromSeveralThreads() throws InterruptedException {
+        CityDictionary cities = new CityDictionary();
+        int amsterdam = cities.idOf("Amsterdam");
+        int utrecht = cities.idOf("Utrecht");
+        DetectionStore store = new DetectionStore(cities);
+        Car truck = new Car("1-TTT-01", 5, Car.CarType.Truck, Car.FuelType.Diesel, LocalDate.of(2009, 1, 31));
+        Car car = new Car("AA-11-BB", 4, Car.CarType.Car, Car.FuelType.Diesel, LocalDate.of(1998, 1, 31));
+
+        // every thread appends more detections than fit in a chunk
+        int detectionsPerThread = DetectionStore.CHUNK_SIZE + 1000;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                DetectionStore.Appender appender = store.appender();
+                for (int i = 0; i < detectionsPerThread; i++) {
+                    // a truck in Amsterdam at every 4th second, other detections are cars in Utrecht
+                    boolean isTruck = i % 4 == 0;
+                    appender.add(isTruck ? truck : car, isTruck ? amsterdam : utrecht, START_SECOND + i);
+                }
+                appender.flush();
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        long numberOfTrucks = 4L * ((detectionsPerThread + 3) / 4);
+        assertEquals(4L * detectionsPerThread, store.size());
+        assertEquals(numberOfTrucks, store.count(Detection::isPurpleOffender));
+        assertEquals(store.size(), store.count(c -> true));
+        assertEquals(4 * 250, store.count(Detection::isPurpleOffender, START_SECOND, START_SECOND + 1000));
+
+        ViolationTable violations = store.aggregateViolations(Detection::isPurpleOffender);
+        assertEquals(1, violations.size());
+        assertEquals(numberOfTrucks, violations.getViolations().get(0).getOffencesCount());
+        assertEquals("Amsterdam", violations.getViolations().get(0).getCity());
+
+        Detection detection = store.get(store.size() - 1);
+        assertNotNull(detection.getCar());
+        assertTrue(detection.getDateTime().isAfter(LocalDateTime.of(2023, 9, 1, 0, 0)));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(store.size()));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.count(c -> true));
+    }
+
+    @Test
+    public void appendersOfManyFilesAndCarsAreCheap() {
+        CityDictionary cities = new CityDictionary();
+        int leiden = cities.idOf("Leiden");
+        DetectionStore store = new DetectionStore(cities);
+        // an appender per file of a few detections, with new cars in every file
+        Car[] cars = new Car[200000];
+        for (int file = 0; file < 20000; file++) {
+            DetectionStore.Appender appender = store.appender();
+            for (int c = 10 * file; c < 10 * file + 10; c++) {
+                cars[c] = new Car(String.format("%02d-AB-%04d", c / 10000, c % 10000));
+                appender.add(cars[c], leiden, START_SECOND + c);
+            }
+            appender.flush();
+            appender.flush();
+        }
+        assertEquals(cars.length, store.size());
+        for (int c = 0; c < cars.length; c += 9999) {
+            assertSame(cars[c], store.get(c).getCar());
+        }
+        assertEquals(1, store.count(car -> car == cars[123456]));
+    }
+
+    @Test
+    public void retainedDetectionsReproduceTheViolations() {
+        List<DetectionStore> stores = new ArrayList<>();
+        for (boolean mappedParsing : new boolean[] { false, true }) {
+            TrafficTracker tracker = new TrafficTracker();
+            tracker.setMappedParsing(mappedParsing);
+            tracker.setImportParallelism(mappedParsing ? 4 : 1);
+            tracker.setDetectionRetention(true);
+            tracker.importCarsFromVault("/test1/cars.txt");
+            tracker.importDetectionsFromVault("/test1/detections");
+
+            DetectionStore store = tracker.getDetectionStore();
+            ViolationTable violations = store.aggregateViolations(Detection::isPurpleOffender);
+            List<Violation> sortedViolations = new ArrayList<>(violations.getViolations());
+            sortedViolations.sort(Violation::compareByLicensePlateAndCity);
+            assertEquals(tracker.getViolations().toString(), sortedViolations.toString());
+            assertEquals(7, store.count(Detection::isPurpleOffender));
+            stores.add(store);
+        }
+        assertEquals(stores.get(0).size(), stores.get(1).size());
+        assertTrue(stores.get(0).size() > 7);
+    }
+}
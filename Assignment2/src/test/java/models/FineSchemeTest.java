@@ -0,0 +1,82 @@
+package models;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FineSchemeTest {
+    private static final String[] CITIES = { "Amsterdam", "Rotterdam", "Utrecht", "Den Haag", "Eindhoven", "Zwolle" };
+
+    static TrafficTracker trafficTracker;
+
+    @BeforeAll
+    public static void setup() {
+        trafficTracker = new TrafficTracker();
+        trafficTracker.importCarsFromVault("/2023-09/cars.txt");
+        trafficTracker.importDetectionsFromVault("/2023-09/detections");
+    }
+
+    private static List<FineScheme> randomSchemes(int numberOfSchemes) {
+        Random random = new Random(41);
+        List<FineScheme> schemes = new ArrayList<>();
+        for (int s = 0; s < numberOfSchemes; s++) {
+            FineScheme scheme = new FineScheme("scheme" + s, Map.of(
+                    Car.CarType.Truck, 10.0 + random.nextInt(40), Car.CarType.Coach, 10.0 + random.nextInt(40),
+                    Car.CarType.Van, (double)random.nextInt(10)));
+            for (int e = 0; e < 3; e++) {
+                scheme = scheme.withEmissionSurcharge(random.nextInt(FineScheme.NUMBER_OF_EMISSION_CATEGORIES),
+                        random.nextInt(20) / 4.0);
+            }
+            if (random.nextBoolean()) {
+                scheme = scheme.withCityFactor(CITIES[random.nextInt(CITIES.length)], 0.5 + random.nextInt(4) / 2.0);
+            }
+            if (random.nextBoolean()) {
+                scheme = scheme.withRepeatRate(random.nextInt(5), 1.0 + random.nextInt(4) / 4.0);
+            }
+            schemes.add(scheme);
+        }
+        return schemes;
+    }
+
+    @Test
+    public void standardSchemeMatchesTotalFines() {
+        assertArrayEquals(new double[] { trafficTracker.calculateTotalFines() },
+                trafficTracker.calculateTotalFines(List.of(FineScheme.STANDARD)));
+        assertEquals(186090.0, trafficTracker.calculateTotalFines());
+        assertArrayEquals(new double[0], trafficTracker.calculateTotalFines(List.of()));
+    }
+
+    @Test
+    public void allSchemesMatchSeparateAggregations() {
+        List<FineScheme> schemes = randomSchemes(40);
+        double[] totalFines = trafficTracker.calculateTotalFines(schemes);
+        FineSchemeEvaluator evaluator = new FineSchemeEvaluator(schemes);
+        assertArrayEquals(totalFines, evaluator.evaluate(trafficTracker.getViolations(), false));
+        for (int s = 0; s < schemes.size(); s++) {
+            FineScheme scheme = schemes.get(s);
+            assertEquals(trafficTracker.getViolations().aggregate(scheme::fineOf, false), totalFines[s], 1e-6,
+                    scheme.toString());
+        }
+    }
+
+    @Test
+    public void repeatOffencesAreChargedProgressively() {
+        Car coach = new Car("1-CCC-01", 5, Car.CarType.Coach, Car.FuelType.Diesel, java.time.LocalDate.of(2009, 1, 31));
+        Violation violation = new Violation(coach, "Utrecht");
+        violation.setOffencesCount(5);
+        FineScheme scheme = FineScheme.STANDARD.withEmissionSurcharge(5, 5.0)
+                .withCityFactor("Utrecht", 2.0).withRepeatRate(2, 1.5);
+        // 2 offences at (35 + 5) * 2 and 3 more at 1.5 times that
+        assertEquals(2 * 80 + 3 * 120, scheme.fineOf(violation));
+        assertEquals(5 * 35, FineScheme.STANDARD.fineOf(violation), "the standard scheme shall not be changed");
+        assertArrayEquals(new double[] { 5 * 35, 2 * 80 + 3 * 120 },
+                new FineSchemeEvaluator(List.of(FineScheme.STANDARD, scheme)).evaluate(List.of(violation), false));
+        assertThrows(IllegalArgumentException.class, () -> scheme.withEmissionSurcharge(10, 1.0));
+    }
+}
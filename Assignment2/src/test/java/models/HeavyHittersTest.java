@@ -0,0 +1,143 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeavyHittersTest {
+    private static final String VAULT_NAME = "/2023-09";
+
+    /**
+     * draws keys 0 <= key < numberOfKeys with a Zipf distribution, key k having probability ~ 1 / (k + 1)
+     */
+    private static int[] zipfStream(int numberOfKeys, int length, long seed) {
+        double[] cumulative = new double[numberOfKeys];
+        double sum = 0.0;
+        for (int k = 0; k < numberOfKeys; k++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+        }
+        Random random = new Random(seed);
+        int[] stream = new int[length];
+        for (int i = 0; i < length; i++) {
+            int key = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            stream[i] = key >= 0 ? key : Math.min(-key - 1, numberOfKeys - 1);
+        }
+        return stream;
+    }
+
+    @Test
+    public void estimatesAreBoundedByTheMaxError() {
+        int[] stream = zipfStream(100000, 1000000, 17);
+        HeavyHitters<Integer> heavyHitters = HeavyHitters.withMaxErrorRate(0.005);
+        assertEquals(200, heavyHitters.getCapacity());
+        Map<Integer, Long> exactCounts = new HashMap<>();
+        for (int key : stream) {
+            heavyHitters.increase(key, 1);
+            exactCounts.merge(key, 1L, Long::sum);
+        }
+        assertEquals(stream.length, heavyHitters.getTotalCount());
+        assertEquals(200, heavyHitters.size());
+        long maxError = heavyHitters.getMaxError();
+        assertEquals(stream.length / 200, maxError);
+
+        for (Map.Entry<Integer, Long> entry : exactCounts.entrySet()) {
+            long estimate = heavyHitters.estimateOf(entry.getKey());
+            if (estimate > 0) {
+                assertTrue(estimate >= entry.getValue());
+                assertTrue(estimate - entry.getValue() <= heavyHitters.errorOf(entry.getKey()));
+                assertTrue(heavyHitters.errorOf(entry.getKey()) <= maxError);
+            } else {
+                assertTrue(entry.getValue() <= heavyHitters.getMinCount());
+                assertTrue(entry.getValue() <= maxError, "every key above the max error is counted");
+            }
+        }
+
+        // the skewed top of the stream is found exactly
+        List<Integer> exactTop = exactCounts.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
+                .limit(10).map(Map.Entry::getKey).toList();
+        assertEquals(exactTop, heavyHitters.top(10).stream().map(Map.Entry::getKey).toList());
+        assertEquals(200, heavyHitters.top(1000).size());
+
+        heavyHitters.clear();
+        assertEquals(0, heavyHitters.size());
+        assertEquals(0, heavyHitters.getTotalCount());
+        assertThrows(IllegalArgumentException.class, () -> heavyHitters.increase(1, -1));
+        assertThrows(IllegalArgumentException.class, () -> HeavyHitters.withMaxErrorRate(0.0));
+    }
+
+    @Test
+    public void memoryDoesNotGrowWithTheStream() {
+        HeavyHitters<Long> heavyHitters = new HeavyHitters<>(1000);
+        Random random = new Random(5);
+        for (int i = 0; i < 5000000; i++) {
+            // half of the stream are a few frequent keys, the other half rarely repeats
+            long key = i % 2 == 0 ? random.nextInt(10) : 1000 + random.nextInt(1000000);
+            heavyHitters.increase(key, 1);
+        }
+        assertEquals(1000, heavyHitters.size());
+        Set<Long> top = new HashSet<>();
+        heavyHitters.top(10).forEach(entry -> top.add(entry.getKey()));
+        assertEquals(Set.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), top);
+    }
+
+    @Test
+    public void approximateLeaderboardsMatchTheExactTopViolations(@TempDir File checkpointFolder) {
+        TrafficTracker exactTracker = new TrafficTracker();
+        exactTracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        exactTracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        int numberOfOffences = exactTracker.getViolations().stream().mapToInt(Violation::getOffencesCount).sum();
+
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.setApproximateLeaderboards(0.05);
+        assertThrows(IllegalStateException.class, () -> new TrafficTracker().approximateLeadingViolationsByCar(3));
+        tracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        tracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        assertEquals(numberOfOffences, tracker.getOffendingCars().getTotalCount());
+        long maxError = tracker.getOffendingCars().getMaxError();
+        // the exact violations, leaderboards and timelines are not counted
+        assertEquals(0, tracker.getViolations().size());
+        assertEquals(0, tracker.leadingViolationsByCar(5).size());
+
+        // the few cities fit the capacity, and are counted exactly
+        List<Violation> exactTopCities = exactTracker.topViolationsByCity(5);
+        List<Map.Entry<String, Long>> approximateTopCities = tracker.approximateLeadingViolationsByCity(5);
+        assertEquals(exactTopCities.size(), approximateTopCities.size());
+        for (int i = 0; i < exactTopCities.size(); i++) {
+            assertEquals(exactTopCities.get(i).getOffencesCount(), approximateTopCities.get(i).getValue());
+            assertEquals(exactTopCities.get(i).getOffencesCount(),
+                    tracker.getOffendingCities().estimateOf(exactTopCities.get(i).getCity()));
+        }
+
+        // the ranked estimates of the cars differ at most maxError from the exact ranked counts
+        assertTrue(exactTracker.getViolations().stream().map(Violation::getCar).distinct().count()
+                > tracker.getOffendingCars().getCapacity(), "more offending cars than counters");
+        List<Violation> exactTopCars = exactTracker.topViolationsByCar(10);
+        List<Map.Entry<Car, Long>> approximateTopCars = tracker.approximateLeadingViolationsByCar(10);
+        for (int i = 0; i < exactTopCars.size(); i++) {
+            Violation exact = exactTopCars.get(i);
+            assertTrue(Math.abs(approximateTopCars.get(i).getValue() - exact.getOffencesCount()) <= maxError);
+            long estimate = tracker.getOffendingCars().estimateOf(exact.getCar());
+            if (exact.getOffencesCount() > maxError) {
+                assertTrue(estimate >= exact.getOffencesCount() && estimate <= exact.getOffencesCount() + maxError);
+            }
+        }
+
+        // a next import starts counting again, counts beyond the range of an int are not truncated
+        tracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        assertEquals(numberOfOffences, tracker.getOffendingCities().getTotalCount());
+        tracker.getOffendingCities().increase("Amsterdam", 3L * Integer.MAX_VALUE);
+        assertEquals(tracker.getOffendingCities().estimateOf("Amsterdam"),
+                tracker.approximateLeadingViolationsByCity(1).get(0).getValue());
+        assertTrue(tracker.approximateLeadingViolationsByCity(1).get(0).getValue() > Integer.MAX_VALUE);
+
+        // checkpoints pass exact violations
+        tracker.setCheckpointing(checkpointFolder, 5);
+        assertThrows(IllegalStateException.class, () -> tracker.importDetectionsFromVault(VAULT_NAME + "/detections"));
+    }
+}
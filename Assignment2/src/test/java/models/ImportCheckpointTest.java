@@ -0,0 +1,177 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImportCheckpointTest {
+    private static final String VAULT_NAME = "/2023-09";
+    private static final int NUMBER_OF_DETECTION_FILES = 40;
+
+    /**
+     * metrics that let the import die after a number of files
+     */
+    private static class CrashingMetrics extends ImportMetrics {
+        private final AtomicInteger numberOfFilesBeforeCrash;
+
+        CrashingMetrics(int numberOfFilesBeforeCrash) {
+            super("crashing");
+            this.numberOfFilesBeforeCrash = new AtomicInteger(numberOfFilesBeforeCrash);
+        }
+
+        @Override
+        void finishFile(FileProbe probe) {
+            super.finishFile(probe);
+            if (this.numberOfFilesBeforeCrash.decrementAndGet() == 0) {
+                throw new IllegalStateException("crashed");
+            }
+        }
+    }
+
+    private static TrafficTracker newTracker(File checkpointFolder, int filesPerCheckpoint) {
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.setCheckpointing(checkpointFolder, filesPerCheckpoint);
+        tracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        return tracker;
+    }
+
+    private static String sortedCars(TrafficTracker tracker) {
+        List<Car> cars = new ArrayList<>(tracker.getCars());
+        cars.sort(Car::compareTo);
+        return cars.toString();
+    }
+
+    @Test
+    public void resumedImportEqualsUninterruptedImport(@TempDir File checkpointFolder) {
+        TrafficTracker expected = newTracker(null, 0);
+        expected.importDetectionsFromVault(VAULT_NAME + "/detections");
+
+        TrafficTracker crashingTracker = newTracker(checkpointFolder, 5);
+        crashingTracker.setImportMetrics(new CrashingMetrics(23));
+        assertThrows(IllegalStateException.class, () -> crashingTracker.importDetectionsFromVault(VAULT_NAME + "/detections"));
+        ImportCheckpoint.Snapshot snapshot = ImportCheckpoint.read(checkpointFolder);
+        assertEquals(20, snapshot.getCompletedFiles().size(), "the checkpoint of the last 5 files before the crash");
+
+        TrafficTracker resumedTracker = newTracker(checkpointFolder, 5);
+        ImportMetrics metrics = new ImportMetrics("resumed");
+        resumedTracker.setImportMetrics(metrics);
+        resumedTracker.resumeDetectionsFromVault(VAULT_NAME + "/detections");
+        assertEquals(NUMBER_OF_DETECTION_FILES - 20, metrics.getNumberOfFiles());
+        assertEquals(expected.getViolations().toString(), resumedTracker.getViolations().toString());
+        assertEquals(expected.calculateTotalFines(), resumedTracker.calculateTotalFines(), 1e-6);
+        assertEquals(sortedCars(expected), sortedCars(resumedTracker));
+        assertTrue(resumedTracker.getImportCheckpoint().getNumberOfCheckpoints() >= 1);
+
+        // the completed import leaves nothing to do for a next resume
+        assertEquals(NUMBER_OF_DETECTION_FILES, ImportCheckpoint.read(checkpointFolder).getCompletedFiles().size());
+        TrafficTracker completedTracker = newTracker(checkpointFolder, 5);
+        metrics.reset();
+        completedTracker.setImportMetrics(metrics);
+        completedTracker.resumeDetectionsFromVault(VAULT_NAME + "/detections");
+        assertEquals(0, metrics.getNumberOfFiles());
+        assertEquals(expected.getViolations().toString(), completedTracker.getViolations().toString());
+        assertEquals(sortedCars(expected), sortedCars(completedTracker));
+
+        // a new import starts over
+        TrafficTracker restartedTracker = newTracker(checkpointFolder, 100);
+        restartedTracker.setImportMetrics(metrics);
+        metrics.reset();
+        restartedTracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        assertEquals(NUMBER_OF_DETECTION_FILES, metrics.getNumberOfFiles());
+        assertEquals(expected.getViolations().toString(), restartedTracker.getViolations().toString());
+    }
+
+    @Test
+    public void parallelGroupsAreCheckpointedAndChangedFilesAreImportedAgain(@TempDir File checkpointFolder)
+            throws URISyntaxException {
+        TrafficTracker expected = newTracker(null, 0);
+        expected.importDetectionsFromVault(VAULT_NAME + "/detections");
+
+        TrafficTracker crashingTracker = newTracker(checkpointFolder, 8);
+        crashingTracker.setImportParallelism(4);
+        crashingTracker.setImportMetrics(new CrashingMetrics(20));
+        assertThrows(IllegalStateException.class, () -> crashingTracker.importDetectionsFromVault(VAULT_NAME + "/detections"));
+        List<ImportCheckpoint.CompletedFile> completedFiles = ImportCheckpoint.read(checkpointFolder).getCompletedFiles();
+        assertEquals(16, completedFiles.size(), "the checkpoint of the last complete group before the crash");
+
+        // a completed file that has changed since the checkpoint lets the resumed import start over
+        File vault = new File(ImportCheckpointTest.class.getResource(VAULT_NAME + "/detections").toURI());
+        File changedFile = new File(vault, completedFiles.get(3).getPath());
+        long lastModified = changedFile.lastModified();
+        TrafficTracker resumedTracker = newTracker(checkpointFolder, 8);
+        resumedTracker.setImportParallelism(4);
+        ImportMetrics metrics = new ImportMetrics("resumed");
+        resumedTracker.setImportMetrics(metrics);
+        try {
+            assertTrue(changedFile.setLastModified(lastModified - 60000));
+            assertFalse(completedFiles.get(3).isUnchangedIn(vault));
+            resumedTracker.resumeDetectionsFromVault(VAULT_NAME + "/detections");
+        } finally {
+            changedFile.setLastModified(lastModified);
+        }
+        assertEquals(NUMBER_OF_DETECTION_FILES, metrics.getNumberOfFiles());
+        assertEquals(expected.getViolations().toString(), resumedTracker.getViolations().toString());
+        assertEquals(sortedCars(expected), sortedCars(resumedTracker));
+
+        resumedTracker.setPipelinedImport(true);
+        assertThrows(IllegalStateException.class, () -> resumedTracker.importDetectionsFromVault(VAULT_NAME + "/detections"));
+    }
+
+    @Test
+    public void failuresToWriteAreAddedToTheFailureOfTheImport(@TempDir File checkpointFolder) {
+        // a folder in the way of the temporary file lets every write fail
+        assertTrue(new File(checkpointFolder, "checkpoint.tmp").mkdirs());
+        TrafficTracker crashingTracker = newTracker(checkpointFolder, 5);
+        crashingTracker.setImportMetrics(new CrashingMetrics(12));
+        IllegalStateException crash = assertThrows(IllegalStateException.class,
+                () -> crashingTracker.importDetectionsFromVault(VAULT_NAME + "/detections"));
+        assertEquals("crashed", crash.getMessage());
+        assertEquals(1, crash.getSuppressed().length);
+        assertTrue(crash.getSuppressed()[0].getMessage().startsWith("Could not write checkpoint"));
+    }
+
+    @Test
+    public void snapshotsAreWrittenAndReadBack(@TempDir File checkpointFolder) throws IOException {
+        assertNull(ImportCheckpoint.read(checkpointFolder));
+        Car registeredCar = new Car("VJ-123-X", 3, Car.CarType.Truck, Car.FuelType.Diesel, LocalDate.of(2010, 1, 1));
+        Car unknownCar = new Car("odd plate");
+        CityDictionary cities = new CityDictionary();
+        ViolationTable violations = new ViolationTable(cities);
+        violations.addOffence(registeredCar, cities.idOf("Amsterdam"));
+        violations.addOffence(registeredCar, cities.idOf("Amsterdam"));
+        violations.addOffence(unknownCar, cities.idOf("Den Haag"));
+        ViolationTable laterViolations = new ViolationTable(cities);
+        laterViolations.addOffence(registeredCar, cities.idOf("Den Haag"));
+        laterViolations.addOffence(registeredCar, cities.idOf("Amsterdam"));
+
+        List<ImportCheckpoint.CompletedFile> completedFiles = List.of(
+                new ImportCheckpoint.CompletedFile("Amsterdam/a.txt", 120, 1000),
+                new ImportCheckpoint.CompletedFile("Den Haag/b.txt", 80, 2000));
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFolder)) {
+            // the changes of both submits are merged by the writer
+            checkpoint.submit(completedFiles.subList(0, 1), List.of(unknownCar), violations);
+            checkpoint.submit(completedFiles.subList(1, 2), List.of(), laterViolations);
+        }
+
+        ImportCheckpoint.Snapshot readSnapshot = ImportCheckpoint.read(checkpointFolder);
+        assertEquals(completedFiles.toString(), readSnapshot.getCompletedFiles().toString());
+        assertEquals(List.of(unknownCar), readSnapshot.getUnknownCars());
+        assertEquals("[VJ-123-X/Amsterdam/3, odd plate/Den Haag/1, VJ-123-X/Den Haag/1]",
+                readSnapshot.getViolations().toString());
+        assertFalse(new File(checkpointFolder, "checkpoint.tmp").exists());
+
+        ImportCheckpoint.delete(checkpointFolder);
+        assertNull(ImportCheckpoint.read(checkpointFolder));
+        assertThrows(IllegalStateException.class, () -> new TrafficTracker().resumeDetectionsFromVault(VAULT_NAME));
+        assertThrows(IllegalArgumentException.class, () -> new TrafficTracker().setCheckpointing(checkpointFolder, 0));
+    }
+}
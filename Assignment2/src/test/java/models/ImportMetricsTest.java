@@ -0,0 +1,114 @@
+package models;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImportMetricsTest {
+    private static final String VAULT_NAME = "/2023-09";
+    private static final int NUMBER_OF_DETECTION_FILES = 40;
+
+    private static TrafficTracker importVault(ImportMetrics metrics, boolean mappedParsing, int importParallelism) {
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.setImportMetrics(metrics);
+        tracker.setMappedParsing(mappedParsing);
+        tracker.setImportParallelism(importParallelism);
+        tracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        tracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        return tracker;
+    }
+
+    @Test
+    public void metricsCountTheImportOfAllFiles() {
+        TrafficTracker tracker = importVault(null, false, 1);
+        int numberOfOffences = tracker.getViolations().stream().mapToInt(Violation::getOffencesCount).sum();
+
+        long numberOfLines = -1;
+        for (boolean mappedParsing : new boolean[] { false, true }) {
+            ImportMetrics metrics = new ImportMetrics("test");
+            TrafficTracker measuredTracker = importVault(metrics, mappedParsing, mappedParsing ? 4 : 1);
+            assertEquals(tracker.getViolations().size(), measuredTracker.getViolations().size());
+
+            assertEquals(NUMBER_OF_DETECTION_FILES, metrics.getNumberOfFiles());
+            assertEquals(numberOfOffences, metrics.getNumberOfOffences());
+            assertEquals(tracker.getCars().size() - 250, metrics.getNumberOfUnknownPlates(),
+                    "the unknown cars are added to the 250 registered cars");
+            assertEquals(metrics.getNumberOfLines(), metrics.getNumberOfDetections() + metrics.getNumberOfParseFailures());
+            assertTrue(metrics.getNumberOfDetections() >= numberOfOffences);
+            if (numberOfLines >= 0) {
+                assertEquals(numberOfLines, metrics.getNumberOfLines(), "both parsers count the same lines");
+            }
+            numberOfLines = metrics.getNumberOfLines();
+            assertTrue(metrics.getNumberOfBytes() > numberOfLines);
+
+            for (ImportMetrics.Stage stage : List.of(ImportMetrics.Stage.PARSE, ImportMetrics.Stage.LOOKUP,
+                    ImportMetrics.Stage.VALIDATE, ImportMetrics.Stage.AGGREGATE)) {
+                assertTrue(metrics.getStageNanos(stage) > 0, stage.name());
+                assertTrue(metrics.getLinesPerSecondByStage().get(stage.name()) > 0, stage.name());
+            }
+            assertEquals(NUMBER_OF_DETECTION_FILES, Arrays.stream(metrics.getFileLatencyHistogram()).sum());
+            assertTrue(metrics.getFileLatencyMillis(50) <= metrics.getFileLatencyMillis(100));
+            assertTrue(metrics.getSlowestFileMillis() <= metrics.getFileLatencyMillis(100));
+            assertTrue(metrics.getSlowestFile().endsWith(".txt"));
+
+            metrics.reset();
+            assertEquals(0, metrics.getNumberOfFiles());
+            assertEquals(0, Arrays.stream(metrics.getFileLatencyHistogram()).sum());
+            assertNull(metrics.getSlowestFile());
+        }
+    }
+
+    @Test
+    public void metricsAreRegisteredAsMXBean() throws Exception {
+        ImportMetrics metrics = new ImportMetrics("registered \"tracker\"");
+        ObjectName objectName = metrics.register();
+        try {
+            assertSame(objectName, metrics.register());
+            importVault(metrics, true, 1);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals((long)NUMBER_OF_DETECTION_FILES, server.getAttribute(objectName, "NumberOfFiles"));
+            assertEquals(metrics.getNumberOfOffences(), server.getAttribute(objectName, "NumberOfOffences"));
+            assertNotNull(server.getAttribute(objectName, "LinesPerSecondByStage"));
+            server.invoke(objectName, "reset", null, null);
+            assertEquals(0L, server.getAttribute(objectName, "NumberOfFiles"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+
+    @Test
+    public void filesAreRecordedAsEvents(@TempDir File folder) throws IOException {
+        ImportMetrics metrics = new ImportMetrics("recorded");
+        Path recordingFile = new File(folder, "import.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(ImportMetrics.FileImportEvent.class).withoutThreshold();
+            recording.start();
+            importVault(metrics, false, 4);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("models.FileImport")).toList();
+        assertEquals(NUMBER_OF_DETECTION_FILES, events.size());
+        assertEquals(metrics.getNumberOfOffences(), events.stream().mapToLong(event -> event.getLong("offences")).sum());
+        assertEquals(metrics.getNumberOfLines(), events.stream().mapToLong(event -> event.getLong("lines")).sum());
+        Map<String, Double> bytesPerSecond = metrics.getBytesPerSecondByStage();
+        assertEquals(ImportMetrics.Stage.values().length, bytesPerSecond.size());
+    }
+}
@@ -0,0 +1,97 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LeaderboardTest {
+
+    TrafficTracker trafficTracker;
+
+    @BeforeEach
+    public void setup() {
+        trafficTracker = new TrafficTracker();
+        trafficTracker.setViolations(TopKTest.randomViolations());
+    }
+
+    @Test
+    public void leaderboardsMatchTopViolations() {
+        for (int topNumber : new int[] { 0, 1, 3, 10, 100 }) {
+            assertEquals(TrafficTrackerTest.rankingOf(trafficTracker.topViolationsByCar(topNumber), Violation::getCar),
+                    TrafficTrackerTest.rankingOf(trafficTracker.leadingViolationsByCar(topNumber)));
+            assertEquals(TrafficTrackerTest.rankingOf(trafficTracker.topViolationsByCity(topNumber), Violation::getCity),
+                    TrafficTrackerTest.rankingOf(trafficTracker.leadingViolationsByCity(topNumber)));
+        }
+    }
+
+    @Test
+    public void importsCountTheOffencesIntoTheLeaderboards(@TempDir File checkpointFolder) {
+        for (int configuration = 0; configuration < 5; configuration++) {
+            TrafficTracker tracker = new TrafficTracker();
+            tracker.importCarsFromVault("/2023-09/cars.txt");
+            tracker.setImportParallelism(configuration == 0 ? 1 : 4);
+            tracker.setMappedParsing(configuration == 2);
+            tracker.setPipelinedImport(configuration == 3);
+            if (configuration == 4) {
+                tracker.setCheckpointing(new File(checkpointFolder, "checkpoint"), 5);
+            }
+            tracker.importDetectionsFromVault("/2023-09/detections");
+
+            Map<Car, Long> offencesByCar = new HashMap<>();
+            Map<String, Long> offencesByCity = new HashMap<>();
+            for (Violation violation : tracker.getViolations()) {
+                offencesByCar.merge(violation.getCar(), (long) violation.getOffencesCount(), Long::sum);
+                offencesByCity.merge(violation.getCity(), (long) violation.getOffencesCount(), Long::sum);
+            }
+            assertEquals(offencesByCar, toMap(tracker.leadingViolationsByCar(Integer.MAX_VALUE)));
+            assertEquals(offencesByCity, toMap(tracker.leadingViolationsByCity(Integer.MAX_VALUE)));
+            // ties may be ranked differently, by the first offence counted rather than by the order of the violations
+            assertEquals(countsOf(tracker.topViolationsByCar(10)),
+                    tracker.leadingViolationsByCar(10).stream().map(Map.Entry::getValue).toList());
+            assertEquals(countsOf(tracker.topViolationsByCity(10)),
+                    tracker.leadingViolationsByCity(10).stream().map(Map.Entry::getValue).toList());
+        }
+    }
+
+    private static <K> Map<K, Long> toMap(List<Map.Entry<K, Long>> leaders) {
+        Map<K, Long> map = new HashMap<>();
+        leaders.forEach(entry -> map.put(entry.getKey(), entry.getValue()));
+        return map;
+    }
+
+    private static List<Long> countsOf(List<Violation> violations) {
+        return violations.stream().map(violation -> (long) violation.getOffencesCount()).toList();
+    }
+
+    @Test
+    public void leaderboardFollowsIncreases() {
+        Random random = new Random(36);
+        Leaderboard<Integer> leaderboard = new Leaderboard<>();
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            long increment = random.nextInt(3);
+            leaderboard.increase(key, increment);
+            counts.merge(key, increment, Long::sum);
+            if (i % 1000 == 0) {
+                // rank ties by first appearance, like TopK
+                List<Map.Entry<Integer, Long>> expected = TopK.select(counts.entrySet(), Map.Entry::getKey,
+                        (e1, e2) -> e1, Map.Entry::getValue, 20);
+                assertEquals(expected, leaderboard.top(20));
+            }
+        }
+        assertEquals(counts.size(), leaderboard.size());
+        assertEquals(counts.get(42), leaderboard.countOf(42));
+        assertEquals(0, leaderboard.countOf(-1));
+        assertThrows(IllegalArgumentException.class, () -> leaderboard.increase(42, -1));
+    }
+}
@@ -0,0 +1,93 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LicensePlateCodecTest {
+
+    @Test
+    public void encodingPreservesTheOrderOfLicensePlates() {
+        List<String> plates = new ArrayList<>(List.of("906-OC-4", "QJD-33-C", "1-AAA-02", "1-AAAA-0000", "7-QGH-5437",
+                "1-AAA", "1-AAA-0", "-", "Z", "ZZZZZZZZZZZZ", "------------"));
+        Random random = new Random(26);
+        String alphabet = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder plate = new StringBuilder();
+            for (int length = 1 + random.nextInt(LicensePlateCodec.MAX_LENGTH); length > 0; length--) {
+                plate.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            plates.add(plate.toString());
+        }
+
+        for (String plate : plates) {
+            long code = LicensePlateCodec.encode(plate);
+            assertTrue(code >= 0, plate);
+            assertEquals(plate, LicensePlateCodec.decode(code));
+            for (String other : plates) {
+                assertEquals(Integer.signum(plate.compareTo(other)),
+                        Long.signum(Long.compare(code, LicensePlateCodec.encode(other))), plate + " vs " + other);
+            }
+        }
+    }
+
+    @Test
+    public void ceilingCodesBoundRangesOfPlates() {
+        List<String> plates = List.of("-", "0", "1-AAA", "1-AAA-0", "9Z", "A", "VJ-12-3", "Z", "ZZZZZZZZZZZZ");
+        List<String> bounds = List.of("", "0", "1-AAA", "1-AAA-", "1-AAa", "1-AAA-00000000", "9", "9Z~", "a", "Z",
+                "Z\uffff", "ZZZZZZZZZZZZZ", "~");
+        for (String bound : bounds) {
+            long ceiling = LicensePlateCodec.ceilingCode(bound);
+            for (String plate : plates) {
+                assertEquals(plate.compareTo(bound) >= 0, LicensePlateCodec.encode(plate) >= ceiling, plate + " vs " + bound);
+            }
+        }
+        assertEquals(LicensePlateCodec.encode("1-AAA"), LicensePlateCodec.ceilingCode("1-AAA"));
+        assertEquals(Long.MAX_VALUE, LicensePlateCodec.ceilingCode("~"));
+    }
+
+    @Test
+    public void platesOutsideTheAlphabetAreNotEncoded() {
+        for (String plate : List.of("", "ab-12-cd", "AB 12 CD", "1234567890123", "ÄB-12-CD")) {
+            assertEquals(LicensePlateCodec.NOT_ENCODABLE, LicensePlateCodec.encode(plate), plate);
+        }
+    }
+
+    @Test
+    public void carsCompareByLicensePlateWithAndWithoutCodes() {
+        Car encoded = new Car("AB-12-CD", 5, Car.CarType.Truck, Car.FuelType.Diesel, LocalDate.of(2009, 1, 31));
+        Car foreign = new Car("ab-12-cd");
+        Car other = new Car("AB-12-CE");
+
+        assertEquals("AB-12-CD", encoded.getLicensePlate());
+        assertEquals("ab-12-cd", foreign.getLicensePlate());
+        assertEquals(new Car("AB-12-CD"), encoded);
+        assertEquals(new Car("AB-12-CD").hashCode(), encoded.hashCode());
+        assertNotEquals(foreign, encoded);
+        assertTrue(encoded.compareTo(other) < 0);
+        assertTrue(encoded.compareTo(foreign) < 0);
+        assertTrue(foreign.compareTo(other) > 0);
+    }
+
+    @Test
+    public void longHashMapFindsAllKeys() {
+        LongHashMap<String> map = new LongHashMap<>();
+        for (long key = -500; key < 5000; key += 3) {
+            assertNull(map.put(key, "v" + key));
+        }
+        assertEquals("v-500", map.put(-500, "again"));
+        assertEquals("again", map.get(-500));
+        for (long key = -497; key < 5000; key += 3) {
+            assertEquals("v" + key, map.get(key));
+            assertNull(map.get(key + 1));
+        }
+        assertEquals(1834, map.size());
+        assertSame(map.get(4), map.computeIfAbsent(4, key -> "new"));
+        assertEquals("new", map.computeIfAbsent(5, key -> "new"));
+    }
+}
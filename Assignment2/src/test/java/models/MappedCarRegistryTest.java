@@ -0,0 +1,127 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedCarRegistryTest {
+
+    private static File resourceFile(String resourceName) throws URISyntaxException {
+        return new File(MappedCarRegistryTest.class.getResource(resourceName).toURI());
+    }
+
+    private static List<Car> sortedCars(File carsFile) {
+        List<Car> cars = new ArrayList<>();
+        TrafficTracker.importItemsFromFile(cars, carsFile, Car::fromLine);
+        cars.sort(Car::compareTo);
+        return cars;
+    }
+
+    private static void assertRegistryMatches(List<Car> expectedCars, MappedCarRegistry registry) {
+        assertEquals(expectedCars.size(), registry.size());
+        List<Car> registeredCars = registry.asList();
+        MappedCarRegistry.MappedCar view = registry.newView();
+        for (int rank = 0; rank < expectedCars.size(); rank++) {
+            Car expected = expectedCars.get(rank);
+            view.moveTo(rank);
+            assertEquals(expected.toString(), view.toString());
+            assertEquals(expected.getDateOfAdmission(), view.getDateOfAdmission());
+            assertEquals(expected, view);
+            assertEquals(view, expected);
+            assertEquals(expected.hashCode(), view.hashCode());
+            assertEquals(0, expected.compareTo(view));
+            assertEquals(expected.toString(), registeredCars.get(rank).toString());
+            assertEquals(rank, registry.rankOf(expected.getLicensePlate()));
+            assertEquals(expected.toString(), registry.find(expected.getLicensePlate()).toCar().toString());
+        }
+        for (String licensePlate : List.of("000-AA-0", "ZZZ-99-Z", "5-ABC-12", "not registered", "")) {
+            assertEquals(Collections.binarySearch(expectedCars, new Car(licensePlate)), registry.rankOf(licensePlate));
+            assertNull(registry.find(licensePlate));
+        }
+    }
+
+    @Test
+    public void registryMatchesTheSortedCars(@TempDir File segmentsFolder) throws URISyntaxException {
+        File carsFile = resourceFile("/2023-09/cars.txt");
+        assertEquals(250, VaultSegments.convertCars(carsFile, segmentsFolder));
+        MappedCarRegistry registry = MappedCarRegistry.open(segmentsFolder);
+        List<Car> expectedCars = sortedCars(carsFile);
+        assertRegistryMatches(expectedCars, registry);
+        assertEquals(List.of(VaultSegments.readCars(segmentsFolder)).toString(), registry.asList().toString());
+
+        // another registry of the same file shares the mapped pages
+        assertEquals(registry.asList(), MappedCarRegistry.open(segmentsFolder).asList());
+    }
+
+    @Test
+    public void platesThatCannotBeEncodedAreFound(@TempDir File folder) throws IOException {
+        File carsFile = new File(folder, "cars.txt");
+        try (PrintWriter writer = new PrintWriter(carsFile)) {
+            writer.println("081-DJ-3, 5, Car, Gasoline, 2022-02-28");
+            writer.println("odd plate, 4, Truck, Diesel, 2020-08-29");
+            writer.println("ZLC-14-G, 5, Car, Gasoline, 2017-07-29");
+            writer.println("foreign#1, 3, Coach, Diesel, 2002-08-29");
+            writer.println("57-VY-LF, 3, Van, Gasoline, 2002-08-29");
+        }
+        File segmentsFolder = new File(folder, "segments");
+        VaultSegments.convertCars(carsFile, segmentsFolder);
+        MappedCarRegistry registry = MappedCarRegistry.open(segmentsFolder);
+        List<Car> expectedCars = sortedCars(carsFile);
+        assertRegistryMatches(expectedCars, registry);
+        assertEquals(LicensePlateCodec.NOT_ENCODABLE, registry.find("odd plate").getPlateCode());
+        assertEquals("foreign#1", registry.find("foreign#1").toCar().getLicensePlate());
+    }
+
+    @Test
+    public void viewsAreReadOnlyFlyweights(@TempDir File segmentsFolder) throws URISyntaxException {
+        VaultSegments.convertCars(resourceFile("/2023-09/cars.txt"), segmentsFolder);
+        MappedCarRegistry registry = MappedCarRegistry.open(segmentsFolder);
+        MappedCarRegistry.MappedCar view = registry.newView();
+        int numberOfOffenders = 0;
+        for (int rank = 0; rank < registry.size(); rank++) {
+            // the compiled zones of the previous car shall not be applied to the next one
+            boolean offender = ZoneRules.PURPLE.isViolatedBy(view.moveTo(rank), 0);
+            assertEquals(ZoneRule.PURPLE.isViolatedBy(view), offender);
+            assertEquals(offender, Detection.isPurpleOffender(view.toCar()));
+            numberOfOffenders += offender ? 1 : 0;
+        }
+        assertTrue(numberOfOffenders > 0);
+        assertEquals(registry.size() - 1, view.getRank());
+        assertThrows(UnsupportedOperationException.class, () -> view.setEmissionCategory(6));
+        assertThrows(UnsupportedOperationException.class, () -> view.setFuelType(Car.FuelType.Electric));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.moveTo(registry.size()));
+        assertThrows(UnsupportedOperationException.class, () -> registry.asList().add(view.toCar()));
+    }
+
+    @Test
+    public void trackerFindsTheDetectedCarsInTheRegistry(@TempDir File segmentsFolder) throws URISyntaxException {
+        VaultSegments.convertCars(resourceFile("/2023-09/cars.txt"), segmentsFolder);
+        TrafficTracker heapTracker = new TrafficTracker();
+        heapTracker.importCarsFromVault("/2023-09/cars.txt");
+        heapTracker.importDetectionsFromVault("/2023-09/detections");
+
+        for (boolean mappedParsing : List.of(false, true)) {
+            TrafficTracker registryTracker = new TrafficTracker();
+            registryTracker.setCarRegistry(MappedCarRegistry.open(segmentsFolder));
+            registryTracker.setMappedParsing(mappedParsing);
+            registryTracker.setImportParallelism(4);
+            registryTracker.importDetectionsFromVault("/2023-09/detections");
+
+            assertEquals(heapTracker.getViolations().toString(), registryTracker.getViolations().toString());
+            assertEquals(heapTracker.calculateTotalFines(), registryTracker.calculateTotalFines());
+            // only the unknown cars of the detections are on the heap
+            assertEquals(heapTracker.getCars().size() - 250, registryTracker.getCars().size());
+            assertTrue(registryTracker.getViolations().stream()
+                    .anyMatch(violation -> violation.getCar() instanceof MappedCarRegistry.MappedCar));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedVaultParserTest {
+
+    @Test
+    public void parsesTimestampsIntoEpochSeconds() {
+        for (String dateTime : List.of("2022-10-01T12:11:10", "1970-01-01T00:00:00", "2000-02-29T23:59:59", "1969-12-31T23:59:59")) {
+            ByteBuffer buffer = ByteBuffer.wrap(dateTime.getBytes(StandardCharsets.US_ASCII));
+            assertEquals(LocalDateTime.parse(dateTime).toEpochSecond(ZoneOffset.UTC),
+                    MappedVaultParser.parseEpochSecond(buffer, 0, buffer.limit()), dateTime);
+        }
+        for (String corrupt : List.of("2022-10-01 12:11:10", "2022-13-01T12:11:10", "2023-02-29T12:11:10", "2022-10-01T12:11")) {
+            ByteBuffer buffer = ByteBuffer.wrap(corrupt.getBytes(StandardCharsets.US_ASCII));
+            assertEquals(Long.MIN_VALUE, MappedVaultParser.parseEpochSecond(buffer, 0, buffer.limit()), corrupt);
+        }
+    }
+
+    @Test
+    public void parsesCarsLikeCarFromLine(@TempDir Path folder) throws IOException {
+        List<String> lines = List.of(" 1-AAA-02 , 6, Car, Gasoline, 2014-01-31", "AA-11-BB,4,Truck,Diesel,1998-01-31,extra",
+                "", "corrupt, x, Car, Gasoline, 2014-01-31", "incomplete, 6", "VV-11-BB, 4, Van, Diesel, 1998-01-31\r", "");
+        File file = Files.write(folder.resolve("cars.txt"), lines).toFile();
+
+        List<Car> cars = new ArrayList<>();
+        int numberOfLines = MappedVaultParser.parseCars(file, cars::add);
+
+        assertEquals(6, numberOfLines, "trailing blank lines should not be counted");
+        assertEquals(3, cars.size());
+        assertEquals("1-AAA-02/6/Car/Gasoline", cars.get(0).toString());
+        assertEquals(LocalDate.of(1998, 1, 31), cars.get(1).getDateOfAdmission());
+        assertEquals("VV-11-BB/4/Van/Diesel", cars.get(2).toString());
+    }
+
+    @Test
+    public void matchesKnownCarsAndCitiesWithoutDuplicates(@TempDir Path folder) throws IOException {
+        Car scoda = new Car("1-AAA-02");
+        File file = Files.write(folder.resolve("0.txt"), List.of("1-AAA-02, Den Haag, 2022-10-01T12:11:10",
+                "NEW-01-X,Leiden,2022-10-01T12:11:10", "NEW-01-X , Den Haag , 2022-10-01T12:11:11", "corrupt, line")).toFile();
+        PlateIndex plates = new PlateIndex(List.of(scoda));
+        CityDictionary cities = new CityDictionary();
+        List<Detection> detections = new ArrayList<>();
+
+        MappedVaultParser.parseDetections(file, plates, Car::new, cities, (car, cityId, epochSecond) ->
+                detections.add(new Detection(car, cities.nameOf(cityId),
+                        LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC))));
+
+        assertEquals(3, detections.size());
+        assertSame(scoda, detections.get(0).getCar());
+        assertSame(detections.get(1).getCar(), detections.get(2).getCar());
+        assertEquals("NEW-01-X/Den Haag/2022-10-01T12:11:11", detections.get(2).toString());
+        assertEquals(2, cities.size());
+    }
+
+    @Test
+    public void skipsTheSameMalformedLinesAsDetectionFromLine(@TempDir Path folder) throws IOException {
+        List<String> lines = List.of("AA-11-BB, Leiden, 2022-10-01T12:11:10,", "AA-11-BB, Leiden, 2022-10-01T12:11:10, extra",
+                "AA-11-BB, Leiden, 2022-13-01T12:11:10", "AA-11-BB, Leiden, 2023-02-29T12:11:10",
+                "AA-11-BB, Leiden, 2022-10-01T24:00:00", "AA-11-BB, Leiden, 2022-10-01 12:11:10",
+                "AA-11-BB, Leiden, not a time", "AA-11-BB, Leiden, +2022-10-01T12:11:10", "AA-11-BB, Leiden",
+                "AA-11-BB,Leiden,2024-02-29T23:59:59\r", " BB-22-CC , Den Haag , 2022-10-01T12:11:11 ", "");
+        File file = Files.write(folder.resolve("0.txt"), lines).toFile();
+
+        List<String> fromLines = new ArrayList<>();
+        for (String line : lines) {
+            Detection detection = Detection.fromLine(line, Car::new);
+            if (detection != null) fromLines.add(detection.toString());
+        }
+        CityDictionary cities = new CityDictionary();
+        List<String> mapped = new ArrayList<>();
+        MappedVaultParser.parseDetections(file, new PlateIndex(List.of()), Car::new, cities, (car, cityId, epochSecond) ->
+                mapped.add(new Detection(car, cities.nameOf(cityId),
+                        LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC)).toString()));
+
+        assertEquals(List.of("AA-11-BB/Leiden/2024-02-29T23:59:59", "BB-22-CC/Den Haag/2022-10-01T12:11:11"), fromLines);
+        assertEquals(fromLines, mapped);
+    }
+}
@@ -0,0 +1,105 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffenceTimelineTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 9, 1, 0, 0);
+    private static final long START_SECOND = START.toEpochSecond(ZoneOffset.UTC);
+
+    @Test
+    public void countsOffencesPerBucket() {
+        OffenceTimeline<String> timeline = new OffenceTimeline<>(OffenceTimeline.HOUR, 24);
+        timeline.record("A", START_SECOND + 10);
+        timeline.record("A", START_SECOND + 3599);
+        timeline.record("A", START_SECOND + 3600);
+        timeline.record("B", START_SECOND + 7200);
+        // out of order, but still retained
+        timeline.record("A", START_SECOND + 100);
+
+        assertArrayEquals(new int[] { 3, 1, 0 }, timeline.counts("A", START, 3));
+        assertArrayEquals(new int[] { 0, 0, 1 }, timeline.counts("B", START, 3));
+        assertArrayEquals(new int[] { 0, 0, 0 }, timeline.counts("C", START, 3));
+        assertEquals(4, timeline.count("A", START_SECOND, START_SECOND + 2 * 3600));
+        assertEquals(1, timeline.count("A", START_SECOND + 3600, START_SECOND + 3601));
+        assertEquals(START.plusHours(2), timeline.getLatestDateTime());
+        // the window of the last hour overlaps with the hour of the latest offence and the hour before
+        assertEquals(1, timeline.countInLast("A", Duration.ofHours(1)));
+        assertEquals(4, timeline.countInLast("A", Duration.ofHours(2)));
+    }
+
+    @Test
+    public void ringsAdvanceAndDropExpiredBuckets() {
+        OffenceTimeline<String> timeline = new OffenceTimeline<>(OffenceTimeline.HOUR, 24);
+        timeline.record("A", START_SECOND);
+        timeline.record("A", START_SECOND + 23 * 3600);
+        assertEquals(2, timeline.countInLast("A", Duration.ofDays(1)));
+
+        // advancing one hour expires the first hour
+        timeline.record("A", START_SECOND + 24 * 3600);
+        assertEquals(2, timeline.countInLast("A", Duration.ofDays(1)));
+        assertArrayEquals(new int[] { 0 }, timeline.counts("A", START, 1));
+        assertFalse(timeline.record("A", START_SECOND + 5), "an offence older than the ring shall not be counted");
+        assertEquals(1, timeline.getNumberOfLateOffences());
+
+        // advancing far beyond the ring clears all buckets
+        timeline.record("A", START_SECOND + 1000 * 3600);
+        assertEquals(1, timeline.count("A", START_SECOND, START_SECOND + 2000 * 3600));
+    }
+
+    @Test
+    public void windowCountsMatchBruteForce() {
+        Random random = new Random(37);
+        OffenceTimeline<Integer> timeline = new OffenceTimeline<>(OffenceTimeline.HOUR, 48);
+        List<long[]> offences = new ArrayList<>();
+        long now = START_SECOND;
+        for (int i = 0; i < 20000; i++) {
+            // time advances, with offences arriving up to a day late
+            now += random.nextInt(60);
+            long second = now - random.nextInt(24 * 3600);
+            int key = random.nextInt(10);
+            assertTrue(timeline.record(key, second));
+            offences.add(new long[] { key, second });
+        }
+        long latestSecond = offences.stream().mapToLong(o -> o[1]).max().getAsLong();
+        for (int key = 0; key < 10; key++) {
+            for (int hours : new int[] { 1, 6, 24 }) {
+                // all hours that overlap with the window
+                long firstHour = Math.floorDiv(latestSecond + 1 - hours * 3600L, 3600);
+                int k = key;
+                long expected = offences.stream()
+                        .filter(o -> o[0] == k && Math.floorDiv(o[1], 3600) >= firstHour).count();
+                assertEquals(expected, timeline.countInLast(key, Duration.ofHours(hours)));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        OffenceTimeline<Integer> timeline = new OffenceTimeline<>(OffenceTimeline.DAY, 30);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    timeline.record(i % 100, START_SECOND + i % 86400);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int key = 0; key < 100; key++) {
+            assertEquals(4 * 1000, timeline.count(key, START_SECOND, START_SECOND + OffenceTimeline.DAY));
+        }
+        assertEquals(START.plusSeconds(86399), timeline.getLatestDateTime());
+        assertEquals(0, timeline.getNumberOfLateOffences());
+    }
+}
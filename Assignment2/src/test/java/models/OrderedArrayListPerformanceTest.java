@@ -0,0 +1,230 @@
+package models;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks repeated "append a batch by add(item), then sort" cycles on OrderedArrayList,
+ * comparing the adaptive sort() that merges the sorted tail into the sorted section
+ * with a full re-sort of the list by sort(Comparator), for small and large tails.
+ * The untagged tests verify the order of the results and that the appends and the adaptive sort
+ * need fewer comparisons; the measured times are only reported by the tagged benchmark,
+ * as they are sensitive to the environment.
+ */
+public class OrderedArrayListPerformanceTest {
+    private static final int INITIAL_SIZE = 100000;
+    private static final int NUMBER_OF_BATCHES = 10;
+    private static long numberOfComparisons = 0;
+    private static final Comparator<Integer> SORT_ORDER = (i1, i2) -> {
+        numberOfComparisons++;
+        return Integer.compare(i1, i2);
+    };
+
+    @Test
+    public void adaptiveSortWithSmallTails() {
+        appendAndSort(10, false);
+    }
+
+    @Test
+    public void adaptiveSortWithLargeTails() {
+        appendAndSort(INITIAL_SIZE / 5, false);
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void appendAndSortBenchmark() {
+        for (int tailSize : new int[] { 10, INITIAL_SIZE / 5, INITIAL_SIZE }) {
+            appendAndSort(tailSize, true);
+        }
+    }
+
+    @Test
+    public void adaptiveSortIsStable() {
+        // compare only the tens, such that the units reveal the original order
+        OrderedArrayList<Integer> list = new OrderedArrayList<>(Comparator.comparing(i -> i / 10));
+        list.addAll(List.of(10, 20, 30, 40));
+        list.sort();
+        list.addAll(List.of(21, 11, 41, 12, 5));
+        list.sort();
+        assertEquals(List.of(5, 10, 11, 12, 20, 21, 30, 40, 41), list);
+        CarsListTest.checkRepresentationInvariant(list);
+    }
+
+    @Test
+    public void lookupsInTheUnsortedTailAreLogarithmic() {
+        OrderedArrayList<Integer> list = new OrderedArrayList<>(SORT_ORDER);
+        list.setConsolidationThreshold(Integer.MAX_VALUE);
+        Random random = new Random(31);
+        for (int i = 0; i < 1000; i++) {
+            list.add(random.nextInt(100000));
+        }
+        list.sort();
+        List<Integer> tail = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int item = 100000 + random.nextInt(100000);
+            tail.add(item);
+            list.add(item);
+        }
+        assertEquals(1000, list.nSorted);
+
+        // the first lookup builds the index of the tail, the others only search it
+        list.indexOfByIterativeBinarySearch(-1);
+        numberOfComparisons = 0;
+        for (Integer item : tail) {
+            assertEquals(item, list.get(list.indexOfByIterativeBinarySearch(item)));
+            assertEquals(item, list.get(list.indexOfByRecursiveBinarySearch(item)));
+        }
+        assertEquals(-1, list.indexOfByIterativeBinarySearch(-1));
+        assertTrue(numberOfComparisons < 2 * tail.size() * 2 * 25,
+                "lookups in the unsorted tail should not scan it linearly");
+
+        // appended items are merged into the index, other changes rebuild it
+        list.add(-5);
+        assertEquals(list.size() - 1, list.indexOfByIterativeBinarySearch(-5));
+        list.set(list.size() - 1, -7);
+        assertEquals(-1, list.indexOfByIterativeBinarySearch(-5));
+        assertEquals(list.size() - 1, list.indexOfByRecursiveBinarySearch(-7));
+        list.remove(1000);
+        assertEquals(-1, list.indexOfByIterativeBinarySearch(tail.get(0)));
+        assertEquals(1000, list.indexOfByRecursiveBinarySearch(tail.get(1)));
+        CarsListTest.checkRepresentationInvariant(list);
+    }
+
+    @Test
+    public void appendsDoNotSearchTheUnsortedTail() {
+        OrderedArrayList<Integer> list = new OrderedArrayList<>(SORT_ORDER);
+        list.setConsolidationThreshold(Integer.MAX_VALUE);
+        Random random = new Random(33);
+        for (int i = 0; i < 1000; i++) {
+            list.add(random.nextInt());
+        }
+        list.sort();
+        list.add(1);
+        list.add(2);
+        // the first lookup indexes the tail, such that the appends below find a valid index
+        assertEquals(list.size() - 2, list.indexOfByIterativeBinarySearch(1));
+
+        List<Integer> appended = new ArrayList<>();
+        numberOfComparisons = 0;
+        for (int i = 0; i < 400000; i++) {
+            int item = random.nextInt();
+            appended.add(item);
+            list.add(item);
+        }
+        assertEquals(0, numberOfComparisons, "add(item) shall not compare items");
+
+        // the next lookup merges all appended items into the index at once
+        for (int i = 0; i < appended.size(); i += 997) {
+            assertEquals(appended.get(i), list.get(list.indexOfByIterativeBinarySearch(appended.get(i))));
+        }
+        assertEquals(list.size() - 1 - appended.size(), list.indexOfByRecursiveBinarySearch(2));
+        assertTrue(numberOfComparisons < 400000L * 25, "the appended items should be merged into the index once");
+        CarsListTest.checkRepresentationInvariant(list);
+    }
+
+    @Test
+    public void unsortedTailIsConsolidatedBeyondThreshold() {
+        OrderedArrayList<Integer> list = new OrderedArrayList<>(Comparator.naturalOrder());
+        list.setConsolidationThreshold(10);
+        List<Integer> appended = new ArrayList<>();
+        for (int i = 20; i > 0; i--) {
+            list.add(i);
+            appended.add(i);
+        }
+        // adding items keeps them in order of appending, however large the unsorted section
+        assertEquals(appended, list);
+        assertEquals(0, list.nSorted);
+
+        // lookups do not reorder the list either
+        assertEquals(19, list.indexOfByIterativeBinarySearch(1));
+        assertEquals(0, list.indexOfByRecursiveBinarySearch(20));
+        assertEquals(appended, list);
+        assertEquals(0, list.nSorted);
+
+        // a merge consolidates the tail if it has grown beyond the threshold
+        assertFalse(list.merge(15, (i1, i2) -> i1), "15 is merged into its match");
+        assertEquals(20, list.size());
+        assertEquals(list.size(), list.nSorted);
+        CarsListTest.checkRepresentationInvariant(list);
+
+        // and below the threshold, merges leave the new items in the unsorted section
+        assertTrue(list.merge(40, (i1, i2) -> i1));
+        assertTrue(list.merge(35, (i1, i2) -> i1));
+        assertEquals(List.of(40, 35), list.subList(list.nSorted, list.size()));
+    }
+
+    private static void appendAndSort(int tailSize, boolean report) {
+        Random random = new Random(tailSize);
+        List<Integer> initialItems = new ArrayList<>();
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            initialItems.add(random.nextInt());
+        }
+        List<List<Integer>> batches = new ArrayList<>();
+        for (int b = 0; b < NUMBER_OF_BATCHES; b++) {
+            List<Integer> batch = new ArrayList<>();
+            for (int i = 0; i < tailSize; i++) {
+                batch.add(random.nextInt());
+            }
+            batches.add(batch);
+        }
+
+        OrderedArrayList<Integer> adaptive = new OrderedArrayList<>(SORT_ORDER);
+        OrderedArrayList<Integer> full = new OrderedArrayList<>(SORT_ORDER);
+        List<Integer> plain = new ArrayList<>(initialItems);
+        adaptive.addAll(initialItems);
+        adaptive.sort();
+        full.addAll(initialItems);
+        full.sort(SORT_ORDER);
+
+        long appendNanos = 0, plainAppendNanos = 0, adaptiveNanos = 0, fullNanos = 0;
+        long adaptiveComparisons = 0, fullComparisons = 0;
+        for (List<Integer> batch : batches) {
+            // the appends after a sort find a valid index of the unsorted section, and shall leave it to the next search
+            numberOfComparisons = 0;
+            long start = System.nanoTime();
+            for (Integer item : batch) {
+                adaptive.add(item);
+            }
+            appendNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            adaptive.sort();
+            adaptiveNanos += System.nanoTime() - start;
+            adaptiveComparisons += numberOfComparisons;
+
+            start = System.nanoTime();
+            for (Integer item : batch) {
+                plain.add(item);
+            }
+            plainAppendNanos += System.nanoTime() - start;
+
+            for (Integer item : batch) {
+                full.add(item);
+            }
+            numberOfComparisons = 0;
+            start = System.nanoTime();
+            full.sort(SORT_ORDER);
+            fullNanos += System.nanoTime() - start;
+            fullComparisons += numberOfComparisons;
+        }
+
+        if (report) {
+            System.out.printf("Append-and-sort of %d batches of %d items onto %d items: " +
+                            "appends %d ms (ArrayList %d ms), adaptive sort %d ms / %d comparisons, " +
+                            "full re-sort %d ms / %d comparisons\n",
+                    NUMBER_OF_BATCHES, tailSize, INITIAL_SIZE, appendNanos / 1000000, plainAppendNanos / 1000000,
+                    adaptiveNanos / 1000000, adaptiveComparisons, fullNanos / 1000000, fullComparisons);
+        }
+        assertEquals(full, adaptive);
+        assertTrue(adaptiveComparisons < fullComparisons,
+                "appending and merging a sorted tail should need fewer comparisons than sorting the whole list");
+        assertEquals(adaptive.size(), adaptive.nSorted);
+        CarsListTest.checkRepresentationInvariant(adaptive);
+    }
+}
@@ -0,0 +1,47 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderedArrayListTest {
+
+    @Test
+    public void primitiveAggregationsMatchBoxedAggregation() {
+        OrderedArrayList<Integer> list = new OrderedArrayList<>(Comparator.naturalOrder());
+        Random random = new Random(32);
+        for (int i = 0; i < 10 * ListAggregator.PARALLEL_THRESHOLD; i++) {
+            list.add(random.nextInt(1000));
+        }
+        double boxedSum = list.aggregate(i -> (double) i);
+        long exactSum = list.stream().mapToLong(i -> i).sum();
+        assertEquals(exactSum, boxedSum);
+        assertEquals(exactSum, list.aggregate(i -> i, false));
+        assertEquals(exactSum, list.aggregate(i -> i, true));
+        assertEquals(exactSum, list.aggregateAsLong(i -> i, false));
+        assertEquals(exactSum, list.aggregateAsLong(i -> i, true));
+
+        double[] sums = list.aggregateAll(List.of(i -> i, i -> 2 * i, i -> i % 2), true);
+        assertArrayEquals(new double[] { exactSum, 2 * exactSum, list.stream().filter(i -> i % 2 == 1).count() }, sums);
+        assertArrayEquals(new double[] { 0.0 }, new OrderedArrayList<Integer>().aggregateAll(List.of(i -> i), true));
+    }
+
+    @Test
+    public void compensatedAggregationIsAccurate() {
+        // one large value and many small fractions, which are lost by naive summation
+        OrderedArrayList<Double> list = new OrderedArrayList<>(Comparator.naturalOrder());
+        list.add(1.0e16);
+        for (int i = 0; i < 3 * ListAggregator.PARALLEL_THRESHOLD; i++) {
+            list.add(0.5);
+            list.add(-0.25);
+        }
+        double expected = 1.0e16 + 3 * ListAggregator.PARALLEL_THRESHOLD * 0.25;
+        assertEquals(expected, list.aggregate(d -> d, false));
+        assertEquals(expected, list.aggregate(d -> d, true));
+        assertNotEquals(expected, list.aggregate(d -> d));
+    }
+}
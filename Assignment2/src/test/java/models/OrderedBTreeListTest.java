@@ -0,0 +1,126 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies OrderedBTreeList against a sorted ArrayList by random sequences of inserts, merges and removals,
+ * which are long enough to split and merge leaves and inner nodes at several levels of the tree.
+ */
+public class OrderedBTreeListTest {
+    // compare only the tens, such that the units reveal the order of equal items
+    private static final Comparator<Integer> BY_TENS = Comparator.comparing(i -> i / 10);
+
+    @Test
+    public void randomOperationsMatchSortedArrayList() {
+        Random random = new Random(33);
+        OrderedBTreeList<Integer> list = new OrderedBTreeList<>(BY_TENS);
+        List<Integer> expected = new ArrayList<>();
+
+        for (int step = 0; step < 50000; step++) {
+            int operation = random.nextInt(10);
+            int item = random.nextInt(100000);
+            if (operation < 5 || expected.isEmpty()) {
+                list.add(item);
+                // behind all equal items
+                int position = 0;
+                while (position < expected.size() && BY_TENS.compare(expected.get(position), item) <= 0) position++;
+                expected.add(position, item);
+            } else if (operation < 7) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), list.remove(index));
+            } else if (operation < 8) {
+                Integer existing = expected.get(random.nextInt(expected.size()));
+                assertEquals(expected.remove(existing), list.remove(existing));
+            } else {
+                // merge replaces the first equal item by the new item
+                int index = list.indexOfByBinarySearch(item);
+                boolean added = list.merge(item, (i1, i2) -> i2);
+                assertEquals(index < 0, added);
+                if (added) {
+                    int position = 0;
+                    while (position < expected.size() && BY_TENS.compare(expected.get(position), item) < 0) position++;
+                    expected.add(position, item);
+                } else {
+                    assertEquals(item, list.get(index));
+                    expected.set(index, item);
+                }
+            }
+            if (step % 5000 == 0) {
+                assertEquals(expected, list);
+            }
+        }
+        assertEquals(expected, list);
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+            int index = list.indexOfByBinarySearch(expected.get(i));
+            assertEquals(0, BY_TENS.compare(expected.get(i), list.get(index)));
+            assertTrue(index == 0 || BY_TENS.compare(list.get(index - 1), list.get(index)) < 0,
+                    "indexOf shall find the first of equal items");
+        }
+
+        // remove most items by the iterator
+        Iterator<Integer> iterator = list.iterator();
+        expected.removeIf(i -> i % 3 != 0);
+        while (iterator.hasNext()) {
+            if (iterator.next() % 3 != 0) iterator.remove();
+        }
+        assertEquals(expected, list);
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(-1, list.indexOfByBinarySearch(42));
+    }
+
+    @Test
+    public void bulkLoadAndResortKeepItemsSorted() {
+        OrderedBTreeList<Integer> list = new OrderedBTreeList<>(BY_TENS);
+        list.addAll(List.of(21, 10, 30));
+        List<Integer> items = new ArrayList<>();
+        for (int i = 10000; i > 0; i--) {
+            items.add(i);
+        }
+        list.addAll(items);
+        List<Integer> expected = new ArrayList<>(List.of(21, 10, 30));
+        expected.addAll(items);
+        expected.sort(BY_TENS);
+        assertEquals(expected, list);
+
+        list.sort(Comparator.reverseOrder());
+        expected.sort(Comparator.reverseOrder());
+        assertEquals(expected, list);
+        assertEquals(expected.indexOf(5000), list.indexOf(5000));
+        list.sort();
+        assertEquals(expected, list);
+
+        // an equivalent comparator adopts the order without disturbing the items
+        Comparator<Integer> descending = (i1, i2) -> Integer.compare(i2, i1);
+        list.sort(descending);
+        assertEquals(descending, list.getSortOrder());
+        assertEquals(expected, list);
+        list.add(4999);
+        assertEquals(expected.indexOf(5000) + 1, list.indexOf(4999));
+    }
+
+    @Test
+    public void positionalChangesMustKeepTheOrder() {
+        OrderedBTreeList<Integer> list = new OrderedBTreeList<>();
+        list.addAll(List.of(50, 10, 30));
+        assertEquals(List.of(10, 30, 50), list);
+
+        list.add(1, 20);
+        list.add(4, 60);
+        list.set(0, 15);
+        assertEquals(List.of(15, 20, 30, 50, 60), list);
+        assertThrows(IllegalArgumentException.class, () -> list.add(0, 70));
+        assertThrows(IllegalArgumentException.class, () -> list.set(2, 10));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(5));
+        assertThrows(NullPointerException.class, () -> list.add(null));
+        assertEquals(List.of(15, 20, 30, 50, 60), list);
+        assertEquals(175.0, list.aggregate(i -> (double)i));
+        assertEquals(175L, list.aggregateAsLong(i -> i, true));
+    }
+}
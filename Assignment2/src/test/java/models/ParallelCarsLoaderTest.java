@@ -0,0 +1,102 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelCarsLoaderTest {
+
+    /**
+     * writes a registry with duplicate plates, bad lines, blank lines, CRLF terminators and no final terminator
+     */
+    private static File writeCarsFile(File folder, int numberOfLines, long seed) throws IOException {
+        File file = new File(folder, "cars.txt");
+        Random random = new Random(seed);
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int l = 0; l < numberOfLines; l++) {
+                int kind = random.nextInt(100);
+                String line;
+                if (kind < 2) {
+                    line = "   ";
+                } else if (kind < 3) {
+                    line = String.format("%03d-XX-%d, seven, Car, Diesel, 2020-01-01", random.nextInt(1000), l % 10);
+                } else if (kind < 4) {
+                    line = "incomplete, 5, Van";
+                } else {
+                    line = String.format("%03d-%c%c-%d, %d, %s, %s, %s", random.nextInt(1000),
+                            'A' + random.nextInt(26), 'A' + random.nextInt(26), random.nextInt(10), random.nextInt(10),
+                            Car.CarType.values()[random.nextInt(Car.CarType.values().length)],
+                            Car.FuelType.values()[random.nextInt(Car.FuelType.values().length)],
+                            LocalDate.of(2000, 1, 1).plusDays(random.nextInt(8000)));
+                }
+                writer.print(line);
+                if (l < numberOfLines - 1) {
+                    writer.print(random.nextBoolean() ? "\r\n" : "\n");
+                }
+            }
+        }
+        return file;
+    }
+
+    private static void assertLoadsLikeLineImport(File file, int parallelism, long minRangeSize) {
+        List<Car> expectedCars = new ArrayList<>();
+        int expectedNumberOfLines = TrafficTracker.importItemsFromFile(expectedCars, file, Car::fromLine);
+        expectedCars.sort(Car::compareTo);
+
+        List<Car> cars = new ArrayList<>();
+        List<String> badLines = new ArrayList<>();
+        int numberOfLines = ParallelCarsLoader.loadCars(file, parallelism, minRangeSize, Car::compareTo, cars, badLines);
+        assertEquals(expectedNumberOfLines, numberOfLines);
+        assertEquals(expectedCars.toString(), cars.toString(), "equal cars should remain in the order of the file");
+        for (String badLine : badLines) {
+            assertTrue(badLine.contains("seven"), badLine);
+        }
+    }
+
+    @Test
+    public void chunkedLoadMatchesLineImport(@TempDir File folder) throws IOException {
+        File file = writeCarsFile(folder, 20000, 42);
+        assertLoadsLikeLineImport(file, 4, 256);
+        assertLoadsLikeLineImport(file, 3, 4096);
+        assertLoadsLikeLineImport(file, 1, 256);
+        assertLoadsLikeLineImport(file, 8, ParallelCarsLoader.MIN_RANGE_SIZE);
+    }
+
+    @Test
+    public void badLinesAreCollectedInOrderOfTheFile(@TempDir File folder) throws IOException {
+        File file = writeCarsFile(folder, 5000, 7);
+        List<String> expectedBadLines = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            if (line.contains("seven")) {
+                expectedBadLines.add(line.trim());
+            }
+        }
+        assertFalse(expectedBadLines.isEmpty());
+        List<String> badLines = new ArrayList<>();
+        ParallelCarsLoader.loadCars(file, 4, 128, Car::compareTo, new ArrayList<>(), badLines);
+        assertEquals(expectedBadLines, badLines);
+    }
+
+    @Test
+    public void blankLinesAtRangeBoundariesAreCountedOnce(@TempDir File folder) throws IOException {
+        File file = new File(folder, "cars.txt");
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.print("\n\n081-DJ-3, 5, Car, Gasoline, 2022-02-28\n\n  \n227-HX-3, 4, Truck, Diesel, 2020-08-29\n\n\n \n");
+        }
+        for (long minRangeSize = 1; minRangeSize < 100; minRangeSize += 7) {
+            assertLoadsLikeLineImport(file, 4, minRangeSize);
+        }
+        assertTrue(new File(folder, "empty.txt").createNewFile());
+        assertLoadsLikeLineImport(new File(folder, "empty.txt"), 4, 1);
+    }
+}
@@ -0,0 +1,128 @@
+package models;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares sharded imports by local worker processes with the import in a single process,
+ * and reports the import times for increasing numbers of workers by a benchmark, which is excluded by default.
+ * As the times include the start of the JVMs and depend on the cores of the environment, only the results are verified.
+ */
+public class ShardedImportTest {
+    private static final String VAULT_NAME = "/2023-09";
+
+    private static TrafficTracker importVault(int numberOfShards, ShardedImport.Partitioning partitioning,
+                                              File shardsFolder) {
+        return importVault(new TrafficTracker(), numberOfShards, partitioning, shardsFolder);
+    }
+
+    private static TrafficTracker importVault(TrafficTracker tracker, int numberOfShards,
+                                              ShardedImport.Partitioning partitioning, File shardsFolder) {
+        tracker.setSharding(numberOfShards, partitioning, shardsFolder);
+        tracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        tracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        return tracker;
+    }
+
+    private static void assertSameResults(TrafficTracker expected, TrafficTracker tracker) {
+        assertEquals(expected.getViolations().toString(), tracker.getViolations().toString());
+        assertEquals(expected.calculateTotalFines(), tracker.calculateTotalFines(), 1e-6);
+        assertEquals(expected.topViolationsByCar(5).toString(), tracker.topViolationsByCar(5).toString());
+        assertEquals(expected.topViolationsByCity(5).toString(), tracker.topViolationsByCity(5).toString());
+        List<Car> expectedCars = new ArrayList<>(expected.getCars());
+        expectedCars.sort(Car::compareTo);
+        List<Car> cars = new ArrayList<>(tracker.getCars());
+        cars.sort(Car::compareTo);
+        assertEquals(expectedCars.toString(), cars.toString());
+    }
+
+    @Test
+    public void shardedImportEqualsSingleProcessImport(@TempDir File shardsFolder) {
+        TrafficTracker expected = importVault(0, null, null);
+
+        for (ShardedImport.Partitioning partitioning : ShardedImport.Partitioning.values()) {
+            File partitioningFolder = new File(shardsFolder, partitioning.name());
+            assertSameResults(expected, importVault(3, partitioning, partitioningFolder));
+            for (int shard = 0; shard < 3; shard++) {
+                File shardFolder = new File(partitioningFolder, "shard-" + shard);
+                assertTrue(new File(shardFolder, ImportCheckpoint.CHECKPOINT_FILE_NAME).exists());
+                assertTrue(new File(shardFolder, ShardedImport.LOG_FILE_NAME).exists());
+            }
+        }
+
+        // the hash partitions of the license plates do not overlap
+        List<ImportCheckpoint.Snapshot> partialTables = new ShardedImport(VAULT_NAME + "/cars.txt",
+                VAULT_NAME + "/detections", ShardedImport.Partitioning.PLATE_HASH).run(2, shardsFolder);
+        assertEquals(expected.getViolations().size(),
+                partialTables.get(0).getViolations().size() + partialTables.get(1).getViolations().size());
+        for (int shard = 0; shard < 2; shard++) {
+            for (Violation violation : partialTables.get(shard).getViolations()) {
+                assertEquals(shard, ShardedImport.shardOf(violation.getCar(), 2));
+            }
+        }
+    }
+
+    /**
+     * @return  a tracker with other settings than the defaults
+     */
+    private static TrafficTracker newCustomTracker() {
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.setZoneRules(ZoneRules.PURPLE.withRule(ZoneRule.fromLine("green, Car|Van|Truck|Coach, Diesel|Gasoline, 4")),
+                "green");
+        tracker.setDeduplicationWindow(Duration.ofHours(1));
+        tracker.setMappedParsing(true);
+        tracker.setImportParallelism(2);
+        return tracker;
+    }
+
+    @Test
+    public void workersApplyTheSettingsOfTheTracker(@TempDir File shardsFolder) {
+        TrafficTracker expected = importVault(newCustomTracker(), 0, null, null);
+        assertNotEquals(importVault(0, null, null).getViolations().toString(), expected.getViolations().toString());
+        assertSameResults(expected, importVault(newCustomTracker(), 2, ShardedImport.Partitioning.PLATE_HASH, shardsFolder));
+
+        // the repeats of a car in a city may be spread over the files of several workers
+        assertThrows(IllegalStateException.class,
+                () -> importVault(newCustomTracker(), 2, ShardedImport.Partitioning.FILES, shardsFolder));
+    }
+
+    @Test
+    public void failingWorkersAreReported(@TempDir File shardsFolder) {
+        ShardedImport shardedImport = new ShardedImport(VAULT_NAME + "/cars.txt", "/no such vault",
+                ShardedImport.Partitioning.FILES);
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> shardedImport.run(1, shardsFolder));
+        assertTrue(exception.getMessage().contains(ShardedImport.LOG_FILE_NAME), exception.getMessage());
+        assertThrows(IllegalStateException.class, () -> {
+            TrafficTracker tracker = new TrafficTracker();
+            tracker.setSharding(2, ShardedImport.Partitioning.FILES, shardsFolder);
+            tracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        });
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void scalingBenchmark(@TempDir File shardsFolder) {
+        long startNanos = System.nanoTime();
+        TrafficTracker expected = importVault(0, null, null);
+        System.out.printf("Import in a single process: %d ms\n",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+        for (int numberOfShards : new int[] { 1, 2, 4 }) {
+            startNanos = System.nanoTime();
+            TrafficTracker tracker = importVault(numberOfShards, ShardedImport.Partitioning.FILES,
+                    new File(shardsFolder, String.valueOf(numberOfShards)));
+            System.out.printf("Sharded import by %d worker processes: %d ms\n", numberOfShards,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            assertSameResults(expected, tracker);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKTest {
+    private static final String[] CITIES = { "Amsterdam", "Rotterdam", "Utrecht", "Den Haag", "Eindhoven" };
+
+    TrafficTracker trafficTracker;
+    OrderedList<Violation> violations;
+
+    @BeforeEach
+    public void setup() {
+        violations = randomViolations();
+        trafficTracker = new TrafficTracker();
+        trafficTracker.setViolations(violations);
+    }
+
+    /**
+     * @return  300 random violations of 40 cars in the CITIES, merged by license plate and city
+     */
+    static OrderedList<Violation> randomViolations() {
+        Random random = new Random(35);
+        List<Car> cars = new ArrayList<>();
+        for (int c = 0; c < 40; c++) {
+            cars.add(new Car(String.format("%02d-AB-%02d", c, c),
+                    random.nextInt(7), Car.CarType.values()[random.nextInt(Car.CarType.values().length)],
+                    Car.FuelType.values()[random.nextInt(Car.FuelType.values().length)], LocalDate.of(2015, 1, 1)));
+        }
+        OrderedList<Violation> violations = new OrderedArrayList<>(Violation::compareByLicensePlateAndCity);
+        for (int i = 0; i < 300; i++) {
+            Violation violation = new Violation(cars.get(random.nextInt(cars.size())), CITIES[random.nextInt(CITIES.length)]);
+            violation.setOffencesCount(1 + random.nextInt(10));
+            violations.merge(violation, (v1, v2) -> v1);
+        }
+        violations.sort();
+        return violations;
+    }
+
+    /**
+     * the top violations of the original implementation, by merging all violations
+     * and a stable sort of all groups by decreasing offencesCount
+     */
+    private List<String> topViolationsBySorting(Function<Violation, ?> groupingKey, int topNumber) {
+        Map<Object, Violation> groups = new LinkedHashMap<>();
+        for (Violation violation : violations) {
+            groups.merge(groupingKey.apply(violation), violation, Violation::combineOffencesCounts);
+        }
+        List<Violation> sortedGroups = new ArrayList<>(groups.values());
+        sortedGroups.sort((v1, v2) -> Integer.compare(v2.getOffencesCount(), v1.getOffencesCount()));
+        return sortedGroups.subList(0, Math.min(topNumber, sortedGroups.size())).stream().map(Violation::toString).toList();
+    }
+
+    @Test
+    public void topViolationsMatchFullSort() {
+        String violationsBefore = violations.toString();
+        for (int topNumber : new int[] { 0, 1, 3, 5, 10, 100 }) {
+            assertEquals(topViolationsBySorting(Violation::getCar, topNumber),
+                    trafficTracker.topViolationsByCar(topNumber).stream().map(Violation::toString).toList());
+            assertEquals(topViolationsBySorting(Violation::getCity, topNumber),
+                    trafficTracker.topViolationsByCity(topNumber).stream().map(Violation::toString).toList());
+            assertEquals(topViolationsBySorting(v -> v.getCar().getFuelType(), topNumber),
+                    trafficTracker.topViolationsBy(v -> v.getCar().getFuelType(), topNumber)
+                            .stream().map(Violation::toString).toList());
+        }
+        assertEquals(violationsBefore, violations.toString(), "the violations should not be changed by the aggregations");
+    }
+
+    @Test
+    public void aggregatesRetainSharedAttributes() {
+        List<Violation> topByCar = trafficTracker.topViolationsByCar(1);
+        assertNotNull(topByCar.get(0).getCar());
+        List<Violation> topByCity = trafficTracker.topViolationsByCity(CITIES.length);
+        assertEquals(CITIES.length, topByCity.size());
+        assertTrue(topByCity.stream().allMatch(v -> v.getCar() == null && v.getCity() != null));
+        assertEquals(violations.stream().mapToInt(Violation::getOffencesCount).sum(),
+                topByCity.stream().mapToInt(Violation::getOffencesCount).sum());
+    }
+}
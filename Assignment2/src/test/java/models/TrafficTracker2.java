@@ -53,7 +53,7 @@ public class TrafficTracker2 {
         // What is being tested: Whether the method returns the top 2 violations sorted by Car
         List<Violation> topViolationsByCar = tracker.topViolationsByCar(2);
         assertEquals(2, topViolationsByCar.size());  // We expect 2 top violations by car
-        assertTrue(topViolationsByCar.contains(violation1) || topViolationsByCar.contains(violation3));  // One of the mustang violations should be there
+        assertTrue(topViolationsByCar.stream().anyMatch(v -> v.getCar() == mustang && v.getOffencesCount() == 2));  // The mustang violations should be combined
         assertTrue(topViolationsByCar.contains(violation2));  // The sedan violation should be there
     }
 
@@ -2,11 +2,26 @@ package models;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TrafficTrackerTest {
     private final static String VAULT_NAME = "/test1";
@@ -17,6 +32,7 @@ public class TrafficTrackerTest {
     public void setup() {
         Locale.setDefault(Locale.ENGLISH);
         trafficTracker = new TrafficTracker();
+        trafficTracker.setOffenceTimelines(true);
 
         trafficTracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
 
@@ -57,7 +73,147 @@ public class TrafficTrackerTest {
                 "Total number of offences across all Violation instances did not match.");
     }
 
+    @Test
+    public void parallelImportMatchesSequentialImport() {
+        TrafficTracker parallelTracker = new TrafficTracker();
+        parallelTracker.setImportParallelism(4);
+        parallelTracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        parallelTracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+
+        assertEquals(trafficTracker.getCars().size(), parallelTracker.getCars().size(),
+                "the parallel import should add the same unknown cars as the sequential import");
+        CarsListTest.checkRepresentationInvariant(parallelTracker.getViolations());
+        trafficTracker.getViolations().sort();
+        assertEquals(trafficTracker.getViolations().toString(), parallelTracker.getViolations().toString(),
+                "the parallel import should find the same violations as the sequential import");
+        assertEquals(trafficTracker.calculateTotalFines(), parallelTracker.calculateTotalFines());
+    }
+
+    @Test
+    public void bTreeListsMatchArrayLists() {
+        checkListImplementation(OrderedBTreeList::new);
+    }
+
+    @Test
+    public void concurrentListsMatchArrayLists() {
+        checkListImplementation(ConcurrentOrderedList::new);
+    }
+
+    private void checkListImplementation(OrderedList.Factory listFactory) {
+        TrafficTracker otherTracker = new TrafficTracker(listFactory);
+        otherTracker.setImportParallelism(4);
+        otherTracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        otherTracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+
+        trafficTracker.getCars().sort();
+        trafficTracker.getViolations().sort();
+        assertEquals(trafficTracker.getCars().toString(), otherTracker.getCars().toString());
+        assertEquals(trafficTracker.getViolations().toString(), otherTracker.getViolations().toString());
+        assertEquals(trafficTracker.calculateTotalFines(), otherTracker.calculateTotalFines());
+    }
+
+    @Test
+    public void timelinesCountAllOffences() {
+        TrafficTracker mappedTracker = new TrafficTracker();
+        assertThrows(IllegalStateException.class, () -> mappedTracker.offencesOfCarInLast(null, Duration.ofDays(1)));
+        mappedTracker.setOffenceTimelines(true);
+        mappedTracker.setMappedParsing(true);
+        mappedTracker.setImportParallelism(4);
+        mappedTracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        mappedTracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+
+        for (TrafficTracker tracker : List.of(trafficTracker, mappedTracker)) {
+            LocalDateTime from = tracker.getDailyOffencesByCar().getLatestDateTime().minusDays(365);
+            for (Violation violation : tracker.topViolationsByCity(100)) {
+                assertEquals(violation.getOffencesCount(),
+                        Arrays.stream(tracker.getDailyOffencesByCity().counts(violation.getCity(), from, 366)).sum());
+            }
+            for (Violation violation : tracker.topViolationsByCar(100)) {
+                assertEquals(violation.getOffencesCount(), tracker.offencesOfCarInLast(violation.getCar(), Duration.ofDays(366)));
+            }
+        }
+        Car car = trafficTracker.getViolations().get(0).getCar();
+        assertArrayEquals(trafficTracker.getHourlyOffencesByCar().counts(car, LocalDateTime.of(2022, 9, 1, 0, 0), 7 * 24),
+                mappedTracker.getHourlyOffencesByCar().counts(car, LocalDateTime.of(2022, 9, 1, 0, 0), 7 * 24));
+        assertEquals(trafficTracker.offencesOfCarInLast(car, Duration.ofHours(24)),
+                mappedTracker.offencesOfCarInLast(car, Duration.ofHours(24)));
+    }
+
+    @Test
+    public void mappedParsingMatchesLineParsing() {
+        TrafficTracker mappedTracker = new TrafficTracker();
+        mappedTracker.setMappedParsing(true);
+        mappedTracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+        assertEquals(10, mappedTracker.getCars().size());
+        CarsListTest.checkRepresentationInvariant(mappedTracker.getCars());
+        assertEquals(trafficTracker.getCars().subList(0, 10).toString(), mappedTracker.getCars().toString());
+
+        mappedTracker.importDetectionsFromVault(VAULT_NAME + "/detections");
+        assertEquals(trafficTracker.getCars().size(), mappedTracker.getCars().size());
+        trafficTracker.getViolations().sort();
+        mappedTracker.getViolations().sort();
+        assertEquals(trafficTracker.getViolations().toString(), mappedTracker.getViolations().toString(),
+                "the mapped parser should find the same violations as the line parser");
+    }
+
+    @Test
+    public void watchingTheVaultImportsNewAndAppendedFiles(@TempDir Path vault) throws Exception {
+        // copy the test vault to a folder where gates can deliver new detections
+        Path source = Path.of(TrafficTracker.class.getResource(VAULT_NAME + "/detections").toURI());
+        try (var paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>)paths::iterator) {
+                Path target = vault.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) Files.createDirectories(target);
+                else Files.copy(path, target);
+            }
+        }
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.importCarsFromVault(VAULT_NAME + "/cars.txt");
+
+        try (VaultWatcher watcher = tracker.watchDetectionsVault(vault.toFile())) {
+            assertEquals(7, watcher.getNumberOfOffences(), "the current content of the vault should be imported at the start");
+            assertEquals(2, tracker.getViolations().size());
+
+            Files.writeString(vault.resolve("Amsterdam/0.txt"), "227-HX-3, Amsterdam, 2022-09-30T10:00:00\n227-HX-3, Amst",
+                    StandardOpenOption.APPEND);
+            Files.createDirectories(vault.resolve("Utrecht"));
+            Files.write(vault.resolve("Utrecht/2.txt"), List.of("227-HX-3, Utrecht, 2022-09-30T11:00:00", "UFP-17-D, Utrecht, 2022-09-30T11:00:00"));
+            awaitCondition(() -> watcher.getNumberOfOffences() == 9);
+            synchronized (tracker) {
+                assertEquals(3, tracker.getViolations().size());
+                // the indexes have been maintained along with the violations
+                assertEquals(1, tracker.violationsInCity("Utrecht").size());
+            }
+
+            // complete the partial line that was appended before
+            Files.writeString(vault.resolve("Amsterdam/0.txt"), "erdam, 2022-09-30T12:00:00\n", StandardOpenOption.APPEND);
+            awaitCondition(() -> watcher.getNumberOfOffences() == 10);
+            synchronized (tracker) {
+                assertEquals(10, tracker.getViolations().stream().mapToInt(Violation::getOffencesCount).sum());
+                // the leaderboards have been maintained along with the violations
+                assertEquals(rankingOf(tracker.topViolationsByCar(5), Violation::getCar),
+                        rankingOf(tracker.leadingViolationsByCar(5)));
+                assertEquals(rankingOf(tracker.topViolationsByCity(5), Violation::getCity),
+                        rankingOf(tracker.leadingViolationsByCity(5)));
+            }
+        }
+    }
+
+    static List<String> rankingOf(List<Violation> violations, Function<Violation, ?> groupingKey) {
+        return violations.stream().map(v -> groupingKey.apply(v) + "/" + v.getOffencesCount()).toList();
+    }
 
+    static List<String> rankingOf(List<? extends Map.Entry<?, Long>> leaders) {
+        return leaders.stream().map(entry -> entry.getKey() + "/" + entry.getValue()).toList();
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "the watcher did not import the new detections in time");
+    }
 
     @Test
     public void myTest() {
@@ -0,0 +1,101 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultSegmentsTest {
+
+    private static File resourceFile(String resourceName) throws URISyntaxException {
+        return new File(VaultSegmentsTest.class.getResource(resourceName).toURI());
+    }
+
+    private static TrafficTracker importVault(String vaultName) {
+        TrafficTracker tracker = new TrafficTracker();
+        tracker.setOffenceTimelines(true);
+        tracker.importCarsFromVault(vaultName + "/cars.txt");
+        tracker.importDetectionsFromVault(vaultName + "/detections");
+        return tracker;
+    }
+
+    private static void assertSameResults(TrafficTracker expected, TrafficTracker actual) {
+        assertEquals(expected.getCars().size(), actual.getCars().size());
+        expected.getCars().sort();
+        actual.getCars().sort();
+        assertEquals(expected.getCars().toString(), actual.getCars().toString());
+        assertEquals(expected.getViolations().toString(), actual.getViolations().toString());
+        assertEquals(expected.calculateTotalFines(), actual.calculateTotalFines());
+        assertEquals(expected.topViolationsByCity(100).toString(), actual.topViolationsByCity(100).toString());
+        // all offences are recorded in the timelines, none of them is late in a year
+        for (Violation violation : actual.topViolationsByCar(5)) {
+            assertEquals(violation.getOffencesCount(),
+                    actual.offencesOfCarInLast(violation.getCar(), Duration.ofDays(366)));
+        }
+    }
+
+    @Test
+    public void segmentsReproduceTheTextImport(@TempDir File segmentsFolder) throws URISyntaxException {
+        TrafficTracker textTracker = importVault("/test1");
+        long numberOfDetections = VaultSegments.convert(resourceFile("/test1/cars.txt"),
+                resourceFile("/test1/detections"), segmentsFolder);
+        assertTrue(new File(segmentsFolder, VaultSegments.CARS_FILE_NAME).exists());
+        assertEquals(1, VaultSegments.openDetectionSegments(segmentsFolder).size());
+
+        TrafficTracker segmentsTracker = new TrafficTracker();
+
+        segmentsTracker.setOffenceTimelines(true);
+        segmentsTracker.setDetectionRetention(true);
+        segmentsTracker.importSegmentsFromFolder(segmentsFolder);
+        assertSameResults(textTracker, segmentsTracker);
+        assertEquals(12, segmentsTracker.getCars().size());
+        assertEquals(numberOfDetections, segmentsTracker.getDetectionStore().size());
+    }
+
+    @Test
+    public void smallSegmentsAreDecodedInParallel(@TempDir File segmentsFolder) throws URISyntaxException {
+        TrafficTracker textTracker = importVault("/2023-09");
+        // segments of several blocks, with a partial last block
+        int segmentSize = 3 * VaultSegments.BLOCK_SIZE + 100;
+        long numberOfDetections = VaultSegments.convert(resourceFile("/2023-09/cars.txt"),
+                resourceFile("/2023-09/detections"), segmentsFolder, segmentSize);
+
+        List<VaultSegments.Segment> segments = VaultSegments.openDetectionSegments(segmentsFolder);
+        assertEquals((numberOfDetections + segmentSize - 1) / segmentSize, segments.size());
+        long previousSecond = Long.MIN_VALUE;
+        for (VaultSegments.Segment segment : segments) {
+            for (int block = 0; block < segment.getNumberOfBlocks(); block++) {
+                // the footer index shows that the detections are sorted by time
+                assertTrue(previousSecond <= segment.getFirstEpochSecond(block));
+                assertTrue(segment.getFirstEpochSecond(block) <= segment.getLastEpochSecond(block));
+                previousSecond = segment.getLastEpochSecond(block);
+            }
+        }
+
+        for (int importParallelism : new int[] { 1, 4 }) {
+            TrafficTracker segmentsTracker = new TrafficTracker();
+            segmentsTracker.setOffenceTimelines(true);
+            segmentsTracker.setImportParallelism(importParallelism);
+            segmentsTracker.importSegmentsFromFolder(segmentsFolder);
+            assertSameResults(textTracker, segmentsTracker);
+        }
+    }
+
+    @Test
+    public void corruptSegmentsAreRejected(@TempDir File segmentsFolder) throws URISyntaxException, IOException {
+        VaultSegments.convert(resourceFile("/test1/cars.txt"), resourceFile("/test1/detections"), segmentsFolder);
+        File segmentFile = new File(segmentsFolder, "detections-00000.seg");
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            // truncate the trailer
+            file.setLength(file.length() - 1);
+        }
+        assertThrows(IllegalStateException.class, () -> new TrafficTracker().importSegmentsFromFolder(segmentsFolder));
+    }
+}
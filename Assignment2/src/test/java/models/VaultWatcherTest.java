@@ -0,0 +1,84 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultWatcherTest {
+    private static final String LINE = "227-HX-3, Amsterdam, 2022-09-30T10:00:00\n";
+
+    /**
+     * counts the lines of every batch, and fails on a batch with a line of BOOM
+     */
+    private static class LineCounter {
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        synchronized int importBatch(ByteBuffer buffer) {
+            String lines = StandardCharsets.UTF_8.decode(buffer).toString();
+            if (lines.contains("BOOM")) {
+                throw new IllegalStateException("BOOM");
+            }
+            int numberOfLines = (int)lines.chars().filter(c -> c == '\n').count();
+            this.batchSizes.add(numberOfLines);
+            return numberOfLines;
+        }
+
+        synchronized int numberOfBatches() {
+            return this.batchSizes.size();
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "the watcher did not import the new content in time");
+    }
+
+    @Test
+    public void lastLinesAreImportedWhenTheFileIsQuiescent(@TempDir Path vault) throws Exception {
+        Path file = vault.resolve("Amsterdam/1.txt");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, LINE + LINE + LINE.trim());
+        LineCounter counter = new LineCounter();
+
+        try (VaultWatcher watcher = new VaultWatcher(vault, "\\d+\\.txt", counter::importBatch, Duration.ofMillis(200))) {
+            watcher.start();
+            assertEquals(2, watcher.getNumberOfOffences(), "the complete lines are imported at once");
+            awaitCondition(() -> watcher.getNumberOfOffences() == 3);
+
+            // a failing import is reported, and the watcher continues with the next content
+            Files.writeString(file, "\nBOOM\n", StandardOpenOption.APPEND);
+            Thread.sleep(300);
+            Files.writeString(file, LINE, StandardOpenOption.APPEND);
+            awaitCondition(() -> watcher.getNumberOfOffences() == 4);
+        }
+    }
+
+    @Test
+    public void largeContentIsImportedInChunks(@TempDir Path vault) throws Exception {
+        int numberOfLines = 2 * VaultWatcher.CHUNK_SIZE / LINE.length() + 10;
+        Files.createDirectories(vault.resolve("Utrecht"));
+        Files.writeString(vault.resolve("Utrecht/7.txt"), LINE.repeat(numberOfLines));
+        LineCounter counter = new LineCounter();
+
+        try (VaultWatcher watcher = new VaultWatcher(vault, "\\d+\\.txt", counter::importBatch)) {
+            watcher.start();
+            assertEquals(numberOfLines, watcher.getNumberOfOffences());
+            assertEquals(3, counter.numberOfBatches());
+            assertEquals(1, watcher.getNumberOfImportedFiles());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package models;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ViolationIndexTest {
+    private static TrafficTracker tracker;
+
+    @BeforeAll
+    public static void importVault() {
+        tracker = new TrafficTracker();
+        tracker.importCarsFromVault("/2023-09/cars.txt");
+        tracker.importDetectionsFromVault("/2023-09/detections");
+    }
+
+    private static List<String> sorted(List<Violation> violations) {
+        return violations.stream().map(Violation::toString).sorted().toList();
+    }
+
+    private static void assertSameViolations(Predicate<Violation> filter, List<Violation> indexedViolations) {
+        assertEquals(sorted(tracker.getViolations().stream().filter(filter).toList()), sorted(indexedViolations));
+    }
+
+    @Test
+    public void indexesMatchFullScans() {
+        ViolationIndex index = tracker.getViolationIndex();
+        assertEquals(tracker.getViolations().size(), index.size());
+        for (Violation violation : tracker.topViolationsByCity(100)) {
+            String city = violation.getCity();
+            assertSameViolations(v -> v.getCity().equals(city), tracker.violationsInCity(city));
+        }
+        assertTrue(tracker.violationsInCity("Atlantis").isEmpty());
+        assertSameViolations(v -> v.getCity().compareTo("E") >= 0 && v.getCity().compareTo("R") < 0,
+                index.inCities("E", "R"));
+
+        for (String prefix : List.of("", "0", "1", "9", "VJ", "Z", "ZZZ-99")) {
+            List<Violation> violations = tracker.violationsWithPlatePrefix(prefix);
+            assertSameViolations(v -> v.getCar().getLicensePlate().startsWith(prefix), violations);
+            assertEquals(violations.stream().sorted(Comparator.comparing(v -> v.getCar().getLicensePlate())).toList(),
+                    violations, "the violations should be ordered by license plate");
+        }
+        assertSameViolations(v -> v.getCar().getLicensePlate().compareTo("3") >= 0
+                && v.getCar().getLicensePlate().compareTo("8") < 0, index.withPlatesBetween("3", "8"));
+
+        for (Car.CarType carType : Car.CarType.values()) {
+            assertSameViolations(v -> v.getCar().getCarType() == carType, tracker.violationsOfCarType(carType));
+        }
+        assertFalse(tracker.violationsOfCarType(Car.CarType.Coach).isEmpty());
+        for (int from = 0; from < 10; from++) {
+            int fromCategory = from;
+            assertSameViolations(v -> v.getCar().getEmissionCategory() >= fromCategory
+                    && v.getCar().getEmissionCategory() <= fromCategory + 2,
+                    tracker.violationsWithEmissionCategories(fromCategory, fromCategory + 2));
+        }
+        assertTrue(tracker.violationsWithEmissionCategories(5, 4).isEmpty());
+    }
+
+    @Test
+    public void indexesFollowReplacedViolations() {
+        TrafficTracker otherTracker = new TrafficTracker();
+        otherTracker.importCarsFromVault("/2023-09/cars.txt");
+        otherTracker.importDetectionsFromVault("/2023-09/detections");
+        OrderedList<Violation> coachViolations = new OrderedArrayList<>(Violation::compareByLicensePlateAndCity);
+        coachViolations.addAll(otherTracker.violationsOfCarType(Car.CarType.Coach));
+        otherTracker.setViolations(coachViolations);
+        assertTrue(otherTracker.violationsOfCarType(Car.CarType.Truck).isEmpty());
+        assertEquals(coachViolations.size(), otherTracker.violationsWithPlatePrefix("").size());
+
+        // a new import replaces the indexed violations
+        otherTracker.importDetectionsFromVault("/2023-09/detections");
+        assertEquals(tracker.violationsOfCarType(Car.CarType.Truck).size(),
+                otherTracker.violationsOfCarType(Car.CarType.Truck).size());
+    }
+
+    @Test
+    public void platesThatCannotBeEncodedAreMergedInOrder() {
+        ViolationIndex index = new ViolationIndex();
+        for (String licensePlate : List.of("VJ-12-3", "VJ 99", "VJ-12-3", "1-ABC-2", "vj-01", "VJ")) {
+            index.add(new Violation(new Car(licensePlate), "Utrecht"));
+        }
+        assertEquals(List.of("VJ", "VJ 99", "VJ-12-3", "VJ-12-3"),
+                index.withPlatePrefix("VJ").stream().map(v -> v.getCar().getLicensePlate()).toList());
+        assertEquals(List.of("1-ABC-2", "VJ", "VJ 99"),
+                index.withPlatesBetween("1", "VJ-").stream().map(v -> v.getCar().getLicensePlate()).toList());
+        assertEquals(6, index.withPlatePrefix("").size());
+        assertTrue(index.withPlatesBetween("W", "A").isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZoneRulesTest {
+    private static final ZoneRule GREEN = ZoneRule.fromLine("green, Car|Van|Truck|Coach, Diesel|Gasoline, 4");
+
+    private static List<Car> allKindsOfCars() {
+        List<Car> cars = new ArrayList<>();
+        for (Car.CarType carType : Car.CarType.values()) {
+            for (Car.FuelType fuelType : Car.FuelType.values()) {
+                for (int emissionCategory = 0; emissionCategory < 10; emissionCategory++) {
+                    cars.add(new Car(String.format("%02d-%s-%s", emissionCategory, carType.ordinal(), fuelType.ordinal()),
+                            emissionCategory, carType, fuelType, LocalDate.of(2015, 1, 1)));
+                }
+            }
+        }
+        return cars;
+    }
+
+    @Test
+    public void compiledRulesMatchTheDeclarations() {
+        assertNotNull(GREEN);
+        assertEquals("green", GREEN.getZone());
+        ZoneRules zoneRules = new ZoneRules(List.of(ZoneRule.PURPLE, GREEN));
+        List<Car> cars = allKindsOfCars();
+        zoneRules.compile(cars);
+        for (Car car : cars) {
+            // the original purple rule
+            boolean purple = (car.getCarType() == Car.CarType.Truck || car.getCarType() == Car.CarType.Coach)
+                    && car.getFuelType() == Car.FuelType.Diesel && car.getEmissionCategory() < 6;
+            assertEquals(purple, Detection.isPurpleOffender(car), car.toString());
+            assertEquals(purple, zoneRules.isViolatedBy(car, zoneRules.zoneIndexOf("purple")));
+            assertEquals(GREEN.isViolatedBy(car), zoneRules.offenderFilter("green").test(car));
+            assertEquals((purple ? 1 : 0) | (GREEN.isViolatedBy(car) ? 2 : 0), zoneRules.violatedZones(car));
+        }
+        assertThrows(IllegalArgumentException.class, () -> zoneRules.offenderFilter("blue"));
+        assertThrows(IllegalArgumentException.class, () -> new ZoneRules(List.of(GREEN, GREEN)));
+        assertNull(ZoneRule.fromLine("green, Bike, Diesel, 4"));
+    }
+
+    @Test
+    public void ruleChangesAndCarChangesAreRecompiled() {
+        ZoneRules zoneRules = new ZoneRules(List.of(ZoneRule.PURPLE));
+        Car coach = new Car("1-CCC-01", 5, Car.CarType.Coach, Car.FuelType.Diesel, LocalDate.of(2009, 1, 31));
+        zoneRules.compile(List.of(coach));
+        assertTrue(zoneRules.isViolatedBy(coach, 0));
+
+        // a stricter purple rule replaces the original one
+        ZoneRules stricterRules = zoneRules.withRule(new ZoneRule("purple",
+                EnumSet.of(Car.CarType.Coach), EnumSet.of(Car.FuelType.Diesel), 4));
+        assertEquals(1, stricterRules.getRules().size());
+        assertFalse(stricterRules.isViolatedBy(coach, 0));
+        assertTrue(zoneRules.isViolatedBy(coach, 0), "the original rule set shall not be changed");
+
+        coach.setEmissionCategory(3);
+        assertTrue(stricterRules.isViolatedBy(coach, 0), "a changed car shall be evaluated again");
+        coach.setFuelType(Car.FuelType.Electric);
+        assertFalse(zoneRules.isViolatedBy(coach, 0));
+    }
+
+    @Test
+    public void ruleSetsDoNotEvictTheZonesOfEachOther() {
+        ZoneRules zoneRules = new ZoneRules(List.of(GREEN, ZoneRule.PURPLE));
+        ZoneRules greenRules = new ZoneRules(List.of(GREEN));
+        Car truck = new Car("1-TTT-01", 5, Car.CarType.Truck, Car.FuelType.Diesel, LocalDate.of(2009, 1, 31));
+        zoneRules.compile(List.of(truck));
+        ZoneRules.CompiledZones compiledZones = zoneRules.compiledZonesOf(truck);
+        assertNotNull(compiledZones);
+
+        // alternating between the rule sets compiles each of them only once
+        assertTrue(Detection.isPurpleOffender(truck));
+        ZoneRules.CompiledZones compiledPurpleZones = ZoneRules.PURPLE.compiledZonesOf(truck);
+        assertEquals(GREEN.isViolatedBy(truck) ? 1 : 0, greenRules.violatedZones(truck));
+        ZoneRules.CompiledZones compiledGreenZones = greenRules.compiledZonesOf(truck);
+        assertEquals((GREEN.isViolatedBy(truck) ? 1 : 0) | 2, zoneRules.violatedZones(truck));
+        assertTrue(Detection.isPurpleOffender(truck));
+        assertEquals(GREEN.isViolatedBy(truck) ? 1 : 0, greenRules.violatedZones(truck));
+        assertSame(compiledZones, zoneRules.compiledZonesOf(truck));
+        assertSame(compiledPurpleZones, ZoneRules.PURPLE.compiledZonesOf(truck));
+        assertSame(compiledGreenZones, greenRules.compiledZonesOf(truck));
+
+        // a changed car is evaluated again by all of them
+        truck.setEmissionCategory(6);
+        assertFalse(Detection.isPurpleOffender(truck));
+        assertEquals(GREEN.isViolatedBy(truck) ? 1 : 0, zoneRules.violatedZones(truck));
+        assertNotSame(compiledZones, zoneRules.compiledZonesOf(truck));
+
+        // cars whose plates cannot be encoded are evaluated on every test
+        Car foreignTruck = new Car("foreign#1", 5, Car.CarType.Truck, Car.FuelType.Diesel, LocalDate.of(2009, 1, 31));
+        assertTrue(zoneRules.isViolatedBy(foreignTruck, 1));
+        assertNull(zoneRules.compiledZonesOf(foreignTruck));
+    }
+
+    @Test
+    public void trackerAppliesTheSelectedZoneRule() {
+        TrafficTracker purpleTracker = new TrafficTracker();
+        purpleTracker.importCarsFromVault("/2023-09/cars.txt");
+        purpleTracker.importDetectionsFromVault("/2023-09/detections");
+
+        TrafficTracker greenTracker = new TrafficTracker();
+        greenTracker.setDetectionRetention(true);
+        greenTracker.setZoneRules(ZoneRules.PURPLE.withRule(GREEN), "green");
+        greenTracker.importCarsFromVault("/2023-09/cars.txt");
+        greenTracker.importDetectionsFromVault("/2023-09/detections");
+        ViolationTable greenViolations = greenTracker.getDetectionStore()
+                .aggregateViolations(car -> GREEN.isViolatedBy(car));
+        assertEquals(greenViolations.size(), greenTracker.getViolations().size());
+        assertNotEquals(purpleTracker.getViolations().size(), greenTracker.getViolations().size());
+
+        // re-selecting the purple zone reproduces the purple violations
+        greenTracker.setZoneRules(greenTracker.getZoneRules(), "purple");
+        greenTracker.importDetectionsFromVault("/2023-09/detections");
+        assertEquals(purpleTracker.getViolations().toString(), greenTracker.getViolations().toString());
+    }
+}